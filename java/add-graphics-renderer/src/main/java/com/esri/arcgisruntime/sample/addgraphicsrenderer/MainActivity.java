@@ -16,8 +16,14 @@
 
 package com.esri.arcgisruntime.sample.addgraphicsrenderer;
 
+import java.io.File;
+
 import android.graphics.Color;
 import android.os.Bundle;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
@@ -45,7 +51,13 @@ import com.esri.arcgisruntime.symbology.SimpleRenderer;
 
 public class MainActivity extends AppCompatActivity {
 
+  private static final String TAG = MainActivity.class.getSimpleName();
+  // number of points added to the graphics overlay at a time when loading points from a file
+  private static final int POINT_BATCH_SIZE = 10000;
+
   private MapView mMapView;
+  private GraphicsOverlay mLoadedPointsGraphicsOverlay;
+  private PointLoader mPointLoader;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -151,6 +163,67 @@ public class MainActivity extends AppCompatActivity {
     mMapView.getGraphicsOverlays().add(curvedPolygonGraphicsOverlay);
   }
 
+  @Override
+  public boolean onCreateOptionsMenu(Menu menu) {
+    getMenuInflater().inflate(R.menu.menu_main, menu);
+    return true;
+  }
+
+  @Override
+  public boolean onOptionsItemSelected(MenuItem item) {
+    if (item.getItemId() == R.id.loadPoints) {
+      loadPoints();
+      return true;
+    }
+    return super.onOptionsItemSelected(item);
+  }
+
+  /**
+   * Loads the points in a CSV or GeoJSON file of WGS84 coordinates into a graphics overlay, all drawn with the
+   * overlay's renderer.
+   */
+  private void loadPoints() {
+    File file = new File(getExternalFilesDir(null) + getString(R.string.points_csv));
+    if (!file.exists()) {
+      file = new File(getExternalFilesDir(null) + getString(R.string.points_geojson));
+    }
+    if (!file.exists()) {
+      Toast.makeText(this, getString(R.string.points_file_missing, getExternalFilesDir(null)), Toast.LENGTH_LONG)
+          .show();
+      return;
+    }
+    if (mPointLoader == null) {
+      // small blue circles for the loaded points, shared by all of them through the renderer
+      mLoadedPointsGraphicsOverlay = new GraphicsOverlay();
+      mLoadedPointsGraphicsOverlay.setRenderer(
+          new SimpleRenderer(new SimpleMarkerSymbol(SimpleMarkerSymbol.Style.CIRCLE, Color.BLUE, 4)));
+      mMapView.getGraphicsOverlays().add(mLoadedPointsGraphicsOverlay);
+      mPointLoader = new PointLoader(mLoadedPointsGraphicsOverlay, SpatialReferences.getWgs84(), POINT_BATCH_SIZE,
+          new PointLoader.Listener() {
+            @Override public void onProgress(long pointCount) {
+              setTitle(getString(R.string.points_loading, pointCount));
+            }
+
+            @Override public void onComplete(long pointCount, Exception error) {
+              setTitle(R.string.app_name);
+              if (error != null) {
+                String message = "Error loading points: " + error.getMessage();
+                Log.e(TAG, message);
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+                return;
+              }
+              Log.i(TAG, mPointLoader.metrics());
+              Toast.makeText(MainActivity.this, getString(R.string.points_loaded, pointCount), Toast.LENGTH_LONG)
+                  .show();
+            }
+          });
+    } else {
+      // stop any load still running, its points are replaced by the new load
+      mPointLoader.cancel();
+    }
+    mPointLoader.load(file);
+  }
+
   /**
    * Create a heart-shape geometry with Bezier and elliptic arc segments from a given point and
    * side length.
@@ -241,6 +314,9 @@ public class MainActivity extends AppCompatActivity {
   @Override
   protected void onDestroy() {
     super.onDestroy();
+    if (mPointLoader != null) {
+      mPointLoader.shutdown();
+    }
     mMapView.dispose();
   }
 }
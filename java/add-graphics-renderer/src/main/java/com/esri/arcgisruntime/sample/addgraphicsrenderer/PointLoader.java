@@ -0,0 +1,278 @@
+/* Copyright 2016 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.addgraphicsrenderer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.geometry.SpatialReference;
+import com.esri.arcgisruntime.mapping.view.Graphic;
+import com.esri.arcgisruntime.mapping.view.GraphicsOverlay;
+
+/**
+ * Loads large numbers of point graphics from a file into a graphics overlay.
+ *
+ * Coordinates are streamed from the file into primitive buffers, so only one batch of points is held at a time. Each
+ * full batch is turned into graphics without symbols, which are drawn with the overlay's renderer so all of them share
+ * its single symbol, and the batch is added to the overlay with one addAll call. Reading, parsing and adding the
+ * graphics all happen on a background thread.
+ *
+ * Files ending in .geojson or .json are read as GeoJSON, taking the coordinates of each Point geometry. Other
+ * geometries, including MultiPoints, are skipped and counted in the metrics. Other files are read as CSV with x and y
+ * in the first two columns, skipping lines which don't start with two numbers, such as a header.
+ */
+final class PointLoader {
+
+  /**
+   * Receives the progress of a load on the UI thread.
+   */
+  interface Listener {
+
+    void onProgress(long pointCount);
+
+    /**
+     * @param pointCount number of points added to the overlay
+     * @param error the load failed with, or null if it succeeded
+     */
+    void onComplete(long pointCount, Exception error);
+  }
+
+  private final GraphicsOverlay mGraphicsOverlay;
+  private final SpatialReference mSpatialReference;
+  private final double[] mXs;
+  private final double[] mYs;
+  private final Listener mListener;
+  private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+  private int mBufferedCount;
+  private volatile long mPointCount;
+  private volatile long mSkippedCount;
+  private volatile long mElapsedNanos;
+  private volatile long mPeakHeapBytes;
+  private volatile boolean mCancelled;
+  private volatile boolean mShutdown;
+
+  /**
+   * @param graphicsOverlay to add the points to, with a renderer to draw them
+   * @param spatialReference of the coordinates in the files
+   * @param batchSize number of points added to the overlay at a time
+   * @param listener to receive the progress of loads
+   */
+  PointLoader(GraphicsOverlay graphicsOverlay, SpatialReference spatialReference, int batchSize, Listener listener) {
+    mGraphicsOverlay = graphicsOverlay;
+    mSpatialReference = spatialReference;
+    mXs = new double[batchSize];
+    mYs = new double[batchSize];
+    mListener = listener;
+  }
+
+  /**
+   * Loads the points in a file on a background thread, replacing the graphics in the overlay once any load already
+   * started has finished.
+   */
+  void load(File file) {
+    mExecutor.execute(() -> {
+      long start = System.nanoTime();
+      mGraphicsOverlay.getGraphics().clear();
+      mCancelled = false;
+      mPointCount = 0;
+      mSkippedCount = 0;
+      mPeakHeapBytes = 0;
+      mBufferedCount = 0;
+      Exception error = null;
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+          StandardCharsets.UTF_8), 64 * 1024)) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".geojson") || name.endsWith(".json")) {
+          readGeoJson(reader);
+        } else {
+          readCsv(reader);
+        }
+        flush();
+      } catch (IOException | RuntimeException e) {
+        error = e;
+      }
+      mElapsedNanos = System.nanoTime() - start;
+      if (mShutdown) {
+        return;
+      }
+      long pointCount = mPointCount;
+      Exception loadError = error;
+      mHandler.post(() -> mListener.onComplete(pointCount, loadError));
+    });
+  }
+
+  /**
+   * Stops the current load after the batch being added. Points already added stay in the overlay.
+   */
+  void cancel() {
+    mCancelled = true;
+  }
+
+  /**
+   * Cancels the current load and stops the loader's thread. The loader can't be used afterwards.
+   */
+  void shutdown() {
+    mShutdown = true;
+    mCancelled = true;
+    mExecutor.shutdown();
+  }
+
+  /**
+   * @return a summary of the last load's rate, the geometries it skipped and the peak Java heap used while loading
+   */
+  String metrics() {
+    double seconds = mElapsedNanos / 1e9;
+    return String.format(Locale.US, "Points loaded: %d in %.2f s, %.0f points/s, geometries skipped: %d, "
+            + "peak heap: %.1f MB", mPointCount, seconds, seconds > 0 ? mPointCount / seconds : 0, mSkippedCount,
+        mPeakHeapBytes / (1024.0 * 1024.0));
+  }
+
+  private void readCsv(BufferedReader reader) throws IOException {
+    String line;
+    while (!mCancelled && (line = reader.readLine()) != null) {
+      int comma = line.indexOf(',');
+      if (comma < 0) {
+        continue;
+      }
+      int end = line.indexOf(',', comma + 1);
+      try {
+        double x = Double.parseDouble(line.substring(0, comma).trim());
+        double y = Double.parseDouble(line.substring(comma + 1, end < 0 ? line.length() : end).trim());
+        add(x, y);
+      } catch (NumberFormatException e) {
+        // not a row of coordinates, such as a header
+      }
+    }
+  }
+
+  /**
+   * Scans the GeoJSON text for "coordinates" members holding a single position, without building the document.
+   */
+  private void readGeoJson(BufferedReader reader) throws IOException {
+    String key = "\"coordinates\"";
+    int matched = 0;
+    int c;
+    while (!mCancelled && (c = reader.read()) != -1) {
+      matched = c == key.charAt(matched) ? matched + 1 : (c == key.charAt(0) ? 1 : 0);
+      if (matched < key.length()) {
+        continue;
+      }
+      matched = 0;
+      // expect a position array, [x, y, ...]
+      c = skipWhitespace(reader);
+      if (c != ':') {
+        continue;
+      }
+      c = skipWhitespace(reader);
+      if (c != '[') {
+        continue;
+      }
+      StringBuilder number = new StringBuilder();
+      c = skipWhitespace(reader);
+      // positions nested deeper belong to multipoints, lines and polygons, which are skipped
+      if (c == '[') {
+        mSkippedCount++;
+        continue;
+      }
+      c = readNumber(reader, c, number);
+      if (number.length() == 0) {
+        continue;
+      }
+      double x = Double.parseDouble(number.toString());
+      if (c != ',') {
+        skipWhitespace(reader);
+      }
+      number.setLength(0);
+      readNumber(reader, skipWhitespace(reader), number);
+      if (number.length() > 0) {
+        add(x, Double.parseDouble(number.toString()));
+      }
+    }
+  }
+
+  private static int skipWhitespace(Reader reader) throws IOException {
+    int c;
+    do {
+      c = reader.read();
+    } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+    return c;
+  }
+
+  /**
+   * Appends the number starting with the character c to the builder.
+   *
+   * @return the character after the number
+   */
+  private static int readNumber(Reader reader, int c, StringBuilder number) throws IOException {
+    while ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+      number.append((char) c);
+      c = reader.read();
+    }
+    return c;
+  }
+
+  private void add(double x, double y) {
+    mXs[mBufferedCount] = x;
+    mYs[mBufferedCount] = y;
+    mBufferedCount++;
+    if (mBufferedCount == mXs.length) {
+      flush();
+    }
+  }
+
+  /**
+   * Adds the buffered points to the overlay as one batch of graphics.
+   */
+  private void flush() {
+    if (mCancelled) {
+      // the overlay may already have been disposed by a shutdown
+      mBufferedCount = 0;
+      return;
+    }
+    if (mBufferedCount == 0) {
+      return;
+    }
+    List<Graphic> graphics = new ArrayList<>(mBufferedCount);
+    for (int i = 0; i < mBufferedCount; i++) {
+      graphics.add(new Graphic(new Point(mXs[i], mYs[i], mSpatialReference)));
+    }
+    mGraphicsOverlay.getGraphics().addAll(graphics);
+    mPointCount += mBufferedCount;
+    mBufferedCount = 0;
+
+    Runtime runtime = Runtime.getRuntime();
+    mPeakHeapBytes = Math.max(mPeakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+    long pointCount = mPointCount;
+    mHandler.post(() -> mListener.onProgress(pointCount));
+  }
+}
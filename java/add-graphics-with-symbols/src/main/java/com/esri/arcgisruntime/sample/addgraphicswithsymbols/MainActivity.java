@@ -16,6 +16,8 @@
 
 package com.esri.arcgisruntime.sample.addgraphicswithsymbols;
 
+import java.util.Arrays;
+
 import android.graphics.Color;
 import android.os.Bundle;
 
@@ -110,11 +112,8 @@ public class MainActivity extends AppCompatActivity {
     Graphic buoyGraphic2 = new Graphic(buoy2Loc, buoyMarker);
     Graphic buoyGraphic3 = new Graphic(buoy3Loc, buoyMarker);
     Graphic buoyGraphic4 = new Graphic(buoy4Loc, buoyMarker);
-    //add the graphics to the graphics overlay
-    graphicOverlay.getGraphics().add(buoyGraphic1);
-    graphicOverlay.getGraphics().add(buoyGraphic2);
-    graphicOverlay.getGraphics().add(buoyGraphic3);
-    graphicOverlay.getGraphics().add(buoyGraphic4);
+    //add the graphics to the graphics overlay in one call
+    graphicOverlay.getGraphics().addAll(Arrays.asList(buoyGraphic1, buoyGraphic2, buoyGraphic3, buoyGraphic4));
   }
 
   private void addText(GraphicsOverlay graphicOverlay) {
@@ -133,8 +132,7 @@ public class MainActivity extends AppCompatActivity {
     Graphic bassRockGraphic = new Graphic(bassLocation, bassRockSymbol);
     Graphic craigleithGraphic = new Graphic(craigleithLocation, craigleithSymbol);
     //add the text to the graphics overlay
-    graphicOverlay.getGraphics().add(bassRockGraphic);
-    graphicOverlay.getGraphics().add(craigleithGraphic);
+    graphicOverlay.getGraphics().addAll(Arrays.asList(bassRockGraphic, craigleithGraphic));
   }
 
   private void addBoatTrip(GraphicsOverlay graphicOverlay) {
@@ -0,0 +1,169 @@
+/* Copyright 2018 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.animate3dgraphic;
+
+import android.view.Choreographer;
+
+/**
+ * Drives an animation from the display's frame clock instead of a timer thread. On every vsync the playhead is
+ * advanced by the time elapsed since the previous frame, so a late frame simply moves the playhead further rather
+ * than queuing up extra ticks. The playhead is a fractional key frame position, leaving it to the listener to
+ * interpolate between key frames.
+ * <p>
+ * Must be created and used on a thread with a Looper, usually the UI thread, which is also the thread the listener is
+ * called on.
+ */
+class AnimationScheduler implements Choreographer.FrameCallback {
+
+  private final Choreographer mChoreographer = Choreographer.getInstance();
+  private final long mVsyncPeriodNanos;
+  private final FrameListener mListener;
+
+  private double mKeyFramesPerSecond = 1;
+  private int mLength;
+  private double mPosition;
+  private boolean mRunning;
+  private long mLastFrameTimeNanos;
+
+  private long mFrameCount;
+  private long mDroppedFrameCount;
+  private long mTotalJitterNanos;
+
+  /**
+   * @param refreshRate of the display the animation is shown on, in frames per second
+   * @param listener    called with the playhead position on every frame
+   */
+  AnimationScheduler(float refreshRate, FrameListener listener) {
+    mVsyncPeriodNanos = (long) (1e9 / refreshRate);
+    mListener = listener;
+  }
+
+  /**
+   * Sets the number of key frames in the animation. The playhead wraps back to the start when it reaches the end.
+   *
+   * @param length number of key frames, or 0 to never wrap
+   */
+  void setLength(int length) {
+    mLength = length;
+    mPosition = wrap(mPosition);
+  }
+
+  /**
+   * @param keyFramesPerSecond playback rate of the animation
+   */
+  void setRate(double keyFramesPerSecond) {
+    mKeyFramesPerSecond = keyFramesPerSecond;
+  }
+
+  /**
+   * Moves the playhead to the given key frame position. Takes effect from the next frame.
+   */
+  void seek(double position) {
+    mPosition = wrap(position);
+  }
+
+  double getPosition() {
+    return mPosition;
+  }
+
+  boolean isRunning() {
+    return mRunning;
+  }
+
+  /**
+   * Starts posting frame callbacks from the current playhead position.
+   */
+  void start() {
+    if (mRunning) {
+      return;
+    }
+    mRunning = true;
+    mLastFrameTimeNanos = 0;
+    mChoreographer.postFrameCallback(this);
+  }
+
+  /**
+   * Stops the animation, leaving the playhead where it is.
+   */
+  void stop() {
+    mRunning = false;
+    mChoreographer.removeFrameCallback(this);
+  }
+
+  @Override
+  public void doFrame(long frameTimeNanos) {
+    if (!mRunning) {
+      return;
+    }
+    if (mLastFrameTimeNanos != 0) {
+      long elapsedNanos = frameTimeNanos - mLastFrameTimeNanos;
+      // any whole vsync periods beyond the first are frames which were never drawn
+      long missedVsyncs = (elapsedNanos + mVsyncPeriodNanos / 2) / mVsyncPeriodNanos - 1;
+      if (missedVsyncs > 0) {
+        mDroppedFrameCount += missedVsyncs;
+      }
+      mTotalJitterNanos += Math.abs(elapsedNanos - (missedVsyncs + 1) * mVsyncPeriodNanos);
+      mFrameCount++;
+      // advance by elapsed time, so late frames are coalesced into a single bigger step
+      mPosition = wrap(mPosition + elapsedNanos * mKeyFramesPerSecond / 1e9);
+    }
+    mLastFrameTimeNanos = frameTimeNanos;
+    mListener.onFrame(mPosition);
+    if (mRunning) {
+      mChoreographer.postFrameCallback(this);
+    }
+  }
+
+  private double wrap(double position) {
+    if (mLength <= 0) {
+      return position;
+    }
+    position %= mLength;
+    return position < 0 ? position + mLength : position;
+  }
+
+  /**
+   * @return number of frames rendered since the scheduler was created
+   */
+  long getFrameCount() {
+    return mFrameCount;
+  }
+
+  /**
+   * @return number of vsyncs which passed without a frame being rendered
+   */
+  long getDroppedFrameCount() {
+    return mDroppedFrameCount;
+  }
+
+  /**
+   * @return mean deviation of the frame intervals from a whole number of vsync periods, in milliseconds
+   */
+  double getMeanJitterMillis() {
+    return mFrameCount == 0 ? 0 : mTotalJitterNanos / (mFrameCount * 1e6);
+  }
+
+  /**
+   * Receives the playhead position once per displayed frame.
+   */
+  interface FrameListener {
+    /**
+     * @param position fractional key frame position of the playhead
+     */
+    void onFrame(double position);
+  }
+}
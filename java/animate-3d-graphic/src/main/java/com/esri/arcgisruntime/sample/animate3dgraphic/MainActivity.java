@@ -16,19 +16,15 @@
 
 package com.esri.arcgisruntime.sample.animate3dgraphic;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import android.content.res.AssetManager;
 import android.graphics.Color;
@@ -72,9 +68,20 @@ public class MainActivity extends AppCompatActivity {
 
   private static final String TAG = MainActivity.class.getSimpleName();
 
-  private List<Map<String, Object>> mMissionData;
-  private Timer mTimer;
-  private int mKeyFrame;
+  // key frames within these tolerances of the interpolated path are dropped, and plane updates smaller than them are
+  // skipped
+  private static final double POSITION_TOLERANCE_METERS = 0.5;
+  private static final double ANGLE_TOLERANCE_DEGREES = 0.5;
+
+  private final ExecutorService mMissionLoader = Executors.newSingleThreadExecutor();
+  private MissionData mMissionData;
+  private MissionInterpolator mMissionInterpolator;
+  private AnimationScheduler mAnimationScheduler;
+  private final MissionInterpolator.Pose mPose = new MissionInterpolator.Pose();
+  private final MissionInterpolator.Pose mLastPose = new MissionInterpolator.Pose();
+  private boolean mHasLastPose;
+  private long mUpdateCount;
+  private long mAnimationStartNanos;
 
   private TextView mCurrAltitude;
   private TextView mCurrHeading;
@@ -166,6 +173,10 @@ public class MainActivity extends AppCompatActivity {
       mSceneView.setCameraController(mOrbitCameraController);
     });
 
+    // drive the animation from the display's frame clock, interpolating between key frames
+    mAnimationScheduler = new AnimationScheduler(getWindowManager().getDefaultDisplay().getRefreshRate(),
+        this::animate);
+
     // get references to and wire up UI elements
     createUiElements();
   }
@@ -191,7 +202,10 @@ public class MainActivity extends AppCompatActivity {
     mMissionProgressSeekBar = findViewById(R.id.missionProgressSeekBar);
     mMissionProgressSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
       @Override public void onProgressChanged(SeekBar seekBar, int i, boolean b) {
-        mKeyFrame = i;
+        // only move the animation when the user drags the seek bar, not when the animation updates it
+        if (b) {
+          mAnimationScheduler.seek(i);
+        }
       }
 
       @Override public void onStartTrackingTouch(SeekBar seekBar) {
@@ -281,17 +295,35 @@ public class MainActivity extends AppCompatActivity {
 
     stopAnimation();
 
-    // clear previous mission data
-    mMissionData = new ArrayList<>();
+    // load and simplify the mission data off the UI thread
+    mMissionLoader.execute(() -> {
+      MissionData missionData = getMissionData(mission);
+      if (missionData == null) {
+        return;
+      }
+      long start = System.nanoTime();
+      MissionInterpolator missionInterpolator = new MissionInterpolator(missionData, POSITION_TOLERANCE_METERS,
+          ANGLE_TOLERANCE_DEGREES);
+      Log.i(TAG, String.format("Simplified %s from %d to %d key frames in %.1f ms", mission, missionData.size(),
+          missionInterpolator.getKeyFrameCount(), (System.nanoTime() - start) / 1e6));
+      runOnUiThread(() -> showMission(missionData, missionInterpolator));
+    });
+  }
 
-    // get mission data
-    mMissionData = getMissionData(mission);
+  /**
+   * Show the route of the loaded mission and start animating it.
+   */
+  private void showMission(MissionData missionData, MissionInterpolator missionInterpolator) {
+    mMissionData = missionData;
+    mMissionInterpolator = missionInterpolator;
+    mHasLastPose = false;
     mMissionProgressSeekBar.setMax(mMissionData.size());
+    mAnimationScheduler.setLength(mMissionData.size());
 
     // draw mission route on mini map
     PointCollection points = new PointCollection(SpatialReferences.getWgs84());
-    for (Map<String, Object> ordinates : mMissionData) {
-      points.add((Point) ordinates.get("POSITION"));
+    for (int i = 0; i < mMissionData.size(); i++) {
+      points.add(mMissionData.getX(i), mMissionData.getY(i), mMissionData.getZ(i));
     }
     Polyline route = new Polyline(points);
     mRouteGraphic.setGeometry(route);
@@ -304,34 +336,30 @@ public class MainActivity extends AppCompatActivity {
   }
 
   /**
-   * Loads the mission data from a .csv file into memory.
+   * Loads the mission data from a .csv file. The first time a mission, or a changed version of it, is loaded it is
+   * converted to a packed binary file in the cache directory, which is then memory-mapped so key frames are only read
+   * as they are animated.
    *
    * @param mission name of the .csv file containing the mission data
-   * @return ordered list of mapped key value pairs representing coordinates and rotation parameters for each step of
-   * the mission
+   * @return packed coordinates and rotation parameters for each step of the mission, or null if the mission couldn't
+   * be read
    */
-  private List<Map<String, Object>> getMissionData(String mission) {
-    List<Map<String, Object>> missionList = new ArrayList<>();
-
-    // open a file reader to the mission file that automatically closes after read
-    try (BufferedReader missionFile = new BufferedReader(new InputStreamReader(getAssets().open(mission)))) {
-      String line;
-      while ((line = missionFile.readLine()) != null) {
-        String[] l = line.split(",");
-        Map<String, Object> ordinates = new HashMap<>();
-        ordinates.put("POSITION",
-            new Point(Float.valueOf(l[0]), Float.valueOf(l[1]), Float.valueOf(l[2]), SpatialReferences.getWgs84()));
-        ordinates.put("HEADING", Float.valueOf(l[3]));
-        ordinates.put("PITCH", Float.valueOf(l[4]));
-        ordinates.put("ROLL", Float.valueOf(l[5]));
-        missionList.add(ordinates);
-      }
+  private MissionData getMissionData(String mission) {
+    Runtime runtime = Runtime.getRuntime();
+    long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+    long start = System.nanoTime();
+    try {
+      MissionData missionData = MissionData.open(() -> getAssets().open(mission), getCacheDir(), mission);
+      long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+      Log.i(TAG, String.format("Loaded %d key frames from %s in %.1f ms, heap delta %d KB", missionData.size(),
+          mission, (System.nanoTime() - start) / 1e6, (heapAfter - heapBefore) / 1024));
+      return missionData;
     } catch (IOException e) {
       String error = "Error reading mission file: " + e.getMessage();
-      Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+      runOnUiThread(() -> Toast.makeText(this, error, Toast.LENGTH_LONG).show());
       Log.e(TAG, error);
+      return null;
     }
-    return missionList;
   }
 
   /**
@@ -341,78 +369,82 @@ public class MainActivity extends AppCompatActivity {
    */
   private void startAnimation(int speed) {
 
-    // stop the current animation timer
-    stopAnimation();
-
-    // calculate period from speed
+    // calculate period in milliseconds from speed and play back at the matching key frame rate
     int period = mSpeedSeekBar.getMax() - speed + 10;
-
-    // create a timer to animate the tank
-    mTimer = new Timer();
-    mTimer.scheduleAtFixedRate(new TimerTask() {
-      @Override public void run() {
-        if (mMissionData == null) {
-          return;
-        }
-        // reset key frame at end of mission
-        if (mKeyFrame >= mMissionData.size()) {
-          mKeyFrame = 0;
-        }
-        // animate the given key frame
-        animate(mKeyFrame);
-        mKeyFrame++;
-      }
-    }, 0, period);
+    mAnimationScheduler.setRate(1000.0 / period);
+    if (!mAnimationScheduler.isRunning()) {
+      mUpdateCount = 0;
+      mAnimationStartNanos = System.nanoTime();
+    }
+    mAnimationScheduler.start();
   }
 
   /**
-   * Stop the animation by canceling the timer.
+   * Stop the animation by removing the frame callback.
    */
   private void stopAnimation() {
-    if (mTimer != null) {
-      mTimer.cancel();
+    if (mAnimationScheduler.isRunning()) {
+      mAnimationScheduler.stop();
+      Log.i(TAG, String.format("Animation frames: %d, dropped: %d, mean jitter: %.2f ms",
+          mAnimationScheduler.getFrameCount(), mAnimationScheduler.getDroppedFrameCount(),
+          mAnimationScheduler.getMeanJitterMillis()));
+      double seconds = (System.nanoTime() - mAnimationStartNanos) / 1e9;
+      Log.i(TAG, String.format("Plane updates: %d, %.1f per second", mUpdateCount, mUpdateCount / seconds));
     }
   }
 
   /**
-   * Animates a single keyframe corresponding to the index in the mission data profile. Updates the position and
-   * rotation of the 2D/3D plane graphic and sets the camera viewpoint.
+   * Animates the mission at a fractional key frame position in the mission data profile. Updates the position and
+   * rotation of the 2D/3D plane graphic, interpolated along the simplified mission, and sets the camera viewpoint.
+   * Frames where the plane moves less than the tolerances since the last update are skipped.
    *
-   * @param keyFrame index in mission data to show
+   * @param keyFramePosition fractional index in mission data to show
    */
-  private void animate(int keyFrame) {
+  private void animate(double keyFramePosition) {
+    if (mMissionInterpolator == null || mMissionData.size() == 0) {
+      return;
+    }
 
-    // get the next position from the mission data
-    Map<String, Object> datum = mMissionData.get(keyFrame);
-    Point position = (Point) datum.get("POSITION");
+    // update mission progress seek bar
+    mMissionProgressSeekBar.setProgress((int) keyFramePosition);
 
-    // update the HUD
-    runOnUiThread(() -> {
-      mCurrAltitude.setText(String.format("%.2f", position.getZ()));
-      mCurrHeading.setText(String.format("%.2f", datum.get("HEADING")));
-      mCurrPitch.setText(String.format("%.2f", datum.get("PITCH")));
-      mCurrRoll.setText(String.format("%.2f", datum.get("ROLL")));
-    });
+    // interpolate the position and orientation from the mission data
+    mMissionInterpolator.interpolate(keyFramePosition, mPose);
+    if (mHasLastPose && MissionInterpolator.distance(mPose, mLastPose) < POSITION_TOLERANCE_METERS
+        && mMissionInterpolator.angle(mPose, mLastPose) < ANGLE_TOLERANCE_DEGREES) {
+      return;
+    }
+    mLastPose.set(mPose);
+    mHasLastPose = true;
+    mUpdateCount++;
 
-    // update mission progress seek bar
-    mMissionProgressSeekBar.setProgress(mKeyFrame);
+    Point position = new Point(mPose.x, mPose.y, mPose.z, SpatialReferences.getWgs84());
+    float heading = mPose.heading;
+    float pitch = mPose.pitch;
+    float roll = mPose.roll;
+
+    // update the HUD
+    mCurrAltitude.setText(String.format("%.2f", position.getZ()));
+    mCurrHeading.setText(String.format("%.2f", heading));
+    mCurrPitch.setText(String.format("%.2f", pitch));
+    mCurrRoll.setText(String.format("%.2f", roll));
 
     // update plane's position and orientation
     mPlane3D.setGeometry(position);
-    mPlane3D.getAttributes().put("HEADING", datum.get("HEADING"));
-    mPlane3D.getAttributes().put("PITCH", datum.get("PITCH"));
-    mPlane3D.getAttributes().put("ROLL", datum.get("ROLL"));
+    mPlane3D.getAttributes().put("HEADING", heading);
+    mPlane3D.getAttributes().put("PITCH", pitch);
+    mPlane3D.getAttributes().put("ROLL", roll);
 
     // update mini map plane's position and rotation
     mPlane2D.setGeometry(position);
     if (mFollowFreeCamButton.isSelected()) {
-      if (mMapView == null || position == null) {
+      if (mMapView == null) {
         return;
       }
       // rotate the map view in the direction of motion to make graphic always point up
-      mMapView.setViewpoint(new Viewpoint(position, mMapView.getMapScale(), 360 + (float) datum.get("HEADING")));
+      mMapView.setViewpoint(new Viewpoint(position, mMapView.getMapScale(), 360 + heading));
     } else {
-      mPlane2D.getAttributes().put("ANGLE", 360 + (float) datum.get("HEADING") - mMapView.getMapRotation());
+      mPlane2D.getAttributes().put("ANGLE", 360 + heading - mMapView.getMapRotation());
     }
   }
 
@@ -462,7 +494,7 @@ public class MainActivity extends AppCompatActivity {
   protected void onPause() {
     mSceneView.pause();
     mMapView.pause();
-    mTimer.cancel();
+    stopAnimation();
     super.onPause();
   }
 
@@ -476,6 +508,7 @@ public class MainActivity extends AppCompatActivity {
   @Override
   protected void onDestroy() {
     super.onDestroy();
+    mMissionLoader.shutdownNow();
     mSceneView.resume();
     mMapView.dispose();
   }
@@ -0,0 +1,243 @@
+/* Copyright 2018 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.animate3dgraphic;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Packed, column oriented store of a mission's key frames. The mission .csv is converted once into a binary file in
+ * the cache directory holding x, y and z as doubles followed by heading, pitch and roll as floats. The binary file is
+ * named by the .csv's length and CRC32, so a changed .csv is converted again. The binary file is memory-mapped, so
+ * key frames are read on demand straight from the mapped columns without boxing or per-frame maps.
+ */
+class MissionData {
+
+  // "MSN1" in ASCII, identifies the binary mission format
+  private static final int MAGIC = 0x4D534E31;
+  // magic and frame count
+  private static final int HEADER_SIZE = 2 * Integer.BYTES;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final String BINARY_EXTENSION = ".bin";
+
+  private final int mSize;
+  private final DoubleBuffer mX;
+  private final DoubleBuffer mY;
+  private final DoubleBuffer mZ;
+  private final FloatBuffer mHeading;
+  private final FloatBuffer mPitch;
+  private final FloatBuffer mRoll;
+
+  private MissionData(MappedByteBuffer buffer) throws IOException {
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a binary mission file");
+    }
+    mSize = buffer.getInt(Integer.BYTES);
+    int offset = HEADER_SIZE;
+    mX = doubleColumn(buffer, offset, mSize);
+    offset += mSize * Double.BYTES;
+    mY = doubleColumn(buffer, offset, mSize);
+    offset += mSize * Double.BYTES;
+    mZ = doubleColumn(buffer, offset, mSize);
+    offset += mSize * Double.BYTES;
+    mHeading = floatColumn(buffer, offset, mSize);
+    offset += mSize * Float.BYTES;
+    mPitch = floatColumn(buffer, offset, mSize);
+    offset += mSize * Float.BYTES;
+    mRoll = floatColumn(buffer, offset, mSize);
+  }
+
+  /**
+   * Opens the mission's binary file in the given directory, converting the .csv into it first if there is no binary
+   * file for the .csv's current contents. Binary files converted from earlier contents of the .csv are deleted.
+   *
+   * @param csv       supplies the mission .csv
+   * @param directory holding the binary mission files, usually the cache directory
+   * @param mission   name of the mission, which the binary file is named after
+   * @return the memory-mapped mission data
+   * @throws IOException if the .csv can't be read or the binary file can't be written or mapped
+   */
+  static MissionData open(CsvSource csv, File directory, String mission) throws IOException {
+    // checksumming the .csv is much cheaper than parsing it, and catches a .csv replaced with one of the same size
+    CRC32 crc = new CRC32();
+    long length = 0;
+    byte[] bytes = new byte[8192];
+    try (InputStream in = csv.open()) {
+      int read;
+      while ((read = in.read(bytes)) != -1) {
+        crc.update(bytes, 0, read);
+        length += read;
+      }
+    }
+    String prefix = mission + "-";
+    File binaryFile = new File(directory,
+        prefix + Long.toHexString(length) + "-" + Long.toHexString(crc.getValue()) + BINARY_EXTENSION);
+    if (!binaryFile.exists()) {
+      File[] staleFiles = directory.listFiles((dir, name) -> name.endsWith(BINARY_EXTENSION)
+          && (name.startsWith(prefix) || name.equals(mission + BINARY_EXTENSION)));
+      if (staleFiles != null) {
+        for (File staleFile : staleFiles) {
+          staleFile.delete();
+        }
+      }
+      try (InputStream in = csv.open()) {
+        writeBinary(in, binaryFile);
+      }
+    }
+    try (RandomAccessFile file = new RandomAccessFile(binaryFile, "r");
+        FileChannel channel = file.getChannel()) {
+      // the mapping stays valid after the channel is closed
+      return new MissionData(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Parses the mission .csv (x, y, z, heading, pitch, roll per line) into primitive columns and writes them to the
+   * binary file. The file is written to a temporary file first and renamed, so a partially written file is never
+   * mapped.
+   */
+  private static void writeBinary(InputStream csv, File binaryFile) throws IOException {
+    double[] x = new double[INITIAL_CAPACITY];
+    double[] y = new double[INITIAL_CAPACITY];
+    double[] z = new double[INITIAL_CAPACITY];
+    float[] heading = new float[INITIAL_CAPACITY];
+    float[] pitch = new float[INITIAL_CAPACITY];
+    float[] roll = new float[INITIAL_CAPACITY];
+    int size = 0;
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(csv));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      if (size == x.length) {
+        int capacity = size * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        heading = Arrays.copyOf(heading, capacity);
+        pitch = Arrays.copyOf(pitch, capacity);
+        roll = Arrays.copyOf(roll, capacity);
+      }
+      // walk the comma separated fields without splitting the line into an array
+      int start = 0;
+      int end = line.indexOf(',', start);
+      x[size] = Double.parseDouble(line.substring(start, end));
+      start = end + 1;
+      end = line.indexOf(',', start);
+      y[size] = Double.parseDouble(line.substring(start, end));
+      start = end + 1;
+      end = line.indexOf(',', start);
+      z[size] = Double.parseDouble(line.substring(start, end));
+      start = end + 1;
+      end = line.indexOf(',', start);
+      heading[size] = Float.parseFloat(line.substring(start, end));
+      start = end + 1;
+      end = line.indexOf(',', start);
+      pitch[size] = Float.parseFloat(line.substring(start, end));
+      start = end + 1;
+      end = line.indexOf(',', start);
+      roll[size] = Float.parseFloat(end < 0 ? line.substring(start) : line.substring(start, end));
+      size++;
+    }
+
+    int length = HEADER_SIZE + size * (3 * Double.BYTES + 3 * Float.BYTES);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(size);
+    buffer.asDoubleBuffer().put(x, 0, size).put(y, 0, size).put(z, 0, size);
+    buffer.position(HEADER_SIZE + size * 3 * Double.BYTES);
+    buffer.asFloatBuffer().put(heading, 0, size).put(pitch, 0, size).put(roll, 0, size);
+    buffer.rewind();
+
+    File tempFile = new File(binaryFile.getPath() + ".tmp");
+    try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+        FileChannel channel = file.getChannel()) {
+      channel.truncate(0);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+    }
+    if (!tempFile.renameTo(binaryFile)) {
+      throw new IOException("Unable to create " + binaryFile.getName());
+    }
+  }
+
+  private static DoubleBuffer doubleColumn(ByteBuffer buffer, int offset, int size) {
+    ByteBuffer column = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    column.position(offset).limit(offset + size * Double.BYTES);
+    return column.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+  }
+
+  private static FloatBuffer floatColumn(ByteBuffer buffer, int offset, int size) {
+    ByteBuffer column = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    column.position(offset).limit(offset + size * Float.BYTES);
+    return column.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+  }
+
+  /**
+   * @return number of key frames in the mission
+   */
+  int size() {
+    return mSize;
+  }
+
+  double getX(int keyFrame) {
+    return mX.get(keyFrame);
+  }
+
+  double getY(int keyFrame) {
+    return mY.get(keyFrame);
+  }
+
+  double getZ(int keyFrame) {
+    return mZ.get(keyFrame);
+  }
+
+  float getHeading(int keyFrame) {
+    return mHeading.get(keyFrame);
+  }
+
+  float getPitch(int keyFrame) {
+    return mPitch.get(keyFrame);
+  }
+
+  float getRoll(int keyFrame) {
+    return mRoll.get(keyFrame);
+  }
+
+  /**
+   * Supplies the mission .csv, e.g. from the app's assets.
+   */
+  interface CsvSource {
+    InputStream open() throws IOException;
+  }
+}
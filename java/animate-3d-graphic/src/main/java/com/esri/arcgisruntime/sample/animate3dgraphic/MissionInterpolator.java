@@ -0,0 +1,332 @@
+/* Copyright 2018 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.animate3dgraphic;
+
+import java.util.Arrays;
+
+/**
+ * Produces the plane's pose at any fractional key frame position of a mission. Positions are interpolated along the
+ * great circle between key frames (with altitude interpolated linearly) and orientations are interpolated with
+ * quaternion slerp, so heading wrap-around and combined pitch/roll changes are handled smoothly.
+ * <p>
+ * Key frames which can be reproduced by interpolating their neighbours within the given tolerances are dropped up
+ * front with a Douglas-Peucker style simplification, leaving only the key frames which define the shape of the
+ * mission. Not thread safe, intended to be used from the UI thread.
+ */
+class MissionInterpolator {
+
+  private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+  private final MissionData mMissionData;
+  private final double mPositionTolerance;
+  private final double mAngleTolerance;
+  private final int[] mKeyFrames;
+  private int mSegment;
+
+  // scratch storage for the quaternions being interpolated, avoids allocating per frame
+  private final double[] mFromQuaternion = new double[4];
+  private final double[] mToQuaternion = new double[4];
+  private final double[] mQuaternion = new double[4];
+
+  /**
+   * @param missionData       mission to interpolate
+   * @param positionTolerance maximum distance in meters an interpolated position may deviate from a dropped key frame
+   * @param angleTolerance    maximum rotation in degrees an interpolated orientation may deviate from a dropped key
+   *                          frame
+   */
+  MissionInterpolator(MissionData missionData, double positionTolerance, double angleTolerance) {
+    mMissionData = missionData;
+    mPositionTolerance = positionTolerance;
+    mAngleTolerance = angleTolerance;
+    mKeyFrames = simplify();
+  }
+
+  /**
+   * @return number of key frames left after simplification
+   */
+  int getKeyFrameCount() {
+    return mKeyFrames.length;
+  }
+
+  /**
+   * Calculates the pose at the given position in the mission.
+   *
+   * @param keyFramePosition fractional index into the original mission key frames
+   * @param pose             receives the interpolated pose
+   */
+  void interpolate(double keyFramePosition, Pose pose) {
+    int last = mKeyFrames.length - 1;
+    if (last <= 0 || keyFramePosition <= mKeyFrames[0]) {
+      readKeyFrame(mKeyFrames[0], pose);
+      return;
+    }
+    if (keyFramePosition >= mKeyFrames[last]) {
+      readKeyFrame(mKeyFrames[last], pose);
+      return;
+    }
+    // playback is mostly sequential, so check the current and next segment before searching
+    if (!inSegment(mSegment, keyFramePosition)) {
+      if (mSegment + 1 < last && inSegment(mSegment + 1, keyFramePosition)) {
+        mSegment++;
+      } else {
+        int index = Arrays.binarySearch(mKeyFrames, (int) keyFramePosition);
+        mSegment = index >= 0 ? index : -index - 2;
+      }
+    }
+    int from = mKeyFrames[mSegment];
+    int to = mKeyFrames[mSegment + 1];
+    interpolate(from, to, (keyFramePosition - from) / (to - from), pose);
+  }
+
+  private boolean inSegment(int segment, double keyFramePosition) {
+    return mKeyFrames[segment] <= keyFramePosition && keyFramePosition < mKeyFrames[segment + 1];
+  }
+
+  /**
+   * Interpolates between two key frames of the original mission.
+   */
+  private void interpolate(int from, int to, double fraction, Pose pose) {
+    // position along the great circle between the two key frames
+    double lambda1 = Math.toRadians(mMissionData.getX(from));
+    double phi1 = Math.toRadians(mMissionData.getY(from));
+    double lambda2 = Math.toRadians(mMissionData.getX(to));
+    double phi2 = Math.toRadians(mMissionData.getY(to));
+    double x1 = Math.cos(phi1) * Math.cos(lambda1);
+    double y1 = Math.cos(phi1) * Math.sin(lambda1);
+    double z1 = Math.sin(phi1);
+    double x2 = Math.cos(phi2) * Math.cos(lambda2);
+    double y2 = Math.cos(phi2) * Math.sin(lambda2);
+    double z2 = Math.sin(phi2);
+    double dot = Math.max(-1, Math.min(1, x1 * x2 + y1 * y2 + z1 * z2));
+    double omega = Math.acos(dot);
+    double a;
+    double b;
+    if (omega < 1e-12) {
+      a = 1 - fraction;
+      b = fraction;
+    } else {
+      double sinOmega = Math.sin(omega);
+      a = Math.sin((1 - fraction) * omega) / sinOmega;
+      b = Math.sin(fraction * omega) / sinOmega;
+    }
+    double x = a * x1 + b * x2;
+    double y = a * y1 + b * y2;
+    double z = a * z1 + b * z2;
+    pose.x = Math.toDegrees(Math.atan2(y, x));
+    pose.y = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+    pose.z = mMissionData.getZ(from) + (mMissionData.getZ(to) - mMissionData.getZ(from)) * fraction;
+
+    // orientation by spherical linear interpolation of the rotations
+    toQuaternion(mMissionData.getHeading(from), mMissionData.getPitch(from), mMissionData.getRoll(from),
+        mFromQuaternion);
+    toQuaternion(mMissionData.getHeading(to), mMissionData.getPitch(to), mMissionData.getRoll(to), mToQuaternion);
+    slerp(mFromQuaternion, mToQuaternion, fraction, mQuaternion);
+    fromQuaternion(mQuaternion, pose);
+  }
+
+  private void readKeyFrame(int keyFrame, Pose pose) {
+    pose.x = mMissionData.getX(keyFrame);
+    pose.y = mMissionData.getY(keyFrame);
+    pose.z = mMissionData.getZ(keyFrame);
+    pose.heading = mMissionData.getHeading(keyFrame);
+    pose.pitch = mMissionData.getPitch(keyFrame);
+    pose.roll = mMissionData.getRoll(keyFrame);
+  }
+
+  /**
+   * Douglas-Peucker style simplification of the key frames. A run of key frames is replaced by its end points when
+   * interpolating between the end points reproduces every key frame in the run within the tolerances, otherwise the
+   * run is split at the key frame with the largest error.
+   *
+   * @return sorted indices of the key frames to keep
+   */
+  private int[] simplify() {
+    int size = mMissionData.size();
+    if (size <= 2) {
+      int[] keyFrames = new int[size];
+      for (int i = 0; i < size; i++) {
+        keyFrames[i] = i;
+      }
+      return keyFrames;
+    }
+    boolean[] keep = new boolean[size];
+    keep[0] = true;
+    keep[size - 1] = true;
+    int kept = 2;
+
+    // explicit stack of runs to check, avoids recursion depth problems on long missions
+    int[] stack = new int[64];
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = size - 1;
+    Pose expected = new Pose();
+    Pose actual = new Pose();
+    while (top > 0) {
+      int to = stack[--top];
+      int from = stack[--top];
+      double maxError = 1;
+      int split = -1;
+      for (int k = from + 1; k < to; k++) {
+        interpolate(from, to, (double) (k - from) / (to - from), expected);
+        readKeyFrame(k, actual);
+        double error = Math.max(distance(expected, actual) / mPositionTolerance,
+            angle(expected, actual) / mAngleTolerance);
+        if (error > maxError) {
+          maxError = error;
+          split = k;
+        }
+      }
+      if (split >= 0) {
+        keep[split] = true;
+        kept++;
+        if (top + 4 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = from;
+        stack[top++] = split;
+        stack[top++] = split;
+        stack[top++] = to;
+      }
+    }
+
+    int[] keyFrames = new int[kept];
+    for (int i = 0, j = 0; i < size; i++) {
+      if (keep[i]) {
+        keyFrames[j++] = i;
+      }
+    }
+    return keyFrames;
+  }
+
+  /**
+   * @return distance between the positions of two poses in meters
+   */
+  static double distance(Pose a, Pose b) {
+    double phi1 = Math.toRadians(a.y);
+    double phi2 = Math.toRadians(b.y);
+    double sinHalfDeltaPhi = Math.sin((phi2 - phi1) / 2);
+    double sinHalfDeltaLambda = Math.sin(Math.toRadians(b.x - a.x) / 2);
+    double h = sinHalfDeltaPhi * sinHalfDeltaPhi
+        + Math.cos(phi1) * Math.cos(phi2) * sinHalfDeltaLambda * sinHalfDeltaLambda;
+    double surface = 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(h)));
+    double height = b.z - a.z;
+    return Math.sqrt(surface * surface + height * height);
+  }
+
+  /**
+   * @return angle of the rotation between the orientations of two poses in degrees
+   */
+  double angle(Pose a, Pose b) {
+    toQuaternion(a.heading, a.pitch, a.roll, mFromQuaternion);
+    toQuaternion(b.heading, b.pitch, b.roll, mToQuaternion);
+    double dot = Math.abs(dot(mFromQuaternion, mToQuaternion));
+    return Math.toDegrees(2 * Math.acos(Math.min(1, dot)));
+  }
+
+  /**
+   * Converts heading, pitch and roll in degrees to a unit quaternion (w, x, y, z), applying heading about the z axis,
+   * then pitch about the x axis, then roll about the y axis.
+   */
+  private static void toQuaternion(double heading, double pitch, double roll, double[] q) {
+    double h = Math.toRadians(heading) / 2;
+    double p = Math.toRadians(pitch) / 2;
+    double r = Math.toRadians(roll) / 2;
+    double ch = Math.cos(h);
+    double sh = Math.sin(h);
+    double cp = Math.cos(p);
+    double sp = Math.sin(p);
+    double cr = Math.cos(r);
+    double sr = Math.sin(r);
+    // (ch, 0, 0, sh) * (cp, sp, 0, 0) * (cr, 0, sr, 0)
+    q[0] = ch * cp * cr - sh * sp * sr;
+    q[1] = ch * sp * cr - sh * cp * sr;
+    q[2] = ch * cp * sr + sh * sp * cr;
+    q[3] = sh * cp * cr + ch * sp * sr;
+  }
+
+  /**
+   * Converts a unit quaternion back to heading, pitch and roll in degrees, the inverse of
+   * {@link #toQuaternion(double, double, double, double[])}.
+   */
+  private static void fromQuaternion(double[] q, Pose pose) {
+    double w = q[0];
+    double x = q[1];
+    double y = q[2];
+    double z = q[3];
+    double m01 = 2 * (x * y - w * z);
+    double m11 = 1 - 2 * (x * x + z * z);
+    double m20 = 2 * (x * z - w * y);
+    double m21 = 2 * (y * z + w * x);
+    double m22 = 1 - 2 * (x * x + y * y);
+    pose.heading = (float) Math.toDegrees(Math.atan2(-m01, m11));
+    pose.pitch = (float) Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, m21))));
+    pose.roll = (float) Math.toDegrees(Math.atan2(-m20, m22));
+  }
+
+  private static void slerp(double[] from, double[] to, double fraction, double[] out) {
+    double dot = dot(from, to);
+    // take the shorter way round
+    double sign = dot < 0 ? -1 : 1;
+    dot *= sign;
+    double a;
+    double b;
+    if (dot > 0.9995) {
+      // nearly parallel, fall back to normalized linear interpolation
+      a = 1 - fraction;
+      b = fraction * sign;
+    } else {
+      double theta = Math.acos(dot);
+      double sinTheta = Math.sin(theta);
+      a = Math.sin((1 - fraction) * theta) / sinTheta;
+      b = Math.sin(fraction * theta) / sinTheta * sign;
+    }
+    double length = 0;
+    for (int i = 0; i < 4; i++) {
+      out[i] = a * from[i] + b * to[i];
+      length += out[i] * out[i];
+    }
+    length = Math.sqrt(length);
+    for (int i = 0; i < 4; i++) {
+      out[i] /= length;
+    }
+  }
+
+  private static double dot(double[] a, double[] b) {
+    return a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3];
+  }
+
+  /**
+   * Mutable position and orientation of the plane, reused between frames.
+   */
+  static class Pose {
+    double x;
+    double y;
+    double z;
+    float heading;
+    float pitch;
+    float roll;
+
+    void set(Pose pose) {
+      x = pose.x;
+      y = pose.y;
+      z = pose.z;
+      heading = pose.heading;
+      pitch = pose.pitch;
+      roll = pose.roll;
+    }
+  }
+}
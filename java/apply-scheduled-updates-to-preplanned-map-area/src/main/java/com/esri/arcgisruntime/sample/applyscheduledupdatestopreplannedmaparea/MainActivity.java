@@ -16,7 +16,9 @@
 
 package com.esri.arcgisruntime.sample.applyscheduledupdatestopreplannedmaparea;
 
+import android.net.ConnectivityManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.TextView;
@@ -24,34 +26,26 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import com.esri.arcgisruntime.concurrent.Job;
-import com.esri.arcgisruntime.concurrent.ListenableFuture;
 import com.esri.arcgisruntime.loadable.LoadStatus;
 import com.esri.arcgisruntime.mapping.ArcGISMap;
 import com.esri.arcgisruntime.mapping.MobileMapPackage;
+import com.esri.arcgisruntime.mapping.Viewpoint;
 import com.esri.arcgisruntime.mapping.view.MapView;
-import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapSyncJob;
-import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapSyncParameters;
-import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapSyncResult;
-import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapSyncTask;
 import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapUpdatesInfo;
 import com.esri.arcgisruntime.tasks.offlinemap.OfflineUpdateAvailability;
-import com.esri.arcgisruntime.tasks.offlinemap.PreplannedScheduledUpdatesOption;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.concurrent.ExecutionException;
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements ScheduledUpdateEngine.Listener {
 
   private static final String TAG = MainActivity.class.getSimpleName();
+  // time between checks for scheduled updates
+  private static final long UPDATE_CHECK_INTERVAL_MS = 15 * 60 * 1000;
+  // time the map must be left alone for before updates are applied in the background
+  private static final long IDLE_DELAY_MS = 30 * 1000;
 
   private MapView mMapView;
-  private File mCopyOfMmpk;
+  private ScheduledUpdateEngine mScheduledUpdateEngine;
   private TextView mUpdateAvailableTextView;
   private TextView mUpdateSizeTextView;
   private Button mApplyScheduledUpdatesButton;
@@ -74,137 +68,71 @@ public class MainActivity extends AppCompatActivity {
 
     // this is the original mmpk, not updated by the scheduled update
     File originalMmpk = new File(getExternalFilesDir(null).getPath());
-    // copy of the mmpk file which will have the update applied to it
-    mCopyOfMmpk = new File(getCacheDir().getPath());
-
-    try {
-      // copy the original mmpk into the cache, overwriting any copy of the mmpk already there
-      copyDirectory(originalMmpk, mCopyOfMmpk);
-    } catch (IOException e) {
-      Log.e(TAG, "Error copying MMPK file: " + e.getMessage());
-    }
+    // the engine displays a copy of the original mmpk, and applies updates to snapshots of the copy in the background
+    mScheduledUpdateEngine = new ScheduledUpdateEngine(originalMmpk, new File(getFilesDir(), "mmpk"),
+        UPDATE_CHECK_INTERVAL_MS, IDLE_DELAY_MS, getSystemService(ConnectivityManager.class), this);
+    // don't apply updates while the user is moving the map
+    mMapView.addNavigationChangedListener(navigationChangedEvent -> mScheduledUpdateEngine.onUserInteraction());
+    // when the button is clicked, apply the updates without waiting for the device to be idle
+    mApplyScheduledUpdatesButton.setOnClickListener(v -> {
+      mApplyScheduledUpdatesButton.setEnabled(false);
+      mScheduledUpdateEngine.applyNow();
+    });
+    mScheduledUpdateEngine.start();
+  }
 
-    // load the offline map as a mobile map package
-    mMobileMapPackage = new MobileMapPackage(mCopyOfMmpk.getPath());
-    mMobileMapPackage.loadAsync();
-    mMobileMapPackage.addDoneLoadingListener(() -> {
-      if (mMobileMapPackage.getLoadStatus() == LoadStatus.LOADED && !mMobileMapPackage.getMaps().isEmpty()) {
+  /**
+   * Displays the map from a newly copied or updated mobile map package. The previous map stays on display until the
+   * new package has loaded, so swapping to an updated package doesn't interrupt the user.
+   */
+  @Override
+  public void onPackageReady(File directory) {
+    long start = SystemClock.elapsedRealtime();
+    MobileMapPackage mobileMapPackage = new MobileMapPackage(directory.getPath());
+    mUpdatedMobileMapPackage = mobileMapPackage;
+    mobileMapPackage.loadAsync();
+    mobileMapPackage.addDoneLoadingListener(() -> {
+      if (mobileMapPackage.getLoadStatus() == LoadStatus.LOADED && !mobileMapPackage.getMaps().isEmpty()) {
+        // keep showing the same area when swapping to the updated map
+        Viewpoint viewpoint = mMapView.getMap() != null ?
+            mMapView.getCurrentViewpoint(Viewpoint.Type.CENTER_AND_SCALE) : null;
         // add the map from the mobile map package to the map view
-        ArcGISMap offlineMap = mMobileMapPackage.getMaps().get(0);
+        ArcGISMap offlineMap = mobileMapPackage.getMaps().get(0);
         mMapView.setMap(offlineMap);
-        // create an offline map sync task with the preplanned area
-        OfflineMapSyncTask offlineMapSyncTask = new OfflineMapSyncTask(offlineMap);
-        // check for updates to the offline map
-        ListenableFuture<OfflineMapUpdatesInfo> offlineMapUpdatesInfoFuture = offlineMapSyncTask.checkForUpdatesAsync();
-        offlineMapUpdatesInfoFuture.addDoneListener(() -> {
-          try {
-            // get and check the results
-            OfflineMapUpdatesInfo offlineMapUpdatesInfo = offlineMapUpdatesInfoFuture.get();
-            // update the UI with update info
-            setUiUpdateInfo(offlineMapUpdatesInfo);
-            // if there are available updates
-            if (offlineMapUpdatesInfo.getDownloadAvailability() == OfflineUpdateAvailability.AVAILABLE) {
-              mUpdateAvailableTextView
-                  .setText(getString(R.string.update_status, OfflineUpdateAvailability.AVAILABLE.name()));
-              // check and show update size
-              mUpdateSizeTextView
-                  .setText(getString(R.string.update_size, offlineMapUpdatesInfo.getScheduledUpdatesDownloadSize()));
-              // enable the 'Apply Scheduled Updates' button
-              mApplyScheduledUpdatesButton.setEnabled(true);
-              // when the button is clicked, synchronize the mobile map package
-              mApplyScheduledUpdatesButton.setOnClickListener(v -> {
-                // create default parameters for the sync task
-                ListenableFuture<OfflineMapSyncParameters> offlineMapSyncParametersFuture = offlineMapSyncTask
-                    .createDefaultOfflineMapSyncParametersAsync();
-                offlineMapSyncParametersFuture.addDoneListener(() -> {
-                  try {
-                    // get the offline sync parameters from the listenable future
-                    OfflineMapSyncParameters offlineMapSyncParameters = offlineMapSyncParametersFuture.get();
-                    // set the parameters to download all updates for the mobile map packages
-                    offlineMapSyncParameters
-                        .setPreplannedScheduledUpdatesOption(PreplannedScheduledUpdatesOption.DOWNLOAD_ALL_UPDATES);
-                    // create a sync job using the parameters
-                    OfflineMapSyncJob offlineMapSyncJob = offlineMapSyncTask.syncOfflineMap(offlineMapSyncParameters);
-                    // start the job and get the results
-                    offlineMapSyncJob.start();
-                    offlineMapSyncJob.addJobDoneListener(() -> {
-                      if (offlineMapSyncJob.getStatus() == Job.Status.SUCCEEDED) {
-                        OfflineMapSyncResult offlineMapSyncResult = offlineMapSyncJob.getResult();
-                        // if mobile map package reopen is required
-                        if (offlineMapSyncResult.isMobileMapPackageReopenRequired()) {
-                          // release the mobile map package maps from the map view
-                          mMapView.setMap(null);
-                          // close the old mobile map package
-                          mMobileMapPackage.close();
-                          // create a new instance of the now updated mobile map package
-                          mUpdatedMobileMapPackage = new MobileMapPackage(mCopyOfMmpk.getPath());
-                          mUpdatedMobileMapPackage.loadAsync();
-                          // wait for the new instance of the mobile map package to load
-                          mUpdatedMobileMapPackage.addDoneLoadingListener(() -> {
-                            if (mUpdatedMobileMapPackage
-                                .getLoadStatus() == LoadStatus.LOADED && !mUpdatedMobileMapPackage
-                                .getMaps().isEmpty()) {
-                              // add the map from the mobile map package to the map view
-                              mMapView.setMap(mUpdatedMobileMapPackage.getMaps().get(0));
-                            } else {
-                              String error =
-                                  "Failed to load mobile map package: " + mMobileMapPackage.getLoadError().getMessage();
-                              Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-                              Log.e(TAG, error);
-                            }
-                          });
-                        }
-                        // check if the map is up to date against the server. This is not required, since in most cases,
-                        // you'll be confident the update was applied because the offline map sync job completed successfully
-                        // check for updates to the offline map
-                        ListenableFuture<OfflineMapUpdatesInfo> offlineMapUpdatesInfoAfterUpdateFuture = offlineMapSyncTask
-                            .checkForUpdatesAsync();
-                        offlineMapUpdatesInfoAfterUpdateFuture.addDoneListener(() -> {
-                          try {
-                            // get the update results
-                            OfflineMapUpdatesInfo offlineMapUpdatesInfoAfterUpdate = offlineMapUpdatesInfoAfterUpdateFuture.get();
-                            // update the UI with update info
-                            setUiUpdateInfo(offlineMapUpdatesInfoAfterUpdate);
-                            Log.d(TAG, "Update: " + offlineMapUpdatesInfoAfterUpdate.getDownloadAvailability().name());
-                          } catch (Exception e) {
-                            String error = "Error checking for Scheduled Updates Availability: " + e.getMessage();
-                            Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-                            Log.e(TAG, error);
-                          }
-                        });
-                      } else {
-                        String error = "Error syncing the offline map: " + offlineMapSyncJob.getError().getMessage();
-                        Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-                        Log.e(TAG, error);
-                      }
-                      // disable the 'Apply Scheduled Updates' button
-                      mApplyScheduledUpdatesButton.setEnabled(false);
-                    });
-                  } catch (InterruptedException | ExecutionException ex) {
-                    String error = "Error creating DefaultOfflineMapSyncParameters" + ex.getMessage();
-                    Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-                    Log.e(TAG, error);
-                  }
-                });
-              });
-            } else {
-              mUpdateAvailableTextView
-                  .setText(getString(R.string.update_status, offlineMapUpdatesInfo.getDownloadAvailability()));
-            }
-          } catch (Exception e) {
-            String error = "Error checking for Scheduled Updates Availability: " + e.getMessage();
-            Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-            Log.e(TAG, error);
-          }
-        });
+        if (viewpoint != null) {
+          mMapView.setViewpoint(viewpoint);
+        }
+        // close the old mobile map package, so its files can be deleted
+        if (mMobileMapPackage != null) {
+          mMobileMapPackage.close();
+        }
+        mMobileMapPackage = mobileMapPackage;
+        mUpdatedMobileMapPackage = null;
+        Log.i(TAG, "Swapped to mobile map package " + directory.getName() + " in "
+            + (SystemClock.elapsedRealtime() - start) + " ms. " + mScheduledUpdateEngine.metrics());
+        // check the new package for updates
+        mScheduledUpdateEngine.setLiveMap(offlineMap);
       } else {
-        String error = "Failed to load the mobile map package: " + mMobileMapPackage.getLoadError().getMessage();
+        String error = "Failed to load the mobile map package: " + mobileMapPackage.getLoadError().getMessage();
         Toast.makeText(this, error, Toast.LENGTH_LONG).show();
         Log.e(TAG, error);
       }
     });
   }
 
+  @Override
+  public void onUpdatesChecked(OfflineMapUpdatesInfo offlineMapUpdatesInfo) {
+    // update the UI with update info
+    setUiUpdateInfo(offlineMapUpdatesInfo);
+    Log.d(TAG, "Update: " + offlineMapUpdatesInfo.getDownloadAvailability().name());
+  }
+
+  @Override
+  public void onError(String error) {
+    Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+    Log.e(TAG, error);
+  }
+
   /**
    * Update UI with update status.
    */
@@ -212,13 +140,13 @@ public class MainActivity extends AppCompatActivity {
     // set the download availability status to the text view
     mUpdateAvailableTextView
         .setText(getString(R.string.update_status, offlineMapUpdatesInfo.getDownloadAvailability().name()));
-    if (offlineMapUpdatesInfo.getDownloadAvailability() != OfflineUpdateAvailability.NONE) {
+    if (offlineMapUpdatesInfo.getDownloadAvailability() == OfflineUpdateAvailability.AVAILABLE) {
       // server still reports that updates are available
       mUpdateSizeTextView
           .setText(getString(R.string.update_size, offlineMapUpdatesInfo.getScheduledUpdatesDownloadSize()));
       mApplyScheduledUpdatesButton.setEnabled(true);
     } else {
-      // server reports that no updates are available
+      // server reports that no updates are available, or can't tell
       mUpdateSizeTextView.setText(getString(R.string.update_size_na));
       mApplyScheduledUpdatesButton.setEnabled(false);
     }
@@ -239,36 +167,7 @@ public class MainActivity extends AppCompatActivity {
   @Override
   protected void onDestroy() {
     super.onDestroy();
+    mScheduledUpdateEngine.shutdown();
     mMapView.dispose();
   }
-
-  /**
-   * Copy the given directory to the target directory.
-   *
-   * @param sourceLocation from which to copy
-   * @param targetLocation to copy to
-   * @throws IOException
-   */
-  private static void copyDirectory(File sourceLocation, File targetLocation) throws IOException {
-    if (sourceLocation.isDirectory()) {
-      if (!targetLocation.exists()) {
-        targetLocation.mkdirs();
-      }
-      String[] children = sourceLocation.list();
-      for (String child : children) {
-        copyDirectory(new File(sourceLocation, child), new File(
-            targetLocation, child));
-      }
-    } else {
-      try (InputStream in = new FileInputStream(sourceLocation)) {
-        try (OutputStream out = new FileOutputStream(targetLocation)) {
-          byte[] buf = new byte[1024];
-          int len;
-          while ((len = in.read(buf)) > 0) {
-            out.write(buf, 0, len);
-          }
-        }
-      }
-    }
-  }
 }
@@ -0,0 +1,487 @@
+/*
+ *  Copyright 2019 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.esri.arcgisruntime.sample.applyscheduledupdatestopreplannedmaparea;
+
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import com.esri.arcgisruntime.concurrent.Job;
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.loadable.LoadStatus;
+import com.esri.arcgisruntime.mapping.ArcGISMap;
+import com.esri.arcgisruntime.mapping.MobileMapPackage;
+import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapSyncJob;
+import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapSyncParameters;
+import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapSyncTask;
+import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapUpdatesInfo;
+import com.esri.arcgisruntime.tasks.offlinemap.OfflineUpdateAvailability;
+import com.esri.arcgisruntime.tasks.offlinemap.PreplannedScheduledUpdatesOption;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a preplanned mobile map package up to date in the background, without taking the live package out of use.
+ *
+ * The engine checks the live package for scheduled updates periodically. When updates are available, it waits until
+ * the user hasn't moved the map for a while and the network isn't metered, then applies them to a snapshot of the live
+ * package rather than to the package being displayed. Tile packages aren't changed by scheduled updates, so the
+ * snapshot hard links them rather than copying them, and only copies the files which updates write to, such as the
+ * mobile geodatabases. Once the updates have been applied the snapshot is renamed into place, so a partly updated
+ * snapshot never looks like a package, and the listener is given the new package to swap the map over to. The old
+ * package is deleted once the map has moved off it.
+ *
+ * Methods must be called on the UI thread, and the listener is called on the UI thread.
+ */
+final class ScheduledUpdateEngine {
+
+  /**
+   * Receives the state of the package on the UI thread.
+   */
+  interface Listener {
+
+    /**
+     * A package is ready to be displayed, either the first copy of the original package or an updated snapshot. Once
+     * its map is displayed and the previous package is closed, pass the map to
+     * {@link ScheduledUpdateEngine#setLiveMap(ArcGISMap)}.
+     *
+     * @param directory holding the package
+     */
+    void onPackageReady(File directory);
+
+    /**
+     * @param updatesInfo the result of checking the live package for updates
+     */
+    void onUpdatesChecked(OfflineMapUpdatesInfo updatesInfo);
+
+    /**
+     * @param message describing why checking for or applying updates failed
+     */
+    void onError(String message);
+  }
+
+  private static final String TAG = ScheduledUpdateEngine.class.getSimpleName();
+  // files which scheduled updates don't change, and so can be shared between snapshots
+  private static final String[] LINKED_EXTENSIONS = { ".tpk", ".tpkx", ".vtpk" };
+  private static final String PACKAGE_DIRECTORY_PREFIX = "package-";
+  private static final String STAGING_DIRECTORY_PREFIX = ".staging-";
+
+  private final File mOriginal;
+  private final File mRoot;
+  private final long mCheckIntervalMs;
+  private final long mIdleDelayMs;
+  private final ConnectivityManager mConnectivityManager;
+  private final Listener mListener;
+  private final ExecutorService mFileExecutor = Executors.newSingleThreadExecutor();
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+  private final Runnable mCheck = this::check;
+  private final Runnable mApplyWhenIdle = this::applyWhenIdle;
+
+  private int mGeneration;
+  private File mLiveDirectory;
+  private File mPreviousDirectory;
+  private ArcGISMap mLiveMap;
+  private boolean mUpdatesAvailable;
+  private boolean mUpdating;
+  // set once the engine is shut down, after which listeners and posted work do nothing and no more file work is queued
+  private boolean mShutdown;
+  private long mLastInteraction = SystemClock.elapsedRealtime();
+  // objects that implement Loadable must be class fields to prevent being garbage collected before loading
+  private MobileMapPackage mStagingPackage;
+  private OfflineMapSyncJob mSyncJob;
+
+  // metrics of the last snapshot and update
+  private long mBytesLinked;
+  private long mBytesCopied;
+  private int mFilesLinked;
+  private int mFilesCopied;
+  private long mSnapshotMillis;
+  private long mSyncMillis;
+
+  /**
+   * @param original directory holding the package, which is left unchanged
+   * @param root directory to keep the live package and its snapshots in
+   * @param checkIntervalMs time between checks for updates
+   * @param idleDelayMs time the map must be left alone for before updates are applied
+   * @param connectivityManager used to wait for an unmetered network before applying updates
+   * @param listener to receive the state of the package
+   */
+  ScheduledUpdateEngine(File original, File root, long checkIntervalMs, long idleDelayMs,
+      ConnectivityManager connectivityManager, Listener listener) {
+    mOriginal = original;
+    mRoot = root;
+    mCheckIntervalMs = checkIntervalMs;
+    mIdleDelayMs = idleDelayMs;
+    mConnectivityManager = connectivityManager;
+    mListener = listener;
+  }
+
+  /**
+   * Replaces any packages kept from before with a fresh copy of the original package, and passes it to the listener.
+   */
+  void start() {
+    executeOnFileThread(() -> {
+      try {
+        deleteDirectory(mRoot);
+        File staging = new File(mRoot, STAGING_DIRECTORY_PREFIX + 0);
+        snapshot(mOriginal, staging);
+        File directory = new File(mRoot, PACKAGE_DIRECTORY_PREFIX + 0);
+        rename(staging, directory);
+        mHandler.post(() -> {
+          if (mShutdown) {
+            return;
+          }
+          mLiveDirectory = directory;
+          mListener.onPackageReady(directory);
+        });
+      } catch (IOException e) {
+        mHandler.post(() -> fail("Error copying mobile map package: " + e.getMessage()));
+      }
+    });
+  }
+
+  /**
+   * Sets the map of the package given to the listener, which is now displayed, and checks it for updates. The package
+   * it replaced is deleted.
+   */
+  void setLiveMap(ArcGISMap map) {
+    mLiveMap = map;
+    File previous = mPreviousDirectory;
+    mPreviousDirectory = null;
+    if (previous != null) {
+      executeOnFileThread(() -> deleteDirectory(previous));
+    }
+    mHandler.removeCallbacks(mCheck);
+    check();
+  }
+
+  /**
+   * Delays applying updates until the map has been left alone for a while.
+   */
+  void onUserInteraction() {
+    mLastInteraction = SystemClock.elapsedRealtime();
+  }
+
+  /**
+   * Applies the available updates straight away, without waiting for the device to be idle.
+   */
+  void applyNow() {
+    if (mUpdatesAvailable) {
+      apply();
+    }
+  }
+
+  /**
+   * Stops checking for updates and cancels an update in progress. The packages stay on disk. Listeners and work
+   * posted before then are ignored, so no job is started and no file work is queued once shut down.
+   */
+  void shutdown() {
+    mShutdown = true;
+    mHandler.removeCallbacksAndMessages(null);
+    if (mSyncJob != null) {
+      mSyncJob.cancelAsync();
+    }
+    mFileExecutor.shutdown();
+  }
+
+  /**
+   * @return a summary of the last snapshot's linked and copied files and the time taken to apply the last update
+   */
+  String metrics() {
+    return String.format(Locale.US,
+        "Snapshot: linked %d files (%.1f MB), copied %d files (%.1f MB) in %d ms, updates applied in %d ms",
+        mFilesLinked, mBytesLinked / (1024.0 * 1024.0), mFilesCopied, mBytesCopied / (1024.0 * 1024.0),
+        mSnapshotMillis, mSyncMillis);
+  }
+
+  private void check() {
+    if (mShutdown || mLiveMap == null) {
+      return;
+    }
+    OfflineMapSyncTask offlineMapSyncTask = new OfflineMapSyncTask(mLiveMap);
+    ListenableFuture<OfflineMapUpdatesInfo> offlineMapUpdatesInfoFuture = offlineMapSyncTask.checkForUpdatesAsync();
+    offlineMapUpdatesInfoFuture.addDoneListener(() -> {
+      if (mShutdown) {
+        return;
+      }
+      try {
+        OfflineMapUpdatesInfo offlineMapUpdatesInfo = offlineMapUpdatesInfoFuture.get();
+        mUpdatesAvailable = offlineMapUpdatesInfo.getDownloadAvailability() == OfflineUpdateAvailability.AVAILABLE;
+        mListener.onUpdatesChecked(offlineMapUpdatesInfo);
+        applyWhenIdle();
+      } catch (Exception e) {
+        mListener.onError("Error checking for Scheduled Updates Availability: " + e.getMessage());
+      }
+    });
+    mHandler.postDelayed(mCheck, mCheckIntervalMs);
+  }
+
+  /**
+   * Applies the available updates if the device is idle, otherwise tries again after the idle delay.
+   */
+  private void applyWhenIdle() {
+    mHandler.removeCallbacks(mApplyWhenIdle);
+    if (mShutdown || !mUpdatesAvailable || mUpdating) {
+      return;
+    }
+    long idleMillis = SystemClock.elapsedRealtime() - mLastInteraction;
+    if (idleMillis >= mIdleDelayMs && !mConnectivityManager.isActiveNetworkMetered()) {
+      apply();
+    } else {
+      mHandler.postDelayed(mApplyWhenIdle, Math.max(mIdleDelayMs - idleMillis, mIdleDelayMs / 4));
+    }
+  }
+
+  /**
+   * Snapshots the live package, applies the updates to the snapshot and passes it to the listener.
+   */
+  private void apply() {
+    if (mShutdown || mUpdating || mLiveDirectory == null) {
+      return;
+    }
+    mUpdating = true;
+    mHandler.removeCallbacks(mApplyWhenIdle);
+    int generation = mGeneration + 1;
+    File live = mLiveDirectory;
+    File staging = new File(mRoot, STAGING_DIRECTORY_PREFIX + generation);
+    executeOnFileThread(() -> {
+      try {
+        snapshot(live, staging);
+        mHandler.post(() -> sync(staging, generation));
+      } catch (IOException e) {
+        deleteDirectory(staging);
+        mHandler.post(() -> fail("Error creating a snapshot of the mobile map package: " + e.getMessage()));
+      }
+    });
+  }
+
+  private void sync(File staging, int generation) {
+    if (mShutdown) {
+      // the snapshot is deleted the next time the engine is started
+      return;
+    }
+    long start = SystemClock.elapsedRealtime();
+    mStagingPackage = new MobileMapPackage(staging.getPath());
+    mStagingPackage.loadAsync();
+    mStagingPackage.addDoneLoadingListener(() -> {
+      if (mShutdown) {
+        closeStagingPackage();
+        return;
+      }
+      if (mStagingPackage.getLoadStatus() != LoadStatus.LOADED || mStagingPackage.getMaps().isEmpty()) {
+        discard(staging, "Failed to load the mobile map package snapshot: "
+            + (mStagingPackage.getLoadError() != null ? mStagingPackage.getLoadError().getMessage() : "no maps"));
+        return;
+      }
+      OfflineMapSyncTask offlineMapSyncTask = new OfflineMapSyncTask(mStagingPackage.getMaps().get(0));
+      ListenableFuture<OfflineMapSyncParameters> offlineMapSyncParametersFuture = offlineMapSyncTask
+          .createDefaultOfflineMapSyncParametersAsync();
+      offlineMapSyncParametersFuture.addDoneListener(() -> {
+        if (mShutdown) {
+          closeStagingPackage();
+          return;
+        }
+        OfflineMapSyncParameters offlineMapSyncParameters;
+        try {
+          offlineMapSyncParameters = offlineMapSyncParametersFuture.get();
+        } catch (Exception e) {
+          discard(staging, "Error creating DefaultOfflineMapSyncParameters: " + e.getMessage());
+          return;
+        }
+        // download and apply all the updates to the snapshot
+        offlineMapSyncParameters
+            .setPreplannedScheduledUpdatesOption(PreplannedScheduledUpdatesOption.DOWNLOAD_ALL_UPDATES);
+        mSyncJob = offlineMapSyncTask.syncOfflineMap(offlineMapSyncParameters);
+        mSyncJob.addJobDoneListener(() -> {
+          if (mShutdown) {
+            // the job was cancelled by shutdown()
+            mSyncJob = null;
+            closeStagingPackage();
+            return;
+          }
+          boolean succeeded = mSyncJob.getStatus() == Job.Status.SUCCEEDED;
+          String error = succeeded ? null : "Error syncing the offline map: "
+              + (mSyncJob.getError() != null ? mSyncJob.getError().getMessage() : "cancelled");
+          mSyncJob = null;
+          // the snapshot's files must be closed before it is renamed
+          closeStagingPackage();
+          if (!succeeded) {
+            discard(staging, error);
+            return;
+          }
+          mSyncMillis = SystemClock.elapsedRealtime() - start;
+          File directory = new File(mRoot, PACKAGE_DIRECTORY_PREFIX + generation);
+          executeOnFileThread(() -> {
+            try {
+              rename(staging, directory);
+              mHandler.post(() -> {
+                if (mShutdown) {
+                  return;
+                }
+                Log.i(TAG, metrics());
+                mGeneration = generation;
+                mPreviousDirectory = mLiveDirectory;
+                mLiveDirectory = directory;
+                mUpdatesAvailable = false;
+                mUpdating = false;
+                mListener.onPackageReady(directory);
+              });
+            } catch (IOException e) {
+              deleteDirectory(staging);
+              mHandler.post(() -> fail(e.getMessage()));
+            }
+          });
+        });
+        mSyncJob.start();
+      });
+    });
+  }
+
+  private void discard(File staging, String error) {
+    closeStagingPackage();
+    executeOnFileThread(() -> deleteDirectory(staging));
+    fail(error);
+  }
+
+  private void fail(String error) {
+    if (mShutdown) {
+      return;
+    }
+    mUpdating = false;
+    mListener.onError(error);
+  }
+
+  private void closeStagingPackage() {
+    if (mStagingPackage != null) {
+      mStagingPackage.close();
+      mStagingPackage = null;
+    }
+  }
+
+  /**
+   * Runs the task on the file thread, unless the engine has been shut down.
+   */
+  private void executeOnFileThread(Runnable task) {
+    if (!mShutdown) {
+      mFileExecutor.execute(task);
+    }
+  }
+
+  /**
+   * Recreates the source directory in the target directory, hard linking the files updates don't change and copying
+   * the rest. Files are copied if they can't be linked, such as when the directories are on different file systems.
+   * Runs on the file thread.
+   */
+  private void snapshot(File source, File target) throws IOException {
+    long start = SystemClock.elapsedRealtime();
+    mBytesLinked = 0;
+    mBytesCopied = 0;
+    mFilesLinked = 0;
+    mFilesCopied = 0;
+    deleteDirectory(target);
+    snapshotDirectory(source, target);
+    mSnapshotMillis = SystemClock.elapsedRealtime() - start;
+  }
+
+  private void snapshotDirectory(File source, File target) throws IOException {
+    if (!target.exists() && !target.mkdirs()) {
+      throw new IOException("Unable to create " + target);
+    }
+    File[] children = source.listFiles();
+    if (children == null) {
+      throw new IOException("Unable to list " + source);
+    }
+    for (File child : children) {
+      File targetChild = new File(target, child.getName());
+      if (child.equals(mRoot)) {
+        // never snapshot the snapshots
+        continue;
+      }
+      if (child.isDirectory()) {
+        snapshotDirectory(child, targetChild);
+      } else if (isLinked(child) && link(child, targetChild)) {
+        mFilesLinked++;
+        mBytesLinked += child.length();
+      } else {
+        copy(child, targetChild);
+        mFilesCopied++;
+        mBytesCopied += child.length();
+      }
+    }
+  }
+
+  private static boolean isLinked(File file) {
+    String name = file.getName().toLowerCase(Locale.ROOT);
+    for (String extension : LINKED_EXTENSIONS) {
+      if (name.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean link(File source, File target) {
+    try {
+      Os.link(source.getPath(), target.getPath());
+      return true;
+    } catch (ErrnoException e) {
+      Log.w(TAG, "Unable to link " + source + ", copying it instead: " + e.getMessage());
+      return false;
+    }
+  }
+
+  private static void copy(File source, File target) throws IOException {
+    try (FileChannel in = new FileInputStream(source).getChannel();
+         FileChannel out = new FileOutputStream(target).getChannel()) {
+      long size = in.size();
+      long position = 0;
+      while (position < size) {
+        position += in.transferTo(position, size - position, out);
+      }
+    }
+  }
+
+  private static void rename(File source, File target) throws IOException {
+    deleteDirectory(target);
+    try {
+      Os.rename(source.getPath(), target.getPath());
+    } catch (ErrnoException e) {
+      throw new IOException("Unable to move " + source + " to " + target + ": " + e.getMessage());
+    }
+  }
+
+  private static void deleteDirectory(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File subFile : files) {
+        deleteDirectory(subFile);
+      }
+    }
+    file.delete();
+  }
+}
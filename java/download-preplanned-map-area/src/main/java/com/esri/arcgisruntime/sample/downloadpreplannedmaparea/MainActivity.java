@@ -40,6 +40,7 @@ import com.esri.arcgisruntime.geometry.GeometryEngine;
 import com.esri.arcgisruntime.layers.Layer;
 import com.esri.arcgisruntime.loadable.LoadStatus;
 import com.esri.arcgisruntime.mapping.ArcGISMap;
+import com.esri.arcgisruntime.mapping.MobileMapPackage;
 import com.esri.arcgisruntime.mapping.Viewpoint;
 import com.esri.arcgisruntime.mapping.view.Graphic;
 import com.esri.arcgisruntime.mapping.view.GraphicsOverlay;
@@ -57,10 +58,16 @@ import com.esri.arcgisruntime.tasks.offlinemap.OfflineMapTask;
 import com.esri.arcgisruntime.tasks.offlinemap.PreplannedMapArea;
 import com.esri.arcgisruntime.tasks.offlinemap.PreplannedUpdateMode;
 
-public class MainActivity extends AppCompatActivity implements ProgressDialogFragment.OnProgressDialogDismissListener {
+public class MainActivity extends AppCompatActivity {
 
   private static final String TAG = MainActivity.class.getSimpleName();
 
+  // number of preplanned map areas downloaded at a time
+  private static final int MAX_CONCURRENT_DOWNLOADS = 2;
+  // areas the user downloads one at a time are downloaded before areas queued with download all
+  private static final int PRIORITY_SELECTED = 1;
+  private static final int PRIORITY_ALL = 0;
+
   private File mOfflineMapDirectory;
 
   private ListView mPreplannedAreasListView;
@@ -71,10 +78,11 @@ public class MainActivity extends AppCompatActivity implements ProgressDialogFra
   private ArrayAdapter<String> mDownloadedMapAreasAdapter;
   private final List<ArcGISMap> mDownloadedMapAreas = new ArrayList<>();
   private Button mDownloadButton;
+  private Button mDownloadAllButton;
 
   private PreplannedMapArea mSelectedPreplannedMapArea;
   private List<PreplannedMapArea> mPreplannedMapAreas;
-  private DownloadPreplannedOfflineMapJob mDownloadPreplannedOfflineMapJob;
+  private OfflineJobQueue mOfflineJobQueue;
   private MapView mMapView;
   private GraphicsOverlay mAreasOfInterestGraphicsOverlay;
   private OfflineMapTask mOfflineMapTask;
@@ -83,11 +91,9 @@ public class MainActivity extends AppCompatActivity implements ProgressDialogFra
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
     setContentView(R.layout.activity_main);
-    
-    // delete any previous instances of downloaded maps
-    deleteDirectory(getCacheDir());
 
-    // create up a temporary directory in the app's cache for saving downloaded preplanned maps
+    // create up a directory in the app's cache for saving downloaded preplanned maps, keeping any maps and
+    // interrupted downloads from earlier sessions
     mOfflineMapDirectory = new File(getCacheDir() + getString(R.string.preplanned_offline_map_dir));
     if (mOfflineMapDirectory.mkdirs()) {
       Log.i(TAG, "Created directory for offline map in " + mOfflineMapDirectory.getPath());
@@ -130,92 +136,200 @@ public class MainActivity extends AppCompatActivity implements ProgressDialogFra
 
     createDownloadAreasListView();
 
-    // create download button
+    // download the preplanned map areas in a queue which is saved as it changes, so downloads interrupted by the app
+    // being closed are resumed when it is next opened
+    mOfflineJobQueue = new OfflineJobQueue(mOfflineMapDirectory, MAX_CONCURRENT_DOWNLOADS,
+        this::createDownloadJob, new OfflineJobQueue.Listener() {
+          @Override public void onStateChanged(String key, OfflineJobQueue.State state, int progress) {
+            showDownloadState(key, state, progress);
+          }
+
+          @Override public void onSucceeded(String key, File directory, Job job) {
+            onDownloadSucceeded(key, directory, (DownloadPreplannedOfflineMapJob) job);
+          }
+
+          @Override public void onFailed(String key, Job job, Exception error) {
+            String message = "Download of " + titleOf(key) + " failed: " + error.getMessage();
+            Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+            Log.e(TAG, message);
+          }
+        });
+
+    // create download buttons
     mDownloadButton = findViewById(R.id.downloadButton);
     mDownloadButton.setEnabled(false);
     mDownloadButton.setOnClickListener(view -> downloadPreplannedArea());
+    mDownloadAllButton = findViewById(R.id.downloadAllButton);
+    mDownloadAllButton.setEnabled(false);
+    mDownloadAllButton.setOnClickListener(view -> downloadAllPreplannedAreas());
   }
 
   /**
-   * Download the selected preplanned map area from the list view to a temporary directory. The download job is tracked in another list view.
+   * Queue the selected preplanned map area from the list view to be downloaded ahead of any areas queued with download
+   * all. The download's progress is shown in the list view.
    */
   private void downloadPreplannedArea() {
     if (mSelectedPreplannedMapArea != null) {
-      // create default download parameters from the offline map task
-      ListenableFuture<DownloadPreplannedOfflineMapParameters> offlineMapParametersFuture = mOfflineMapTask
-          .createDefaultDownloadPreplannedOfflineMapParametersAsync(mSelectedPreplannedMapArea);
-      offlineMapParametersFuture.addDoneListener(() -> {
-        try {
-          // get the offline map parameters
-          DownloadPreplannedOfflineMapParameters offlineMapParameters = offlineMapParametersFuture.get();
-          // set the update mode to not receive updates
-          offlineMapParameters.setUpdateMode(PreplannedUpdateMode.NO_UPDATES);
-          // create a job to download the preplanned offline map to a temporary directory
-          mDownloadPreplannedOfflineMapJob = mOfflineMapTask.downloadPreplannedOfflineMap(offlineMapParameters,
-              mOfflineMapDirectory.getPath() + File.separator + mSelectedPreplannedMapArea.getPortalItem().getTitle());
-          // start the job
-          mDownloadPreplannedOfflineMapJob.start();
-
-          // show progress dialog for download, includes tracking progress
-          showProgressDialog();
-
-          // when the job finishes
-          mDownloadPreplannedOfflineMapJob.addJobDoneListener(() -> {
-            dismissDialog();
-            // if there's a result from the download preplanned offline map job
-            if (mDownloadPreplannedOfflineMapJob.getStatus() == Job.Status.SUCCEEDED) {
-              DownloadPreplannedOfflineMapResult downloadPreplannedOfflineMapResult = mDownloadPreplannedOfflineMapJob
-                  .getResult();
-              if (mDownloadPreplannedOfflineMapJob != null && !downloadPreplannedOfflineMapResult.hasErrors()) {
-                // get the offline map
-                ArcGISMap offlineMap = downloadPreplannedOfflineMapResult.getOfflineMap();
-                // add it to the map view
-                mMapView.setMap(offlineMap);
-                // add the map name to the list view of downloaded map areas
-                mDownloadedMapAreaNames.add(offlineMap.getItem().getTitle());
-                // select the downloaded map area
-                mDownloadedMapAreasListView.setItemChecked(mDownloadedMapAreaNames.size() - 1, true);
-                mDownloadedMapAreasAdapter.notifyDataSetChanged();
-                // de-select the area in the preplanned areas list view
-                mPreplannedAreasListView.clearChoices();
-                mPreplannedMapAreasAdapter.notifyDataSetChanged();
-                // add the offline map to a list of downloaded map areas
-                mDownloadedMapAreas.add(offlineMap);
-                // hide the area of interest graphics
-                mAreasOfInterestGraphicsOverlay.setVisible(false);
-                // disable the download button
-                mDownloadButton.setEnabled(false);
-              } else {
-                // collect the layer and table errors into a single alert message
-                StringBuilder stringBuilder = new StringBuilder("Errors: ");
-                Map<Layer, ArcGISRuntimeException> layerErrors = downloadPreplannedOfflineMapResult.getLayerErrors();
-                for (Map.Entry<Layer, ArcGISRuntimeException> layer : layerErrors.entrySet()) {
-                  stringBuilder.append("Layer: ").append(layer.getKey().getName()).append(". Exception: ")
-                      .append(layer.getValue().getMessage()).append(". ");
-                }
-                Map<FeatureTable, ArcGISRuntimeException> tableErrors = downloadPreplannedOfflineMapResult
-                    .getTableErrors();
-                for (Map.Entry<FeatureTable, ArcGISRuntimeException> table : tableErrors.entrySet()) {
-                  stringBuilder.append("Table: ").append(table.getKey().getTableName()).append(". Exception: ")
-                      .append(table.getValue().getMessage()).append(". ");
-                }
-                String error = "One or more errors occurred with the Offline Map Result: " + stringBuilder;
-                Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-                Log.e(TAG, error);
-              }
-            } else {
-              String error = "Job finished with an error: " + mDownloadPreplannedOfflineMapJob.getError();
-              Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-              Log.e(TAG, error);
-            }
-          });
-        } catch (InterruptedException | ExecutionException e) {
-          String error = "Failed to generate default parameters for the download job: " + e.getCause().getMessage();
-          Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+      mOfflineJobQueue.enqueue(keyOf(mSelectedPreplannedMapArea), PRIORITY_SELECTED);
+      mDownloadButton.setEnabled(false);
+    }
+  }
+
+  /**
+   * Queue all of the preplanned map areas which haven't been downloaded or queued already.
+   */
+  private void downloadAllPreplannedAreas() {
+    for (PreplannedMapArea preplannedMapArea : mPreplannedMapAreas) {
+      String key = keyOf(preplannedMapArea);
+      if (mOfflineJobQueue.getState(key) == null) {
+        mOfflineJobQueue.enqueue(key, PRIORITY_ALL);
+      }
+    }
+    mDownloadButton.setEnabled(false);
+  }
+
+  /**
+   * Creates a job to download the preplanned map area with the given key to the given directory.
+   */
+  private void createDownloadJob(String key, File directory, OfflineJobQueue.JobCallback callback) {
+    PreplannedMapArea preplannedMapArea = findPreplannedMapArea(key);
+    if (preplannedMapArea == null) {
+      callback.onJobCreated(null, new IllegalStateException("Preplanned map area " + key + " no longer exists"));
+      return;
+    }
+    // create default download parameters from the offline map task
+    ListenableFuture<DownloadPreplannedOfflineMapParameters> offlineMapParametersFuture = mOfflineMapTask
+        .createDefaultDownloadPreplannedOfflineMapParametersAsync(preplannedMapArea);
+    offlineMapParametersFuture.addDoneListener(() -> {
+      try {
+        // get the offline map parameters
+        DownloadPreplannedOfflineMapParameters offlineMapParameters = offlineMapParametersFuture.get();
+        // set the update mode to not receive updates
+        offlineMapParameters.setUpdateMode(PreplannedUpdateMode.NO_UPDATES);
+        // create a job to download the preplanned offline map to the area's directory
+        callback.onJobCreated(mOfflineMapTask.downloadPreplannedOfflineMap(offlineMapParameters, directory.getPath()),
+            null);
+      } catch (InterruptedException | ExecutionException e) {
+        callback.onJobCreated(null, new Exception(
+            "Failed to generate default parameters for the download job: " + e.getCause().getMessage(), e));
+      }
+    });
+  }
+
+  /**
+   * Adds a downloaded map area to the list of downloaded map areas, showing it if it is the selected area.
+   *
+   * @param key of the preplanned map area
+   * @param directory the map area was downloaded to
+   * @param job which downloaded the area, or null if it was downloaded in an earlier session
+   */
+  private void onDownloadSucceeded(String key, File directory, DownloadPreplannedOfflineMapJob job) {
+    Log.i(TAG, mOfflineJobQueue.metrics());
+    if (job == null) {
+      // open the map area downloaded in an earlier session from its directory
+      MobileMapPackage mobileMapPackage = new MobileMapPackage(directory.getPath());
+      mobileMapPackage.addDoneLoadingListener(() -> {
+        if (mobileMapPackage.getLoadStatus() == LoadStatus.LOADED && !mobileMapPackage.getMaps().isEmpty()) {
+          addDownloadedMapArea(key, mobileMapPackage.getMaps().get(0));
+        } else {
+          String error = "Failed to open downloaded map area " + titleOf(key) + ": " + (mobileMapPackage.getLoadError()
+              != null ? mobileMapPackage.getLoadError().getMessage() : "no maps");
           Log.e(TAG, error);
         }
       });
+      mobileMapPackage.loadAsync();
+      return;
+    }
+    // if there's a result from the download preplanned offline map job
+    DownloadPreplannedOfflineMapResult downloadPreplannedOfflineMapResult = job.getResult();
+    if (!downloadPreplannedOfflineMapResult.hasErrors()) {
+      addDownloadedMapArea(key, downloadPreplannedOfflineMapResult.getOfflineMap());
+    } else {
+      // collect the layer and table errors into a single alert message
+      StringBuilder stringBuilder = new StringBuilder("Errors: ");
+      Map<Layer, ArcGISRuntimeException> layerErrors = downloadPreplannedOfflineMapResult.getLayerErrors();
+      for (Map.Entry<Layer, ArcGISRuntimeException> layer : layerErrors.entrySet()) {
+        stringBuilder.append("Layer: ").append(layer.getKey().getName()).append(". Exception: ")
+            .append(layer.getValue().getMessage()).append(". ");
+      }
+      Map<FeatureTable, ArcGISRuntimeException> tableErrors = downloadPreplannedOfflineMapResult
+          .getTableErrors();
+      for (Map.Entry<FeatureTable, ArcGISRuntimeException> table : tableErrors.entrySet()) {
+        stringBuilder.append("Table: ").append(table.getKey().getTableName()).append(". Exception: ")
+            .append(table.getValue().getMessage()).append(". ");
+      }
+      String error = "One or more errors occurred with the Offline Map Result: " + stringBuilder;
+      Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+      Log.e(TAG, error);
+    }
+  }
+
+  private void addDownloadedMapArea(String key, ArcGISMap offlineMap) {
+    // add the map name to the list view of downloaded map areas
+    mDownloadedMapAreaNames.add(offlineMap.getItem() != null ? offlineMap.getItem().getTitle() : titleOf(key));
+    mDownloadedMapAreasAdapter.notifyDataSetChanged();
+    // add the offline map to a list of downloaded map areas
+    mDownloadedMapAreas.add(offlineMap);
+    // show the offline map if its area is the one selected
+    if (mSelectedPreplannedMapArea != null && keyOf(mSelectedPreplannedMapArea).equals(key)) {
+      // add it to the map view
+      mMapView.setMap(offlineMap);
+      // select the downloaded map area
+      mDownloadedMapAreasListView.setItemChecked(mDownloadedMapAreaNames.size() - 1, true);
+      // de-select the area in the preplanned areas list view
+      mPreplannedAreasListView.clearChoices();
+      mPreplannedMapAreasAdapter.notifyDataSetChanged();
+      mSelectedPreplannedMapArea = null;
+      // hide the area of interest graphics
+      mAreasOfInterestGraphicsOverlay.setVisible(false);
+    }
+  }
+
+  /**
+   * Shows the state of a preplanned map area's download after its name in the list view.
+   */
+  private void showDownloadState(String key, OfflineJobQueue.State state, int progress) {
+    int index = mPreplannedMapAreas.indexOf(findPreplannedMapArea(key));
+    if (index < 0) {
+      return;
+    }
+    String title = titleOf(key);
+    if (state == OfflineJobQueue.State.QUEUED) {
+      title += " " + getString(R.string.download_queued);
+    } else if (state == OfflineJobQueue.State.RUNNING) {
+      title += " " + getString(R.string.download_progress, progress);
+    } else if (state == OfflineJobQueue.State.SUCCEEDED) {
+      title += " " + getString(R.string.download_succeeded);
+    }
+    if (!title.equals(mPreplannedMapAreaNames.get(index))) {
+      mPreplannedMapAreaNames.set(index, title);
+      mPreplannedMapAreasAdapter.notifyDataSetChanged();
+    }
+    if (mSelectedPreplannedMapArea != null && keyOf(mSelectedPreplannedMapArea).equals(key)) {
+      // enable download button only for those map areas which haven't been downloaded or queued already
+      mDownloadButton.setEnabled(state == null || state == OfflineJobQueue.State.FAILED);
+    }
+  }
+
+  /**
+   * @return the key identifying the preplanned map area in the download queue, which is its portal item id
+   */
+  private static String keyOf(PreplannedMapArea preplannedMapArea) {
+    return preplannedMapArea.getPortalItem().getItemId();
+  }
+
+  private PreplannedMapArea findPreplannedMapArea(String key) {
+    for (PreplannedMapArea preplannedMapArea : mPreplannedMapAreas) {
+      if (keyOf(preplannedMapArea).equals(key)) {
+        return preplannedMapArea;
+      }
     }
+    return null;
+  }
+
+  private String titleOf(String key) {
+    PreplannedMapArea preplannedMapArea = findPreplannedMapArea(key);
+    return preplannedMapArea != null ? preplannedMapArea.getPortalItem().getTitle() : key;
   }
 
   private void createPreplannedAreasListView(ArcGISMap onlineMap, OfflineMapTask offlineMapTask) {
@@ -235,6 +349,9 @@ public class MainActivity extends AppCompatActivity implements ProgressDialogFra
           mPreplannedMapAreaNames.add(preplannedMapArea.getPortalItem().getTitle());
         }
         mPreplannedMapAreasAdapter.notifyDataSetChanged();
+        // resume the downloads from earlier sessions, now the areas they are for are known
+        mOfflineJobQueue.restore();
+        mDownloadAllButton.setEnabled(true);
         // load each area and show a red border around their area of interest
         for (PreplannedMapArea preplannedMapArea : mPreplannedMapAreas) {
           preplannedMapArea.loadAsync();
@@ -264,13 +381,22 @@ public class MainActivity extends AppCompatActivity implements ProgressDialogFra
             Envelope areaOfInterest = GeometryEngine.buffer(mSelectedPreplannedMapArea.getAreaOfInterest(), 50)
                 .getExtent();
             mMapView.setViewpointAsync(new Viewpoint(areaOfInterest), 1.5f);
-            // enable download button only for those map areas which have not been downloaded already
-            mDownloadButton.setEnabled(!new File(getCacheDir() + getString(R.string.preplanned_offline_map_dir) + File.separator
-                    + mSelectedPreplannedMapArea.getPortalItem().getTitle()).exists());
+            // enable download button only for those map areas which haven't been downloaded or queued already
+            mDownloadButton.setEnabled(mOfflineJobQueue.getState(keyOf(mSelectedPreplannedMapArea)) == null);
           } else {
             mDownloadButton.setEnabled(false);
           }
         });
+        // on list view long click, cancel the area's download if it is queued or running
+        mPreplannedAreasListView.setOnItemLongClickListener((adapterView, view, i, l) -> {
+          String key = keyOf(mPreplannedMapAreas.get(i));
+          OfflineJobQueue.State state = mOfflineJobQueue.getState(key);
+          if (state == OfflineJobQueue.State.QUEUED || state == OfflineJobQueue.State.RUNNING) {
+            mOfflineJobQueue.cancel(key);
+            return true;
+          }
+          return false;
+        });
       } catch (InterruptedException | ExecutionException e) {
         String error = "Failed to get the Preplanned Map Areas from the Offline Map Task.";
         Toast.makeText(this, error, Toast.LENGTH_LONG).show();
@@ -299,77 +425,6 @@ public class MainActivity extends AppCompatActivity implements ProgressDialogFra
     });
   }
 
-  /**
-   * Dismiss the dialog.
-   */
-  private void dismissDialog() {
-    // dismiss progress dialog
-    if (findProgressDialogFragment() != null) {
-      findProgressDialogFragment().dismiss();
-    }
-  }
-
-  /**
-   * Show dialog and track progress.
-   */
-  private void showProgressDialog() {
-    // show progress of the download preplanned offline map job in a dialog
-    if (findProgressDialogFragment() == null) {
-      ProgressDialogFragment progressDialogFragment = ProgressDialogFragment
-          .newInstance("Download preplanned offline map job", "Downloading the requested preplanned map area...",
-              "Cancel");
-      progressDialogFragment.show(getSupportFragmentManager(), ProgressDialogFragment.class.getSimpleName());
-
-      // track progress
-      mDownloadPreplannedOfflineMapJob.addProgressChangedListener(() -> {
-        if (findProgressDialogFragment() != null) {
-          findProgressDialogFragment().setProgress(mDownloadPreplannedOfflineMapJob.getProgress());
-        }
-      });
-    }
-  }
-
-  /**
-   * Find and return the progress dialog fragment.
-   *
-   * @return the progress dialog fragment.
-   */
-  private ProgressDialogFragment findProgressDialogFragment() {
-    return (ProgressDialogFragment) getSupportFragmentManager()
-        .findFragmentByTag(ProgressDialogFragment.class.getSimpleName());
-  }
-
-  /**
-   * Callback to cancel the download preplanned offline map job on progress dialog cancel button click.
-   */
-  @Override public void onProgressDialogDismiss() {
-    if (mDownloadPreplannedOfflineMapJob != null) {
-      mDownloadPreplannedOfflineMapJob.cancelAsync();
-    }
-  }
-
-  /**
-   * Recursively deletes all files in the given directory.
-   *
-   * @param dir to delete
-   */
-  private static boolean deleteDirectory(File dir) {
-    if (dir != null && dir.isDirectory()) {
-      String[] children = dir.list();
-      for (String child : children) {
-        boolean success = deleteDirectory(new File(dir, child));
-        if (!success) {
-          return false;
-        }
-      }
-      return dir.delete();
-    } else if (dir != null && dir.isFile()) {
-      return dir.delete();
-    } else {
-      return false;
-    }
-  }
-
   @Override
   protected void onPause() {
     mMapView.pause();
@@ -384,6 +439,8 @@ public class MainActivity extends AppCompatActivity implements ProgressDialogFra
 
   @Override
   protected void onDestroy() {
+    Log.i(TAG, mOfflineJobQueue.metrics());
+    mOfflineJobQueue.shutdown();
     mMapView.dispose();
     super.onDestroy();
   }
@@ -0,0 +1,700 @@
+/*
+ *  Copyright 2019 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.esri.arcgisruntime.sample.downloadpreplannedmaparea;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.esri.arcgisruntime.concurrent.Job;
+
+/**
+ * Runs the jobs which take areas offline, a bounded number at a time, in order of each area's priority.
+ *
+ * The state of every area's job is saved to a file as it changes, including the job's JSON once it has started, so
+ * when the app is restarted after being killed, restore() resumes the jobs which were running from their JSON, and
+ * queues again the areas which were waiting. Each area is taken offline into its own directory. When a job
+ * succeeds, any tile package it downloaded which is identical to one already downloaded for another area is replaced
+ * with a hard link to the same file, so basemaps shared by areas only take up space once.
+ *
+ * Apart from the constructor, must be used from the UI thread, which is where job listeners are called.
+ */
+final class OfflineJobQueue {
+
+  /**
+   * Creates the jobs which take areas offline.
+   */
+  interface JobFactory {
+
+    /**
+     * Creates, without starting, the job which takes the area with the given key offline into the directory. The job
+     * is passed to the callback, or null and the reason the job couldn't be created.
+     */
+    void createJob(String key, File directory, JobCallback callback);
+  }
+
+  interface JobCallback {
+
+    void onJobCreated(Job job, Exception error);
+  }
+
+  /**
+   * Receives the progress of areas on the UI thread.
+   */
+  interface Listener {
+
+    void onStateChanged(String key, State state, int progress);
+
+    /**
+     * @param key of the area
+     * @param directory the area was taken offline into
+     * @param job which took the area offline, or null if it finished before the queue was restored
+     */
+    void onSucceeded(String key, File directory, Job job);
+
+    /**
+     * @param key of the area
+     * @param job which failed, or null if the job couldn't be created or resumed
+     * @param error the area failed with
+     */
+    void onFailed(String key, Job job, Exception error);
+  }
+
+  enum State {
+    QUEUED, RUNNING, SUCCEEDED, FAILED
+  }
+
+  private static final String TAG = OfflineJobQueue.class.getSimpleName();
+
+  private static final String STATE_DIRECTORY = ".jobs";
+  private static final String TILE_PACKAGE_DIRECTORY = ".tile-packages";
+  private static final String[] TILE_PACKAGE_EXTENSIONS = { ".tpk", ".tpkx", ".vtpk" };
+
+  /**
+   * An area and the state of taking it offline.
+   */
+  private static final class Area {
+    final String mKey;
+    int mPriority;
+    long mSequence;
+    State mState = State.QUEUED;
+    Job mJob;
+    boolean mCancelled;
+    String mJobJson;
+    long mStartedAt;
+    // time spent running in earlier sessions, which is added to when the area's job resumes
+    long mElapsedMillis;
+    long mBytes;
+
+    Area(String key) {
+      mKey = key;
+    }
+  }
+
+  private final File mRoot;
+  private final File mStateDirectory;
+  private final int mMaxConcurrentJobs;
+  private final JobFactory mJobFactory;
+  private final Listener mListener;
+  private final Map<String, Area> mAreas = new HashMap<>();
+  // queued areas, highest priority first, then in the order they were queued
+  private final PriorityQueue<Area> mQueue = new PriorityQueue<>((a, b) -> a.mPriority != b.mPriority ?
+      Integer.compare(b.mPriority, a.mPriority) : Long.compare(a.mSequence, b.mSequence));
+  private final ExecutorService mFileExecutor = Executors.newSingleThreadExecutor();
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+  private int mRunningCount;
+  private long mSequence;
+  // set once the queue is shut down, after which job listeners are ignored and no more file work is queued
+  private boolean mShutdown;
+
+  // metrics for this session
+  private long mSessionBytes;
+  private long mActiveMillis;
+  private long mActiveSince;
+  private int mSucceededCount;
+  private long mSucceededMillis;
+  private long mSharedBytes;
+  private volatile long mBytesOnDisk;
+
+  /**
+   * @param root directory each area is taken offline into a subdirectory of
+   * @param maxConcurrentJobs number of jobs which can run at a time
+   * @param jobFactory to create the jobs which take areas offline
+   * @param listener to receive the progress of areas
+   */
+  OfflineJobQueue(File root, int maxConcurrentJobs, JobFactory jobFactory, Listener listener) {
+    mRoot = root;
+    mStateDirectory = new File(root, STATE_DIRECTORY);
+    mMaxConcurrentJobs = maxConcurrentJobs;
+    mJobFactory = jobFactory;
+    mListener = listener;
+  }
+
+  /**
+   * Restores the areas saved by an earlier session. Areas which were waiting are queued again and areas whose jobs
+   * were running are resumed from their saved jobs, or started again if a job can't be resumed. Areas which already
+   * succeeded are reported to the listener.
+   */
+  void restore() {
+    // finish deleting directories discarded by an earlier session
+    File[] discarded = mRoot.listFiles((directory, name) -> name.startsWith(".discarded-"));
+    if (discarded != null) {
+      for (File directory : discarded) {
+        discardDirectory(directory);
+      }
+    }
+    File[] files = mStateDirectory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (!file.getName().endsWith(".json")) {
+        // a state file which was being written when the app was killed
+        file.delete();
+        continue;
+      }
+      Area area;
+      try {
+        area = readState(file);
+      } catch (IOException | JSONException e) {
+        Log.e(TAG, "Unable to read job state from " + file + ": " + e.getMessage());
+        file.delete();
+        continue;
+      }
+      mAreas.put(area.mKey, area);
+      switch (area.mState) {
+        case SUCCEEDED:
+          mListener.onSucceeded(area.mKey, directoryFor(area.mKey), null);
+          break;
+        case RUNNING:
+        case QUEUED:
+          // an area which was running keeps its job's JSON, so its job is resumed when it is run
+          queue(area);
+          break;
+        case FAILED:
+        default:
+          // failed areas can be queued again
+          mAreas.remove(area.mKey);
+          file.delete();
+          break;
+      }
+    }
+    executeOnFileThread(() -> mBytesOnDisk = bytesOnDisk(mRoot, new HashSet<>()));
+    runNext();
+  }
+
+  /**
+   * Queues an area to be taken offline. If the area is already queued, its priority is changed. If it already
+   * succeeded, it is taken offline again.
+   *
+   * @param key identifying the area, which must be usable as a file name
+   * @param priority of the area, where areas with higher priorities are taken offline first
+   */
+  void enqueue(String key, int priority) {
+    Area area = mAreas.get(key);
+    if (area != null && area.mState == State.RUNNING) {
+      return;
+    }
+    if (area != null && area.mState == State.QUEUED) {
+      mQueue.remove(area);
+      area.mPriority = priority;
+      mQueue.add(area);
+      writeState(area);
+      return;
+    }
+    if (area != null) {
+      discardDirectory(directoryFor(key));
+    }
+    area = new Area(key);
+    area.mPriority = priority;
+    mAreas.put(key, area);
+    queue(area);
+    runNext();
+  }
+
+  /**
+   * Stops taking an area offline, removing it from the queue or cancelling its job. The area's partly downloaded
+   * files are deleted.
+   */
+  void cancel(String key) {
+    Area area = mAreas.get(key);
+    if (area == null) {
+      return;
+    }
+    if (area.mState == State.RUNNING && area.mJob != null) {
+      // the job done listener forgets the area
+      area.mCancelled = true;
+      area.mJob.cancelAsync();
+      return;
+    }
+    if (area.mState == State.QUEUED) {
+      mQueue.remove(area);
+    }
+    // the callback of a job being created ignores the job once the area is forgotten
+    forget(area);
+    mListener.onStateChanged(key, null, 0);
+  }
+
+  State getState(String key) {
+    Area area = mAreas.get(key);
+    return area != null ? area.mState : null;
+  }
+
+  /**
+   * Stops saving the state of areas. Areas whose jobs are still running are resumed the next time the queue is
+   * restored. Listeners of jobs which are still running are ignored from then on.
+   */
+  void shutdown() {
+    mShutdown = true;
+    mHandler.removeCallbacksAndMessages(null);
+    mFileExecutor.shutdown();
+  }
+
+  /**
+   * @return a summary of this session's throughput, the time taken per area and the space used by all areas
+   */
+  String metrics() {
+    long activeMillis = mActiveMillis + (mRunningCount > 0 ? SystemClock.elapsedRealtime() - mActiveSince : 0);
+    double seconds = activeMillis / 1000.0;
+    return String.format(Locale.US,
+        "Areas succeeded: %d, running: %d, queued: %d, throughput: %.2f MB/s over %.1f s, mean time per area: %.1f s, "
+            + "on disk: %.1f MB, shared tile packages saved: %.1f MB", mSucceededCount, mRunningCount, mQueue.size(),
+        seconds > 0 ? mSessionBytes / (1024.0 * 1024.0) / seconds : 0, seconds,
+        mSucceededCount > 0 ? mSucceededMillis / (mSucceededCount * 1000.0) : 0,
+        mBytesOnDisk / (1024.0 * 1024.0), mSharedBytes / (1024.0 * 1024.0));
+  }
+
+  private void queue(Area area) {
+    area.mState = State.QUEUED;
+    area.mSequence = mSequence++;
+    mQueue.add(area);
+    writeState(area);
+    mListener.onStateChanged(area.mKey, State.QUEUED, 0);
+  }
+
+  /**
+   * Creates jobs for the highest priority areas until the maximum number of jobs are running.
+   */
+  private void runNext() {
+    while (mRunningCount < mMaxConcurrentJobs && !mQueue.isEmpty()) {
+      Area area = mQueue.poll();
+      // count the area as running while its job is created, so no more jobs are started than allowed
+      area.mState = State.RUNNING;
+      onJobStarting();
+      Job resumedJob = resume(area);
+      if (resumedJob != null) {
+        start(area, resumedJob);
+        continue;
+      }
+      // an area which was running in an earlier session may have left partly downloaded files behind
+      discardDirectory(directoryFor(area.mKey));
+      mJobFactory.createJob(area.mKey, directoryFor(area.mKey), (job, error) -> {
+        if (mShutdown) {
+          // the area is still saved as running, so it is taken offline the next time the queue is restored
+          return;
+        }
+        if (mAreas.get(area.mKey) != area) {
+          // the area was cancelled while its job was being created
+          onJobStopped();
+          runNext();
+        } else if (job == null) {
+          onJobStopped();
+          fail(area, null, error);
+          runNext();
+        } else {
+          start(area, job);
+        }
+      });
+    }
+  }
+
+  /**
+   * @return the job saved for the area by an earlier session, or null if there isn't one or it can't be resumed
+   */
+  private static Job resume(Area area) {
+    if (area.mJobJson == null) {
+      return null;
+    }
+    try {
+      return Job.fromJson(area.mJobJson);
+    } catch (RuntimeException e) {
+      Log.e(TAG, "Unable to resume job for " + area.mKey + ", starting it again: " + e.getMessage());
+      area.mJobJson = null;
+      return null;
+    }
+  }
+
+  /**
+   * Starts the area's job, which must already be counted as running.
+   */
+  private void start(Area area, Job job) {
+    area.mState = State.RUNNING;
+    area.mJob = job;
+    area.mStartedAt = SystemClock.elapsedRealtime();
+    job.addProgressChangedListener(() -> {
+      if (!mShutdown) {
+        mListener.onStateChanged(area.mKey, State.RUNNING, job.getProgress());
+      }
+    });
+    // save the job whenever it changes, so it can be resumed with whatever server job it has started
+    job.addJobChangedListener(() -> {
+      if (!mShutdown && area.mJob == job && area.mState == State.RUNNING) {
+        area.mJobJson = job.toJson();
+        writeState(area);
+      }
+    });
+    // once shut down, the job's last saved state is left for the next session to resume or clean up
+    job.addJobDoneListener(() -> {
+      if (!mShutdown) {
+        onJobDone(area, job);
+      }
+    });
+    job.start();
+    area.mJobJson = job.toJson();
+    writeState(area);
+    mListener.onStateChanged(area.mKey, State.RUNNING, job.getProgress());
+  }
+
+  private void onJobDone(Area area, Job job) {
+    long elapsed = SystemClock.elapsedRealtime() - area.mStartedAt;
+    area.mElapsedMillis += elapsed;
+    area.mJob = null;
+    if (job.getStatus() != Job.Status.SUCCEEDED) {
+      onJobStopped();
+      if (area.mCancelled || job.getError() == null) {
+        forget(area);
+        mListener.onStateChanged(area.mKey, null, 0);
+      } else {
+        fail(area, job, job.getError());
+      }
+      runNext();
+      return;
+    }
+    // share identical tile packages and measure the area's size off the UI thread
+    File directory = directoryFor(area.mKey);
+    executeOnFileThread(() -> {
+      long shared = shareTilePackages(directory);
+      long bytes = bytesOnDisk(directory, new HashSet<>());
+      mBytesOnDisk = bytesOnDisk(mRoot, new HashSet<>());
+      mHandler.post(() -> {
+        if (mShutdown) {
+          return;
+        }
+        onJobStopped();
+        area.mState = State.SUCCEEDED;
+        area.mBytes = bytes;
+        area.mJobJson = null;
+        writeState(area);
+        mSessionBytes += bytes;
+        mSharedBytes += shared;
+        mSucceededCount++;
+        mSucceededMillis += area.mElapsedMillis;
+        Log.i(TAG, String.format(Locale.US, "%s took %.1f s, %.1f MB on disk", area.mKey,
+            area.mElapsedMillis / 1000.0, bytes / (1024.0 * 1024.0)));
+        mListener.onStateChanged(area.mKey, State.SUCCEEDED, 100);
+        mListener.onSucceeded(area.mKey, directory, job);
+        runNext();
+      });
+    });
+  }
+
+  private void fail(Area area, Job job, Exception error) {
+    area.mState = State.FAILED;
+    forget(area);
+    mListener.onStateChanged(area.mKey, State.FAILED, 0);
+    mListener.onFailed(area.mKey, job, error);
+  }
+
+  private void onJobStarting() {
+    if (mRunningCount == 0) {
+      mActiveSince = SystemClock.elapsedRealtime();
+    }
+    mRunningCount++;
+  }
+
+  private void onJobStopped() {
+    mRunningCount--;
+    if (mRunningCount == 0) {
+      mActiveMillis += SystemClock.elapsedRealtime() - mActiveSince;
+    }
+  }
+
+  /**
+   * Removes the area, its saved state and its files.
+   */
+  private void forget(Area area) {
+    mAreas.remove(area.mKey);
+    File stateFile = stateFileFor(area.mKey);
+    executeOnFileThread(stateFile::delete);
+    discardDirectory(directoryFor(area.mKey));
+  }
+
+  /**
+   * Moves the directory out of the way, so the area can be taken offline into it again straight away, and deletes it
+   * on the file thread.
+   */
+  private void discardDirectory(File directory) {
+    File discarded = new File(mRoot, ".discarded-" + System.nanoTime());
+    if (directory.exists() && !directory.renameTo(discarded)) {
+      // the directory couldn't be moved, so delete it before an area is taken offline into it again
+      deleteDirectory(directory);
+    }
+    executeOnFileThread(() -> {
+      deleteDirectory(discarded);
+      deleteUnusedTilePackages();
+      mBytesOnDisk = bytesOnDisk(mRoot, new HashSet<>());
+    });
+  }
+
+  /**
+   * Runs the task on the file thread, unless the queue has been shut down.
+   */
+  private void executeOnFileThread(Runnable task) {
+    if (!mShutdown) {
+      mFileExecutor.execute(task);
+    }
+  }
+
+  private File directoryFor(String key) {
+    return new File(mRoot, key);
+  }
+
+  private File stateFileFor(String key) {
+    return new File(mStateDirectory, key + ".json");
+  }
+
+  /**
+   * Saves the area's state to its own file, on the file thread.
+   */
+  private void writeState(Area area) {
+    String json;
+    try {
+      JSONObject state = new JSONObject();
+      state.put("key", area.mKey);
+      state.put("priority", area.mPriority);
+      state.put("state", area.mState.name());
+      state.put("elapsedMillis", area.mElapsedMillis);
+      state.put("bytes", area.mBytes);
+      if (area.mJobJson != null) {
+        state.put("job", area.mJobJson);
+      }
+      json = state.toString();
+    } catch (JSONException e) {
+      Log.e(TAG, "Unable to save job state for " + area.mKey + ": " + e.getMessage());
+      return;
+    }
+    File file = stateFileFor(area.mKey);
+    executeOnFileThread(() -> {
+      // write a temporary file first, so a process killed while writing never leaves a partly written state
+      File temporary = new File(mStateDirectory, file.getName() + ".tmp");
+      try {
+        if (!mStateDirectory.exists() && !mStateDirectory.mkdirs()) {
+          throw new IOException("Unable to create " + mStateDirectory);
+        }
+        try (OutputStream outputStream = new FileOutputStream(temporary)) {
+          outputStream.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        if (!temporary.renameTo(file)) {
+          throw new IOException("Unable to rename " + temporary);
+        }
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to save job state for " + area.mKey + ": " + e.getMessage());
+      }
+    });
+  }
+
+  private static Area readState(File file) throws IOException, JSONException {
+    byte[] bytes = new byte[(int) file.length()];
+    try (InputStream inputStream = new FileInputStream(file)) {
+      int offset = 0;
+      int read;
+      while (offset < bytes.length && (read = inputStream.read(bytes, offset, bytes.length - offset)) != -1) {
+        offset += read;
+      }
+    }
+    JSONObject state = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+    Area area = new Area(state.getString("key"));
+    area.mPriority = state.getInt("priority");
+    area.mState = State.valueOf(state.getString("state"));
+    area.mElapsedMillis = state.optLong("elapsedMillis");
+    area.mBytes = state.optLong("bytes");
+    area.mJobJson = state.optString("job", null);
+    return area;
+  }
+
+  /**
+   * Replaces each tile package in the directory which is identical to one already shared by another area with a hard
+   * link to the shared file, and shares the others. Runs on the file thread.
+   *
+   * @return the number of bytes no longer taking up space
+   */
+  private long shareTilePackages(File directory) {
+    File sharedDirectory = new File(mRoot, TILE_PACKAGE_DIRECTORY);
+    if (!sharedDirectory.exists() && !sharedDirectory.mkdirs()) {
+      return 0;
+    }
+    long saved = 0;
+    for (File file : tilePackages(directory, new ArrayList<>())) {
+      try {
+        String name = file.length() + "-" + sha256(file) + extensionOf(file);
+        File shared = new File(sharedDirectory, name);
+        if (!shared.exists()) {
+          Os.link(file.getPath(), shared.getPath());
+        } else if (Os.stat(shared.getPath()).st_ino != Os.stat(file.getPath()).st_ino) {
+          // link the shared file into place under a temporary name, then replace the area's copy with it
+          File link = new File(file.getPath() + ".link");
+          Os.link(shared.getPath(), link.getPath());
+          Os.rename(link.getPath(), file.getPath());
+          saved += shared.length();
+        }
+      } catch (IOException | ErrnoException e) {
+        Log.e(TAG, "Unable to share tile package " + file + ": " + e.getMessage());
+      }
+    }
+    return saved;
+  }
+
+  /**
+   * Deletes the shared tile packages which are no longer linked into any area. Runs on the file thread.
+   */
+  private void deleteUnusedTilePackages() {
+    File[] files = new File(mRoot, TILE_PACKAGE_DIRECTORY).listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      try {
+        if (Os.stat(file.getPath()).st_nlink <= 1) {
+          file.delete();
+        }
+      } catch (ErrnoException e) {
+        Log.e(TAG, "Unable to check shared tile package " + file + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private static List<File> tilePackages(File directory, List<File> tilePackages) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return tilePackages;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        tilePackages(file, tilePackages);
+      } else if (!extensionOf(file).isEmpty()) {
+        tilePackages.add(file);
+      }
+    }
+    return tilePackages;
+  }
+
+  /**
+   * @return the file's tile package extension, or an empty string if it isn't a tile package
+   */
+  private static String extensionOf(File file) {
+    String name = file.getName().toLowerCase(Locale.ROOT);
+    for (String extension : TILE_PACKAGE_EXTENSIONS) {
+      if (name.endsWith(extension)) {
+        return extension;
+      }
+    }
+    return "";
+  }
+
+  private static String sha256(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    byte[] buffer = new byte[256 * 1024];
+    try (InputStream inputStream = new FileInputStream(file)) {
+      int length;
+      while ((length = inputStream.read(buffer)) != -1) {
+        digest.update(buffer, 0, length);
+      }
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format(Locale.ROOT, "%02x", b));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * @return the space taken by the files in the directory, counting files linked more than once only once
+   */
+  private static long bytesOnDisk(File directory, Set<Long> inodes) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return 0;
+    }
+    long bytes = 0;
+    for (File file : files) {
+      if (file.isDirectory()) {
+        bytes += bytesOnDisk(file, inodes);
+      } else {
+        try {
+          if (inodes.add(Os.stat(file.getPath()).st_ino)) {
+            bytes += file.length();
+          }
+        } catch (ErrnoException e) {
+          bytes += file.length();
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private static void deleteDirectory(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File subFile : files) {
+        deleteDirectory(subFile);
+      }
+    }
+    file.delete();
+  }
+}
@@ -56,12 +56,16 @@ import com.esri.arcgisruntime.tasks.geodatabase.GenerateGeodatabaseJob;
 import com.esri.arcgisruntime.tasks.geodatabase.GenerateGeodatabaseParameters;
 import com.esri.arcgisruntime.tasks.geodatabase.GeodatabaseSyncTask;
 import com.esri.arcgisruntime.tasks.geodatabase.SyncGeodatabaseJob;
-import com.esri.arcgisruntime.tasks.geodatabase.SyncGeodatabaseParameters;
-import com.esri.arcgisruntime.tasks.geodatabase.SyncLayerOption;
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements SyncScheduler.Listener {
 
   private final String TAG = MainActivity.class.getSimpleName();
+  // number of edits uploaded by one sync job, unless a single table has more
+  private static final long MAX_EDITS_PER_SYNC_BATCH = 500;
+  // time edits are collected for before they are uploaded
+  private static final long SYNC_COALESCE_DELAY_MS = 5000;
+  // number of times a sync job is tried before the sync fails
+  private static final int MAX_SYNC_ATTEMPTS = 3;
 
   private Button mGeodatabaseButton;
 
@@ -70,6 +74,7 @@ public class MainActivity extends AppCompatActivity {
   // objects that implement Loadable must be class fields to prevent being garbage collected before loading
   private GeodatabaseSyncTask mGeodatabaseSyncTask;
   private Geodatabase mGeodatabase;
+  private SyncScheduler mSyncScheduler;
 
   private List<Feature> mSelectedFeatures;
   private MainActivity.EditState mCurrentEditState;
@@ -150,6 +155,8 @@ public class MainActivity extends AppCompatActivity {
           generateGeodatabaseJob.addJobDoneListener(() -> {
             if (generateGeodatabaseJob.getStatus() == Job.Status.SUCCEEDED) {
               mGeodatabase = generateGeodatabaseJob.getResult();
+              mSyncScheduler = new SyncScheduler(mGeodatabaseSyncTask, mGeodatabase, MAX_EDITS_PER_SYNC_BATCH,
+                  SYNC_COALESCE_DELAY_MS, MAX_SYNC_ATTEMPTS, this);
               mGeodatabase.loadAsync();
               mGeodatabase.addDoneLoadingListener(() -> {
                 if (mGeodatabase.getLoadStatus() == LoadStatus.LOADED) {
@@ -191,33 +198,30 @@ public class MainActivity extends AppCompatActivity {
    * Syncs changes made on either the local or web service geodatabase with each other.
    */
   private void syncGeodatabase() {
-    // create parameters for the sync task
-    SyncGeodatabaseParameters syncGeodatabaseParameters = new SyncGeodatabaseParameters();
-    syncGeodatabaseParameters.setSyncDirection(SyncGeodatabaseParameters.SyncDirection.BIDIRECTIONAL);
-    syncGeodatabaseParameters.setRollbackOnFailure(false);
-    // get the layer ID for each feature table in the geodatabase, then add to the sync job
-    for (GeodatabaseFeatureTable geodatabaseFeatureTable : mGeodatabase.getGeodatabaseFeatureTables()) {
-      long serviceLayerId = geodatabaseFeatureTable.getServiceLayerId();
-      SyncLayerOption syncLayerOption = new SyncLayerOption(serviceLayerId);
-      syncGeodatabaseParameters.getLayerOptions().add(syncLayerOption);
-    }
-
-    final SyncGeodatabaseJob syncGeodatabaseJob = mGeodatabaseSyncTask
-        .syncGeodatabase(syncGeodatabaseParameters, mGeodatabase);
-
-    syncGeodatabaseJob.start();
+    mSyncScheduler.requestSync();
+  }
 
-    createProgressDialog(syncGeodatabaseJob);
+  /**
+   * Shows the progress of syncs the user asked for. Syncs which upload edits as they are made run without a dialog.
+   */
+  @Override
+  public void onBatchStarted(SyncGeodatabaseJob job, boolean userRequested) {
+    if (userRequested) {
+      createProgressDialog(job);
+    }
+  }
 
-    syncGeodatabaseJob.addJobDoneListener(() -> {
-      if (syncGeodatabaseJob.getStatus() == Job.Status.SUCCEEDED) {
+  @Override
+  public void onSyncFinished(Throwable error, boolean userRequested) {
+    if (error == null) {
+      if (userRequested) {
         Toast.makeText(this, "Sync complete", Toast.LENGTH_SHORT).show();
         mGeodatabaseButton.setVisibility(View.INVISIBLE);
-      } else {
-        Log.e(TAG, "Database did not sync correctly!");
-        Toast.makeText(this, "Database did not sync correctly!", Toast.LENGTH_LONG).show();
       }
-    });
+    } else {
+      Log.e(TAG, "Database did not sync correctly! " + error.getMessage());
+      Toast.makeText(this, "Database did not sync correctly!", Toast.LENGTH_LONG).show();
+    }
   }
 
   /**
@@ -287,7 +291,8 @@ public class MainActivity extends AppCompatActivity {
   private void moveSelectedFeatureTo(Point point) {
     for (Feature feature : mSelectedFeatures) {
       feature.setGeometry(point);
-      feature.getFeatureTable().updateFeatureAsync(feature);
+      // upload the edit along with any others made in the next few seconds
+      feature.getFeatureTable().updateFeatureAsync(feature).addDoneListener(mSyncScheduler::requestUpload);
     }
     mSelectedFeatures.clear();
     mCurrentEditState = MainActivity.EditState.Ready;
@@ -322,6 +327,9 @@ public class MainActivity extends AppCompatActivity {
   }
 
   @Override protected void onDestroy() {
+    if (mSyncScheduler != null) {
+      mSyncScheduler.shutdown();
+    }
     mMapView.dispose();
     super.onDestroy();
   }
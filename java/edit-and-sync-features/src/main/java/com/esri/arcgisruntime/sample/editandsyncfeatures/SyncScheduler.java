@@ -0,0 +1,356 @@
+/* Copyright 2017 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.editandsyncfeatures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.esri.arcgisruntime.concurrent.Job;
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.data.Geodatabase;
+import com.esri.arcgisruntime.data.GeodatabaseFeatureTable;
+import com.esri.arcgisruntime.tasks.geodatabase.GeodatabaseSyncTask;
+import com.esri.arcgisruntime.tasks.geodatabase.SyncGeodatabaseJob;
+import com.esri.arcgisruntime.tasks.geodatabase.SyncGeodatabaseParameters;
+import com.esri.arcgisruntime.tasks.geodatabase.SyncLayerOption;
+import com.esri.arcgisruntime.tasks.geodatabase.SyncModel;
+
+/**
+ * Syncs a geodatabase's local edits with its feature service in bounded batches.
+ *
+ * Requests to upload edits are coalesced, so a burst of edits is uploaded by one sync a short delay after the first of
+ * them, and requests made while a sync is running are run once it finishes. Only tables with local edits are synced,
+ * and when nothing needs downloading they are synced in the upload direction only, so the service isn't asked for
+ * changes. When the geodatabase is synced per layer, the edited tables are split into batches of at most a maximum
+ * number of edits, so a large upload doesn't fail as a unit; a table is never split, as its edits are always synced
+ * together. A batch which fails is retried after a delay with only the edits which are still local, as those which
+ * reached the service before the failure have been marked as synced.
+ *
+ * All methods must be called on the UI thread, and the listener is called on the UI thread.
+ */
+final class SyncScheduler {
+
+  /**
+   * Receives the progress of syncs on the UI thread.
+   */
+  interface Listener {
+
+    /**
+     * @param job syncing a batch, which has been started
+     * @param userRequested whether the sync was requested by the user, rather than by an edit
+     */
+    void onBatchStarted(SyncGeodatabaseJob job, boolean userRequested);
+
+    /**
+     * @param error the sync failed with once it ran out of attempts, or null if it succeeded
+     * @param userRequested whether the sync was requested by the user, rather than by an edit
+     */
+    void onSyncFinished(Throwable error, boolean userRequested);
+  }
+
+  private static final String TAG = SyncScheduler.class.getSimpleName();
+  private static final long RETRY_DELAY_MS = 1000;
+
+  /**
+   * Tables synced by one job, and how many edits they had when the batch was made.
+   */
+  private static final class Batch {
+
+    final List<GeodatabaseFeatureTable> mTables = new ArrayList<>();
+    final SyncGeodatabaseParameters.SyncDirection mDirection;
+    long mEditCount;
+
+    Batch(SyncGeodatabaseParameters.SyncDirection direction) {
+      mDirection = direction;
+    }
+  }
+
+  /**
+   * Receives the number of local edits in each table.
+   */
+  private interface EditCountCallback {
+    void onEditsCounted(Map<GeodatabaseFeatureTable, Long> editCounts);
+  }
+
+  private final GeodatabaseSyncTask mSyncTask;
+  private final Geodatabase mGeodatabase;
+  private final long mMaxEditsPerBatch;
+  private final long mCoalesceDelayMs;
+  private final int mMaxAttempts;
+  private final Listener mListener;
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+  private final Runnable mRunSync = this::run;
+
+  private boolean mScheduled;
+  private boolean mRunning;
+  private boolean mRequestedWhileRunning;
+  private boolean mDownloadRequested;
+  private boolean mShutdown;
+  private SyncGeodatabaseJob mJob;
+
+  // metrics since the scheduler was created
+  private long mEditsSynced;
+  private long mSyncNanos;
+  private int mBatchCount;
+  private int mFailedBatchCount;
+  private long mEditsRetried;
+
+  /**
+   * @param syncTask for the geodatabase's feature service
+   * @param geodatabase to sync
+   * @param maxEditsPerBatch number of edits a batch is kept to, unless a single table has more
+   * @param coalesceDelayMs time between the first request to upload edits and the sync which uploads them
+   * @param maxAttempts number of times a batch is tried before the sync fails
+   * @param listener to receive the progress of syncs
+   */
+  SyncScheduler(GeodatabaseSyncTask syncTask, Geodatabase geodatabase, long maxEditsPerBatch, long coalesceDelayMs,
+      int maxAttempts, Listener listener) {
+    mSyncTask = syncTask;
+    mGeodatabase = geodatabase;
+    mMaxEditsPerBatch = maxEditsPerBatch;
+    mCoalesceDelayMs = coalesceDelayMs;
+    mMaxAttempts = maxAttempts;
+    mListener = listener;
+  }
+
+  /**
+   * Uploads the local edits soon, together with any other edits made before then.
+   */
+  void requestUpload() {
+    schedule(mCoalesceDelayMs);
+  }
+
+  /**
+   * Uploads the local edits and downloads the service's changes straight away.
+   */
+  void requestSync() {
+    mDownloadRequested = true;
+    schedule(0);
+  }
+
+  /**
+   * Stops running syncs, cancelling the sync in progress.
+   */
+  void shutdown() {
+    mShutdown = true;
+    mHandler.removeCallbacksAndMessages(null);
+    if (mJob != null) {
+      mJob.cancelAsync();
+    }
+  }
+
+  /**
+   * @return a summary of the edits synced, the sync throughput and the edits retried after failures
+   */
+  String metrics() {
+    double seconds = mSyncNanos / 1e9;
+    return String.format(Locale.US,
+        "Sync: %d edits in %d batches over %.1f s (%.1f edits/s), failed batches: %d, edits retried: %d",
+        mEditsSynced, mBatchCount, seconds, seconds > 0 ? mEditsSynced / seconds : 0, mFailedBatchCount,
+        mEditsRetried);
+  }
+
+  private void schedule(long delayMs) {
+    if (mRunning) {
+      mRequestedWhileRunning = true;
+      return;
+    }
+    if (mScheduled) {
+      if (delayMs > 0) {
+        // join the sync which is already scheduled
+        return;
+      }
+      mHandler.removeCallbacks(mRunSync);
+    }
+    mScheduled = true;
+    mHandler.postDelayed(mRunSync, delayMs);
+  }
+
+  private void run() {
+    mScheduled = false;
+    mRunning = true;
+    boolean download = mDownloadRequested;
+    mDownloadRequested = false;
+    List<GeodatabaseFeatureTable> editedTables = new ArrayList<>();
+    for (GeodatabaseFeatureTable table : mGeodatabase.getGeodatabaseFeatureTables()) {
+      if (table.hasLocalEdits()) {
+        editedTables.add(table);
+      }
+    }
+    countEdits(editedTables, editCounts -> runBatches(createBatches(editCounts, download), 0, 1, download));
+  }
+
+  /**
+   * Splits the edited tables into upload batches of at most the maximum number of edits, filling each batch with the
+   * largest tables that fit, followed by a batch which downloads the service's changes if they were requested.
+   */
+  private List<Batch> createBatches(Map<GeodatabaseFeatureTable, Long> editCounts, boolean download) {
+    List<Batch> batches = new ArrayList<>();
+    if (mGeodatabase.getSyncModel() != SyncModel.LAYER) {
+      // a geodatabase synced as a whole can't be split into batches of tables
+      if (!editCounts.isEmpty() || download) {
+        Batch batch = new Batch(download ? SyncGeodatabaseParameters.SyncDirection.BIDIRECTIONAL :
+            SyncGeodatabaseParameters.SyncDirection.UPLOAD);
+        batch.mTables.addAll(mGeodatabase.getGeodatabaseFeatureTables());
+        for (long editCount : editCounts.values()) {
+          batch.mEditCount += editCount;
+        }
+        batches.add(batch);
+      }
+      return batches;
+    }
+
+    List<Map.Entry<GeodatabaseFeatureTable, Long>> tables = new ArrayList<>(editCounts.entrySet());
+    Collections.sort(tables, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+    for (Map.Entry<GeodatabaseFeatureTable, Long> table : tables) {
+      Batch batch = null;
+      for (Batch candidate : batches) {
+        if (candidate.mEditCount + table.getValue() <= mMaxEditsPerBatch) {
+          batch = candidate;
+          break;
+        }
+      }
+      if (batch == null) {
+        batch = new Batch(SyncGeodatabaseParameters.SyncDirection.UPLOAD);
+        batches.add(batch);
+      }
+      batch.mTables.add(table.getKey());
+      batch.mEditCount += table.getValue();
+    }
+    if (download) {
+      // the edits have all been uploaded by now, so the last batch only needs to download
+      Batch batch = new Batch(SyncGeodatabaseParameters.SyncDirection.DOWNLOAD);
+      batch.mTables.addAll(mGeodatabase.getGeodatabaseFeatureTables());
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  private void runBatches(List<Batch> batches, int index, int attempt, boolean userRequested) {
+    if (mShutdown) {
+      // don't start a job, or show its progress, once the activity has gone
+      return;
+    }
+    if (index == batches.size()) {
+      finish(null, userRequested);
+      return;
+    }
+    Batch batch = batches.get(index);
+    SyncGeodatabaseParameters parameters = new SyncGeodatabaseParameters();
+    parameters.setSyncDirection(batch.mDirection);
+    // keep the edits which reached the service if the batch fails, so a retry only uploads the rest
+    parameters.setRollbackOnFailure(false);
+    // give each layer the batch's direction too, a layer option without one syncs in both directions
+    for (GeodatabaseFeatureTable table : batch.mTables) {
+      parameters.getLayerOptions().add(new SyncLayerOption(table.getServiceLayerId(), batch.mDirection));
+    }
+
+    long start = System.nanoTime();
+    SyncGeodatabaseJob job = mSyncTask.syncGeodatabase(parameters, mGeodatabase);
+    mJob = job;
+    job.addJobDoneListener(() -> {
+      mJob = null;
+      if (mShutdown) {
+        return;
+      }
+      mSyncNanos += System.nanoTime() - start;
+      if (job.getStatus() == Job.Status.SUCCEEDED) {
+        mBatchCount++;
+        mEditsSynced += batch.mEditCount;
+        runBatches(batches, index + 1, 1, userRequested);
+        return;
+      }
+      mFailedBatchCount++;
+      Throwable error = job.getError();
+      if (job.getStatus() == Job.Status.FAILED && attempt < mMaxAttempts) {
+        Log.w(TAG, "Sync batch " + (index + 1) + " of " + batches.size() + " failed, retrying: "
+            + (error != null ? error.getMessage() : "unknown error"));
+        // back off before retrying, and only retry the edits which haven't been synced
+        mHandler.postDelayed(() -> countEdits(batch.mTables, editCounts -> {
+          long remainingEditCount = 0;
+          for (long editCount : editCounts.values()) {
+            remainingEditCount += editCount;
+          }
+          // the edits which are no longer local were synced before the batch failed
+          mEditsSynced += Math.max(0, batch.mEditCount - remainingEditCount);
+          batch.mEditCount = remainingEditCount;
+          mEditsRetried += remainingEditCount;
+          runBatches(batches, index, attempt + 1, userRequested);
+        }), RETRY_DELAY_MS << (attempt - 1));
+      } else {
+        finish(error, userRequested);
+      }
+    });
+    job.start();
+    mListener.onBatchStarted(job, userRequested);
+  }
+
+  private void finish(Throwable error, boolean userRequested) {
+    mRunning = false;
+    Log.i(TAG, metrics());
+    mListener.onSyncFinished(error, userRequested);
+    if (mRequestedWhileRunning) {
+      mRequestedWhileRunning = false;
+      schedule(mDownloadRequested ? 0 : mCoalesceDelayMs);
+    }
+  }
+
+  /**
+   * Counts the features added, updated and deleted in each of the tables since they were last synced, leaving out
+   * tables without local edits.
+   */
+  private void countEdits(List<GeodatabaseFeatureTable> tables, EditCountCallback callback) {
+    Map<GeodatabaseFeatureTable, Long> editCounts = new LinkedHashMap<>();
+    if (tables.isEmpty()) {
+      callback.onEditsCounted(editCounts);
+      return;
+    }
+    int[] remaining = { tables.size() * 3 };
+    for (GeodatabaseFeatureTable table : tables) {
+      List<ListenableFuture<Long>> counts = new ArrayList<>();
+      counts.add(table.getAddedFeaturesCountAsync());
+      counts.add(table.getUpdatedFeaturesCountAsync());
+      counts.add(table.getDeletedFeaturesCountAsync());
+      for (ListenableFuture<Long> count : counts) {
+        count.addDoneListener(() -> {
+          try {
+            long editCount = count.get();
+            if (editCount > 0) {
+              Long tableCount = editCounts.get(table);
+              editCounts.put(table, (tableCount != null ? tableCount : 0) + editCount);
+            }
+          } catch (Exception e) {
+            // the count is only used to size the batches, so sync the table in a batch of its own
+            Log.e(TAG, "Error counting edits in " + table.getTableName() + ": " + e.getMessage());
+            editCounts.put(table, mMaxEditsPerBatch);
+          }
+          if (--remaining[0] == 0 && !mShutdown) {
+            callback.onEditsCounted(editCounts);
+          }
+        });
+      }
+    }
+  }
+}
@@ -23,6 +23,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -30,14 +31,27 @@ import com.esri.arcgisruntime.sample.editfeatureattachments.R;
 
 public class CustomList extends ArrayAdapter<String>{
 
+    /**
+     * Loads the image shown next to an attachment's name.
+     */
+    public interface ThumbnailLoader {
+        void loadThumbnail(int position, ImageView imageView);
+    }
+
     private final Activity context;
     private final ArrayList<String> attachmentName;
+    private ThumbnailLoader thumbnailLoader;
     public CustomList(Activity context,
                       ArrayList<String> attachmentList) {
         super(context, R.layout.attachment_entry, attachmentList);
         this.context = context;
         attachmentName = attachmentList;
     }
+
+    public void setThumbnailLoader(ThumbnailLoader loader) {
+        thumbnailLoader = loader;
+    }
+
     @NonNull
     @Override
     public View getView(int position, View convertView, @NonNull ViewGroup parent) {
@@ -48,6 +62,7 @@ public class CustomList extends ArrayAdapter<String>{
 
             holder = new CustomList.ViewHolder();
             holder.textTitle = convertView.findViewById(R.id.AttachmentName);
+            holder.thumbnail = convertView.findViewById(R.id.AttachmentThumbnail);
 
             convertView.setTag(holder);
         } else {
@@ -55,11 +70,16 @@ public class CustomList extends ArrayAdapter<String>{
         }
 
         holder.textTitle.setText(attachmentName.get(position));
+        holder.thumbnail.setImageResource(android.R.drawable.ic_menu_add);
+        if (thumbnailLoader != null) {
+            thumbnailLoader.loadThumbnail(position, holder.thumbnail);
+        }
 
         return convertView;
     }
 
     private static class ViewHolder {
         TextView textTitle;
+        ImageView thumbnail;
     }
 }
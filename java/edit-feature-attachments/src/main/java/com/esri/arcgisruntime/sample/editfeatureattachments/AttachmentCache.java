@@ -0,0 +1,285 @@
+/* Copyright 2016 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.editfeatureattachments;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import com.esri.arcgisruntime.data.Attachment;
+
+/**
+ * Caches attachment data on disk and decoded attachment images in memory.
+ *
+ * Attachment data is streamed from the service straight into a file, keyed by the feature and attachment ids, without
+ * being decoded or re-encoded, so each attachment is only downloaded once. Images of attachments which are already
+ * cached are decoded from their files with a sample size chosen for the size they will be shown at, and kept in a
+ * memory cache keyed by the feature id, attachment id and size. Downloads and decodes run on a background thread and
+ * results are delivered on the UI thread.
+ */
+final class AttachmentCache {
+
+  /**
+   * Receives the result of a request on the UI thread.
+   */
+  interface Callback<T> {
+
+    /**
+     * @param result of the request, or null if it failed
+     * @param error the request failed with, or null if it succeeded
+     */
+    void onResult(T result, Exception error);
+  }
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File mDirectory;
+  private final long mMaxDiskBytes;
+  private final LruCache<String, Bitmap> mBitmaps;
+  private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+  private volatile long mBytesDownloaded;
+  private volatile long mBytesFromDisk;
+  private volatile int mHitCount;
+  private volatile int mMissCount;
+  private volatile long mPeakHeapBytes;
+
+  /**
+   * @param directory to keep the attachment files in
+   * @param maxDiskBytes size the files are trimmed to, removing the least recently used first
+   * @param maxMemoryBytes size of the decoded images kept in memory
+   */
+  AttachmentCache(File directory, long maxDiskBytes, int maxMemoryBytes) {
+    mDirectory = directory;
+    mMaxDiskBytes = maxDiskBytes;
+    mBitmaps = new LruCache<String, Bitmap>(maxMemoryBytes) {
+      @Override protected int sizeOf(String key, Bitmap bitmap) {
+        return bitmap.getByteCount();
+      }
+    };
+  }
+
+  /**
+   * Gets a file holding the attachment's data, downloading it if it isn't already cached.
+   */
+  void getFile(long featureId, Attachment attachment, Callback<File> callback) {
+    mExecutor.execute(() -> {
+      try {
+        File file = fetchFile(featureId, attachment);
+        mHandler.post(() -> callback.onResult(file, null));
+      } catch (Exception e) {
+        mHandler.post(() -> callback.onResult(null, e));
+      }
+    });
+  }
+
+  /**
+   * Gets the attachment's image decoded to at least the given size, if the attachment is already cached on disk. The
+   * attachment is never downloaded just to show its image, so the result is null if it isn't cached.
+   */
+  void getCachedBitmap(long featureId, Attachment attachment, int width, int height, Callback<Bitmap> callback) {
+    String key = featureId + "/" + attachment.getId() + "/" + width + "x" + height;
+    Bitmap cached = mBitmaps.get(key);
+    if (cached != null) {
+      mHitCount++;
+      callback.onResult(cached, null);
+      return;
+    }
+    mExecutor.execute(() -> {
+      try {
+        // another request may have decoded the same image while this one was queued
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap == null) {
+          File file = cachedFile(featureId, attachment);
+          if (file == null) {
+            mHandler.post(() -> callback.onResult(null, null));
+            return;
+          }
+          mHitCount++;
+          bitmap = decode(file, width, height);
+          if (bitmap == null) {
+            throw new IOException("Attachment " + attachment.getName() + " is not a supported image");
+          }
+          mBitmaps.put(key, bitmap);
+          samplePeakHeap();
+        } else {
+          mHitCount++;
+        }
+        Bitmap result = bitmap;
+        mHandler.post(() -> callback.onResult(result, null));
+      } catch (Exception e) {
+        mHandler.post(() -> callback.onResult(null, e));
+      }
+    });
+  }
+
+  /**
+   * Removes the attachment's file and images from the cache, such as after the attachment has been deleted.
+   */
+  void remove(long featureId, Attachment attachment) {
+    String prefix = featureId + "/" + attachment.getId() + "/";
+    for (String key : mBitmaps.snapshot().keySet()) {
+      if (key.startsWith(prefix)) {
+        mBitmaps.remove(key);
+      }
+    }
+    mExecutor.execute(() -> {
+      File file = fileFor(featureId, attachment);
+      if (file.exists() && !file.delete()) {
+        file.deleteOnExit();
+      }
+    });
+  }
+
+  /**
+   * Stops the cache's thread. Cached files stay on disk for the next time the cache is created.
+   */
+  void shutdown() {
+    mExecutor.shutdownNow();
+    mBitmaps.evictAll();
+  }
+
+  /**
+   * @return a summary of the bytes transferred, the cache hit rate and the peak Java heap used
+   */
+  String metrics() {
+    int requestCount = mHitCount + mMissCount;
+    return String.format(Locale.US,
+        "Attachment cache: downloaded %.1f MB, read from disk %.1f MB, hit rate %d/%d (%.0f%%), "
+            + "memory cache %.1f MB, peak heap %.1f MB", mBytesDownloaded / (1024.0 * 1024.0),
+        mBytesFromDisk / (1024.0 * 1024.0), mHitCount, requestCount,
+        requestCount > 0 ? 100.0 * mHitCount / requestCount : 0, mBitmaps.size() / (1024.0 * 1024.0),
+        mPeakHeapBytes / (1024.0 * 1024.0));
+  }
+
+  /**
+   * Returns the attachment's cached file, first streaming the attachment's data into it if it isn't cached.
+   */
+  private File fetchFile(long featureId, Attachment attachment) throws Exception {
+    File cached = cachedFile(featureId, attachment);
+    if (cached != null) {
+      mHitCount++;
+      return cached;
+    }
+    mMissCount++;
+    File file = fileFor(featureId, attachment);
+    if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+      throw new IOException("Unable to create " + mDirectory);
+    }
+    // write to a temporary file first, so an interrupted download never looks like a cached attachment
+    File temporary = new File(mDirectory, file.getName() + ".part");
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (InputStream inputStream = attachment.fetchDataAsync().get();
+         OutputStream outputStream = new FileOutputStream(temporary)) {
+      int length;
+      while ((length = inputStream.read(buffer)) != -1) {
+        outputStream.write(buffer, 0, length);
+        mBytesDownloaded += length;
+      }
+    }
+    if (!temporary.renameTo(file)) {
+      temporary.delete();
+      throw new IOException("Unable to write " + file);
+    }
+    samplePeakHeap();
+    trim(file);
+    return file;
+  }
+
+  /**
+   * @return the attachment's cached file, or null if the attachment isn't cached
+   */
+  private File cachedFile(long featureId, Attachment attachment) {
+    File file = fileFor(featureId, attachment);
+    if (!file.exists() || (attachment.getSize() > 0 && file.length() != attachment.getSize())) {
+      return null;
+    }
+    mBytesFromDisk += file.length();
+    // mark the file as recently used, so it is trimmed last
+    file.setLastModified(System.currentTimeMillis());
+    return file;
+  }
+
+  private File fileFor(long featureId, Attachment attachment) {
+    // keep the name's extension so viewers can recognise the file
+    String name = attachment.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+    return new File(mDirectory, featureId + "_" + attachment.getId() + "_" + name);
+  }
+
+  /**
+   * Decodes the image in the file with the largest power of two sample size which keeps it at least the given size.
+   */
+  private static Bitmap decode(File file, int width, int height) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(file.getPath(), options);
+    int sampleSize = 1;
+    while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+      sampleSize *= 2;
+    }
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = sampleSize;
+    return BitmapFactory.decodeFile(file.getPath(), options);
+  }
+
+  /**
+   * Deletes the least recently used files until the cache fits in its maximum size, keeping the given file.
+   */
+  private void trim(File keep) {
+    File[] files = mDirectory.listFiles();
+    if (files == null) {
+      return;
+    }
+    long total = 0;
+    for (File file : files) {
+      total += file.length();
+    }
+    if (total <= mMaxDiskBytes) {
+      return;
+    }
+    Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    for (File file : files) {
+      if (total <= mMaxDiskBytes) {
+        break;
+      }
+      if (!file.equals(keep)) {
+        long length = file.length();
+        if (file.delete()) {
+          total -= length;
+        }
+      }
+    }
+  }
+
+  private void samplePeakHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    mPeakHeapBytes = Math.max(mPeakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+  }
+}
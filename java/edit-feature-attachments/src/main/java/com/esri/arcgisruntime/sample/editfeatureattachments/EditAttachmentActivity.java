@@ -18,13 +18,13 @@ package com.esri.arcgisruntime.sample.editfeatureattachments;
 
 import android.app.ProgressDialog;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
 import android.util.Log;
+import android.webkit.MimeTypeMap;
+import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.Toast;
 
@@ -45,7 +45,6 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -56,6 +55,8 @@ public class EditAttachmentActivity extends AppCompatActivity {
   private static final String TAG = EditAttachmentActivity.class.getSimpleName();
 
   private static final int RESULT_LOAD_IMAGE = 1;
+  // size the downloaded attachment files are trimmed to
+  private static final long ATTACHMENT_DISK_CACHE_BYTES = 200L * 1024 * 1024;
   private CustomList adapter;
   private List<Attachment> attachments;
   private ArcGISFeature mSelectedArcGISFeature;
@@ -65,6 +66,8 @@ public class EditAttachmentActivity extends AppCompatActivity {
   private ArrayList<String> attachmentList = new ArrayList<>();
   private ProgressDialog progressDialog;
   private AlertDialog.Builder builder;
+  private AttachmentCache mAttachmentCache;
+  private int mThumbnailSize;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -86,6 +89,12 @@ public class EditAttachmentActivity extends AppCompatActivity {
 
     mServiceFeatureTable = new ServiceFeatureTable(getResources().getString(R.string.sample_service_url));
 
+    // cache attachment files in /ArcGIS/Attachments in external storage, and decoded thumbnails in up to an eighth of
+    // the heap
+    mAttachmentCache = new AttachmentCache(new File(getExternalFilesDir(null) + "/ArcGIS/Attachments"),
+        ATTACHMENT_DISK_CACHE_BYTES, (int) (Runtime.getRuntime().maxMemory() / 8));
+    mThumbnailSize = getResources().getDimensionPixelSize(R.dimen.attachment_thumbnail_size);
+
     progressDialog = new ProgressDialog(this);
 
     // display progress dialog if selected feature has attachments
@@ -101,6 +110,7 @@ public class EditAttachmentActivity extends AppCompatActivity {
     listView = findViewById(R.id.listView);
     // create custom adapter
     adapter = new CustomList(this, attachmentList);
+    adapter.setThumbnailLoader(this::loadThumbnail);
     // set custom adapter on the list
     listView.setAdapter(adapter);
     fetchAttachmentsFromServer(s);
@@ -129,49 +139,65 @@ public class EditAttachmentActivity extends AppCompatActivity {
     progressDialog.setMessage(getApplication().getString(R.string.wait));
     progressDialog.show();
 
-    // create a listenableFuture to fetch the attachment asynchronously
-    final ListenableFuture<InputStream> fetchDataFuture = attachments.get(position).fetchDataAsync();
-    fetchDataFuture.addDoneListener(() -> {
-      try {
-        String fileName = attachmentList.get(position);
-        // create a drawable from InputStream
-        Drawable d = Drawable.createFromStream(fetchDataFuture.get(), fileName);
-        // create a bitmap from drawable
-        Bitmap bitmap = ((BitmapDrawable) d).getBitmap();
-        File fileDir = new File(getExternalFilesDir(null) + "/ArcGIS/Attachments");
-        // create folder /ArcGIS/Attachments in external storage
-        boolean isDirectoryCreated = fileDir.exists();
-        if (!isDirectoryCreated) {
-          isDirectoryCreated = fileDir.mkdirs();
-        }
-        File file = null;
-        if (isDirectoryCreated) {
-          file = new File(fileDir, fileName);
-          FileOutputStream fos = new FileOutputStream(file);
-          // compress the bitmap to PNG format
-          bitmap.compress(Bitmap.CompressFormat.PNG, 90, fos);
-          fos.flush();
-          fos.close();
-        }
-
-        if (progressDialog.isShowing()) {
-          progressDialog.dismiss();
-        }
-        // open the file in gallery
-        Intent i = new Intent();
-        i.setFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-        i.setAction(Intent.ACTION_VIEW);
-        Uri contentUri = FileProvider
-            .getUriForFile(getApplicationContext(), getApplicationContext().getPackageName() + ".provider", file);
-        i.setDataAndType(contentUri, "image/png");
-        startActivity(i);
+    // get the attachment's file from the cache, which streams it from the server the first time it is opened
+    Attachment attachment = attachments.get(position);
+    mAttachmentCache.getFile(getFeatureId(), attachment, (file, error) -> {
+      if (progressDialog.isShowing()) {
+        progressDialog.dismiss();
+      }
+      Log.i(TAG, mAttachmentCache.metrics());
+      if (error != null) {
+        String message = "Error downloading attachment: " + error.getMessage();
+        Log.e(TAG, message);
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        return;
+      }
+      // the attachment is now cached, so its thumbnail can be shown
+      adapter.notifyDataSetChanged();
+      // open the file in gallery
+      Intent i = new Intent();
+      i.setFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+      i.setAction(Intent.ACTION_VIEW);
+      Uri contentUri = FileProvider
+          .getUriForFile(getApplicationContext(), getApplicationContext().getPackageName() + ".provider", file);
+      i.setDataAndType(contentUri, attachment.getContentType());
+      startActivity(i);
+    });
+  }
 
-      } catch (Exception e) {
-        Log.d(TAG, e.toString());
+  /**
+   * Shows a thumbnail of the attachment at the given position, if it is an image which has already been downloaded.
+   *
+   * @param position of the attachment in the list view
+   * @param imageView to show the thumbnail in
+   */
+  private void loadThumbnail(int position, ImageView imageView) {
+    imageView.setTag(null);
+    if (attachments == null || position >= attachments.size()) {
+      return;
+    }
+    Attachment attachment = attachments.get(position);
+    if (attachment.getContentType() == null || !attachment.getContentType().startsWith("image/")) {
+      return;
+    }
+    // the view may be recycled for another attachment before the thumbnail is ready
+    imageView.setTag(attachment);
+    mAttachmentCache.getCachedBitmap(getFeatureId(), attachment, mThumbnailSize, mThumbnailSize, (bitmap, error) -> {
+      if (error != null) {
+        Log.e(TAG, "Error loading thumbnail: " + error.getMessage());
+      } else if (bitmap != null && imageView.getTag() == attachment) {
+        imageView.setImageBitmap(bitmap);
       }
     });
   }
 
+  /**
+   * @return the object id of the selected feature, which the cached attachments are keyed by
+   */
+  private long getFeatureId() {
+    return ((Number) mSelectedArcGISFeature.getAttributes().get("objectid")).longValue();
+  }
+
   /**
    * Delete the attachment from the feature
    *
@@ -182,11 +208,29 @@ public class EditAttachmentActivity extends AppCompatActivity {
     progressDialog.setMessage(getApplication().getString(R.string.wait));
     progressDialog.show();
 
-    ListenableFuture<Void> deleteResult = mSelectedArcGISFeature.deleteAttachmentAsync(attachments.get(pos));
-    attachmentList.remove(pos);
-    adapter.notifyDataSetChanged();
+    Attachment attachment = attachments.get(pos);
+    ListenableFuture<Void> deleteResult = mSelectedArcGISFeature.deleteAttachmentAsync(attachment);
 
     deleteResult.addDoneListener(() -> {
+      try {
+        deleteResult.get();
+      } catch (Exception e) {
+        if (progressDialog.isShowing()) {
+          progressDialog.dismiss();
+        }
+        String error = "Error deleting attachment: " + e.getMessage();
+        Log.e(TAG, error);
+        Toast.makeText(getApplicationContext(), error, Toast.LENGTH_LONG).show();
+        return;
+      }
+      // remove the attachment from both lists, so the rows still match the attachments
+      int index = attachments.indexOf(attachment);
+      if (index >= 0) {
+        attachments.remove(index);
+        attachmentList.remove(index);
+        adapter.notifyDataSetChanged();
+      }
+      mAttachmentCache.remove(getFeatureId(), attachment);
       ListenableFuture<Void> tableResult = mServiceFeatureTable.updateFeatureAsync(mSelectedArcGISFeature);
       // apply changes back to the server
       tableResult.addDoneListener(this::applyServerEdits);
@@ -218,7 +262,8 @@ public class EditAttachmentActivity extends AppCompatActivity {
         final ListenableFuture<List<Attachment>> attachmentResults = mSelectedArcGISFeature.fetchAttachmentsAsync();
         attachmentResults.addDoneListener(() -> {
           try {
-            attachments = attachmentResults.get();
+            // copy the attachments so deleted ones can be removed from the list
+            attachments = new ArrayList<>(attachmentResults.get());
             // if selected feature has attachments, display them in a list fashion
             if (!attachments.isEmpty()) {
               for (Attachment attachment : attachments) {
@@ -229,6 +274,7 @@ public class EditAttachmentActivity extends AppCompatActivity {
                   progressDialog.dismiss();
                 }
                 adapter = new CustomList(this, attachmentList);
+                adapter.setThumbnailLoader(this::loadThumbnail);
                 listView.setAdapter(adapter);
                 adapter.notifyDataSetChanged();
               });
@@ -266,18 +312,23 @@ public class EditAttachmentActivity extends AppCompatActivity {
     if (requestCode == RESULT_LOAD_IMAGE && resultCode == RESULT_OK && null != data) {
       Uri selectedImage = data.getData();
       try {
-        InputStream imageInputStream = getContentResolver().openInputStream(selectedImage);
+        byte[] imageBytes = bytesFromUri(selectedImage);
 
-        byte[] imageBytes = bytesFromInputStream(imageInputStream);
-
-        final String attachmentName = getString(R.string.attachment) + '_' + System.currentTimeMillis() + ".png";
+        // keep the image's own type rather than labelling every upload as a PNG
+        String contentType = getContentResolver().getType(selectedImage);
+        if (contentType == null) {
+          contentType = "image/png";
+        }
+        String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(contentType);
+        final String attachmentName = getString(R.string.attachment) + '_' + System.currentTimeMillis() + '.'
+            + (extension != null ? extension : "png");
 
         progressDialog.setTitle(getApplication().getString(R.string.apply_edit_message));
         progressDialog.setMessage(getApplication().getString(R.string.wait));
         progressDialog.show();
 
         ListenableFuture<Attachment> addResult = mSelectedArcGISFeature
-            .addAttachmentAsync(imageBytes, "image/png", attachmentName);
+            .addAttachmentAsync(imageBytes, contentType, attachmentName);
 
         addResult.addDoneListener(() -> {
           final ListenableFuture<Void> tableResult = mServiceFeatureTable.updateFeatureAsync(mSelectedArcGISFeature);
@@ -328,21 +379,44 @@ public class EditAttachmentActivity extends AppCompatActivity {
   }
 
   /**
-   * Converts the given input stream into a byte array.
+   * Reads the content at the given uri into a byte array. When the content resolver knows the content's length, the
+   * bytes are read straight into an array of that size, rather than through a buffer which grows and is copied.
    *
-   * @param inputStream from an image
-   * @return an array of bytes from the input stream
-   * @throws IOException if input stream can't be read
+   * @param uri of an image
+   * @return an array of bytes from the uri
+   * @throws IOException if the uri can't be read
    */
-  private static byte[] bytesFromInputStream(InputStream inputStream) throws IOException {
-    try (ByteArrayOutputStream byteBuffer = new ByteArrayOutputStream()) {
-      int bufferSize = 1024;
-      byte[] buffer = new byte[bufferSize];
-      int len;
-      while ((len = inputStream.read(buffer)) != -1) {
-        byteBuffer.write(buffer, 0, len);
+  private byte[] bytesFromUri(Uri uri) throws IOException {
+    long length = AssetFileDescriptor.UNKNOWN_LENGTH;
+    try (AssetFileDescriptor descriptor = getContentResolver().openAssetFileDescriptor(uri, "r")) {
+      if (descriptor != null) {
+        length = descriptor.getLength();
+      }
+    }
+    try (InputStream inputStream = getContentResolver().openInputStream(uri)) {
+      if (inputStream == null) {
+        throw new IOException("Unable to open " + uri);
+      }
+      if (length >= 0 && length <= Integer.MAX_VALUE) {
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        int read;
+        while (offset < bytes.length && (read = inputStream.read(bytes, offset, bytes.length - offset)) != -1) {
+          offset += read;
+        }
+        if (offset == bytes.length && inputStream.read() == -1) {
+          return bytes;
+        }
+        throw new IOException("Length of " + uri + " changed while reading it");
+      }
+      try (ByteArrayOutputStream byteBuffer = new ByteArrayOutputStream()) {
+        byte[] buffer = new byte[64 * 1024];
+        int len;
+        while ((len = inputStream.read(buffer)) != -1) {
+          byteBuffer.write(buffer, 0, len);
+        }
+        return byteBuffer.toByteArray();
       }
-      return byteBuffer.toByteArray();
     }
   }
 
@@ -357,4 +431,11 @@ public class EditAttachmentActivity extends AppCompatActivity {
     finish();
     super.onBackPressed();
   }
+
+  @Override
+  protected void onDestroy() {
+    Log.i(TAG, mAttachmentCache.metrics());
+    mAttachmentCache.shutdown();
+    super.onDestroy();
+  }
 }
@@ -16,6 +16,8 @@
 
 package com.esri.arcgisruntime.sample.exporttiles;
 
+import java.io.File;
+import java.util.Locale;
 import java.util.concurrent.ExecutionException;
 
 import android.app.ProgressDialog;
@@ -31,10 +33,10 @@ import androidx.constraintlayout.widget.ConstraintLayout;
 
 import com.esri.arcgisruntime.ArcGISRuntimeEnvironment;
 import com.esri.arcgisruntime.concurrent.ListenableFuture;
-import com.esri.arcgisruntime.data.TileCache;
 import com.esri.arcgisruntime.geometry.Envelope;
 import com.esri.arcgisruntime.geometry.Point;
 import com.esri.arcgisruntime.layers.ArcGISTiledLayer;
+import com.esri.arcgisruntime.layers.ImageTiledLayer;
 import com.esri.arcgisruntime.mapping.ArcGISMap;
 import com.esri.arcgisruntime.mapping.Basemap;
 import com.esri.arcgisruntime.mapping.BasemapStyle;
@@ -56,6 +58,9 @@ public class MainActivity extends AppCompatActivity {
   private MapView mTileCachePreview;
   private ExportTileCacheJob mExportTileCacheJob;
   private ExportTileCacheTask mExportTileCacheTask;
+  private TileStore mTileStore;
+  private long mExportStartNanos;
+  private boolean mExportCancelled;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -68,6 +73,9 @@ public class MainActivity extends AppCompatActivity {
     mTileCachePreview = findViewById(R.id.previewMapView);
     mMapView = findViewById(R.id.mapView);
 
+    // exported tiles are kept between exports, so overlapping exports only download the tiles which are missing
+    mTileStore = new TileStore(new File(getFilesDir(), "tiles"));
+
     // authentication with an API key or named user is required
     // to access basemaps and other location services
     ArcGISRuntimeEnvironment.setApiKey(BuildConfig.API_KEY);
@@ -136,71 +144,135 @@ public class MainActivity extends AppCompatActivity {
 
   /**
    * Using scale defined by the main MapView and the TiledLayer and an extent defined by viewToExtent() as parameters,
-   * downloads a TileCache locally to the device.
+   * downloads the tiles which aren't already in the tile store to the device.
    */
   private void initiateDownload() {
 
     ArcGISTiledLayer tiledLayer = (ArcGISTiledLayer) mMapView.getMap().getBasemap().getBaseLayers().get(0);
     // initialize the export task
     mExportTileCacheTask = new ExportTileCacheTask(tiledLayer.getUri());
+    Envelope extent = viewToExtent();
     final ListenableFuture<ExportTileCacheParameters> parametersFuture = mExportTileCacheTask
-        .createDefaultExportTileCacheParametersAsync(viewToExtent(), mMapView.getMapScale(), mMapView.getMapScale() * 0.1);
+        .createDefaultExportTileCacheParametersAsync(extent, mMapView.getMapScale(), mMapView.getMapScale() * 0.1);
     parametersFuture.addDoneListener(() -> {
+      ExportTileCacheParameters parameters;
       try {
-        // export tile cache to directory
-        ExportTileCacheParameters parameters = parametersFuture.get();
-        mExportTileCacheJob = mExportTileCacheTask
-            .exportTileCache(parameters, getCacheDir() + "/file.tpkx");
+        parameters = parametersFuture.get();
       } catch (InterruptedException e) {
         Log.e(TAG, "TileCacheParameters interrupted: " + e.getMessage());
+        return;
       } catch (ExecutionException e) {
         Log.e(TAG, "Error generating parameters: " + e.getMessage());
+        return;
       }
-      mExportTileCacheJob.start();
-
-      createProgressDialog(mExportTileCacheJob);
-
-      mExportTileCacheJob.addJobDoneListener(() -> {
-        if (mExportTileCacheJob.getResult() != null) {
-          TileCache exportedTileCacheResult = mExportTileCacheJob.getResult();
-          showMapPreview(exportedTileCacheResult);
+      mExportStartNanos = System.nanoTime();
+      mExportCancelled = false;
+      // only export the tiles at the default levels which aren't already stored
+      mTileStore.planExport(tiledLayer.getTileInfo(), parameters.getLevelIDs(), extent, (plan, error) -> {
+        if (error != null) {
+          Log.e(TAG, "Error planning export: " + error.getMessage());
+          Toast.makeText(this, "Error planning export: " + error.getMessage(), Toast.LENGTH_LONG).show();
+          return;
+        }
+        if (plan.mLevelExports.isEmpty()) {
+          onExportFinished(plan, tiledLayer);
         } else {
+          exportLevel(plan, 0, createProgressDialog(), tiledLayer);
+        }
+      });
+    });
+  }
+
+  /**
+   * Exports the missing tiles of each level in the plan in turn, adding them to the tile store.
+   *
+   * @param plan of the levels to export
+   * @param index of the level to export next
+   * @param progressDialog showing the progress of the whole plan
+   * @param tiledLayer the tiles are exported from
+   */
+  private void exportLevel(TileStore.ExportPlan plan, int index, ProgressDialog progressDialog,
+      ArcGISTiledLayer tiledLayer) {
+    if (mExportCancelled) {
+      progressDialog.dismiss();
+      return;
+    }
+    if (index == plan.mLevelExports.size()) {
+      progressDialog.dismiss();
+      onExportFinished(plan, tiledLayer);
+      return;
+    }
+    TileStore.LevelExport levelExport = plan.mLevelExports.get(index);
+    File tilePackage = new File(getCacheDir(), "level-" + levelExport.mLevel + ".tpkx");
+    // the job won't overwrite a package left behind by an export which was interrupted
+    if (tilePackage.exists() && !tilePackage.delete()) {
+      Log.e(TAG, "Unable to delete " + tilePackage);
+    }
+    mExportTileCacheJob = mExportTileCacheTask.exportTileCache(levelExport.mParameters, tilePackage.getPath());
+    ExportTileCacheJob exportTileCacheJob = mExportTileCacheJob;
+    exportTileCacheJob.addProgressChangedListener(() -> progressDialog
+        .setProgress((index * 100 + exportTileCacheJob.getProgress()) / plan.mLevelExports.size()));
+    exportTileCacheJob.addJobDoneListener(() -> {
+      if (exportTileCacheJob.getResult() != null) {
+        mTileStore.add(tilePackage, (count, error) -> {
+          if (error != null) {
+            Log.e(TAG, "Error adding level " + levelExport.mLevel + " to the tile store: " + error.getMessage());
+          }
+          exportLevel(plan, index + 1, progressDialog, tiledLayer);
+        });
+      } else {
+        progressDialog.dismiss();
+        if (!mExportCancelled) {
           Log.e(TAG, "Tile cache job result null. File size may be too big.");
           Toast.makeText(this,
               "Tile cache job result null. File size may be too big. Try zooming in before exporting tiles",
               Toast.LENGTH_LONG).show();
         }
-      });
+      }
     });
+    exportTileCacheJob.start();
+  }
+
+  /**
+   * Reports how long the export took and how many tiles it downloaded, and shows the stored tiles.
+   */
+  private void onExportFinished(TileStore.ExportPlan plan, ArcGISTiledLayer tiledLayer) {
+    String metrics = String.format(Locale.US, "Export took %.1f s, requested %d of %d tiles. %s",
+        (System.nanoTime() - mExportStartNanos) / 1e9, plan.mMissingTileCount, plan.mTileCount,
+        mTileStore.metrics());
+    Log.i(TAG, metrics);
+    Toast.makeText(this, metrics, Toast.LENGTH_LONG).show();
+    showMapPreview(mTileStore.createLayer(tiledLayer.getTileInfo(), tiledLayer.getFullExtent()));
   }
 
   /**
    * Show progress UI elements.
    *
-   * @param exportTileCacheJob used to track progress and cancel when required
+   * @return the dialog, to update with the progress of the export
    */
-  private void createProgressDialog(ExportTileCacheJob exportTileCacheJob) {
+  private ProgressDialog createProgressDialog() {
 
     ProgressDialog progressDialog = new ProgressDialog(this);
     progressDialog.setTitle("Export Tile Cache Job");
     progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
     progressDialog.setCanceledOnTouchOutside(false);
-    progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, "Cancel",
-        (dialogInterface, i) -> exportTileCacheJob.cancelAsync());
+    progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, "Cancel", (dialogInterface, i) -> {
+      mExportCancelled = true;
+      if (mExportTileCacheJob != null) {
+        mExportTileCacheJob.cancelAsync();
+      }
+    });
     progressDialog.show();
-
-    exportTileCacheJob.addProgressChangedListener(() -> progressDialog.setProgress(exportTileCacheJob.getProgress()));
-    exportTileCacheJob.addJobDoneListener(progressDialog::dismiss);
+    return progressDialog;
   }
 
   /**
    * Show tile cache preview window including MapView.
    *
-   * @param result Takes the TileCache from the ExportTileCacheJob.
+   * @param tiledLayer displaying the tiles in the tile store.
    */
-  private void showMapPreview(TileCache result) {
-    ArcGISTiledLayer newTiledLayer = new ArcGISTiledLayer(result);
-    ArcGISMap map = new ArcGISMap(new Basemap(newTiledLayer));
+  private void showMapPreview(ImageTiledLayer tiledLayer) {
+    ArcGISMap map = new ArcGISMap(new Basemap(tiledLayer));
     mTileCachePreview.setMap(map);
     mTileCachePreview.setViewpoint(mMapView.getCurrentViewpoint(Viewpoint.Type.CENTER_AND_SCALE));
     mTileCachePreview.setVisibility(View.VISIBLE);
@@ -225,6 +297,12 @@ public class MainActivity extends AppCompatActivity {
 
   @Override
   protected void onDestroy() {
+    // stop the export, so no more levels are exported or added to the tile store
+    mExportCancelled = true;
+    if (mExportTileCacheJob != null) {
+      mExportTileCacheJob.cancelAsync();
+    }
+    mTileStore.shutdown();
     mMapView.dispose();
     mTileCachePreview.dispose();
     super.onDestroy();
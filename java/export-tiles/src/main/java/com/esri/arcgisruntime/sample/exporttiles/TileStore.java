@@ -0,0 +1,548 @@
+/* Copyright 2017 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.exporttiles;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.esri.arcgisruntime.arcgisservices.LevelOfDetail;
+import com.esri.arcgisruntime.arcgisservices.TileInfo;
+import com.esri.arcgisruntime.data.TileKey;
+import com.esri.arcgisruntime.geometry.Envelope;
+import com.esri.arcgisruntime.geometry.GeometryEngine;
+import com.esri.arcgisruntime.geometry.Part;
+import com.esri.arcgisruntime.geometry.PartCollection;
+import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.geometry.PointCollection;
+import com.esri.arcgisruntime.geometry.Polygon;
+import com.esri.arcgisruntime.geometry.SpatialReference;
+import com.esri.arcgisruntime.layers.ImageTiledLayer;
+import com.esri.arcgisruntime.tasks.tilecache.ExportTileCacheParameters;
+
+/**
+ * Keeps exported tiles in a content addressed store, so overlapping exports only download the tiles which are missing.
+ *
+ * Each tile's image is stored once in a file named by the SHA-256 hash of its bytes, so identical tiles, such as
+ * ocean or empty tiles, share a single file across levels and exports. An index maps each (level, row, column) key to
+ * the hash of its image, and is appended to as tiles are added. Before an export, the tiles covering the extent are
+ * checked against the index and only the missing ones are requested, one export per level with an area of interest
+ * made of the rectangles of missing tiles. The exported tile package is unpacked into the store and deleted, and the
+ * stored tiles are displayed by a layer which reads them straight from the store.
+ *
+ * Planning and unpacking run on a background thread and results are delivered on the UI thread.
+ */
+final class TileStore {
+
+  /**
+   * Receives the result of a request on the UI thread.
+   */
+  interface Callback<T> {
+
+    /**
+     * @param result of the request, or null if it failed
+     * @param error the request failed with, or null if it succeeded
+     */
+    void onResult(T result, Exception error);
+  }
+
+  /**
+   * The tiles of one level which are missing from the store, and the parameters to export them with.
+   */
+  static final class LevelExport {
+
+    final int mLevel;
+    final ExportTileCacheParameters mParameters;
+    private final int mTileCount;
+
+    private LevelExport(int level, ExportTileCacheParameters parameters, int tileCount) {
+      mLevel = level;
+      mParameters = parameters;
+      mTileCount = tileCount;
+    }
+
+    int getTileCount() {
+      return mTileCount;
+    }
+  }
+
+  /**
+   * The tiles covering an extent which need to be exported.
+   */
+  static final class ExportPlan {
+
+    final List<LevelExport> mLevelExports;
+    final int mTileCount;
+    final int mMissingTileCount;
+
+    private ExportPlan(List<LevelExport> levelExports, int tileCount, int missingTileCount) {
+      mLevelExports = levelExports;
+      mTileCount = tileCount;
+      mMissingTileCount = missingTileCount;
+    }
+  }
+
+  private static final String TAG = TileStore.class.getSimpleName();
+  // length of the hex SHA-256 hashes images are stored by
+  private static final int HASH_LENGTH = 64;
+  private static final int BUNDLE_SIZE = 128;
+  private static final int BUNDLE_HEADER_SIZE = 64;
+  private static final int BUNDLE_INDEX_ENTRY_SIZE = 8;
+  private static final long BUNDLE_OFFSET_MASK = (1L << 40) - 1;
+  private static final Pattern BUNDLE_PATH = Pattern
+      .compile("(?:^|/)L(\\d+)/R([0-9a-fA-F]+)C([0-9a-fA-F]+)\\.bundle$");
+  // fraction of a tile the missing rectangles are shrunk by, so they don't select neighbouring tiles they touch
+  private static final double EDGE_INSET = 0.01;
+
+  private final File mObjectDirectory;
+  private final File mIndexFile;
+  private final Map<Long, String> mIndex = new ConcurrentHashMap<>();
+  private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+  private volatile long mBytesDownloaded;
+  private volatile long mDiskBytes;
+  private volatile int mTilesAdded;
+  private volatile int mDuplicateTiles;
+  // set once the store is shut down, after which no more work is queued and no more callbacks are delivered
+  private volatile boolean mShutdown;
+
+  /**
+   * Opens the store in the given directory, reading its index on the store's thread.
+   */
+  TileStore(File directory) {
+    mObjectDirectory = new File(directory, "objects");
+    mIndexFile = new File(directory, "index.txt");
+    execute(this::load);
+  }
+
+  /**
+   * Works out which of the tiles covering the extent at the given levels are missing from the store.
+   */
+  void planExport(TileInfo tileInfo, List<Integer> levelIds, Envelope extent, Callback<ExportPlan> callback) {
+    execute(() -> {
+      try {
+        ExportPlan plan = plan(tileInfo, levelIds, extent);
+        post(() -> callback.onResult(plan, null));
+      } catch (Exception e) {
+        post(() -> callback.onResult(null, e));
+      }
+    });
+  }
+
+  /**
+   * Unpacks the tiles of an exported tile package into the store and deletes the package.
+   *
+   * @param tilePackage exported .tpkx file
+   * @param callback receives the number of tiles added
+   */
+  void add(File tilePackage, Callback<Integer> callback) {
+    execute(() -> {
+      try {
+        int count = unpack(tilePackage);
+        post(() -> callback.onResult(count, null));
+      } catch (Exception e) {
+        post(() -> callback.onResult(null, e));
+      } finally {
+        if (tilePackage.exists() && !tilePackage.delete()) {
+          tilePackage.deleteOnExit();
+        }
+      }
+    });
+  }
+
+  /**
+   * @return a layer displaying the stored tiles, read from the store as they are drawn
+   */
+  ImageTiledLayer createLayer(TileInfo tileInfo, Envelope fullExtent) {
+    return new StoredTiledLayer(this, tileInfo, fullExtent);
+  }
+
+  /**
+   * Stops the store's thread. Work requested afterwards is dropped and callbacks of work already requested aren't
+   * called. Stored tiles stay on disk for the next time the store is opened.
+   */
+  void shutdown() {
+    mShutdown = true;
+    mExecutor.shutdownNow();
+  }
+
+  /**
+   * Runs the task on the store's thread, unless the store has been shut down.
+   */
+  private void execute(Runnable task) {
+    if (!mShutdown) {
+      mExecutor.execute(task);
+    }
+  }
+
+  /**
+   * Runs the callback on the UI thread, unless the store has been shut down by the time it is delivered.
+   */
+  private void post(Runnable callback) {
+    mHandler.post(() -> {
+      if (!mShutdown) {
+        callback.run();
+      }
+    });
+  }
+
+  /**
+   * @return a summary of the bytes downloaded, the tiles stored and the disk they use
+   */
+  String metrics() {
+    int keyCount = mIndex.size();
+    return String.format(Locale.US,
+        "Tile store: downloaded %.1f MB, %d tiles indexed, %d added (%d duplicates shared), disk %.1f MB",
+        mBytesDownloaded / (1024.0 * 1024.0), keyCount, mTilesAdded, mDuplicateTiles,
+        (mDiskBytes + mIndexFile.length()) / (1024.0 * 1024.0));
+  }
+
+  /**
+   * @return the image of the tile, or null if it isn't stored
+   */
+  private byte[] read(int level, int row, int column) {
+    String hash = mIndex.get(key(level, row, column));
+    if (hash == null) {
+      return null;
+    }
+    File file = objectFile(hash);
+    byte[] bytes = new byte[(int) file.length()];
+    try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+      inputStream.readFully(bytes);
+      return bytes;
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to read tile " + level + "/" + row + "/" + column + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Reads the index, letting later lines for a key replace earlier ones, and adds up the size of the stored images.
+   * Lines which don't name a stored image are skipped, so their tiles are requested again.
+   */
+  private void load() {
+    if (mIndexFile.exists()) {
+      try (BufferedReader reader = new BufferedReader(new FileReader(mIndexFile))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.split(" ");
+          if (fields.length == 4 && fields[3].length() == HASH_LENGTH) {
+            mIndex.put(key(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2])),
+                fields[3]);
+          }
+        }
+      } catch (IOException | NumberFormatException e) {
+        Log.e(TAG, "Unable to read tile index: " + e.getMessage());
+      }
+    }
+    long diskBytes = 0;
+    File[] directories = mObjectDirectory.listFiles();
+    if (directories != null) {
+      for (File directory : directories) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+          for (File file : files) {
+            diskBytes += file.length();
+          }
+        }
+      }
+    }
+    mDiskBytes = diskBytes;
+  }
+
+  private ExportPlan plan(TileInfo tileInfo, List<Integer> levelIds, Envelope extent) {
+    SpatialReference spatialReference = tileInfo.getSpatialReference();
+    Envelope tileExtent = GeometryEngine.project(extent, spatialReference).getExtent();
+    Point origin = tileInfo.getOrigin();
+    List<LevelExport> levelExports = new ArrayList<>();
+    int tileCount = 0;
+    int missingTileCount = 0;
+    for (LevelOfDetail levelOfDetail : tileInfo.getLevelsOfDetail()) {
+      int level = levelOfDetail.getLevel();
+      if (!levelIds.contains(level)) {
+        continue;
+      }
+      double tileWidth = tileInfo.getTileWidth() * levelOfDetail.getResolution();
+      double tileHeight = tileInfo.getTileHeight() * levelOfDetail.getResolution();
+      int minColumn = Math.max(0, (int) Math.floor((tileExtent.getXMin() - origin.getX()) / tileWidth));
+      int maxColumn = (int) Math.floor((tileExtent.getXMax() - origin.getX()) / tileWidth);
+      int minRow = Math.max(0, (int) Math.floor((origin.getY() - tileExtent.getYMax()) / tileHeight));
+      int maxRow = (int) Math.floor((origin.getY() - tileExtent.getYMin()) / tileHeight);
+
+      if (maxColumn < minColumn || maxRow < minRow) {
+        continue;
+      }
+      tileCount += (maxRow - minRow + 1) * (maxColumn - minColumn + 1);
+
+      // cover the missing tiles with rectangles, extending a row's runs of missing tiles down through the rows below
+      // with the same runs, so a pan which overlaps the last export needs only a few rectangles
+      int levelMissingCount = 0;
+      List<int[]> rectangles = new ArrayList<>();
+      List<int[]> openRectangles = new ArrayList<>();
+      for (int row = minRow; row <= maxRow; row++) {
+        List<int[]> nextOpenRectangles = new ArrayList<>();
+        int column = minColumn;
+        while (column <= maxColumn) {
+          if (mIndex.containsKey(key(level, row, column))) {
+            column++;
+            continue;
+          }
+          int runStart = column;
+          while (column <= maxColumn && !mIndex.containsKey(key(level, row, column))) {
+            levelMissingCount++;
+            column++;
+          }
+          int runEnd = column - 1;
+          int[] rectangle = null;
+          for (int[] open : openRectangles) {
+            if (open[0] == runStart && open[1] == runEnd) {
+              rectangle = open;
+              break;
+            }
+          }
+          if (rectangle == null) {
+            rectangle = new int[] { runStart, runEnd, row, row };
+            rectangles.add(rectangle);
+          } else {
+            rectangle[3] = row;
+          }
+          nextOpenRectangles.add(rectangle);
+        }
+        openRectangles = nextOpenRectangles;
+      }
+      if (levelMissingCount == 0) {
+        continue;
+      }
+      missingTileCount += levelMissingCount;
+
+      PartCollection parts = new PartCollection(spatialReference);
+      for (int[] rectangle : rectangles) {
+        double xMin = origin.getX() + (rectangle[0] + EDGE_INSET) * tileWidth;
+        double xMax = origin.getX() + (rectangle[1] + 1 - EDGE_INSET) * tileWidth;
+        double yMax = origin.getY() - (rectangle[2] + EDGE_INSET) * tileHeight;
+        double yMin = origin.getY() - (rectangle[3] + 1 - EDGE_INSET) * tileHeight;
+        PointCollection points = new PointCollection(spatialReference);
+        points.add(new Point(xMin, yMax, spatialReference));
+        points.add(new Point(xMax, yMax, spatialReference));
+        points.add(new Point(xMax, yMin, spatialReference));
+        points.add(new Point(xMin, yMin, spatialReference));
+        parts.add(new Part(points));
+      }
+      ExportTileCacheParameters parameters = new ExportTileCacheParameters();
+      parameters.getLevelIDs().add(level);
+      parameters.setAreaOfInterest(new Polygon(parts));
+      levelExports.add(new LevelExport(level, parameters, levelMissingCount));
+    }
+    return new ExportPlan(levelExports, tileCount, missingTileCount);
+  }
+
+  /**
+   * Reads every tile out of the package's compact cache bundles and adds it to the store. Only the tiles the package
+   * contains are recorded, so requested tiles it is missing, such as those left out of an export which stopped early,
+   * are requested again by the next export which covers them.
+   */
+  private int unpack(File tilePackage) throws IOException, NoSuchAlgorithmException {
+    mBytesDownloaded += tilePackage.length();
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    int count = 0;
+    if (!mIndexFile.getParentFile().exists() && !mIndexFile.getParentFile().mkdirs()) {
+      throw new IOException("Unable to create " + mIndexFile.getParentFile());
+    }
+    try (ZipFile zipFile = new ZipFile(tilePackage);
+         Writer indexWriter = new BufferedWriter(new FileWriter(mIndexFile, true))) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        Matcher matcher = BUNDLE_PATH.matcher(entry.getName());
+        if (!matcher.find()) {
+          continue;
+        }
+        int level = Integer.parseInt(matcher.group(1));
+        int bundleRow = Integer.parseInt(matcher.group(2), 16);
+        int bundleColumn = Integer.parseInt(matcher.group(3), 16);
+        try (InputStream inputStream = zipFile.getInputStream(entry)) {
+          count += unpackBundle(new DataInputStream(inputStream), level, bundleRow, bundleColumn, digest,
+              indexWriter);
+        }
+      }
+    }
+    mTilesAdded += count;
+    return count;
+  }
+
+  /**
+   * Reads a compact cache V2 bundle, which holds a 128 by 128 block of tiles: a 64 byte header, then an 8 byte entry
+   * per tile with the tile's offset in the low 5 bytes and its size in the high 3 bytes, then the tiles themselves.
+   * The tiles are read in offset order so the bundle is only streamed through once.
+   */
+  private int unpackBundle(DataInputStream inputStream, int level, int bundleRow, int bundleColumn,
+      MessageDigest digest, Writer indexWriter) throws IOException {
+    byte[] header = new byte[BUNDLE_HEADER_SIZE + BUNDLE_SIZE * BUNDLE_SIZE * BUNDLE_INDEX_ENTRY_SIZE];
+    inputStream.readFully(header);
+    ByteBuffer index = ByteBuffer.wrap(header, BUNDLE_HEADER_SIZE, header.length - BUNDLE_HEADER_SIZE)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    // each tile's offset, size and position in the bundle
+    List<long[]> tiles = new ArrayList<>();
+    for (int i = 0; i < BUNDLE_SIZE * BUNDLE_SIZE; i++) {
+      long entry = index.getLong();
+      long size = entry >>> 40;
+      if (size > 0) {
+        tiles.add(new long[] { entry & BUNDLE_OFFSET_MASK, size, i });
+      }
+    }
+    long[][] sorted = tiles.toArray(new long[0][]);
+    Arrays.sort(sorted, (a, b) -> Long.compare(a[0], b[0]));
+
+    long position = header.length;
+    int count = 0;
+    for (long[] tile : sorted) {
+      long skip = tile[0] - position;
+      if (skip < 0) {
+        // tiles never overlap, so this bundle is corrupt
+        throw new IOException("Invalid tile offset in bundle L" + level + " R" + bundleRow + " C" + bundleColumn);
+      }
+      while (skip > 0) {
+        long skipped = inputStream.skip(skip);
+        if (skipped <= 0) {
+          throw new IOException("Truncated bundle L" + level + " R" + bundleRow + " C" + bundleColumn);
+        }
+        skip -= skipped;
+      }
+      byte[] bytes = new byte[(int) tile[1]];
+      inputStream.readFully(bytes);
+      position = tile[0] + bytes.length;
+
+      int row = bundleRow + (int) tile[2] / BUNDLE_SIZE;
+      int column = bundleColumn + (int) tile[2] % BUNDLE_SIZE;
+      String hash = store(bytes, digest);
+      long key = key(level, row, column);
+      if (!hash.equals(mIndex.put(key, hash))) {
+        writeIndexLine(indexWriter, key, hash);
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Writes the image to the file named by its hash, unless an identical image is already stored.
+   *
+   * @return the image's hash
+   */
+  private String store(byte[] bytes, MessageDigest digest) throws IOException {
+    byte[] hashBytes = digest.digest(bytes);
+    StringBuilder hash = new StringBuilder(hashBytes.length * 2);
+    for (byte b : hashBytes) {
+      hash.append(String.format(Locale.US, "%02x", b));
+    }
+    String name = hash.toString();
+    File file = objectFile(name);
+    if (file.exists()) {
+      mDuplicateTiles++;
+      return name;
+    }
+    File directory = file.getParentFile();
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+    // write to a temporary file first, so an interrupted write never looks like a stored tile
+    File temporary = new File(directory, file.getName() + ".part");
+    try (OutputStream outputStream = new FileOutputStream(temporary)) {
+      outputStream.write(bytes);
+    }
+    if (!temporary.renameTo(file)) {
+      temporary.delete();
+      throw new IOException("Unable to write " + file);
+    }
+    mDiskBytes += bytes.length;
+    return name;
+  }
+
+  private File objectFile(String hash) {
+    // spread the images over subdirectories so no one directory holds every tile
+    return new File(new File(mObjectDirectory, hash.substring(0, 2)), hash.substring(2));
+  }
+
+  private static void writeIndexLine(Writer writer, long key, String hash) throws IOException {
+    writer.write(level(key) + " " + row(key) + " " + column(key) + " " + hash + "\n");
+  }
+
+  private static long key(int level, int row, int column) {
+    return ((long) level << 56) | ((long) row << 28) | column;
+  }
+
+  private static int level(long key) {
+    return (int) (key >>> 56);
+  }
+
+  private static int row(long key) {
+    return (int) ((key >>> 28) & ((1 << 28) - 1));
+  }
+
+  private static int column(long key) {
+    return (int) (key & ((1 << 28) - 1));
+  }
+
+  /**
+   * Displays the tiles in a store, reading each tile's image from its file when the layer asks for it.
+   */
+  private static final class StoredTiledLayer extends ImageTiledLayer {
+
+    private final TileStore mStore;
+
+    StoredTiledLayer(TileStore store, TileInfo tileInfo, Envelope fullExtent) {
+      super(tileInfo, fullExtent);
+      mStore = store;
+    }
+
+    @Override
+    protected byte[] getTile(TileKey tileKey) {
+      return mStore.read(tileKey.getLevel(), tileKey.getRow(), tileKey.getColumn());
+    }
+  }
+}
@@ -42,6 +42,7 @@ import com.esri.arcgisruntime.geometry.Envelope;
 import com.esri.arcgisruntime.geometry.Geometry;
 import com.esri.arcgisruntime.geometry.Multipoint;
 import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.geometry.SpatialReferences;
 import com.esri.arcgisruntime.loadable.LoadStatus;
 import com.esri.arcgisruntime.mapping.ArcGISMap;
 import com.esri.arcgisruntime.mapping.BasemapStyle;
@@ -50,11 +51,11 @@ import com.esri.arcgisruntime.mapping.view.Callout;
 import com.esri.arcgisruntime.mapping.view.DefaultMapViewOnTouchListener;
 import com.esri.arcgisruntime.mapping.view.Graphic;
 import com.esri.arcgisruntime.mapping.view.GraphicsOverlay;
-import com.esri.arcgisruntime.mapping.view.IdentifyGraphicsOverlayResult;
 import com.esri.arcgisruntime.mapping.view.LocationDisplay;
 import com.esri.arcgisruntime.mapping.view.MapView;
 import com.esri.arcgisruntime.mapping.view.WrapAroundMode;
 import com.esri.arcgisruntime.symbology.PictureMarkerSymbol;
+import com.esri.arcgisruntime.symbology.SimpleRenderer;
 import com.esri.arcgisruntime.tasks.geocode.GeocodeParameters;
 import com.esri.arcgisruntime.tasks.geocode.GeocodeResult;
 import com.esri.arcgisruntime.tasks.geocode.LocatorTask;
@@ -73,6 +74,13 @@ public class MainActivity extends AppCompatActivity {
       Manifest.permission.ACCESS_COARSE_LOCATION };
 
   private static final String COLUMN_NAME_ADDRESS = "address";
+  // how long typing must pause before suggestions are fetched, and how many suggestion lists to cache
+  private static final long SUGGEST_DEBOUNCE_MILLIS = 250;
+  private static final int SUGGEST_CACHE_SIZE = 64;
+  // size of the graphics index's grid cells in meters, and the largest distance a pin is drawn from its location in
+  // density independent pixels
+  private static final double INDEX_CELL_SIZE = 500;
+  private static final double PIN_SYMBOL_RADIUS = 72;
   private final String[] mColumnNames = { BaseColumns._ID, COLUMN_NAME_ADDRESS };
 
   private SearchView mPoiSearchView;
@@ -90,9 +98,12 @@ public class MainActivity extends AppCompatActivity {
   private GeocodeParameters mPoiGeocodeParameters;
   private SuggestParameters mProximitySuggestParameters;
   private GeocodeParameters mProximityGeocodeParameters;
+  private SuggestPipeline mPoiSuggestPipeline;
+  private SuggestPipeline mProximitySuggestPipeline;
   private PictureMarkerSymbol mPinSourceSymbol;
   private Geometry mCurrentExtentGeometry;
   private Callout mCallout;
+  private GraphicsIndex mGraphicsIndex;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -180,6 +191,12 @@ public class MainActivity extends AppCompatActivity {
     });
     // define the graphics overlay
     mGraphicsOverlay = new GraphicsOverlay();
+    // draw all of the result graphics with the one pin symbol
+    mGraphicsOverlay.setRenderer(new SimpleRenderer(mPinSourceSymbol));
+    // index the graphics overlay's graphics in the map's spatial reference to identify taps without the runtime
+    // where possible
+    mGraphicsIndex = new GraphicsIndex(mGraphicsOverlay, SpatialReferences.getWebMercator(), INDEX_CELL_SIZE,
+        PIN_SYMBOL_RADIUS);
 
     setupPoi();
     setupProximity();
@@ -196,10 +213,42 @@ public class MainActivity extends AppCompatActivity {
     mPoiGeocodeParameters = new GeocodeParameters();
     // get all attributes
     mPoiGeocodeParameters.getResultAttributeNames().add("*");
+    // define SimpleCursorAdapter once, each set of suggestions swaps in a new cursor
+    final SimpleCursorAdapter suggestionAdapter = createSuggestionAdapter();
+    mPoiSearchView.setSuggestionsAdapter(suggestionAdapter);
+    // handle a poi_suggestion being chosen
+    mPoiSearchView.setOnSuggestionListener(new SearchView.OnSuggestionListener() {
+      @Override public boolean onSuggestionSelect(int position) {
+        return false;
+      }
+
+      @Override public boolean onSuggestionClick(int position) {
+        // get the selected row
+        MatrixCursor selectedRow = (MatrixCursor) suggestionAdapter.getItem(position);
+        // get the row's index
+        int selectedCursorIndex = selectedRow.getColumnIndex(COLUMN_NAME_ADDRESS);
+        // get the string from the row at index
+        mPoiAddress = selectedRow.getString(selectedCursorIndex);
+        mPoiSearchView.setQuery(mPoiAddress, true);
+        return true;
+      }
+    });
+    // debounce, cancel and cache suggestion requests as the user types
+    mPoiSuggestPipeline = new SuggestPipeline(mLocatorTask, mPoiSuggestParameters, SUGGEST_DEBOUNCE_MILLIS,
+        SUGGEST_CACHE_SIZE, (text, suggestResults) -> {
+      if (!suggestResults.isEmpty()) {
+        suggestionAdapter.changeCursor(createSuggestionCursor(suggestResults));
+      } else {
+        mPoiAddress = text;
+      }
+    });
     mPoiSearchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
 
       @Override
       public boolean onQueryTextSubmit(String address) {
+        // no need for suggestions once the query is submitted
+        mPoiSuggestPipeline.cancel();
+        logSuggestStatistics("POI", mPoiSuggestPipeline);
         // if proximity SearchView text box is empty, use the device location
         if (mProximitySearchViewEmpty) {
           mPreferredSearchProximity = mLocationDisplay.getMapLocation();
@@ -220,53 +269,9 @@ public class MainActivity extends AppCompatActivity {
         // as long as newText isn't empty, get suggestions from the locatorTask
         if (!newText.equals("")) {
           mPoiSuggestParameters.setSearchArea(mCurrentExtentGeometry);
-          final ListenableFuture<List<SuggestResult>> suggestionsFuture = mLocatorTask
-              .suggestAsync(newText, mPoiSuggestParameters);
-          suggestionsFuture.addDoneListener(new Runnable() {
-
-            @Override public void run() {
-              try {
-                // get the results of the async operation
-                List<SuggestResult> suggestResults = suggestionsFuture.get();
-
-                if (!suggestResults.isEmpty()) {
-                  MatrixCursor suggestionsCursor = new MatrixCursor(mColumnNames);
-                  int key = 0;
-                  // add each poi_suggestion result to a new row
-                  for (SuggestResult result : suggestResults) {
-                    suggestionsCursor.addRow(new Object[] { key++, result.getLabel() });
-                  }
-                  // define SimpleCursorAdapter
-                  String[] cols = { COLUMN_NAME_ADDRESS };
-                  int[] to = { R.id.suggestion_address };
-                  final SimpleCursorAdapter suggestionAdapter = new SimpleCursorAdapter(MainActivity.this,
-                      R.layout.find_place_suggestion, suggestionsCursor, cols, to, 0);
-                  mPoiSearchView.setSuggestionsAdapter(suggestionAdapter);
-                  // handle a poi_suggestion being chosen
-                  mPoiSearchView.setOnSuggestionListener(new SearchView.OnSuggestionListener() {
-                    @Override public boolean onSuggestionSelect(int position) {
-                      return false;
-                    }
-
-                    @Override public boolean onSuggestionClick(int position) {
-                      // get the selected row
-                      MatrixCursor selectedRow = (MatrixCursor) suggestionAdapter.getItem(position);
-                      // get the row's index
-                      int selectedCursorIndex = selectedRow.getColumnIndex(COLUMN_NAME_ADDRESS);
-                      // get the string from the row at index
-                      mPoiAddress = selectedRow.getString(selectedCursorIndex);
-                      mPoiSearchView.setQuery(mPoiAddress, true);
-                      return true;
-                    }
-                  });
-                } else {
-                  mPoiAddress = newText;
-                }
-              } catch (Exception e) {
-                Log.e(TAG, "Geocode suggestion error: " + e.getMessage());
-              }
-            }
-          });
+          mPoiSuggestPipeline.suggest(newText);
+        } else {
+          mPoiSuggestPipeline.cancel();
         }
         return true;
       }
@@ -283,8 +288,67 @@ public class MainActivity extends AppCompatActivity {
     mProximityGeocodeParameters = new GeocodeParameters();
     // get all attributes
     mProximityGeocodeParameters.getResultAttributeNames().add("*");
+    // define SimpleCursorAdapter once, each set of suggestions swaps in a new cursor
+    final SimpleCursorAdapter suggestionAdapter = createSuggestionAdapter();
+    mProximitySearchView.setSuggestionsAdapter(suggestionAdapter);
+    mProximitySearchView.setOnSuggestionListener(new SearchView.OnSuggestionListener() {
+      @Override public boolean onSuggestionSelect(int position) {
+        return false;
+      }
+
+      @Override public boolean onSuggestionClick(int position) {
+        // get the selected row
+        MatrixCursor selectedRow = (MatrixCursor) suggestionAdapter.getItem(position);
+        // get the row's index
+        int selectedCursorIndex = selectedRow.getColumnIndex(COLUMN_NAME_ADDRESS);
+        // get the string from the row at index
+        final String address = selectedRow.getString(selectedCursorIndex);
+        mLocatorTask.addDoneLoadingListener(() -> {
+          if (mLocatorTask.getLoadStatus() == LoadStatus.LOADED) {
+            // geocode the selected address to get location of address
+            final ListenableFuture<List<GeocodeResult>> geocodeFuture = mLocatorTask
+                .geocodeAsync(address, mProximityGeocodeParameters);
+            geocodeFuture.addDoneListener(() -> {
+              try {
+                // Get the results of the async operation
+                List<GeocodeResult> geocodeResults = geocodeFuture.get();
+                if (!geocodeResults.isEmpty()) {
+                  // use geocodeResult to focus search area
+                  GeocodeResult geocodeResult = geocodeResults.get(0);
+                  // update preferred search area to the geocode result
+                  mPreferredSearchProximity = geocodeResult.getDisplayLocation();
+                  mPoiGeocodeParameters.setSearchArea(mPreferredSearchProximity);
+                  // set the address string to the SearchView, but don't submit as a query
+                  mProximitySearchView.setQuery(address, false);
+                  // call POI search query
+                  mPoiSearchView.setQuery(mPoiAddress, true);
+                  // clear focus from search views
+                  mProximitySearchView.clearFocus();
+                  mPoiSearchView.clearFocus();
+                } else {
+                  Toast.makeText(getApplicationContext(),
+                      getString(R.string.location_not_found) + address, Toast.LENGTH_LONG).show();
+                }
+              } catch (InterruptedException | ExecutionException e) {
+                Log.e(TAG, "Geocode error: " + e.getMessage());
+                Toast.makeText(getApplicationContext(), getString(R.string.geo_locate_error),
+                    Toast.LENGTH_LONG).show();
+              }
+            });
+          }
+        });
+        return true;
+      }
+    });
+    // debounce, cancel and cache suggestion requests as the user types
+    mProximitySuggestPipeline = new SuggestPipeline(mLocatorTask, mProximitySuggestParameters,
+        SUGGEST_DEBOUNCE_MILLIS, SUGGEST_CACHE_SIZE,
+        (text, suggestResults) -> suggestionAdapter.changeCursor(createSuggestionCursor(suggestResults)));
     mProximitySearchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
       @Override public boolean onQueryTextSubmit(String address) {
+        // no need for suggestions once the query is submitted
+        mProximitySuggestPipeline.cancel();
+        logSuggestStatistics("Proximity", mProximitySuggestPipeline);
         geoCodeTypedAddress(address);
         // clear focus from search views
         mPoiSearchView.clearFocus();
@@ -296,86 +360,45 @@ public class MainActivity extends AppCompatActivity {
         // as long as newText isn't empty, get suggestions from the locatorTask
         if (!newText.equals("")) {
           mProximitySearchViewEmpty = false;
-          final ListenableFuture<List<SuggestResult>> suggestionsFuture = mLocatorTask
-              .suggestAsync(newText, mProximitySuggestParameters);
-          suggestionsFuture.addDoneListener(() -> {
-            try {
-              // get the list of suggestions
-              List<SuggestResult> suggestResults = suggestionsFuture.get();
-              MatrixCursor suggestionsCursor = new MatrixCursor(mColumnNames);
-              int key = 0;
-              // add each SuggestResult to a new row
-              for (SuggestResult result : suggestResults) {
-                suggestionsCursor.addRow(new Object[] { key++, result.getLabel() });
-              }
-              // define SimpleCursorAdapter
-              String[] cols = { COLUMN_NAME_ADDRESS };
-              int[] to = { R.id.suggestion_address };
-              final SimpleCursorAdapter suggestionAdapter = new SimpleCursorAdapter(MainActivity.this,
-                  R.layout.find_place_suggestion, suggestionsCursor, cols, to, 0);
-              mProximitySearchView.setSuggestionsAdapter(suggestionAdapter);
-              mProximitySearchView.setOnSuggestionListener(new SearchView.OnSuggestionListener() {
-                @Override public boolean onSuggestionSelect(int position) {
-                  return false;
-                }
-
-                @Override public boolean onSuggestionClick(int position) {
-                  // get the selected row
-                  MatrixCursor selectedRow = (MatrixCursor) suggestionAdapter.getItem(position);
-                  // get the row's index
-                  int selectedCursorIndex = selectedRow.getColumnIndex(COLUMN_NAME_ADDRESS);
-                  // get the string from the row at index
-                  final String address = selectedRow.getString(selectedCursorIndex);
-                  mLocatorTask.addDoneLoadingListener(() -> {
-                    if (mLocatorTask.getLoadStatus() == LoadStatus.LOADED) {
-                      // geocode the selected address to get location of address
-                      final ListenableFuture<List<GeocodeResult>> geocodeFuture = mLocatorTask
-                          .geocodeAsync(address, mProximityGeocodeParameters);
-                      geocodeFuture.addDoneListener(() -> {
-                        try {
-                          // Get the results of the async operation
-                          List<GeocodeResult> geocodeResults = geocodeFuture.get();
-                          if (!geocodeResults.isEmpty()) {
-                            // use geocodeResult to focus search area
-                            GeocodeResult geocodeResult = geocodeResults.get(0);
-                            // update preferred search area to the geocode result
-                            mPreferredSearchProximity = geocodeResult.getDisplayLocation();
-                            mPoiGeocodeParameters.setSearchArea(mPreferredSearchProximity);
-                            // set the address string to the SearchView, but don't submit as a query
-                            mProximitySearchView.setQuery(address, false);
-                            // call POI search query
-                            mPoiSearchView.setQuery(mPoiAddress, true);
-                            // clear focus from search views
-                            mProximitySearchView.clearFocus();
-                            mPoiSearchView.clearFocus();
-                          } else {
-                            Toast.makeText(getApplicationContext(),
-                                getString(R.string.location_not_found) + address, Toast.LENGTH_LONG).show();
-                          }
-                        } catch (InterruptedException | ExecutionException e) {
-                          Log.e(TAG, "Geocode error: " + e.getMessage());
-                          Toast.makeText(getApplicationContext(), getString(R.string.geo_locate_error),
-                              Toast.LENGTH_LONG).show();
-                        }
-                      });
-                    }
-                  });
-                  return true;
-                }
-              });
-            } catch (Exception e) {
-              Log.e(TAG, "Geocode suggestion error: " + e.getMessage());
-            }
-          });
+          mProximitySuggestPipeline.suggest(newText);
           // if search view is empty, set flag
         } else {
           mProximitySearchViewEmpty = true;
+          mProximitySuggestPipeline.cancel();
         }
         return true;
       }
     });
   }
 
+  /**
+   * Creates an adapter which shows the address column of a suggestion cursor.
+   */
+  private SimpleCursorAdapter createSuggestionAdapter() {
+    String[] cols = { COLUMN_NAME_ADDRESS };
+    int[] to = { R.id.suggestion_address };
+    return new SimpleCursorAdapter(MainActivity.this, R.layout.find_place_suggestion, null, cols, to, 0);
+  }
+
+  /**
+   * Creates a cursor with a row for each suggestion's label.
+   */
+  private MatrixCursor createSuggestionCursor(List<SuggestResult> suggestResults) {
+    MatrixCursor suggestionsCursor = new MatrixCursor(mColumnNames, suggestResults.size());
+    int key = 0;
+    // add each SuggestResult to a new row
+    for (SuggestResult result : suggestResults) {
+      suggestionsCursor.addRow(new Object[] { key++, result.getLabel() });
+    }
+    return suggestionsCursor;
+  }
+
+  private void logSuggestStatistics(String searchView, SuggestPipeline suggestPipeline) {
+    Log.i(TAG, String.format("%s suggestions: %d requests, %.0f%% cache hit rate, p95 latency %d ms", searchView,
+        suggestPipeline.getRequestCount(), suggestPipeline.getCacheHitRate() * 100,
+        suggestPipeline.getP95LatencyMillis()));
+  }
+
   /**
    * Performs a search for the POI listed in the SearchView, using the MapView's current extent to inform the search.
    */
@@ -401,12 +424,8 @@ public class MainActivity extends AppCompatActivity {
     // convert to map point
     final Point mapPoint = mMapView.screenToLocation(screenPoint);
     // from the graphics overlay, get graphics near the tapped location
-    final ListenableFuture<IdentifyGraphicsOverlayResult> identifyResultsFuture = mMapView
-        .identifyGraphicsOverlayAsync(mGraphicsOverlay, screenPoint, 10, false);
-    identifyResultsFuture.addDoneListener(() -> {
-      try {
-        IdentifyGraphicsOverlayResult identifyGraphicsOverlayResult = identifyResultsFuture.get();
-        List<Graphic> graphics = identifyGraphicsOverlayResult.getGraphics();
+    mGraphicsIndex.identify(mMapView, screenPoint, 10, 1, new GraphicsIndex.Listener() {
+      @Override public void onIdentified(List<Graphic> graphics) {
         // if a graphic has been identified
         if (!graphics.isEmpty()) {
           //get the first graphic identified
@@ -427,7 +446,9 @@ public class MainActivity extends AppCompatActivity {
         } else {
           mCallout.dismiss();
         }
-      } catch (Exception e) {
+      }
+
+      @Override public void onError(Exception e) {
         Log.e(TAG, "Identify error: " + e.getMessage());
       }
     });
@@ -490,15 +511,16 @@ public class MainActivity extends AppCompatActivity {
     mMapView.getGraphicsOverlays().clear();
     mGraphicsOverlay.getGraphics().clear();
     // create a list of points from the geocode results
-    List<Point> resultPoints = new ArrayList<>();
+    List<Point> resultPoints = new ArrayList<>(geocodeResults.size());
+    List<Graphic> resultGraphics = new ArrayList<>(geocodeResults.size());
     for (GeocodeResult result : geocodeResults) {
-      // create graphic object for resulting location
+      // create graphic object for resulting location, drawn with the overlay's pin renderer
       Point resultPoint = result.getDisplayLocation();
-      Graphic resultLocGraphic = new Graphic(resultPoint, result.getAttributes(), mPinSourceSymbol);
-      // add graphic to location layer
-      mGraphicsOverlay.getGraphics().add(resultLocGraphic);
+      resultGraphics.add(new Graphic(resultPoint, result.getAttributes()));
       resultPoints.add(resultPoint);
     }
+    // add all of the graphics to the location layer at once
+    mGraphicsOverlay.getGraphics().addAll(resultGraphics);
     // add result points to a Multipoint and get an envelope surrounding it
     Multipoint resultsMultipoint = new Multipoint(resultPoints);
     Envelope resultsEnvelope = resultsMultipoint.getExtent();
@@ -538,6 +560,10 @@ public class MainActivity extends AppCompatActivity {
   @Override
   protected void onDestroy() {
     super.onDestroy();
+    mPoiSuggestPipeline.cancel();
+    mProximitySuggestPipeline.cancel();
+    Log.d(TAG, mGraphicsIndex.metrics());
+    mGraphicsIndex.dispose();
     mMapView.dispose();
   }
 }
@@ -0,0 +1,244 @@
+/* Copyright 2017 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.findplace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.geometry.Envelope;
+import com.esri.arcgisruntime.geometry.Geometry;
+import com.esri.arcgisruntime.tasks.geocode.LocatorTask;
+import com.esri.arcgisruntime.tasks.geocode.SuggestParameters;
+import com.esri.arcgisruntime.tasks.geocode.SuggestResult;
+
+/**
+ * Fetches suggestions from a LocatorTask as the user types.
+ * <p>
+ * Requests are debounced, so only the text the user pauses on is sent to the locator, and a request which is
+ * superseded by newer text is cancelled and its results ignored. Results are kept in an LRU cache keyed by the
+ * normalized text and a coarse bucket of the search area. When a shorter prefix of the text is cached with a complete
+ * (not truncated at the maximum result count) list of suggestions, the suggestions for the longer text are found by
+ * filtering that list instead of asking the locator.
+ * <p>
+ * Must be used from the UI thread, which is also where the listener is called.
+ */
+class SuggestPipeline {
+
+  private static final String TAG = SuggestPipeline.class.getSimpleName();
+  private static final int LATENCY_SAMPLES = 256;
+
+  private final LocatorTask mLocatorTask;
+  private final SuggestParameters mSuggestParameters;
+  private final long mDebounceMillis;
+  private final Listener mListener;
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+  private final Map<String, List<SuggestResult>> mCache;
+
+  private Runnable mPendingRequest;
+  private ListenableFuture<List<SuggestResult>> mInFlightRequest;
+  private int mGeneration;
+
+  private int mRequestCount;
+  private int mLookupCount;
+  private int mCacheHitCount;
+  private final long[] mLatencies = new long[LATENCY_SAMPLES];
+  private int mLatencyCount;
+
+  /**
+   * @param locatorTask       to fetch suggestions from
+   * @param suggestParameters used for every request, its search area is part of the cache key
+   * @param debounceMillis    how long the text must stay unchanged before suggestions are fetched
+   * @param cacheSize         maximum number of suggestion lists to cache
+   * @param listener          receives the suggestions for the latest text
+   */
+  SuggestPipeline(LocatorTask locatorTask, SuggestParameters suggestParameters, long debounceMillis, int cacheSize,
+      Listener listener) {
+    mLocatorTask = locatorTask;
+    mSuggestParameters = suggestParameters;
+    mDebounceMillis = debounceMillis;
+    mListener = listener;
+    mCache = new LinkedHashMap<String, List<SuggestResult>>(cacheSize, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<String, List<SuggestResult>> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Requests suggestions for the given text, replacing any earlier request which hasn't completed.
+   */
+  void suggest(String text) {
+    cancel();
+    int generation = mGeneration;
+    mPendingRequest = () -> {
+      mPendingRequest = null;
+      fetch(text, generation);
+    };
+    mHandler.postDelayed(mPendingRequest, mDebounceMillis);
+  }
+
+  /**
+   * Cancels any pending or in flight request, so no further suggestions are delivered for it.
+   */
+  void cancel() {
+    mGeneration++;
+    if (mPendingRequest != null) {
+      mHandler.removeCallbacks(mPendingRequest);
+      mPendingRequest = null;
+    }
+    if (mInFlightRequest != null) {
+      mInFlightRequest.cancel(true);
+      mInFlightRequest = null;
+    }
+  }
+
+  private void fetch(String text, int generation) {
+    mLookupCount++;
+    String query = normalize(text);
+    String bucket = searchAreaBucket(mSuggestParameters.getSearchArea());
+
+    // answer from the cache, either for this exact text or by filtering a shorter prefix's complete results
+    List<SuggestResult> cachedResults = mCache.get(bucket + query);
+    if (cachedResults == null) {
+      for (int length = query.length() - 1; length > 0 && cachedResults == null; length--) {
+        List<SuggestResult> prefixResults = mCache.get(bucket + query.substring(0, length));
+        if (prefixResults != null && prefixResults.size() < mSuggestParameters.getMaxResults()) {
+          cachedResults = filter(prefixResults, query);
+          mCache.put(bucket + query, cachedResults);
+        }
+      }
+    }
+    if (cachedResults != null) {
+      mCacheHitCount++;
+      mListener.onSuggestions(text, cachedResults);
+      return;
+    }
+
+    mRequestCount++;
+    long start = SystemClock.elapsedRealtime();
+    ListenableFuture<List<SuggestResult>> suggestFuture = mLocatorTask.suggestAsync(text, mSuggestParameters);
+    mInFlightRequest = suggestFuture;
+    suggestFuture.addDoneListener(() -> {
+      // ignore results for text which has since changed
+      if (generation != mGeneration || suggestFuture.isCancelled()) {
+        return;
+      }
+      mInFlightRequest = null;
+      recordLatency(SystemClock.elapsedRealtime() - start);
+      try {
+        List<SuggestResult> suggestResults = suggestFuture.get();
+        mCache.put(bucket + query, suggestResults);
+        mListener.onSuggestions(text, suggestResults);
+      } catch (Exception e) {
+        Log.e(TAG, "Geocode suggestion error: " + e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * @return the suggestions whose label contains every word of the query
+   */
+  private static List<SuggestResult> filter(List<SuggestResult> suggestResults, String query) {
+    String[] words = query.split(" ");
+    List<SuggestResult> filtered = new ArrayList<>();
+    for (SuggestResult suggestResult : suggestResults) {
+      String label = suggestResult.getLabel().toLowerCase(Locale.ROOT);
+      boolean matches = true;
+      for (String word : words) {
+        if (!label.contains(word)) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        filtered.add(suggestResult);
+      }
+    }
+    return filtered;
+  }
+
+  private static String normalize(String text) {
+    return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Snaps the search area to a grid cell whose size is the power of two just above the area's width, so small pans
+   * and zooms of the map share cached suggestions.
+   *
+   * @return a cache key prefix identifying the search area's bucket
+   */
+  private static String searchAreaBucket(Geometry searchArea) {
+    if (searchArea == null || searchArea.isEmpty()) {
+      return "*|";
+    }
+    Envelope extent = searchArea.getExtent();
+    int level = (int) Math.ceil(Math.log(Math.max(extent.getWidth(), 1)) / Math.log(2));
+    double cellSize = Math.pow(2, level);
+    long column = (long) Math.floor(extent.getCenter().getX() / cellSize);
+    long row = (long) Math.floor(extent.getCenter().getY() / cellSize);
+    return level + "/" + column + "/" + row + "|";
+  }
+
+  private void recordLatency(long latencyMillis) {
+    mLatencies[mLatencyCount % LATENCY_SAMPLES] = latencyMillis;
+    mLatencyCount++;
+  }
+
+  /**
+   * @return 95th percentile of the latency of the most recent locator requests, in milliseconds
+   */
+  long getP95LatencyMillis() {
+    int count = Math.min(mLatencyCount, LATENCY_SAMPLES);
+    if (count == 0) {
+      return 0;
+    }
+    long[] latencies = Arrays.copyOf(mLatencies, count);
+    Arrays.sort(latencies);
+    return latencies[(int) Math.ceil(count * 0.95) - 1];
+  }
+
+  /**
+   * @return number of suggest requests sent to the locator
+   */
+  int getRequestCount() {
+    return mRequestCount;
+  }
+
+  /**
+   * @return fraction of debounced lookups answered from the cache
+   */
+  double getCacheHitRate() {
+    return mLookupCount == 0 ? 0 : (double) mCacheHitCount / mLookupCount;
+  }
+
+  /**
+   * Receives the suggestions for the latest requested text.
+   */
+  interface Listener {
+    void onSuggestions(String text, List<SuggestResult> suggestResults);
+  }
+}
@@ -80,7 +80,8 @@ public class MainActivity extends AppCompatActivity {
   private GraphicsOverlay mGraphicsOverlay;
   private Graphic mDownloadArea;
   private GenerateOfflineMapParameterOverrides mParameterOverrides;
-  private GenerateOfflineMapJob mGenerateOfflineMapJob;
+  private OfflineMapJobRunner mOfflineMapJobRunner;
+  private ProgressDialog mProgressDialog;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -134,6 +135,43 @@ public class MainActivity extends AppCompatActivity {
 
     // when the button is clicked, start the offline map task job
     mGenerateOfflineMapOverridesButton.setOnClickListener(v -> showParametersDialog());
+
+    createProgressDialog();
+
+    // run the job with a runner which saves it as it changes, so a job interrupted by the app being closed is
+    // resumed when the app is next opened
+    mOfflineMapJobRunner = new OfflineMapJobRunner(new File(getCacheDir(), "offlineMap"),
+        new OfflineMapJobRunner.Listener() {
+          @Override public void onProgress(int progress) {
+            // show the job's progress with the progress dialog
+            mProgressDialog.setProgress(progress);
+            mProgressDialog.show();
+          }
+
+          @Override public void onSucceeded(Job job) {
+            mProgressDialog.dismiss();
+            // replace the current map with the result offline map
+            GenerateOfflineMapResult result = ((GenerateOfflineMapJob) job).getResult();
+            mMapView.setMap(result.getOfflineMap());
+            mGraphicsOverlay.getGraphics().clear();
+            mGenerateOfflineMapOverridesButton.setEnabled(false);
+            Toast.makeText(MainActivity.this, "Now displaying offline map.", Toast.LENGTH_LONG).show();
+            Log.i(TAG, mOfflineMapJobRunner.metrics());
+          }
+
+          @Override public void onFailed(Job job, Exception error) {
+            mProgressDialog.dismiss();
+            if (job != null && error == null) {
+              // the job was cancelled
+              return;
+            }
+            String message = "Error in generate offline map job: " + (job != null && job.getError() != null ?
+                job.getError().getAdditionalMessage() : error.getMessage());
+            Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+            Log.e(TAG, message);
+          }
+        });
+    mOfflineMapJobRunner.restore();
   }
 
   /**
@@ -315,34 +353,16 @@ public class MainActivity extends AppCompatActivity {
    */
   private void generateOfflineMap(OfflineMapTask offlineMapTask,
       GenerateOfflineMapParameters generateOfflineMapParameters) {
-    // delete any offline map already in the cache
-    String tempDirectoryPath = getCacheDir() + File.separator + "offlineMap";
-    deleteDirectory(new File(tempDirectoryPath));
-    // create an offline map job with the download directory path and parameters and start the job
-    mGenerateOfflineMapJob = offlineMapTask
-        .generateOfflineMap(generateOfflineMapParameters, tempDirectoryPath, mParameterOverrides);
-    // show the job's progress in a progress dialog
-    showProgressDialog(mGenerateOfflineMapJob);
-    // replace the current map with the result offline map when the job finishes
-    mGenerateOfflineMapJob.addJobDoneListener(() -> {
-      if (mGenerateOfflineMapJob.getStatus() == Job.Status.SUCCEEDED) {
-        GenerateOfflineMapResult result = mGenerateOfflineMapJob.getResult();
-        mMapView.setMap(result.getOfflineMap());
-        mGraphicsOverlay.getGraphics().clear();
-        mGenerateOfflineMapOverridesButton.setEnabled(false);
-        Toast.makeText(this, "Now displaying offline map.", Toast.LENGTH_LONG).show();
-      } else {
-        String error = "Error in generate offline map job: " + mGenerateOfflineMapJob.getError().getAdditionalMessage();
-        Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-        Log.e(TAG, error);
-      }
+    // run an offline map job with the download directory path, parameters and overrides, replacing any offline map
+    // already in the cache
+    mOfflineMapJobRunner.run(directory -> {
+      GenerateOfflineMapJob generateOfflineMapJob = offlineMapTask
+          .generateOfflineMap(generateOfflineMapParameters, directory.getPath(), mParameterOverrides);
+      // show job messages in the log
+      generateOfflineMapJob.addJobMessageAddedListener(
+          jobMessageAddedEvent -> Log.i(TAG, jobMessageAddedEvent.getMessage().getMessage()));
+      return generateOfflineMapJob;
     });
-
-    // show job messages in the log
-    mGenerateOfflineMapJob.addJobMessageAddedListener(jobMessageAddedEvent -> Log.i(TAG, jobMessageAddedEvent.getMessage().getMessage()));
-
-    // start the job
-    mGenerateOfflineMapJob.start();
   }
 
   /**
@@ -451,27 +471,19 @@ public class MainActivity extends AppCompatActivity {
   }
 
   /**
-   * Shows a progress dialog for the given job.
-   *
-   * @param job to track progress from
+   * Creates a progress dialog to show the progress of the running job, which cancels the job when dismissed.
    */
-  private void showProgressDialog(Job job) {
+  private void createProgressDialog() {
     // create a progress dialog to show download progress
-    ProgressDialog progressDialog = new ProgressDialog(this);
-    progressDialog.setTitle("Generate Offline Map Job");
-    progressDialog.setMessage("Taking map offline...");
-    progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
-    progressDialog.setIndeterminate(false);
-    progressDialog.setProgress(0);
-    progressDialog.setCanceledOnTouchOutside(false);
-    progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, "Cancel", (dialog, which) -> job.cancelAsync());
-    progressDialog.show();
-
-    // show the job's progress with the progress dialog
-    job.addProgressChangedListener(() -> progressDialog.setProgress(job.getProgress()));
-
-    // dismiss dialog when job is done
-    job.addJobDoneListener(progressDialog::dismiss);
+    mProgressDialog = new ProgressDialog(this);
+    mProgressDialog.setTitle("Generate Offline Map Job");
+    mProgressDialog.setMessage("Taking map offline...");
+    mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+    mProgressDialog.setIndeterminate(false);
+    mProgressDialog.setProgress(0);
+    mProgressDialog.setCanceledOnTouchOutside(false);
+    mProgressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, "Cancel",
+        (dialog, which) -> mOfflineMapJobRunner.cancel());
   }
 
   @Override
@@ -488,6 +500,7 @@ public class MainActivity extends AppCompatActivity {
 
   @Override
   protected void onDestroy() {
+    mOfflineMapJobRunner.shutdown();
     mMapView.dispose();
     super.onDestroy();
   }
@@ -518,20 +531,4 @@ public class MainActivity extends AppCompatActivity {
     });
     return seekBar;
   }
-
-  /**
-   * Recursively deletes all files in the given directory.
-   *
-   * @param file to delete
-   */
-  private static void deleteDirectory(File file) {
-    if (file.isDirectory())
-      for (File subFile : file.listFiles()) {
-        deleteDirectory(subFile);
-      }
-    if (!file.delete()) {
-      Log.e(TAG, "Failed to delete file: " + file.getPath());
-    }
-  }
 }
-
@@ -54,6 +54,8 @@ public class MainActivity extends AppCompatActivity {
   private Button mTakeMapOfflineButton;
   private GraphicsOverlay mGraphicsOverlay;
   private Graphic mDownloadArea;
+  private ProgressDialog mProgressDialog;
+  private OfflineMapJobRunner mOfflineMapJobRunner;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -124,21 +126,46 @@ public class MainActivity extends AppCompatActivity {
     });
 
     // create a progress dialog to show download progress
-    ProgressDialog progressDialog = new ProgressDialog(this);
-    progressDialog.setTitle("Generate offline map job");
-    progressDialog.setMessage("Taking map offline...");
-    progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
-    progressDialog.setIndeterminate(false);
-    progressDialog.setProgress(0);
+    mProgressDialog = new ProgressDialog(this);
+    mProgressDialog.setTitle("Generate offline map job");
+    mProgressDialog.setMessage("Taking map offline...");
+    mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+    mProgressDialog.setIndeterminate(false);
+    mProgressDialog.setProgress(0);
+
+    // run the job with a runner which saves it as it changes, so a job interrupted by the app being closed is
+    // resumed when the app is next opened
+    mOfflineMapJobRunner = new OfflineMapJobRunner(new File(getExternalCacheDir(), "offlineMap"),
+        new OfflineMapJobRunner.Listener() {
+          @Override public void onProgress(int progress) {
+            // show the job's progress with the progress dialog
+            mProgressDialog.setProgress(progress);
+            mProgressDialog.show();
+          }
+
+          @Override public void onSucceeded(Job job) {
+            mProgressDialog.dismiss();
+            // replace the current map with the result offline map
+            GenerateOfflineMapResult result = ((GenerateOfflineMapJob) job).getResult();
+            mMapView.setMap(result.getOfflineMap());
+            mGraphicsOverlay.getGraphics().clear();
+            mTakeMapOfflineButton.setEnabled(false);
+            Toast.makeText(MainActivity.this, "Now displaying offline map.", Toast.LENGTH_LONG).show();
+            Log.i(TAG, mOfflineMapJobRunner.metrics());
+          }
+
+          @Override public void onFailed(Job job, Exception error) {
+            mProgressDialog.dismiss();
+            String message = "Error in generate offline map job: " + (job != null && job.getError() != null ?
+                job.getError().getAdditionalMessage() : error.getMessage());
+            Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+            Log.e(TAG, message);
+          }
+        });
+    mOfflineMapJobRunner.restore();
 
     // when the button is clicked, start the offline map task job
     mTakeMapOfflineButton.setOnClickListener(v -> {
-      progressDialog.show();
-
-      // delete any offline map already in the cache
-      String tempDirectoryPath = getExternalCacheDir() + File.separator + "offlineMap";
-      deleteDirectory(new File(tempDirectoryPath));
-
       // specify the extent, min scale, and max scale as parameters
       double minScale = mMapView.getMapScale();
       double maxScale = mMapView.getMap().getMaxScale();
@@ -154,30 +181,10 @@ public class MainActivity extends AppCompatActivity {
       // create an offline map offlineMapTask with the map
       OfflineMapTask offlineMapTask = new OfflineMapTask(mMapView.getMap());
 
-      // create an offline map job with the download directory path and parameters and start the job
-      GenerateOfflineMapJob job = offlineMapTask.generateOfflineMap(generateOfflineMapParameters, tempDirectoryPath);
-
-      // replace the current map with the result offline map when the job finishes
-      job.addJobDoneListener(() -> {
-        if (job.getStatus() == Job.Status.SUCCEEDED) {
-          GenerateOfflineMapResult result = job.getResult();
-          mMapView.setMap(result.getOfflineMap());
-          mGraphicsOverlay.getGraphics().clear();
-          mTakeMapOfflineButton.setEnabled(false);
-          Toast.makeText(this, "Now displaying offline map.", Toast.LENGTH_LONG).show();
-        } else {
-          String error = "Error in generate offline map job: " + job.getError().getAdditionalMessage();
-          Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-          Log.e(TAG, error);
-        }
-        progressDialog.dismiss();
-      });
-
-      // show the job's progress with the progress dialog
-      job.addProgressChangedListener(() -> progressDialog.setProgress(job.getProgress()));
-
-      // start the job
-      job.start();
+      // run an offline map job with the download directory path and parameters, replacing any offline map already in
+      // the cache
+      mOfflineMapJobRunner.run(
+          directory -> offlineMapTask.generateOfflineMap(generateOfflineMapParameters, directory.getPath()));
     });
 
   }
@@ -196,23 +203,8 @@ public class MainActivity extends AppCompatActivity {
 
   @Override
   protected void onDestroy() {
+    mOfflineMapJobRunner.shutdown();
     mMapView.dispose();
     super.onDestroy();
   }
-
-  /**
-   * Recursively deletes all files in the given directory.
-   *
-   * @param file to delete
-   */
-  private static void deleteDirectory(File file) {
-    if (file.isDirectory())
-      for (File subFile : file.listFiles()) {
-        deleteDirectory(subFile);
-      }
-    if (!file.delete()) {
-      Log.e(TAG, "Failed to delete file: " + file.getPath());
-    }
-  }
 }
-
@@ -0,0 +1,286 @@
+/* Copyright 2018 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.generateofflinemap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.esri.arcgisruntime.concurrent.Job;
+
+/**
+ * Runs the job which takes the map offline into a directory, saving the job's JSON to a file whenever the job
+ * changes, so when the app is closed while the job is running, restore() resumes the job the next time the app is
+ * opened.
+ *
+ * Apart from the constructor, must be used from the UI thread, which is where job listeners are called.
+ */
+final class OfflineMapJobRunner {
+
+  /**
+   * Creates the job which takes the map offline.
+   */
+  interface JobFactory {
+
+    /**
+     * Creates, without starting, the job which takes the map offline into the directory.
+     */
+    Job createJob(File directory);
+  }
+
+  /**
+   * Receives the progress of the job on the UI thread.
+   */
+  interface Listener {
+
+    void onProgress(int progress);
+
+    /**
+     * @param job which took the map offline
+     */
+    void onSucceeded(Job job);
+
+    /**
+     * @param job which failed, or null if the job saved by an earlier session couldn't be resumed
+     * @param error the job failed with, or null if it was cancelled
+     */
+    void onFailed(Job job, Exception error);
+  }
+
+  private static final String TAG = OfflineMapJobRunner.class.getSimpleName();
+
+  private final File mDirectory;
+  private final File mStateFile;
+  private final Listener mListener;
+  private final ExecutorService mFileExecutor = Executors.newSingleThreadExecutor();
+
+  private Job mJob;
+  private boolean mCancelled;
+  private long mStartedAt;
+  // time spent running in earlier sessions, which is added to when the job resumes
+  private long mElapsedMillis;
+  // set once the runner is shut down, after which job listeners are ignored and no more file work is queued
+  private boolean mShutdown;
+
+  /**
+   * @param directory to take the map offline into
+   * @param listener to receive the progress of the job
+   */
+  OfflineMapJobRunner(File directory, Listener listener) {
+    mDirectory = directory;
+    mStateFile = new File(directory.getParentFile(), directory.getName() + ".json");
+    mListener = listener;
+  }
+
+  /**
+   * Resumes the job saved by an earlier session, if the app was closed while the job was running.
+   */
+  void restore() {
+    // finish deleting directories discarded by an earlier session
+    File[] discarded = mDirectory.getParentFile().listFiles(
+        (directory, name) -> name.startsWith(mDirectory.getName() + ".discarded-"));
+    if (discarded != null) {
+      for (File directory : discarded) {
+        executeOnFileThread(() -> deleteDirectory(directory));
+      }
+    }
+    if (!mStateFile.exists()) {
+      return;
+    }
+    Job job;
+    try {
+      JSONObject state = new JSONObject(readFile(mStateFile));
+      mElapsedMillis = state.optLong("elapsedMillis");
+      job = Job.fromJson(state.getString("job"));
+      if (job == null) {
+        throw new IllegalStateException("The saved job is not valid");
+      }
+    } catch (IOException | JSONException | RuntimeException e) {
+      Log.e(TAG, "Unable to resume job from " + mStateFile + ": " + e.getMessage());
+      executeOnFileThread(mStateFile::delete);
+      discardDirectory();
+      mListener.onFailed(null, e);
+      return;
+    }
+    start(job);
+  }
+
+  /**
+   * Deletes any map already taken offline and runs a new job to take the map offline, unless a job is already
+   * running.
+   */
+  void run(JobFactory jobFactory) {
+    if (mJob != null) {
+      return;
+    }
+    discardDirectory();
+    mElapsedMillis = 0;
+    start(jobFactory.createJob(mDirectory));
+  }
+
+  /**
+   * Cancels the running job. The job's partly downloaded files are deleted.
+   */
+  void cancel() {
+    if (mJob != null) {
+      mCancelled = true;
+      mJob.cancelAsync();
+    }
+  }
+
+  /**
+   * Stops saving the state of the job. A job which is still running is resumed the next time the runner is restored,
+   * and its listeners are ignored from then on.
+   */
+  void shutdown() {
+    mShutdown = true;
+    mFileExecutor.shutdown();
+  }
+
+  /**
+   * @return a summary of the time the last job took, including time spent running before the app was closed
+   */
+  String metrics() {
+    long elapsedMillis = mElapsedMillis + (mJob != null ? SystemClock.elapsedRealtime() - mStartedAt : 0);
+    return String.format(Locale.US, "Offline map job running time: %.1f s", elapsedMillis / 1000.0);
+  }
+
+  private void start(Job job) {
+    mJob = job;
+    mCancelled = false;
+    mStartedAt = SystemClock.elapsedRealtime();
+    job.addProgressChangedListener(() -> {
+      if (!mShutdown && mJob == job) {
+        mListener.onProgress(job.getProgress());
+      }
+    });
+    // save the job whenever it changes, so it can be resumed with whatever server job it has started
+    job.addJobChangedListener(() -> {
+      if (!mShutdown && mJob == job) {
+        writeState(job);
+      }
+    });
+    // once shut down, the job's last saved state is left for the next session to resume
+    job.addJobDoneListener(() -> {
+      if (!mShutdown && mJob == job) {
+        onJobDone(job);
+      }
+    });
+    job.start();
+    writeState(job);
+    mListener.onProgress(job.getProgress());
+  }
+
+  private void onJobDone(Job job) {
+    mElapsedMillis += SystemClock.elapsedRealtime() - mStartedAt;
+    mJob = null;
+    executeOnFileThread(mStateFile::delete);
+    if (job.getStatus() == Job.Status.SUCCEEDED) {
+      mListener.onSucceeded(job);
+      return;
+    }
+    discardDirectory();
+    mListener.onFailed(job, mCancelled ? null : job.getError());
+  }
+
+  /**
+   * Moves the directory out of the way, so the map can be taken offline into it again straight away, and deletes it
+   * on the file thread.
+   */
+  private void discardDirectory() {
+    File discarded = new File(mDirectory.getParentFile(), mDirectory.getName() + ".discarded-" + System.nanoTime());
+    if (mDirectory.exists() && !mDirectory.renameTo(discarded)) {
+      // the directory couldn't be moved, so delete it before the map is taken offline into it again
+      deleteDirectory(mDirectory);
+    }
+    executeOnFileThread(() -> deleteDirectory(discarded));
+  }
+
+  /**
+   * Runs the task on the file thread, unless the runner has been shut down.
+   */
+  private void executeOnFileThread(Runnable task) {
+    if (!mShutdown) {
+      mFileExecutor.execute(task);
+    }
+  }
+
+  /**
+   * Saves the job's JSON and running time to the state file, on the file thread.
+   */
+  private void writeState(Job job) {
+    String json;
+    try {
+      JSONObject state = new JSONObject();
+      state.put("job", job.toJson());
+      state.put("elapsedMillis", mElapsedMillis + SystemClock.elapsedRealtime() - mStartedAt);
+      json = state.toString();
+    } catch (JSONException e) {
+      Log.e(TAG, "Unable to save job state: " + e.getMessage());
+      return;
+    }
+    executeOnFileThread(() -> {
+      // write a temporary file first, so a process killed while writing never leaves a partly written state
+      File temporary = new File(mStateFile.getPath() + ".tmp");
+      try {
+        try (OutputStream outputStream = new FileOutputStream(temporary)) {
+          outputStream.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        if (!temporary.renameTo(mStateFile)) {
+          throw new IOException("Unable to rename " + temporary);
+        }
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to save job state: " + e.getMessage());
+      }
+    });
+  }
+
+  private static String readFile(File file) throws IOException {
+    byte[] bytes = new byte[(int) file.length()];
+    try (InputStream inputStream = new FileInputStream(file)) {
+      int offset = 0;
+      int read;
+      while (offset < bytes.length && (read = inputStream.read(bytes, offset, bytes.length - offset)) != -1) {
+        offset += read;
+      }
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void deleteDirectory(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File subFile : files) {
+        deleteDirectory(subFile);
+      }
+    }
+    file.delete();
+  }
+}
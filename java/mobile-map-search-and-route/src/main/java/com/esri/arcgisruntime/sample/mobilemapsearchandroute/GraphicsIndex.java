@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.mobilemapsearchandroute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.geometry.Envelope;
+import com.esri.arcgisruntime.geometry.Geometry;
+import com.esri.arcgisruntime.geometry.GeometryEngine;
+import com.esri.arcgisruntime.geometry.GeometryType;
+import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.geometry.SpatialReference;
+import com.esri.arcgisruntime.mapping.view.Graphic;
+import com.esri.arcgisruntime.mapping.view.GraphicsOverlay;
+import com.esri.arcgisruntime.mapping.view.IdentifyGraphicsOverlayResult;
+import com.esri.arcgisruntime.mapping.view.MapView;
+import com.esri.arcgisruntime.util.ListChangedEvent;
+import com.esri.arcgisruntime.util.ListChangedListener;
+
+/**
+ * A spatial index of the point graphics in a graphics overlay, used to identify the graphics at a tapped location
+ * without handing the whole overlay to the runtime.
+ *
+ * The points of the overlay's graphics are kept in a uniform grid, updated as graphics are added to and removed from
+ * the overlay. A tap looks up the grid cells around the tapped location. If no point is near the tap, the tap is a
+ * miss, and points within the tap tolerance are hits ordered by distance. The runtime's identify is only used when the
+ * tap falls within a point's symbol but outside the tolerance, as the answer then depends on the drawn symbol.
+ *
+ * The overlay must only hold point graphics, whose geometries don't change once they are added.
+ *
+ * Must be used from the UI thread.
+ */
+final class GraphicsIndex {
+
+  /**
+   * Receives the graphics identified at a tapped location.
+   */
+  interface Listener {
+
+    /**
+     * @param graphics identified at the tapped location, nearest or topmost first
+     */
+    void onIdentified(List<Graphic> graphics);
+
+    void onError(Exception e);
+  }
+
+  private final GraphicsOverlay mGraphicsOverlay;
+  private final SpatialReference mSpatialReference;
+  private final double mCellSize;
+  private final double mSymbolRadius;
+  // graphics by grid cell, and the indexed point of each graphic
+  private final Map<Long, List<Graphic>> mCells = new HashMap<>();
+  private final Map<Graphic, Point> mPoints = new IdentityHashMap<>();
+
+  private final ListChangedListener<Graphic> mListChangedListener = listChangedEvent -> {
+    if (listChangedEvent.getAction() == ListChangedEvent.Action.ADDED) {
+      for (Graphic graphic : listChangedEvent.getItems()) {
+        add(graphic);
+      }
+    } else {
+      for (Graphic graphic : listChangedEvent.getItems()) {
+        remove(graphic);
+      }
+    }
+  };
+
+  /**
+   * Indexes the graphics in a graphics overlay and keeps the index in sync with it.
+   *
+   * @param graphicsOverlay to index
+   * @param spatialReference to index the graphics in, normally the map's
+   * @param cellSize width and height of the grid's cells in the units of the spatial reference, roughly the size of
+   * the area covered by a tap at the scales the overlay is used at
+   * @param symbolRadius largest distance in density independent pixels that a graphic's symbol is drawn from its point
+   */
+  GraphicsIndex(GraphicsOverlay graphicsOverlay, SpatialReference spatialReference, double cellSize,
+      double symbolRadius) {
+    mGraphicsOverlay = graphicsOverlay;
+    mSpatialReference = spatialReference;
+    mCellSize = cellSize;
+    mSymbolRadius = symbolRadius;
+    for (Graphic graphic : graphicsOverlay.getGraphics()) {
+      add(graphic);
+    }
+    graphicsOverlay.getGraphics().addListChangedListener(mListChangedListener);
+  }
+
+  /**
+   * Identifies the graphics at a tapped location.
+   *
+   * @param mapView the graphics overlay is shown in
+   * @param screenPoint tapped location
+   * @param tolerance in density independent pixels
+   * @param maximumResults maximum number of graphics to identify
+   * @param listener to receive the identified graphics on the UI thread
+   */
+  void identify(MapView mapView, android.graphics.Point screenPoint, double tolerance, int maximumResults,
+      Listener listener) {
+    Point mapPoint = mapView.screenToLocation(screenPoint);
+    if (mapPoint == null) {
+      listener.onIdentified(Collections.emptyList());
+      return;
+    }
+    // find the tapped location and the tolerances in the index's spatial reference
+    double unitsPerPixel = mapView.getUnitsPerDensityIndependentPixel();
+    double toleranceDistance = tolerance * unitsPerPixel;
+    double searchDistance = (tolerance + mSymbolRadius) * unitsPerPixel;
+    if (!mSpatialReference.equals(mapPoint.getSpatialReference())) {
+      Envelope search = GeometryEngine.project(new Envelope(mapPoint.getX() - searchDistance,
+          mapPoint.getY() - searchDistance, mapPoint.getX() + searchDistance, mapPoint.getY() + searchDistance,
+          mapPoint.getSpatialReference()), mSpatialReference).getExtent();
+      toleranceDistance *= search.getWidth() / (2 * searchDistance);
+      searchDistance = search.getWidth() / 2;
+      mapPoint = search.getCenter();
+    }
+    double x = mapPoint.getX();
+    double y = mapPoint.getY();
+
+    List<List<Graphic>> cells = new ArrayList<>();
+    int column0 = cell(x - searchDistance);
+    int row0 = cell(y - searchDistance);
+    int column1 = cell(x + searchDistance);
+    int row1 = cell(y + searchDistance);
+    // when zoomed far out, visiting the occupied cells is cheaper than visiting every cell around the tap
+    if ((long) (column1 - column0 + 1) * (row1 - row0 + 1) > mCells.size()) {
+      cells.addAll(mCells.values());
+    } else {
+      for (int column = column0; column <= column1; column++) {
+        for (int row = row0; row <= row1; row++) {
+          List<Graphic> graphics = mCells.get(key(column, row));
+          if (graphics != null) {
+            cells.add(graphics);
+          }
+        }
+      }
+    }
+    List<Graphic> hits = new ArrayList<>();
+    boolean isAmbiguous = false;
+    search:
+    for (List<Graphic> graphics : cells) {
+      for (Graphic graphic : graphics) {
+        double distance = distance(graphic, x, y);
+        if (!graphic.isVisible() || distance > searchDistance) {
+          continue;
+        }
+        if (distance <= toleranceDistance) {
+          hits.add(graphic);
+        } else {
+          // the tap may still be on the point's symbol
+          isAmbiguous = true;
+          break search;
+        }
+      }
+    }
+    if (isAmbiguous) {
+      ListenableFuture<IdentifyGraphicsOverlayResult> identifyFuture =
+          mapView.identifyGraphicsOverlayAsync(mGraphicsOverlay, screenPoint, tolerance, false, maximumResults);
+      identifyFuture.addDoneListener(() -> {
+        try {
+          listener.onIdentified(identifyFuture.get().getGraphics());
+        } catch (Exception e) {
+          listener.onError(e);
+        }
+      });
+      return;
+    }
+    Collections.sort(hits, (a, b) -> Double.compare(distance(a, x, y), distance(b, x, y)));
+    if (hits.size() > maximumResults) {
+      hits = new ArrayList<>(hits.subList(0, maximumResults));
+    }
+    listener.onIdentified(hits);
+  }
+
+  /**
+   * Stops keeping the index in sync with the graphics overlay.
+   */
+  void dispose() {
+    mGraphicsOverlay.getGraphics().removeListChangedListener(mListChangedListener);
+    mCells.clear();
+    mPoints.clear();
+  }
+
+  private void add(Graphic graphic) {
+    Geometry geometry = graphic.getGeometry();
+    if (geometry == null || geometry.isEmpty() || geometry.getGeometryType() != GeometryType.POINT) {
+      return;
+    }
+    if (!mSpatialReference.equals(geometry.getSpatialReference())) {
+      geometry = GeometryEngine.project(geometry, mSpatialReference);
+    }
+    Point point = (Point) geometry;
+    mPoints.put(graphic, point);
+    Long key = key(cell(point.getX()), cell(point.getY()));
+    List<Graphic> graphics = mCells.get(key);
+    if (graphics == null) {
+      graphics = new ArrayList<>(4);
+      mCells.put(key, graphics);
+    }
+    graphics.add(graphic);
+  }
+
+  private void remove(Graphic graphic) {
+    Point point = mPoints.remove(graphic);
+    if (point == null) {
+      return;
+    }
+    Long key = key(cell(point.getX()), cell(point.getY()));
+    List<Graphic> graphics = mCells.get(key);
+    if (graphics != null && graphics.remove(graphic) && graphics.isEmpty()) {
+      mCells.remove(key);
+    }
+  }
+
+  private double distance(Graphic graphic, double x, double y) {
+    Point point = mPoints.get(graphic);
+    return Math.hypot(point.getX() - x, point.getY() - y);
+  }
+
+  private int cell(double coordinate) {
+    return (int) Math.floor(coordinate / mCellSize);
+  }
+
+  private static long key(int column, int row) {
+    return ((long) column << 32) | (row & 0xFFFFFFFFL);
+  }
+}
@@ -17,9 +17,14 @@
 
 package com.esri.arcgisruntime.sample.mobilemapsearchandroute;
 
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ExecutionException;
 
 import android.content.Intent;
@@ -35,6 +40,7 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.geometry.Geometry;
 import com.esri.arcgisruntime.geometry.Point;
 import com.esri.arcgisruntime.loadable.LoadStatus;
 import com.esri.arcgisruntime.mapping.ArcGISMap;
@@ -43,7 +49,6 @@ import com.esri.arcgisruntime.mapping.view.Callout;
 import com.esri.arcgisruntime.mapping.view.DefaultMapViewOnTouchListener;
 import com.esri.arcgisruntime.mapping.view.Graphic;
 import com.esri.arcgisruntime.mapping.view.GraphicsOverlay;
-import com.esri.arcgisruntime.mapping.view.IdentifyGraphicsOverlayResult;
 import com.esri.arcgisruntime.mapping.view.MapView;
 import com.esri.arcgisruntime.symbology.CompositeSymbol;
 import com.esri.arcgisruntime.symbology.SimpleLineSymbol;
@@ -53,11 +58,8 @@ import com.esri.arcgisruntime.symbology.TextSymbol;
 import com.esri.arcgisruntime.tasks.geocode.GeocodeResult;
 import com.esri.arcgisruntime.tasks.geocode.LocatorTask;
 import com.esri.arcgisruntime.tasks.geocode.ReverseGeocodeParameters;
-import com.esri.arcgisruntime.tasks.networkanalysis.Route;
 import com.esri.arcgisruntime.tasks.networkanalysis.RouteParameters;
-import com.esri.arcgisruntime.tasks.networkanalysis.RouteResult;
 import com.esri.arcgisruntime.tasks.networkanalysis.RouteTask;
-import com.esri.arcgisruntime.tasks.networkanalysis.Stop;
 
 /**
  * This class demonstrates offline functionality through the use of a mobile map package (mmpk).
@@ -70,10 +72,26 @@ import com.esri.arcgisruntime.tasks.networkanalysis.Stop;
  */
 public class MainActivity extends AppCompatActivity {
   private static final String TAG = MainActivity.class.getSimpleName();
+  private static final int MAX_CONCURRENT_THUMBNAIL_FETCHES = 4;
+  // stops and reverse geocoded points within this distance, in map units, share cached results
+  private static final double POSITION_TOLERANCE = 1.0;
+  private static final int LEG_CACHE_SIZE = 128;
+  private static final int ADDRESS_CACHE_SIZE = 128;
+  // size of the marker index's grid cells in map units, and the radius of the stop symbols in density independent
+  // pixels
+  private static final double MARKER_INDEX_CELL_SIZE = 100;
+  private static final double STOP_SYMBOL_RADIUS = 6;
   private GraphicsOverlay mMarkerGraphicsOverlay;
   private GraphicsOverlay mRouteGraphicsOverlay;
+  private GraphicsIndex mMarkerGraphicsIndex;
   private RouteTask mRouteTask;
   private RouteParameters mRouteParameters;
+  private RouteSession mRouteSession;
+  private final Map<String, String> mAddressCache = new LinkedHashMap<String, String>(ADDRESS_CACHE_SIZE, 0.75f, true) {
+    @Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+      return size() > ADDRESS_CACHE_SIZE;
+    }
+  };
   private final ArrayList<MapPreview> mMapPreviews = new ArrayList<>();
   private MobileMapPackage mMobileMapPackage;
   private MapView mMapView;
@@ -81,6 +99,7 @@ public class MainActivity extends AppCompatActivity {
   private LocatorTask mLocatorTask;
   private Callout mCallout;
   private ReverseGeocodeParameters mReverseGeocodeParameters;
+  private final SimpleLineSymbol mRouteSymbol = new SimpleLineSymbol(SimpleLineSymbol.Style.SOLID, Color.BLUE, 5.0f);
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -184,6 +203,11 @@ public class MainActivity extends AppCompatActivity {
    */
   private void loadMap(int mapNum) {
     ArcGISMap map = mMobileMapPackage.getMaps().get(mapNum);
+    // cancel any solves in flight for the previous map
+    if (mRouteSession != null) {
+      mRouteSession.clear();
+      mRouteSession = null;
+    }
     // check if the map contains transport networks
     if (map.getTransportationNetworks().isEmpty()) {
       // only allow routing on map with transport networks
@@ -192,12 +216,38 @@ public class MainActivity extends AppCompatActivity {
       mRouteTask = new RouteTask(this, map.getTransportationNetworks().get(0));
       try {
         mRouteParameters = mRouteTask.createDefaultParametersAsync().get();
+        mRouteSession = new RouteSession(mRouteTask, mRouteParameters, POSITION_TOLERANCE, LEG_CACHE_SIZE,
+            new RouteSession.Listener() {
+              @Override
+              public void onLegsChanged(List<Geometry> legs) {
+                showRoute(legs);
+              }
+
+              @Override
+              public void onSolveFailed(int legIndex, Exception error) {
+                String message = "Error getting route result: " + error.getMessage();
+                Log.e(TAG, message);
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+                // if routing to the last stop failed, remove it
+                int size = mMarkerGraphicsOverlay.getGraphics().size();
+                if (legIndex >= 0 && legIndex == size - 2) {
+                  mMarkerGraphicsOverlay.getGraphics().remove(size - 1);
+                  route();
+                }
+              }
+            });
       } catch (ExecutionException | InterruptedException e) {
         String error = "Error creating route task default parameters: " + e.getMessage();
         Log.e(TAG, error);
         Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
       }
     }
+    // index the markers in the map's spatial reference to identify taps on them without the runtime where possible
+    if (mMarkerGraphicsIndex != null) {
+      mMarkerGraphicsIndex.dispose();
+    }
+    mMarkerGraphicsIndex = new GraphicsIndex(mMarkerGraphicsOverlay, map.getSpatialReference(),
+        MARKER_INDEX_CELL_SIZE, STOP_SYMBOL_RADIUS);
     mMapView.setMap(map);
   }
 
@@ -207,6 +257,10 @@ public class MainActivity extends AppCompatActivity {
   private void loadMapPreviews() {
     // set mobile map package title
     mMMPkTitle = mMobileMapPackage.getItem().getTitle();
+    ThumbnailCache thumbnailCache = ThumbnailCache.getInstance(this);
+    File packageFile = new File(mMobileMapPackage.getPath());
+    thumbnailCache.removeStale(packageFile);
+    Queue<Integer> mapsToFetch = new ArrayDeque<>();
     // for each map in the mobile map package, pull out relevant thumbnail information
     for (int i = 0; i < mMobileMapPackage.getMaps().size(); i++) {
       ArcGISMap currMap = mMobileMapPackage.getMaps().get(i);
@@ -233,28 +287,54 @@ public class MainActivity extends AppCompatActivity {
       if (mMobileMapPackage.getLocatorTask() != null) {
         mapPreview.setGeocoding(true);
       }
-      // set map preview thumbnail
-      final ListenableFuture<byte[]> thumbnailAsync;
-      if (currMap.getItem() != null && currMap.getItem().fetchThumbnailAsync() != null) {
-        thumbnailAsync = currMap.getItem().fetchThumbnailAsync();
-      } else {
-        thumbnailAsync = mMobileMapPackage.getItem().fetchThumbnailAsync();
+      // only fetch thumbnails which aren't already cached on disk
+      String thumbnailKey = ThumbnailCache.key(packageFile, i);
+      mapPreview.setThumbnailKey(thumbnailKey);
+      if (!thumbnailCache.contains(thumbnailKey)) {
+        mapsToFetch.add(i);
       }
-      thumbnailAsync.addDoneListener(() -> {
-        if (thumbnailAsync.isDone()) {
-          try {
-            mapPreview.setThumbnailByteStream(thumbnailAsync.get());
-            mMapPreviews.add(mapPreview);
-          } catch (InterruptedException | ExecutionException e) {
-            String error = "Error getting thumbnail: " + e.getMessage();
-            Log.e(TAG, error);
-            Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-          }
-        }
-      });
+      mMapPreviews.add(mapPreview);
+    }
+    Log.i(TAG, (mMapPreviews.size() - mapsToFetch.size()) + " of " + mMapPreviews.size()
+        + " map thumbnails already cached");
+    // fetch a limited number of thumbnails at once, starting the next as each completes
+    for (int i = 0; i < MAX_CONCURRENT_THUMBNAIL_FETCHES; i++) {
+      fetchNextThumbnail(mapsToFetch, thumbnailCache, packageFile);
     }
   }
 
+  /**
+   * Fetches the thumbnail of the next map in the queue and stores it in the thumbnail cache.
+   *
+   * @param mapsToFetch    indexes of the maps whose thumbnails aren't cached
+   * @param thumbnailCache to store the thumbnail in
+   * @param packageFile    the mobile map package file
+   */
+  private void fetchNextThumbnail(Queue<Integer> mapsToFetch, ThumbnailCache thumbnailCache, File packageFile) {
+    Integer mapNum = mapsToFetch.poll();
+    if (mapNum == null) {
+      return;
+    }
+    ArcGISMap map = mMobileMapPackage.getMaps().get(mapNum);
+    // use the package thumbnail for maps without one
+    ListenableFuture<byte[]> mapThumbnailAsync = map.getItem() != null ? map.getItem().fetchThumbnailAsync() : null;
+    final ListenableFuture<byte[]> thumbnailAsync = mapThumbnailAsync != null ? mapThumbnailAsync :
+        mMobileMapPackage.getItem().fetchThumbnailAsync();
+    thumbnailAsync.addDoneListener(() -> {
+      try {
+        byte[] thumbnail = thumbnailAsync.get();
+        if (thumbnail != null) {
+          thumbnailCache.put(ThumbnailCache.key(packageFile, mapNum), thumbnail);
+        }
+      } catch (InterruptedException | ExecutionException e) {
+        String error = "Error getting thumbnail: " + e.getMessage();
+        Log.e(TAG, error);
+        Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+      }
+      fetchNextThumbnail(mapsToFetch, thumbnailCache, packageFile);
+    });
+  }
+
   /**
    * Defines a graphic symbol which represents geocoded locations.
    *
@@ -320,7 +400,7 @@ public class MainActivity extends AppCompatActivity {
 
   /**
    * Adds a graphic at a given point to GraphicsOverlay in the MapView. If RouteTask is not null
-   * get index for stop symbol. If identifyGraphicsOverlayAsync returns no graphics, call
+   * get index for stop symbol. If no marker graphic is identified at the point, call
    * reverseGeocode and route, otherwise just call reverseGeocode.
    *
    * @param screenPoint point on the screen which the user selected
@@ -331,12 +411,10 @@ public class MainActivity extends AppCompatActivity {
       if (mRouteTask == null) {
         mMarkerGraphicsOverlay.getGraphics().clear();
       }
-      final ListenableFuture<IdentifyGraphicsOverlayResult> identifyGraphicsResult =
-          mMapView.identifyGraphicsOverlayAsync(mMarkerGraphicsOverlay, screenPoint, 12, false);
-      identifyGraphicsResult.addDoneListener(() -> {
-        try {
+      mMarkerGraphicsIndex.identify(mMapView, screenPoint, 12, 1, new GraphicsIndex.Listener() {
+        @Override public void onIdentified(List<Graphic> graphics) {
           Graphic graphic;
-          if (identifyGraphicsResult.isDone() && identifyGraphicsResult.get().getGraphics().isEmpty()) {
+          if (graphics.isEmpty()) {
             if (mRouteTask != null) {
               int index = mMarkerGraphicsOverlay.getGraphics().size() + 1;
               graphic = graphicForPoint(mapPoint, true, index);
@@ -346,14 +424,16 @@ public class MainActivity extends AppCompatActivity {
             mMarkerGraphicsOverlay.getGraphics().add(graphic);
             reverseGeocode(mapPoint, graphic);
             route();
-          } else if (identifyGraphicsResult.isDone()) {
+          } else {
             // if graphic exists within screenPoint tolerance, show callout information of clicked graphic
-            reverseGeocode(mapPoint, identifyGraphicsResult.get().getGraphics().get(0));
+            reverseGeocode(mapPoint, graphics.get(0));
           }
-        } catch (Exception e) {
+        }
+
+        @Override public void onError(Exception e) {
           String error = "Error getting identify graphics result: " + e.getMessage();
           Log.e(TAG, error);
-          Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+          Toast.makeText(MainActivity.this, error, Toast.LENGTH_LONG).show();
         }
       });
     }
@@ -367,6 +447,15 @@ public class MainActivity extends AppCompatActivity {
    * @param graphic used for marking the point on which the user touched
    */
   private void reverseGeocode(final Point point, final Graphic graphic) {
+    // use the address already found for the graphic or its position
+    Object graphicAddress = graphic.getAttributes().get("Match_addr");
+    String cachedAddress = graphicAddress != null ? graphicAddress.toString() :
+        mAddressCache.get(RouteSession.positionKey(point, POSITION_TOLERANCE));
+    if (cachedAddress != null) {
+      graphic.getAttributes().put("Match_addr", cachedAddress);
+      showCalloutForGraphic(graphic, point);
+      return;
+    }
     if (mLocatorTask != null) {
       final ListenableFuture<List<GeocodeResult>> results =
           mLocatorTask.reverseGeocodeAsync(point, mReverseGeocodeParameters);
@@ -378,6 +467,7 @@ public class MainActivity extends AppCompatActivity {
             mMapView.getCallout().dismiss();
           } else {
             graphic.getAttributes().put("Match_addr", geocodeResult.get(0).getLabel());
+            mAddressCache.put(RouteSession.positionKey(point, POSITION_TOLERANCE), geocodeResult.get(0).getLabel());
             showCalloutForGraphic(graphic, point);
           }
         } catch (InterruptedException | ExecutionException e) {
@@ -390,51 +480,37 @@ public class MainActivity extends AppCompatActivity {
   }
 
   /**
-   * Uses the last two markers drawn to calculate a route between them.
+   * Routes through the markers in the order they were drawn. Only the legs to markers which weren't routed to before
+   * are solved.
    */
   private void route() {
-    if (mMarkerGraphicsOverlay.getGraphics().size() > 1 && mRouteParameters != null) {
-      // create stops for last and second to last graphic
-      int size = mMarkerGraphicsOverlay.getGraphics().size();
-      List<Graphic> graphics = new ArrayList<>();
-      Graphic lastGraphic = mMarkerGraphicsOverlay.getGraphics().get(size - 1);
-      graphics.add(lastGraphic);
-      Graphic secondLastGraphic = mMarkerGraphicsOverlay.getGraphics().get(size - 2);
-      graphics.add(secondLastGraphic);
-      // add stops to the parameters
-      mRouteParameters.setStops(stopsForGraphics(graphics));
-      final ListenableFuture<RouteResult> routeResult = mRouteTask.solveRouteAsync(mRouteParameters);
-      routeResult.addDoneListener(() -> {
-        try {
-          Route route = routeResult.get().getRoutes().get(0);
-          Graphic routeGraphic = new Graphic(route.getRouteGeometry(),
-              new SimpleLineSymbol(
-                  SimpleLineSymbol.Style.SOLID, Color.BLUE, 5.0f));
-          mRouteGraphicsOverlay.getGraphics().add(routeGraphic);
-        } catch (InterruptedException | ExecutionException e) {
-          String error = "Error getting route result: " + e.getMessage();
-          Log.e(TAG, error);
-          Toast.makeText(this, error, Toast.LENGTH_LONG).show();
-          // if routing is interrupted, remove last graphic
-          mMarkerGraphicsOverlay.getGraphics().remove(mMarkerGraphicsOverlay.getGraphics().size() - 1);
-        }
-      });
+    if (mRouteSession != null) {
+      List<Point> stops = new ArrayList<>();
+      for (Graphic graphic : mMarkerGraphicsOverlay.getGraphics()) {
+        stops.add((Point) graphic.getGeometry());
+      }
+      mRouteSession.setStops(stops);
     }
   }
 
   /**
-   * Converts a given list of graphics into a list of stops.
+   * Replaces the route graphics with the solved legs of the route.
    *
-   * @param graphics to be converted to stops
-   * @return a list of stops
+   * @param legs geometry of each leg, or null for legs still being solved
    */
-  private List<Stop> stopsForGraphics(List<Graphic> graphics) {
-    List<Stop> stops = new ArrayList<>();
-    for (Graphic graphic : graphics) {
-      Stop stop = new Stop((Point) graphic.getGeometry());
-      stops.add(stop);
+  private void showRoute(List<Geometry> legs) {
+    mRouteGraphicsOverlay.getGraphics().clear();
+    for (Geometry leg : legs) {
+      if (leg != null) {
+        mRouteGraphicsOverlay.getGraphics().add(new Graphic(leg, mRouteSymbol));
+      }
+    }
+    if (!legs.isEmpty()) {
+      Log.i(TAG, "Route with " + (legs.size() + 1) + " stops: " + mRouteSession.getSolveCount() + " legs solved, "
+          + mRouteSession.getReusedLegCount() + " cached legs reused (solved in " + mRouteSession.getReusedLegMillis()
+          + " ms), mean solve " + mRouteSession.getMeanSolveMillis() + " ms, last update took "
+          + mRouteSession.getLastUpdateMillis() + " ms");
     }
-    return stops;
   }
 
   @Override
@@ -451,6 +527,9 @@ public class MainActivity extends AppCompatActivity {
 
   @Override
   protected void onDestroy() {
+    if (mMarkerGraphicsIndex != null) {
+      mMarkerGraphicsIndex.dispose();
+    }
     mMapView.dispose();
     super.onDestroy();
   }
@@ -18,7 +18,6 @@ package com.esri.arcgisruntime.sample.mobilemapsearchandroute;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -41,6 +40,8 @@ public class MapChooserActivity extends AppCompatActivity {
     private MapPreviewAdapter mMapPreviewAdapter;
     private List<MapPreview> mMapPreviews;
     private String mMMPkTitle;
+    private ThumbnailCache mThumbnailCache;
+    private int mThumbnailSize;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -54,6 +55,8 @@ public class MapChooserActivity extends AppCompatActivity {
         }
         TextView nameMMPkView = findViewById(R.id.MMPk_title);
         nameMMPkView.setText(mMMPkTitle);
+        mThumbnailCache = ThumbnailCache.getInstance(this);
+        mThumbnailSize = getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
     }
 
     @Override
@@ -65,6 +68,13 @@ public class MapChooserActivity extends AppCompatActivity {
         loadMapPreviews();
     }
 
+    @Override
+    protected void onDestroy() {
+        // thumbnails still being fetched are no longer needed by this activity's views
+        mThumbnailCache.cancelWaiting();
+        super.onDestroy();
+    }
+
     /**
      * Create and set adapter
      */
@@ -121,11 +131,15 @@ public class MapChooserActivity extends AppCompatActivity {
             }
 
             mDescTextView.setText(mapPreview.getDesc());
-            // decode thumbnail from byte stream to bitmap
-            Bitmap thumbnail = BitmapFactory.decodeByteArray(
-                    mapPreview.getThumbnailByteStream(),
-                    0,
-                    mapPreview.getThumbnailByteStream().length);
+            // show the cached thumbnail, or decode it in the background at the size of the image view
+            String thumbnailKey = mapPreview.getThumbnailKey();
+            mThumbnailImageView.setTag(thumbnailKey);
+            Bitmap thumbnail = mThumbnailCache.get(thumbnailKey, mThumbnailSize, mThumbnailSize, (key, bitmap) -> {
+                // only show the thumbnail if the holder hasn't been bound to another map since
+                if (key.equals(mThumbnailImageView.getTag())) {
+                    mThumbnailImageView.setImageBitmap(bitmap);
+                }
+            });
             mThumbnailImageView.setImageBitmap(thumbnail);
         }
 
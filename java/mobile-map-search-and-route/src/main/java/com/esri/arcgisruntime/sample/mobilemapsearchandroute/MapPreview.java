@@ -29,7 +29,7 @@ class MapPreview implements Serializable {
     private boolean mTransportNetwork = false;
     private boolean mGeocoding = false;
     private String mDesc;
-    private byte[] mThumbnailByteStream;
+    private String mThumbnailKey;
 
     public int getMapNum() {
         return mMapNum;
@@ -71,11 +71,14 @@ class MapPreview implements Serializable {
         mDesc = mapInfo;
     }
 
-    public byte[] getThumbnailByteStream() {
-        return mThumbnailByteStream;
+    /**
+     * @return key of the map's thumbnail in the {@link ThumbnailCache}
+     */
+    public String getThumbnailKey() {
+        return mThumbnailKey;
     }
 
-    public void setThumbnailByteStream(byte[] thumbnailByteStream) {
-        mThumbnailByteStream = thumbnailByteStream;
+    public void setThumbnailKey(String thumbnailKey) {
+        mThumbnailKey = thumbnailKey;
     }
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.mobilemapsearchandroute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.os.SystemClock;
+
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.geometry.Geometry;
+import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.tasks.networkanalysis.RouteParameters;
+import com.esri.arcgisruntime.tasks.networkanalysis.RouteResult;
+import com.esri.arcgisruntime.tasks.networkanalysis.RouteTask;
+import com.esri.arcgisruntime.tasks.networkanalysis.Stop;
+
+/**
+ * Keeps a route through a list of stops up to date as the stops change.
+ * <p>
+ * The route is solved one leg, i.e. pair of consecutive stops, at a time. Solved legs are cached by the positions of
+ * their stops, so when the stops change only the legs which weren't part of the route before are solved, e.g. adding
+ * a stop to the end of the route solves just the leg to it. Solves in flight for legs which are no longer part of the
+ * route are cancelled.
+ * <p>
+ * Must be used from the UI thread, which is also where the listener is called.
+ */
+class RouteSession {
+
+  private final RouteTask mRouteTask;
+  private final RouteParameters mRouteParameters;
+  private final double mTolerance;
+  private final Listener mListener;
+  private final Map<String, CachedLeg> mLegCache;
+  private final Map<String, ListenableFuture<RouteResult>> mInFlightSolves = new HashMap<>();
+
+  private List<Point> mStops = new ArrayList<>();
+  private long mChangeTime;
+
+  private int mSolveCount;
+  private int mReusedLegCount;
+  private long mSolveMillis;
+  private long mReusedLegMillis;
+  private long mLastUpdateMillis;
+
+  /**
+   * @param routeTask       to solve legs with
+   * @param routeParameters default parameters of the route task, the stops are replaced for each leg
+   * @param tolerance       distance in map units within which stops count as being at the same position
+   * @param cacheSize       maximum number of solved legs to cache
+   * @param listener        receives the route's legs as they are solved
+   */
+  RouteSession(RouteTask routeTask, RouteParameters routeParameters, double tolerance, int cacheSize,
+      Listener listener) {
+    mRouteTask = routeTask;
+    mRouteParameters = routeParameters;
+    mTolerance = tolerance;
+    mListener = listener;
+    mLegCache = new LinkedHashMap<String, CachedLeg>(cacheSize, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<String, CachedLeg> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Routes through the given stops in order, reusing the legs already solved and cancelling the solves in flight for
+   * legs which are no longer needed.
+   */
+  void setStops(List<Point> stops) {
+    mStops = new ArrayList<>(stops);
+    mChangeTime = SystemClock.elapsedRealtime();
+    List<String> legKeys = new ArrayList<>();
+    for (int i = 0; i < mStops.size() - 1; i++) {
+      legKeys.add(legKey(mStops.get(i), mStops.get(i + 1)));
+    }
+    // cancel solves for legs which have been removed from the route
+    Iterator<Map.Entry<String, ListenableFuture<RouteResult>>> inFlight = mInFlightSolves.entrySet().iterator();
+    while (inFlight.hasNext()) {
+      Map.Entry<String, ListenableFuture<RouteResult>> entry = inFlight.next();
+      if (!legKeys.contains(entry.getKey())) {
+        entry.getValue().cancel(true);
+        inFlight.remove();
+      }
+    }
+    for (int i = 0; i < legKeys.size(); i++) {
+      String legKey = legKeys.get(i);
+      CachedLeg cachedLeg = mLegCache.get(legKey);
+      if (cachedLeg != null) {
+        mReusedLegCount++;
+        mReusedLegMillis += cachedLeg.mSolveMillis;
+      } else if (!mInFlightSolves.containsKey(legKey)) {
+        solve(legKey, mStops.get(i), mStops.get(i + 1));
+      }
+    }
+    notifyLegs();
+  }
+
+  /**
+   * Removes all stops from the route and cancels any solves in flight. Solved legs stay cached.
+   */
+  void clear() {
+    setStops(new ArrayList<>());
+  }
+
+  private void solve(String legKey, Point from, Point to) {
+    mSolveCount++;
+    long start = SystemClock.elapsedRealtime();
+    mRouteParameters.setStops(Arrays.asList(new Stop(from), new Stop(to)));
+    ListenableFuture<RouteResult> solveFuture = mRouteTask.solveRouteAsync(mRouteParameters);
+    mInFlightSolves.put(legKey, solveFuture);
+    solveFuture.addDoneListener(() -> {
+      // ignore solves cancelled because the leg was removed from the route
+      if (mInFlightSolves.get(legKey) != solveFuture) {
+        return;
+      }
+      mInFlightSolves.remove(legKey);
+      long solveMillis = SystemClock.elapsedRealtime() - start;
+      mSolveMillis += solveMillis;
+      try {
+        Geometry routeGeometry = solveFuture.get().getRoutes().get(0).getRouteGeometry();
+        mLegCache.put(legKey, new CachedLeg(routeGeometry, solveMillis));
+        notifyLegs();
+      } catch (Exception e) {
+        mListener.onSolveFailed(legIndex(legKey), e);
+      }
+    });
+  }
+
+  /**
+   * Passes the geometries of the route's legs to the listener, with null for the legs still being solved.
+   */
+  private void notifyLegs() {
+    List<Geometry> legs = new ArrayList<>();
+    boolean isComplete = true;
+    for (int i = 0; i < mStops.size() - 1; i++) {
+      CachedLeg cachedLeg = mLegCache.get(legKey(mStops.get(i), mStops.get(i + 1)));
+      legs.add(cachedLeg != null ? cachedLeg.mGeometry : null);
+      isComplete &= cachedLeg != null;
+    }
+    if (isComplete) {
+      mLastUpdateMillis = SystemClock.elapsedRealtime() - mChangeTime;
+    }
+    mListener.onLegsChanged(legs);
+  }
+
+  /**
+   * @return index of the leg in the route, or -1 if it is no longer part of the route
+   */
+  private int legIndex(String legKey) {
+    for (int i = 0; i < mStops.size() - 1; i++) {
+      if (legKey.equals(legKey(mStops.get(i), mStops.get(i + 1)))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private String legKey(Point from, Point to) {
+    return positionKey(from, mTolerance) + "->" + positionKey(to, mTolerance);
+  }
+
+  /**
+   * Snaps the point to a grid with cells of the given size.
+   *
+   * @return a key shared by the points in the same grid cell
+   */
+  static String positionKey(Point point, double tolerance) {
+    return Math.round(point.getX() / tolerance) + "/" + Math.round(point.getY() / tolerance);
+  }
+
+  /**
+   * @return number of legs sent to the route task to solve
+   */
+  int getSolveCount() {
+    return mSolveCount;
+  }
+
+  /**
+   * @return number of times a leg of the route was taken from the cache when the stops changed
+   */
+  int getReusedLegCount() {
+    return mReusedLegCount;
+  }
+
+  /**
+   * @return mean time taken to solve a leg, in milliseconds
+   */
+  long getMeanSolveMillis() {
+    return mSolveCount == 0 ? 0 : mSolveMillis / mSolveCount;
+  }
+
+  /**
+   * @return total time originally taken to solve the legs taken from the cache, in milliseconds
+   */
+  long getReusedLegMillis() {
+    return mReusedLegMillis;
+  }
+
+  /**
+   * @return time from the stops last changing until every leg of the route was available, in milliseconds
+   */
+  long getLastUpdateMillis() {
+    return mLastUpdateMillis;
+  }
+
+  private static class CachedLeg {
+
+    private final Geometry mGeometry;
+    private final long mSolveMillis;
+
+    private CachedLeg(Geometry geometry, long solveMillis) {
+      mGeometry = geometry;
+      mSolveMillis = solveMillis;
+    }
+  }
+
+  /**
+   * Receives the route's legs as they are solved.
+   */
+  interface Listener {
+
+    /**
+     * @param legs geometry of each leg of the route in order, or null for legs which haven't been solved yet
+     */
+    void onLegsChanged(List<Geometry> legs);
+
+    /**
+     * @param legIndex index of the leg which failed to solve in the route
+     * @param error    the reason the solve failed
+     */
+    void onSolveFailed(int legIndex, Exception error);
+  }
+}
@@ -0,0 +1,238 @@
+/* Copyright 2017 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.mobilemapsearchandroute;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Two level cache of map thumbnails from mobile map packages.
+ * <p>
+ * Thumbnails are stored on disk under a key made of the package path, its last modified time and the map's index, so a
+ * package which is replaced on the device gets new thumbnails. Decoded bitmaps, downsampled to the size they are shown
+ * at, are kept in an in-memory LRU cache sized against the app's memory class. Disk reads, writes and bitmap decoding
+ * happen on a small pool of background threads. A thumbnail asked for before it has been stored, e.g. while it is still
+ * being fetched from the package, is delivered once it is stored.
+ * <p>
+ * The cache is shared by the activities of the app, get it with {@link #getInstance(Context)}.
+ */
+class ThumbnailCache {
+
+    private static final String TAG = ThumbnailCache.class.getSimpleName();
+    private static final int THREAD_COUNT = 2;
+    // fraction of the app's memory class used for decoded thumbnails
+    private static final int MEMORY_FRACTION = 8;
+
+    private static ThumbnailCache sInstance;
+
+    private final File mDirectory;
+    private final LruCache<String, Bitmap> mBitmaps;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(THREAD_COUNT);
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // requests for thumbnails which weren't stored yet, by key
+    private final Map<String, Request> mWaiting = new HashMap<>();
+
+    static synchronized ThumbnailCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ThumbnailCache(Context context) {
+        mDirectory = new File(context.getCacheDir(), "thumbnails");
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_FRACTION;
+        mBitmaps = new LruCache<String, Bitmap>(maxBytes) {
+            @Override protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @param packageFile the mobile map package
+     * @param mapNum      index of the map in the package
+     * @return the key of the map's thumbnail
+     */
+    static String key(File packageFile, int mapNum) {
+        return packageDirectoryName(packageFile) + File.separator + packageFile.lastModified() + "_" + mapNum;
+    }
+
+    /**
+     * @return true if the thumbnail is stored on disk
+     */
+    boolean contains(String key) {
+        return new File(mDirectory, key).exists();
+    }
+
+    /**
+     * Stores the encoded thumbnail on disk in the background.
+     */
+    void put(String key, byte[] thumbnail) {
+        mExecutor.execute(() -> {
+            File file = new File(mDirectory, key);
+            File tempFile = new File(file.getPath() + ".tmp");
+            //noinspection ResultOfMethodCallIgnored
+            file.getParentFile().mkdirs();
+            // write to a temporary file first so a partly written thumbnail is never read
+            try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+                outputStream.write(thumbnail);
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing thumbnail: " + e.getMessage());
+                return;
+            }
+            if (!tempFile.renameTo(file)) {
+                Log.e(TAG, "Error writing thumbnail " + file.getName());
+                return;
+            }
+            Request request;
+            synchronized (mWaiting) {
+                request = mWaiting.remove(key);
+            }
+            if (request != null) {
+                deliver(key, request);
+            }
+        });
+    }
+
+    /**
+     * Deletes the thumbnails stored for earlier versions of the package in the background.
+     */
+    void removeStale(File packageFile) {
+        File packageDirectory = new File(mDirectory, packageDirectoryName(packageFile));
+        String prefix = packageFile.lastModified() + "_";
+        mExecutor.execute(() -> {
+            File[] files = packageDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.getName().startsWith(prefix) && !file.delete()) {
+                        Log.e(TAG, "Error deleting stale thumbnail " + file.getName());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the thumbnail decoded to at least the given size. A thumbnail in the memory cache is returned immediately,
+     * otherwise it is decoded from disk in the background, or once it is stored if it isn't stored yet. Only the latest
+     * request for a thumbnail which isn't stored yet is kept.
+     *
+     * @param key      of the thumbnail
+     * @param width    width the thumbnail is shown at, in pixels
+     * @param height   height the thumbnail is shown at, in pixels
+     * @param listener receives the bitmap on the UI thread, or null if it couldn't be decoded
+     * @return the bitmap if it is in the memory cache, otherwise null
+     */
+    Bitmap get(String key, int width, int height, Listener listener) {
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        Request request = new Request(width, height, listener);
+        mExecutor.execute(() -> {
+            synchronized (mWaiting) {
+                // put() delivers the thumbnail once it has been written
+                if (!new File(mDirectory, key).exists()) {
+                    mWaiting.put(key, request);
+                    return;
+                }
+            }
+            deliver(key, request);
+        });
+        return null;
+    }
+
+    /**
+     * Drops the requests waiting for thumbnails to be stored, e.g. when the views they are for are destroyed.
+     */
+    void cancelWaiting() {
+        synchronized (mWaiting) {
+            mWaiting.clear();
+        }
+    }
+
+    /**
+     * Decodes the stored thumbnail and passes it to the request's listener on the UI thread.
+     */
+    private void deliver(String key, Request request) {
+        Bitmap decoded = decode(new File(mDirectory, key), request.mWidth, request.mHeight);
+        if (decoded != null) {
+            mBitmaps.put(key, decoded);
+        }
+        mHandler.post(() -> request.mListener.onThumbnail(key, decoded));
+    }
+
+    /**
+     * Decodes the image file with the largest power of two downsampling which keeps it at least the given size.
+     */
+    private static Bitmap decode(File file, int width, int height) {
+        if (!file.exists()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    private static String packageDirectoryName(File packageFile) {
+        return UUID.nameUUIDFromBytes(packageFile.getAbsolutePath().getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Receives a thumbnail decoded in the background.
+     */
+    interface Listener {
+        void onThumbnail(String key, Bitmap bitmap);
+    }
+
+    private static class Request {
+        private final int mWidth;
+        private final int mHeight;
+        private final Listener mListener;
+
+        private Request(int width, int height, Listener listener) {
+            mWidth = width;
+            mHeight = height;
+            mListener = listener;
+        }
+    }
+}
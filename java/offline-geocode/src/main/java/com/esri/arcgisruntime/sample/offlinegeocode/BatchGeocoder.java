@@ -0,0 +1,329 @@
+/* Copyright 2018 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.offlinegeocode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.geometry.SpatialReferences;
+import com.esri.arcgisruntime.tasks.geocode.GeocodeParameters;
+import com.esri.arcgisruntime.tasks.geocode.GeocodeResult;
+import com.esri.arcgisruntime.tasks.geocode.LocatorTask;
+import com.esri.arcgisruntime.tasks.geocode.ReverseGeocodeParameters;
+
+/**
+ * Geocodes every line of an input file with a LocatorTask and writes the results to an output file.
+ * <p>
+ * Each line of the input is an address to geocode, or a WGS84 "longitude,latitude" pair to reverse geocode. The input
+ * is streamed on a background thread and at most a fixed number of locator requests are in flight at once, so
+ * arbitrarily large files can be geocoded without queueing them all up. Results found in the cache are written
+ * straight away, and each locator result is written as soon as it completes and added to the cache.
+ * <p>
+ * The output is a CSV file with the columns line, input, x, y, label and source (cache or locator). Rows are written
+ * in the order results complete, so the line number is included to match each row to its input.
+ */
+class BatchGeocoder {
+
+  private static final String TAG = BatchGeocoder.class.getSimpleName();
+  private static final int PROGRESS_INTERVAL = 100;
+
+  private final LocatorTask mLocatorTask;
+  private final GeocodeParameters mGeocodeParameters;
+  private final ReverseGeocodeParameters mReverseGeocodeParameters;
+  private final GeocodeCache mCache;
+  private final int mMaxConcurrent;
+  private final Semaphore mPermits;
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+  private final Set<ListenableFuture<List<GeocodeResult>>> mInFlightRequests = new HashSet<>();
+
+  private Thread mReaderThread;
+  private volatile boolean mCancelled;
+  private BufferedWriter mWriter;
+
+  private int mCompletedCount;
+  private int mCacheHitCount;
+  private int mFailedCount;
+  private long mStartNanos;
+  private long mElapsedNanos;
+  private long[] mLatencies = new long[1024];
+
+  /**
+   * @param locatorTask              a loaded locator task
+   * @param geocodeParameters        used to geocode addresses
+   * @param reverseGeocodeParameters used to reverse geocode points
+   * @param cache                    consulted before and updated after each locator request
+   * @param maxConcurrent            maximum number of locator requests in flight at once
+   */
+  BatchGeocoder(LocatorTask locatorTask, GeocodeParameters geocodeParameters,
+      ReverseGeocodeParameters reverseGeocodeParameters, GeocodeCache cache, int maxConcurrent) {
+    mLocatorTask = locatorTask;
+    mGeocodeParameters = geocodeParameters;
+    mReverseGeocodeParameters = reverseGeocodeParameters;
+    mCache = cache;
+    mMaxConcurrent = maxConcurrent;
+    mPermits = new Semaphore(maxConcurrent);
+  }
+
+  /**
+   * Starts geocoding the input file on a background thread. A batch geocoder can only be started once.
+   *
+   * @param inputFile  addresses or points to geocode, one per line
+   * @param outputFile to write the results to, replacing any existing file
+   * @param listener   notified of progress and completion on the UI thread
+   */
+  void start(File inputFile, File outputFile, Listener listener) {
+    mReaderThread = new Thread(() -> run(inputFile, outputFile, listener), "Batch geocoder");
+    mReaderThread.start();
+  }
+
+  /**
+   * Stops reading the input and cancels the locator requests in flight. The results so far are kept in the output.
+   */
+  void cancel() {
+    mCancelled = true;
+    if (mReaderThread != null) {
+      mReaderThread.interrupt();
+    }
+    synchronized (this) {
+      for (ListenableFuture<List<GeocodeResult>> request : mInFlightRequests) {
+        request.cancel(true);
+      }
+    }
+  }
+
+  boolean isRunning() {
+    return mReaderThread != null && mReaderThread.isAlive();
+  }
+
+  private void run(File inputFile, File outputFile, Listener listener) {
+    mStartNanos = System.nanoTime();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8));
+        BufferedWriter writer = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8))) {
+      writer.write("line,input,x,y,label,source\n");
+      synchronized (this) {
+        mWriter = writer;
+      }
+      try {
+        String line;
+        int lineNumber = 0;
+        while (!mCancelled && (line = reader.readLine()) != null) {
+          lineNumber++;
+          String input = line.trim();
+          if (!input.isEmpty()) {
+            geocode(lineNumber, input, listener);
+          }
+        }
+        // wait for the requests in flight to complete
+        mPermits.acquire(mMaxConcurrent);
+        mPermits.release(mMaxConcurrent);
+      } finally {
+        // stop results of cancelled requests being written once the output is closed
+        synchronized (this) {
+          mElapsedNanos = System.nanoTime() - mStartNanos;
+          mWriter = null;
+        }
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Error geocoding " + inputFile.getName() + ": " + e.getMessage());
+    } catch (InterruptedException e) {
+      Log.i(TAG, "Batch geocode cancelled");
+    } finally {
+      mCache.flush();
+    }
+    mHandler.post(() -> listener.onComplete(this));
+  }
+
+  /**
+   * Writes the cached result for the input, or sends a request to the locator when a permit is available.
+   */
+  private void geocode(int lineNumber, String input, Listener listener) throws InterruptedException, IOException {
+    long start = System.nanoTime();
+    Point point = parsePoint(input);
+    GeocodeCache.Entry cached = point != null ? mCache.getPoint(point) : mCache.getAddress(input);
+    if (cached != null) {
+      synchronized (this) {
+        complete(lineNumber, input, cached.getLocation(), cached.getLabel(), "cache", start, listener);
+        mCacheHitCount++;
+      }
+      return;
+    }
+
+    mPermits.acquire();
+    ListenableFuture<List<GeocodeResult>> request = point != null
+        ? mLocatorTask.reverseGeocodeAsync(point, mReverseGeocodeParameters)
+        : mLocatorTask.geocodeAsync(input, mGeocodeParameters);
+    synchronized (this) {
+      mInFlightRequests.add(request);
+    }
+    request.addDoneListener(() -> {
+      try {
+        List<GeocodeResult> geocodeResults = request.get();
+        Point location = null;
+        String label = "";
+        if (!geocodeResults.isEmpty()) {
+          GeocodeResult geocodeResult = geocodeResults.get(0);
+          location = geocodeResult.getDisplayLocation();
+          label = point != null ? formatAddress(geocodeResult) : geocodeResult.getLabel();
+          if (point != null) {
+            mCache.putPoint(point, location, label);
+          } else {
+            mCache.putAddress(input, location, label);
+          }
+        }
+        synchronized (this) {
+          complete(lineNumber, input, location, label, "locator", start, listener);
+        }
+      } catch (Exception e) {
+        if (!mCancelled) {
+          Log.e(TAG, "Error geocoding line " + lineNumber + ": " + e.getMessage());
+        }
+        synchronized (this) {
+          mFailedCount++;
+        }
+      } finally {
+        synchronized (this) {
+          mInFlightRequests.remove(request);
+        }
+        mPermits.release();
+      }
+    });
+  }
+
+  /**
+   * Writes a result row and records its latency. The result is only counted as completed once its row is written, so
+   * a row which can't be written is only counted by the caller as failed. Must be called holding the lock.
+   */
+  private void complete(int lineNumber, String input, Point location, String label, String source, long start,
+      Listener listener) throws IOException {
+    if (mWriter != null) {
+      mWriter.write(lineNumber + "," + quote(input) + "," + (location != null ? location.getX() : "") + ","
+          + (location != null ? location.getY() : "") + "," + quote(label) + "," + source + "\n");
+    }
+    if (mCompletedCount == mLatencies.length) {
+      mLatencies = Arrays.copyOf(mLatencies, mLatencies.length * 2);
+    }
+    mLatencies[mCompletedCount++] = System.nanoTime() - start;
+    if (mCompletedCount % PROGRESS_INTERVAL == 0) {
+      int completedCount = mCompletedCount;
+      mCache.flush();
+      mHandler.post(() -> listener.onProgress(completedCount));
+    }
+  }
+
+  /**
+   * @return the point for a "longitude,latitude" input, or null if the input is an address
+   */
+  private static Point parsePoint(String input) {
+    String[] coordinates = input.split(",");
+    if (coordinates.length != 2) {
+      return null;
+    }
+    try {
+      return new Point(Double.parseDouble(coordinates[0].trim()), Double.parseDouble(coordinates[1].trim()),
+          SpatialReferences.getWgs84());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static String quote(String text) {
+    return '"' + text.replace("\"", "\"\"") + '"';
+  }
+
+  /**
+   * @return the street, city, region and postal code of a reverse geocode result
+   */
+  static String formatAddress(GeocodeResult geocodeResult) {
+    String street = geocodeResult.getAttributes().get("StAddr").toString();
+    String city = geocodeResult.getAttributes().get("City").toString();
+    String region = geocodeResult.getAttributes().get("Region").toString();
+    String postCode = geocodeResult.getAttributes().get("Postal").toString();
+    return street + ", " + city + ", " + region + ", " + postCode;
+  }
+
+  /**
+   * @return number of inputs geocoded, from the cache or the locator
+   */
+  synchronized int getCompletedCount() {
+    return mCompletedCount;
+  }
+
+  /**
+   * @return number of inputs the locator failed to geocode
+   */
+  synchronized int getFailedCount() {
+    return mFailedCount;
+  }
+
+  /**
+   * @return inputs geocoded per second, over the whole run once complete
+   */
+  synchronized double getAddressesPerSecond() {
+    long elapsedNanos = mElapsedNanos > 0 ? mElapsedNanos : System.nanoTime() - mStartNanos;
+    return elapsedNanos <= 0 ? 0 : mCompletedCount * 1e9 / elapsedNanos;
+  }
+
+  /**
+   * @return fraction of the geocoded inputs found in the cache
+   */
+  synchronized double getCacheHitRate() {
+    return mCompletedCount == 0 ? 0 : (double) mCacheHitCount / mCompletedCount;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the given percentile of the time from reading an input to writing its result, in milliseconds
+   */
+  synchronized double getLatencyMillis(double percentile) {
+    if (mCompletedCount == 0) {
+      return 0;
+    }
+    long[] latencies = Arrays.copyOf(mLatencies, mCompletedCount);
+    Arrays.sort(latencies);
+    int index = Math.max((int) Math.ceil(mCompletedCount * percentile / 100) - 1, 0);
+    return latencies[index] / 1e6;
+  }
+
+  /**
+   * Receives the progress of a batch geocode on the UI thread.
+   */
+  interface Listener {
+    void onProgress(int completedCount);
+
+    void onComplete(BatchGeocoder batchGeocoder);
+  }
+}
@@ -0,0 +1,325 @@
+/* Copyright 2018 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.offlinegeocode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.util.Log;
+
+import com.esri.arcgisruntime.geometry.GeometryEngine;
+import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.geometry.SpatialReference;
+import com.esri.arcgisruntime.geometry.SpatialReferences;
+
+/**
+ * Persistent cache of geocode and reverse geocode results.
+ * <p>
+ * Geocode results are keyed by the normalized address, so differences in case, spacing and punctuation between
+ * otherwise equal addresses don't miss the cache. Reverse geocode results are keyed by the cell of a WGS84 grid the
+ * point falls in, so points a few meters apart share a result.
+ * <p>
+ * Entries are held in memory, up to a maximum number after which the least recently used are dropped, and appended to
+ * a tab separated file, one entry per line. The file is read back on a background thread when the cache is created;
+ * lookups miss until it has been read. Once the file holds twice as many lines as the cache holds entries, it is
+ * rewritten with only the current entries. A truncated last line, e.g. from the app being killed mid write, is
+ * skipped. All file access happens on one background thread, and methods may be called from any thread.
+ */
+class GeocodeCache {
+
+  private static final String TAG = GeocodeCache.class.getSimpleName();
+  private static final String ADDRESS_PREFIX = "A|";
+  private static final String POINT_PREFIX = "P|";
+
+  private final File mFile;
+  private final double mGridDegrees;
+  private final int mMaxEntries;
+  private final Map<String, Entry> mEntries;
+  private final ExecutorService mFileExecutor = Executors.newSingleThreadExecutor();
+  // only used on the file executor
+  private BufferedWriter mWriter;
+  private int mFileLineCount;
+  private boolean mClosed;
+
+  private long mLookupCount;
+  private long mHitCount;
+
+  /**
+   * @param file        to load entries from and append new entries to
+   * @param gridDegrees size of the grid cells reverse geocode points are snapped to, in degrees
+   * @param maxEntries  maximum number of entries to keep
+   */
+  GeocodeCache(File file, double gridDegrees, int maxEntries) {
+    mFile = file;
+    mGridDegrees = gridDegrees;
+    mMaxEntries = maxEntries;
+    mEntries = newEntryMap();
+    mFileExecutor.execute(this::load);
+  }
+
+  /**
+   * @return the cached geocode result for the address, or null if it isn't cached
+   */
+  synchronized Entry getAddress(String address) {
+    return lookup(ADDRESS_PREFIX + normalize(address));
+  }
+
+  synchronized void putAddress(String address, Point location, String label) {
+    put(ADDRESS_PREFIX + normalize(address), location, label);
+  }
+
+  /**
+   * @return the cached reverse geocode result for the grid cell containing the point, or null if it isn't cached
+   */
+  synchronized Entry getPoint(Point point) {
+    return lookup(POINT_PREFIX + quantize(point));
+  }
+
+  synchronized void putPoint(Point point, Point location, String label) {
+    put(POINT_PREFIX + quantize(point), location, label);
+  }
+
+  /**
+   * Writes any buffered entries to the cache file in the background.
+   */
+  synchronized void flush() {
+    if (mClosed) {
+      return;
+    }
+    mFileExecutor.execute(() -> {
+      if (mWriter != null) {
+        try {
+          mWriter.flush();
+        } catch (IOException e) {
+          Log.e(TAG, "Error writing geocode cache: " + e.getMessage());
+        }
+      }
+    });
+  }
+
+  /**
+   * Writes any buffered entries and closes the cache file in the background. Entries put afterwards are only kept in
+   * memory.
+   */
+  synchronized void close() {
+    if (mClosed) {
+      return;
+    }
+    mClosed = true;
+    mFileExecutor.execute(this::closeWriter);
+    mFileExecutor.shutdown();
+  }
+
+  /**
+   * @return fraction of lookups found in the cache
+   */
+  synchronized double getHitRate() {
+    return mLookupCount == 0 ? 0 : (double) mHitCount / mLookupCount;
+  }
+
+  private Entry lookup(String key) {
+    mLookupCount++;
+    Entry entry = mEntries.get(key);
+    if (entry != null) {
+      mHitCount++;
+    }
+    return entry;
+  }
+
+  private void put(String key, Point location, String label) {
+    // keep the label on one line of the cache file
+    Entry entry = new Entry(location, label.replaceAll("[\t\r\n]", " "));
+    if (mEntries.put(key, entry) != null || mClosed) {
+      return;
+    }
+    String line = toLine(key, entry);
+    mFileExecutor.execute(() -> append(line));
+  }
+
+  /**
+   * @return a map of entries in least to most recently used order, which drops the least recently used entry once it
+   * holds more than the maximum number of entries
+   */
+  private Map<String, Entry> newEntryMap() {
+    return new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > mMaxEntries;
+      }
+    };
+  }
+
+  /**
+   * Reads the entries of the cache file, keeping entries put since the cache was created. Runs on the file executor.
+   */
+  private void load() {
+    // later lines are more recent, so they replace earlier lines with the same key
+    Map<String, Entry> loaded = newEntryMap();
+    int lineCount = 0;
+    if (mFile.exists()) {
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(mFile), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          lineCount++;
+          String[] fields = line.split("\t", -1);
+          if (fields.length != 5) {
+            continue;
+          }
+          try {
+            Point location = new Point(Double.parseDouble(fields[2]), Double.parseDouble(fields[3]),
+                SpatialReference.create(Integer.parseInt(fields[1])));
+            loaded.put(fields[0], new Entry(location, fields[4]));
+          } catch (NumberFormatException e) {
+            // skip truncated entry
+          }
+        }
+      } catch (IOException e) {
+        Log.e(TAG, "Error reading geocode cache: " + e.getMessage());
+      }
+    }
+    int entryCount;
+    synchronized (this) {
+      // entries put while loading are the most recently used
+      loaded.putAll(mEntries);
+      mEntries.clear();
+      mEntries.putAll(loaded);
+      entryCount = mEntries.size();
+    }
+    // entries put while loading are appended by tasks queued behind this one
+    mFileLineCount += lineCount;
+    Log.i(TAG, "Loaded " + entryCount + " cached geocode results from " + lineCount + " lines");
+    compactIfNeeded();
+  }
+
+  /**
+   * Appends an entry's line to the cache file. Runs on the file executor.
+   */
+  private void append(String line) {
+    try {
+      if (mWriter == null) {
+        mWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mFile, true), StandardCharsets.UTF_8));
+      }
+      mWriter.write(line);
+      mFileLineCount++;
+    } catch (IOException e) {
+      Log.e(TAG, "Error writing geocode cache: " + e.getMessage());
+    }
+    compactIfNeeded();
+  }
+
+  /**
+   * Rewrites the cache file with only the current entries once it holds twice as many lines as the cache can hold
+   * entries, so the file doesn't grow with every replaced or dropped entry. Runs on the file executor.
+   */
+  private void compactIfNeeded() {
+    if (mFileLineCount < 2 * mMaxEntries) {
+      return;
+    }
+    List<String> lines = new ArrayList<>();
+    synchronized (this) {
+      for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+        lines.add(toLine(entry.getKey(), entry.getValue()));
+      }
+    }
+    closeWriter();
+    File compacted = new File(mFile.getPath() + ".tmp");
+    try (BufferedWriter writer = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(compacted), StandardCharsets.UTF_8))) {
+      for (String line : lines) {
+        writer.write(line);
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Error compacting geocode cache: " + e.getMessage());
+      compacted.delete();
+      return;
+    }
+    if (compacted.renameTo(mFile)) {
+      Log.i(TAG, "Compacted geocode cache from " + mFileLineCount + " to " + lines.size() + " lines");
+      mFileLineCount = lines.size();
+    } else {
+      Log.e(TAG, "Error replacing geocode cache file");
+      compacted.delete();
+    }
+  }
+
+  /**
+   * Runs on the file executor.
+   */
+  private void closeWriter() {
+    if (mWriter != null) {
+      try {
+        mWriter.close();
+      } catch (IOException e) {
+        Log.e(TAG, "Error closing geocode cache: " + e.getMessage());
+      }
+      mWriter = null;
+    }
+  }
+
+  private static String toLine(String key, Entry entry) {
+    Point location = entry.getLocation();
+    return key + '\t' + location.getSpatialReference().getWkid() + '\t' + location.getX() + '\t' + location.getY()
+        + '\t' + entry.getLabel() + '\n';
+  }
+
+  private static String normalize(String address) {
+    return address.toLowerCase(Locale.ROOT).replaceAll("[\\s,.]+", " ").trim();
+  }
+
+  private String quantize(Point point) {
+    Point wgs84Point = (Point) GeometryEngine.project(point, SpatialReferences.getWgs84());
+    long column = (long) Math.floor(wgs84Point.getX() / mGridDegrees);
+    long row = (long) Math.floor(wgs84Point.getY() / mGridDegrees);
+    return column + "/" + row;
+  }
+
+  /**
+   * A cached geocode result.
+   */
+  static class Entry {
+
+    private final Point mLocation;
+    private final String mLabel;
+
+    Entry(Point location, String label) {
+      mLocation = location;
+      mLabel = label;
+    }
+
+    Point getLocation() {
+      return mLocation;
+    }
+
+    String getLabel() {
+      return mLabel;
+    }
+  }
+}
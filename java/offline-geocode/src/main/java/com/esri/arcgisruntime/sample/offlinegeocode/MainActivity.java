@@ -21,6 +21,8 @@ import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.AdapterView;
@@ -52,13 +54,23 @@ import com.esri.arcgisruntime.tasks.geocode.GeocodeResult;
 import com.esri.arcgisruntime.tasks.geocode.LocatorTask;
 import com.esri.arcgisruntime.tasks.geocode.ReverseGeocodeParameters;
 
+import java.io.File;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutionException;
 
 public class MainActivity extends AppCompatActivity {
 
   private static final String TAG = MainActivity.class.getSimpleName();
+  // reverse geocode points within about 10 meters of each other share a cached result
+  private static final double REVERSE_GEOCODE_GRID_DEGREES = 0.0001;
+  private static final int GEOCODE_CACHE_MAX_ENTRIES = 10000;
+  private static final int BATCH_MAX_CONCURRENT_REQUESTS = 4;
 
+  private BatchGeocoder mBatchGeocoder;
+  // set from the tap which starts a batch until its batch geocoder is created, once the locator task has loaded
+  private boolean mBatchGeocodeStarting;
+  private GeocodeCache mGeocodeCache;
   private GraphicsOverlay mGraphicsOverlay;
   private GeocodeParameters mGeocodeParameters;
   private MapView mMapView;
@@ -106,6 +118,9 @@ public class MainActivity extends AppCompatActivity {
     mLocatorTask = new LocatorTask(
         getExternalFilesDir(null) + getResources().getString(R.string.san_diego_loc));
     mLocatorTask.loadAsync();
+    // cache geocode results across runs of the app, the cache file is read in the background
+    mGeocodeCache = new GeocodeCache(new File(getFilesDir(), getString(R.string.geocode_cache)),
+        REVERSE_GEOCODE_GRID_DEGREES, GEOCODE_CACHE_MAX_ENTRIES);
 
     mSearchView = findViewById(R.id.searchView);
     mSearchView.setIconifiedByDefault(true);
@@ -163,6 +178,11 @@ public class MainActivity extends AppCompatActivity {
    * @param address as a string
    */
   private void geoCodeTypedAddress(final String address) {
+    GeocodeCache.Entry cached = mGeocodeCache.getAddress(address);
+    if (cached != null) {
+      displayGeocodeResult(cached.getLocation(), cached.getLabel());
+      return;
+    }
     // Execute async task to find the address
     mLocatorTask.addDoneLoadingListener(() -> {
       if (mLocatorTask.getLoadStatus() == LoadStatus.LOADED) {
@@ -175,6 +195,8 @@ public class MainActivity extends AppCompatActivity {
             if (!geocodeResults.isEmpty()) {
               // get the first result
               GeocodeResult geocodeResult = geocodeResults.get(0);
+              mGeocodeCache.putAddress(address, geocodeResult.getDisplayLocation(), geocodeResult.getLabel());
+              mGeocodeCache.flush();
               displayGeocodeResult(geocodeResult.getDisplayLocation(), geocodeResult.getLabel());
             } else {
               Toast.makeText(this, "No location found for: " + address, Toast.LENGTH_LONG).show();
@@ -199,20 +221,20 @@ public class MainActivity extends AppCompatActivity {
    * @param point on which to perform the reverse geocode
    */
   private void reverseGeocode(Point point) {
+    GeocodeCache.Entry cached = mGeocodeCache.getPoint(point);
+    if (cached != null) {
+      displayGeocodeResult(point, cached.getLabel());
+      return;
+    }
     final ListenableFuture<List<GeocodeResult>> results = mLocatorTask.reverseGeocodeAsync(point, mReverseGeocodeParameters);
     try {
       List<GeocodeResult> geocodeResults = results.get();
       if (!geocodeResults.isEmpty()) {
         // get the top result
         GeocodeResult geocode = geocodeResults.get(0);
-        String detail;
         // attributes from a click-based search
-        String street = geocode.getAttributes().get("StAddr").toString();
-        String city = geocode.getAttributes().get("City").toString();
-        String region = geocode.getAttributes().get("Region").toString();
-        String postCode = geocode.getAttributes().get("Postal").toString();
-        detail = city + ", " + region + ", " + postCode;
-        String address = street + ", " + detail;
+        String address = BatchGeocoder.formatAddress(geocode);
+        mGeocodeCache.putPoint(point, geocode.getDisplayLocation(), address);
         displayGeocodeResult(point, address);
       }
     } catch (ExecutionException | InterruptedException e) {
@@ -222,6 +244,72 @@ public class MainActivity extends AppCompatActivity {
     }
   }
 
+  /**
+   * Geocodes the addresses and points in the batch input file in external storage, writing the results to the batch
+   * output file next to it.
+   */
+  private void batchGeocode() {
+    if (mBatchGeocodeStarting || (mBatchGeocoder != null && mBatchGeocoder.isRunning())) {
+      Toast.makeText(this, getString(R.string.batch_geocode_running), Toast.LENGTH_SHORT).show();
+      return;
+    }
+    File inputFile = new File(getExternalFilesDir(null) + getString(R.string.batch_input));
+    if (!inputFile.exists()) {
+      String error = "Batch geocode input not found: " + inputFile.getPath();
+      Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+      Log.e(TAG, error);
+      return;
+    }
+    File outputFile = new File(getExternalFilesDir(null) + getString(R.string.batch_output));
+    // the locator task may still be loading, so block further batches straight away rather than once it has loaded
+    mBatchGeocodeStarting = true;
+    mLocatorTask.addDoneLoadingListener(() -> {
+      mBatchGeocodeStarting = false;
+      if (mLocatorTask.getLoadStatus() != LoadStatus.LOADED) {
+        String error = "Error loading locator task: " + mLocatorTask.getLoadError().getMessage();
+        Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+        Log.e(TAG, error);
+        return;
+      }
+      Toast.makeText(this, getString(R.string.batch_geocode_started), Toast.LENGTH_SHORT).show();
+      mBatchGeocoder = new BatchGeocoder(mLocatorTask, mGeocodeParameters, mReverseGeocodeParameters, mGeocodeCache,
+          BATCH_MAX_CONCURRENT_REQUESTS);
+      mBatchGeocoder.start(inputFile, outputFile, new BatchGeocoder.Listener() {
+        @Override
+        public void onProgress(int completedCount) {
+          Log.i(TAG, "Batch geocoded " + completedCount + " addresses");
+        }
+
+        @Override
+        public void onComplete(BatchGeocoder batchGeocoder) {
+          String summary = String.format(Locale.ROOT,
+              "Batch geocoded %d addresses (%d failed): %.1f addresses/s, cache hit rate %.1f%%, "
+                  + "latency p50 %.1f ms, p99 %.1f ms", batchGeocoder.getCompletedCount(),
+              batchGeocoder.getFailedCount(), batchGeocoder.getAddressesPerSecond(),
+              batchGeocoder.getCacheHitRate() * 100, batchGeocoder.getLatencyMillis(50),
+              batchGeocoder.getLatencyMillis(99));
+          Toast.makeText(MainActivity.this, summary, Toast.LENGTH_LONG).show();
+          Log.i(TAG, summary + ", results written to " + outputFile.getPath());
+        }
+      });
+    });
+  }
+
+  @Override
+  public boolean onCreateOptionsMenu(Menu menu) {
+    getMenuInflater().inflate(R.menu.menu_main, menu);
+    return true;
+  }
+
+  @Override
+  public boolean onOptionsItemSelected(MenuItem item) {
+    if (item.getItemId() == R.id.batchGeocode) {
+      batchGeocode();
+      return true;
+    }
+    return super.onOptionsItemSelected(item);
+  }
+
   /**
    * Draw a point and open a callout showing geocode results on map.
    *
@@ -344,6 +432,8 @@ public class MainActivity extends AppCompatActivity {
 
   @Override
   protected void onPause() {
+    // persist results cached since the last flush
+    mGeocodeCache.flush();
     mMapView.pause();
     super.onPause();
   }
@@ -356,6 +446,10 @@ public class MainActivity extends AppCompatActivity {
 
   @Override
   protected void onDestroy() {
+    if (mBatchGeocoder != null) {
+      mBatchGeocoder.cancel();
+    }
+    mGeocodeCache.close();
     mMapView.dispose();
     super.onDestroy();
   }
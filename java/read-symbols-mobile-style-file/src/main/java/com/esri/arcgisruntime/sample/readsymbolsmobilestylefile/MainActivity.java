@@ -28,6 +28,7 @@ import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
@@ -64,6 +65,9 @@ public class MainActivity extends AppCompatActivity implements OnSymbolPreviewTa
 
   private static final String TAG = MainActivity.class.getSimpleName();
 
+  // number of symbols fetched from the style at a time
+  private static final int MAX_SYMBOL_FETCHES_IN_FLIGHT = 4;
+
   private RecyclerView mEyesRecyclerView;
   private RecyclerView mMouthRecyclerView;
   private RecyclerView mHatRecyclerView;
@@ -84,6 +88,9 @@ public class MainActivity extends AppCompatActivity implements OnSymbolPreviewTa
   private SymbolStyle mEmojiStyle;
   private MultilayerPointSymbol mCurrentMultilayerSymbol;
   private SeekBar mSizeSeekBar;
+  private SwatchCache mSwatchCache;
+  // identifies the latest preview request, so that results of earlier requests are ignored
+  private int mPreviewRequestId;
 
   @Override protected void onCreate(@Nullable Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -148,9 +155,12 @@ public class MainActivity extends AppCompatActivity implements OnSymbolPreviewTa
     Button clearButton = findViewById(R.id.clearButton);
     clearButton.setOnClickListener(v -> clearGraphics(mGraphicsOverlay));
 
+    String stylePath = getExternalFilesDir(null) + getString(R.string.mobile_style_file_path);
+    mSwatchCache = new SwatchCache(stylePath, MAX_SYMBOL_FETCHES_IN_FLIGHT);
+
     setupRecyclerViews();
 
-    loadSymbolsFromStyleFile();
+    loadSymbolsFromStyleFile(stylePath);
   }
 
   /**
@@ -173,16 +183,20 @@ public class MainActivity extends AppCompatActivity implements OnSymbolPreviewTa
 
   /**
    * Loads the stylx file and searches for all symbols contained within. Put the resulting symbols into recycler views
-   * based on their category (eyes, mouth, hat, face).
+   * based on their category (eyes, mouth, hat, face), then fetch their symbols in the background.
+   *
+   * @param stylePath of the stylx file
    */
-  private void loadSymbolsFromStyleFile() {
+  private void loadSymbolsFromStyleFile(String stylePath) {
     // read permission accepted, enable UI elements
     mColorSpinner.setEnabled(true);
     mSizeSeekBar.setEnabled(true);
     createMapViewOnTouchListener();
 
     // create a SymbolStyle by passing the location of the .stylx file in the constructor
-    mEmojiStyle = new SymbolStyle(getExternalFilesDir(null) + getString(R.string.mobile_style_file_path));
+    long loadStart = SystemClock.elapsedRealtime();
+    boolean warm = mSwatchCache.isWarm();
+    mEmojiStyle = new SymbolStyle(stylePath);
     // add a listener to run when the SymbolStyle has loaded
     mEmojiStyle.addDoneLoadingListener(() -> {
       if (mEmojiStyle.getLoadStatus() == LoadStatus.FAILED_TO_LOAD) {
@@ -201,24 +215,37 @@ public class MainActivity extends AppCompatActivity implements OnSymbolPreviewTa
           symbolStyleSearchResultFuture.addDoneListener(() -> {
             try {
               List<SymbolStyleSearchResult> symbolStyleSearchResults = symbolStyleSearchResultFuture.get();
+              Log.i(TAG, String.format(Locale.US, "Found %d symbols in %d ms (%s)", symbolStyleSearchResults.size(),
+                  SystemClock.elapsedRealtime() - loadStart, warm ? "warm" : "cold"));
+              List<SymbolStyleSearchResult> eyesSymbols = new ArrayList<>();
+              List<SymbolStyleSearchResult> mouthSymbols = new ArrayList<>();
+              List<SymbolStyleSearchResult> hatSymbols = new ArrayList<>();
               for (SymbolStyleSearchResult symbolStyleSearchResult : symbolStyleSearchResults) {
                 // these categories are specific to this SymbolStyle
                 switch (symbolStyleSearchResult.getCategory().toLowerCase(Locale.ROOT)) {
                   case "eyes":
-                    mEyesAdapter.addSymbol(symbolStyleSearchResult);
+                    eyesSymbols.add(symbolStyleSearchResult);
                     break;
                   case "mouth":
-                    mMouthAdapter.addSymbol(symbolStyleSearchResult);
+                    mouthSymbols.add(symbolStyleSearchResult);
                     break;
                   case "hat":
-                    mHatAdapter.addSymbol(symbolStyleSearchResult);
+                    hatSymbols.add(symbolStyleSearchResult);
                     break;
                   case "face":
                     mFaceSymbolKey = symbolStyleSearchResult.getKey();
                     break;
                 }
-                animateRecyclerViews();
               }
+              // add each category in one go, so the lists are laid out once rather than once per symbol
+              mEyesAdapter.addSymbols(eyesSymbols);
+              mMouthAdapter.addSymbols(mouthSymbols);
+              mHatAdapter.addSymbols(hatSymbols);
+              animateRecyclerViews();
+              // fetch the symbols in the background, behind the symbols of the swatches in view
+              mSwatchCache.prefetchSymbols(symbolStyleSearchResults, () -> Log.i(TAG, String.format(Locale.US,
+                  "Fetched %d symbols in %d ms (%s). %s", symbolStyleSearchResults.size(),
+                  SystemClock.elapsedRealtime() - loadStart, warm ? "warm" : "cold", mSwatchCache.metrics())));
             } catch (InterruptedException | ExecutionException e) {
               logErrorToUser(this, getString(R.string.error_searching_for_symbols_failed, e.getMessage()));
             }
@@ -233,16 +260,26 @@ public class MainActivity extends AppCompatActivity implements OnSymbolPreviewTa
   }
 
   /**
-   * Create a new multilayer point symbol based on selected symbol keys, size, and color.
+   * Create a new multilayer point symbol based on selected symbol keys, size, and color. The swatch is taken from the
+   * {@link SwatchCache} if this combination has been previewed before.
    */
   private void createSwatchAsync() {
+    int requestId = ++mPreviewRequestId;
+    // if the user has chosen a color other than "Select color..." (index 0) or "Default" (index 1)
+    boolean customColor = mColorSpinner.getSelectedItemPosition() > 1;
+    String swatchKey = mSwatchCache.key(mKeys, customColor ? mColor : null, mSize, this);
+    Bitmap cachedSwatch = mSwatchCache.getSwatch(swatchKey);
+    if (cachedSwatch != null) {
+      mPreviewView.setImageBitmap(cachedSwatch);
+    }
     // get the Future to perform the generation of the multi layer symbol
     ListenableFuture<Symbol> symbolFuture = mEmojiStyle.getSymbolAsync(mKeys);
     symbolFuture.addDoneListener(() -> {
       try {
         // wait for the Future to complete and get the result
         MultilayerPointSymbol faceSymbol = (MultilayerPointSymbol) symbolFuture.get();
-        if (faceSymbol == null) {
+        // ignore the symbol if the selection has changed since it was requested
+        if (faceSymbol == null || requestId != mPreviewRequestId) {
           return;
         }
         // set size to current size as defined by seek bar
@@ -251,17 +288,25 @@ public class MainActivity extends AppCompatActivity implements OnSymbolPreviewTa
         for (SymbolLayer symbolLayer : faceSymbol.getSymbolLayers()) {
           symbolLayer.setColorLocked(true);
         }
-        // if the user has chosen a color other than "Select color..." (index 0) or "Default" (index 1)
-        if (mColorSpinner.getSelectedItemPosition() > 1) {
+        if (customColor) {
           // unlock the first layer and set it to the selected color
           faceSymbol.getSymbolLayers().get(0).setColorLocked(false);
           faceSymbol.setColor(mColor);
         }
+        if (cachedSwatch != null) {
+          // the preview is already showing this symbol's swatch
+          mCurrentMultilayerSymbol = faceSymbol;
+          return;
+        }
         // get the future to create the swatch of the multi layer symbol
         ListenableFuture<Bitmap> bitmapFuture = faceSymbol.createSwatchAsync(this, Color.TRANSPARENT);
         bitmapFuture.addDoneListener(() -> {
           try {
             Bitmap bitmap = bitmapFuture.get();
+            mSwatchCache.putSwatch(swatchKey, bitmap);
+            if (requestId != mPreviewRequestId) {
+              return;
+            }
             mPreviewView.setImageBitmap(bitmap);
             // set this field to enable us to add this symbol to the graphics overlay
             mCurrentMultilayerSymbol = faceSymbol;
@@ -375,15 +420,15 @@ public class MainActivity extends AppCompatActivity implements OnSymbolPreviewTa
    */
   private void setupRecyclerViews() {
     mEyesRecyclerView.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
-    mEyesAdapter = new SymbolAdapter(this);
+    mEyesAdapter = new SymbolAdapter(this, mSwatchCache);
     mEyesRecyclerView.setAdapter(mEyesAdapter);
 
     mMouthRecyclerView.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
-    mMouthAdapter = new SymbolAdapter(this);
+    mMouthAdapter = new SymbolAdapter(this, mSwatchCache);
     mMouthRecyclerView.setAdapter(mMouthAdapter);
 
     mHatRecyclerView.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
-    mHatAdapter = new SymbolAdapter(this);
+    mHatAdapter = new SymbolAdapter(this, mSwatchCache);
     mHatRecyclerView.setAdapter(mHatAdapter);
   }
 
@@ -423,6 +468,8 @@ public class MainActivity extends AppCompatActivity implements OnSymbolPreviewTa
 
   @Override
   protected void onDestroy() {
+    // the cached swatches are kept for when the activity is recreated
+    mSwatchCache.cancelFetches();
     mMapView.dispose();
     super.onDestroy();
   }
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2019 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.esri.arcgisruntime.sample.readsymbolsmobilestylefile;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.symbology.Symbol;
+import com.esri.arcgisruntime.symbology.SymbolStyleSearchResult;
+
+/**
+ * Caches the swatches of a style's symbols, and fetches the symbols with a bounded number of fetches in flight.
+ *
+ * Swatches are kept in a memory cache shared by every instance, keyed by the style, the symbol keys, the color, the size
+ * and the screen density, and the least recently used are evicted once the cache is full. As the cache outlives the
+ * activity, recreating the activity finds the swatches it has already made. Symbols are fetched from the style at most
+ * a fixed number at a time: prefetches fill the free fetch slots in the background, and symbols whose swatches are
+ * needed jump ahead of the prefetches, so the swatches of the symbols in view are made first. Swatches of list items are
+ * only made when they are asked for.
+ *
+ * All methods must be called on the UI thread, and callbacks are called on the UI thread.
+ */
+final class SwatchCache {
+
+  /**
+   * Receives the result of a request on the UI thread.
+   */
+  interface Callback<T> {
+
+    /**
+     * @param result of the request, or null if it failed
+     * @param error the request failed with, or null if it succeeded
+     */
+    void onResult(T result, Exception error);
+  }
+
+  // swatches are shared between instances, so they survive the activity being recreated
+  private static final LruCache<String, Bitmap> sSwatches = new LruCache<String, Bitmap>(
+      (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16)) {
+    @Override protected int sizeOf(String key, Bitmap bitmap) {
+      return bitmap.getByteCount();
+    }
+  };
+
+  private final String mStyleId;
+  private final int mMaxFetchesInFlight;
+  private final Map<String, Symbol> mSymbols = new HashMap<>();
+  // callbacks waiting for symbols which are queued or being fetched
+  private final Map<String, List<Callback<Symbol>>> mCallbacks = new HashMap<>();
+  private final Set<String> mFetching = new HashSet<>();
+  private final Deque<SymbolStyleSearchResult> mFetchQueue = new ArrayDeque<>();
+  private Runnable mOnPrefetched;
+  // set once fetches are cancelled, after which no fetches are started and no callbacks are called
+  private boolean mCancelled;
+
+  private int mHitCount;
+  private int mMissCount;
+  private long mSwatchNanos;
+
+  /**
+   * @param styleId identifies the style the symbols come from, such as its path
+   * @param maxFetchesInFlight number of symbols fetched from the style at a time
+   */
+  SwatchCache(String styleId, int maxFetchesInFlight) {
+    mStyleId = styleId;
+    mMaxFetchesInFlight = maxFetchesInFlight;
+  }
+
+  /**
+   * @param symbolKeys of the symbol, in layer order
+   * @param color of the symbol's first layer, or null if the symbol's own colors are used
+   * @param size of the symbol, or 0 if it is the symbol's own size
+   * @param context the swatch is made for, whose screen density the swatch depends on
+   * @return the key of the swatch of a symbol made from the given keys, color and size
+   */
+  String key(List<String> symbolKeys, Integer color, int size, Context context) {
+    return mStyleId + "|" + TextUtils.join(",", symbolKeys) + "|" + (color != null ? Integer.toHexString(color) : "")
+        + "|" + size + "|" + context.getResources().getDisplayMetrics().density;
+  }
+
+  /**
+   * @return the cached swatch, or null if it isn't cached
+   */
+  Bitmap getSwatch(String key) {
+    Bitmap swatch = sSwatches.get(key);
+    if (swatch != null) {
+      mHitCount++;
+    } else {
+      mMissCount++;
+    }
+    return swatch;
+  }
+
+  void putSwatch(String key, Bitmap swatch) {
+    sSwatches.put(key, swatch);
+  }
+
+  /**
+   * @return whether any swatches have been made for this style, such as before the activity was recreated
+   */
+  boolean isWarm() {
+    String prefix = mStyleId + "|";
+    for (String key : sSwatches.snapshot().keySet()) {
+      if (key.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the swatch of the search result's symbol, from the cache or by fetching the symbol ahead of the prefetches
+   * and making its swatch.
+   */
+  void loadSwatch(SymbolStyleSearchResult searchResult, Context context, Callback<Bitmap> callback) {
+    String key = key(Collections.singletonList(searchResult.getKey()), null, 0, context);
+    Bitmap cached = getSwatch(key);
+    if (cached != null) {
+      callback.onResult(cached, null);
+      return;
+    }
+    if (mCancelled) {
+      return;
+    }
+    fetchSymbol(searchResult, (symbol, error) -> {
+      if (error != null) {
+        callback.onResult(null, error);
+        return;
+      }
+      long start = System.nanoTime();
+      ListenableFuture<Bitmap> bitmapFuture = symbol.createSwatchAsync(context, Color.TRANSPARENT);
+      bitmapFuture.addDoneListener(() -> {
+        try {
+          Bitmap bitmap = bitmapFuture.get();
+          mSwatchNanos += System.nanoTime() - start;
+          // the swatch is still worth keeping for the next instance once fetches are cancelled
+          putSwatch(key, bitmap);
+          if (!mCancelled) {
+            callback.onResult(bitmap, null);
+          }
+        } catch (Exception e) {
+          if (!mCancelled) {
+            callback.onResult(null, e);
+          }
+        }
+      });
+    });
+  }
+
+  /**
+   * Fetches the search results' symbols in the background, so their swatches can be made as soon as they come into
+   * view.
+   *
+   * @param onPrefetched run once every symbol has been fetched
+   */
+  void prefetchSymbols(List<SymbolStyleSearchResult> searchResults, Runnable onPrefetched) {
+    if (mCancelled) {
+      return;
+    }
+    mOnPrefetched = onPrefetched;
+    for (SymbolStyleSearchResult searchResult : searchResults) {
+      if (!mSymbols.containsKey(searchResult.getKey()) && !mFetching.contains(searchResult.getKey())) {
+        mFetchQueue.addLast(searchResult);
+      }
+    }
+    fetchNext();
+  }
+
+  /**
+   * Stops fetching symbols and drops the callbacks waiting for them, so none are called once this returns, such as
+   * after the activity is destroyed. The cached swatches are kept for the next instance.
+   */
+  void cancelFetches() {
+    mCancelled = true;
+    mFetchQueue.clear();
+    mCallbacks.clear();
+    mOnPrefetched = null;
+  }
+
+  /**
+   * @return a summary of the cache hit rate, the memory used and the time spent making swatches
+   */
+  String metrics() {
+    int requestCount = mHitCount + mMissCount;
+    return String.format(Locale.US,
+        "Swatch cache: hit rate %d/%d (%.0f%%), %d swatches in %.1f MB, %d symbols fetched, swatches made in %.0f ms",
+        mHitCount, requestCount, requestCount > 0 ? 100.0 * mHitCount / requestCount : 0,
+        sSwatches.snapshot().size(), sSwatches.size() / (1024.0 * 1024.0), mSymbols.size(), mSwatchNanos / 1e6);
+  }
+
+  /**
+   * Fetches the symbol ahead of any queued prefetches.
+   */
+  private void fetchSymbol(SymbolStyleSearchResult searchResult, Callback<Symbol> callback) {
+    String key = searchResult.getKey();
+    Symbol symbol = mSymbols.get(key);
+    if (symbol != null) {
+      callback.onResult(symbol, null);
+      return;
+    }
+    List<Callback<Symbol>> callbacks = mCallbacks.get(key);
+    if (callbacks == null) {
+      callbacks = new ArrayList<>();
+      mCallbacks.put(key, callbacks);
+    }
+    callbacks.add(callback);
+    if (!mFetching.contains(key)) {
+      // if a prefetch has queued the symbol too, it is skipped when it is reached
+      mFetchQueue.addFirst(searchResult);
+      fetchNext();
+    }
+  }
+
+  /**
+   * Starts fetching queued symbols until the maximum number of fetches are in flight.
+   */
+  private void fetchNext() {
+    while (mFetching.size() < mMaxFetchesInFlight && !mFetchQueue.isEmpty()) {
+      SymbolStyleSearchResult searchResult = mFetchQueue.pollFirst();
+      String key = searchResult.getKey();
+      if (mSymbols.containsKey(key) || !mFetching.add(key)) {
+        continue;
+      }
+      ListenableFuture<Symbol> symbolFuture = searchResult.getSymbolAsync();
+      symbolFuture.addDoneListener(() -> {
+        mFetching.remove(key);
+        if (mCancelled) {
+          return;
+        }
+        List<Callback<Symbol>> callbacks = mCallbacks.remove(key);
+        if (callbacks == null) {
+          callbacks = Collections.emptyList();
+        }
+        try {
+          Symbol symbol = symbolFuture.get();
+          mSymbols.put(key, symbol);
+          for (Callback<Symbol> callback : callbacks) {
+            callback.onResult(symbol, null);
+          }
+        } catch (Exception e) {
+          for (Callback<Symbol> callback : callbacks) {
+            callback.onResult(null, e);
+          }
+        }
+        fetchNext();
+      });
+    }
+    if (mFetching.isEmpty() && mFetchQueue.isEmpty() && mOnPrefetched != null) {
+      Runnable onPrefetched = mOnPrefetched;
+      mOnPrefetched = null;
+      onPrefetched.run();
+    }
+  }
+}
@@ -17,11 +17,9 @@
 package com.esri.arcgisruntime.sample.readsymbolsmobilestylefile;
 
 import java.util.ArrayList;
-import java.util.concurrent.ExecutionException;
+import java.util.List;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Color;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
@@ -33,12 +31,11 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.Toast;
 
-import com.esri.arcgisruntime.concurrent.ListenableFuture;
-import com.esri.arcgisruntime.symbology.Symbol;
 import com.esri.arcgisruntime.symbology.SymbolStyleSearchResult;
 
 /**
- * {@link RecyclerView.Adapter} subclass that displays symbols
+ * {@link RecyclerView.Adapter} subclass that displays symbols. Swatches are only made for the items that are bound, and
+ * are taken from the {@link SwatchCache} where possible.
  */
 class SymbolAdapter extends RecyclerView.Adapter<SymbolAdapter.ViewHolder> {
 
@@ -46,9 +43,11 @@ class SymbolAdapter extends RecyclerView.Adapter<SymbolAdapter.ViewHolder> {
 
     private final ArrayList<SymbolStyleSearchResult> mSymbols = new ArrayList<>();
     private final OnSymbolPreviewTapListener mOnSymbolPreviewTapListener;
+    private final SwatchCache mSwatchCache;
 
-    public SymbolAdapter(OnSymbolPreviewTapListener onSymbolPreviewTapListener) {
+    public SymbolAdapter(OnSymbolPreviewTapListener onSymbolPreviewTapListener, SwatchCache swatchCache) {
         mOnSymbolPreviewTapListener = onSymbolPreviewTapListener;
+        mSwatchCache = swatchCache;
     }
 
     @NonNull
@@ -60,7 +59,7 @@ class SymbolAdapter extends RecyclerView.Adapter<SymbolAdapter.ViewHolder> {
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder viewHolder, int i) {
-        viewHolder.bind(mSymbols.get(i), mOnSymbolPreviewTapListener);
+        viewHolder.bind(mSymbols.get(i), mOnSymbolPreviewTapListener, mSwatchCache);
     }
 
     @Override
@@ -68,9 +67,10 @@ class SymbolAdapter extends RecyclerView.Adapter<SymbolAdapter.ViewHolder> {
         return mSymbols.size();
     }
 
-    void addSymbol(SymbolStyleSearchResult symbol) {
-        mSymbols.add(symbol);
-        notifyItemInserted(mSymbols.size() - 1);
+    void addSymbols(List<SymbolStyleSearchResult> symbols) {
+        int start = mSymbols.size();
+        mSymbols.addAll(symbols);
+        notifyItemRangeInserted(start, symbols.size());
     }
 
     static class ViewHolder extends RecyclerView.ViewHolder {
@@ -84,31 +84,25 @@ class SymbolAdapter extends RecyclerView.Adapter<SymbolAdapter.ViewHolder> {
             mContext = itemView.getContext();
         }
 
-        private void bind(SymbolStyleSearchResult symbolStyleSearchResult, OnSymbolPreviewTapListener onSymbolPreviewTapListener) {
-            // get the Future to create the swatch of the multi layer symbol
-            ListenableFuture<Symbol> symbolFuture = symbolStyleSearchResult.getSymbolAsync();
-            symbolFuture.addDoneListener(() -> {
-                try {
-                    // get a reference to the symbol created
-                    Symbol symbol = symbolFuture.get();
-                    // create a bitmap swatch from the symbol
-                    ListenableFuture<Bitmap> bitmapFuture = symbol.createSwatchAsync(itemView.getContext(), Color.TRANSPARENT);
-                    bitmapFuture.addDoneListener(() -> {
-                        try {
-                            // get a reference to the bitmap
-                            Bitmap bitmap = bitmapFuture.get();
-                            // set the bitmap to the image view
-                            mImageView.setImageBitmap(bitmap);
-                            itemView.setOnClickListener(v -> onSymbolPreviewTapListener.onSymbolPreviewTap(symbolStyleSearchResult));
-                        } catch (Exception e) {
-                            Log.e(TAG, mContext.getString(R.string.error_loading_symbol_bitmap_failed, e.getMessage()));
-                            Toast.makeText(mContext, mContext.getString(R.string.error_loading_symbol_bitmap_failed, e.getMessage()), Toast.LENGTH_LONG).show();
-                        }
-                    });
-                } catch (Exception e) {
-                    Log.e(TAG, mContext.getString(R.string.error_loading_multilayer_symbol_failed, e.getMessage()));
-                    Toast.makeText(mContext, mContext.getString(R.string.error_loading_multilayer_symbol_failed, e.getMessage()), Toast.LENGTH_LONG).show();
+        private void bind(SymbolStyleSearchResult symbolStyleSearchResult, OnSymbolPreviewTapListener onSymbolPreviewTapListener,
+                SwatchCache swatchCache) {
+            // the view holder may be rebound to another symbol before the swatch is ready
+            String key = symbolStyleSearchResult.getKey();
+            mImageView.setTag(key);
+            mImageView.setImageBitmap(null);
+            itemView.setOnClickListener(null);
+            swatchCache.loadSwatch(symbolStyleSearchResult, mContext, (bitmap, error) -> {
+                if (!key.equals(mImageView.getTag())) {
+                    return;
                 }
+                if (error != null) {
+                    Log.e(TAG, mContext.getString(R.string.error_loading_symbol_bitmap_failed, error.getMessage()));
+                    Toast.makeText(mContext, mContext.getString(R.string.error_loading_symbol_bitmap_failed, error.getMessage()), Toast.LENGTH_LONG).show();
+                    return;
+                }
+                // set the bitmap to the image view
+                mImageView.setImageBitmap(bitmap);
+                itemView.setOnClickListener(v -> onSymbolPreviewTapListener.onSymbolPreviewTap(symbolStyleSearchResult));
             });
         }
     }
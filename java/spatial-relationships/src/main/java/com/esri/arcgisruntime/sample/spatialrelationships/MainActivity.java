@@ -17,7 +17,6 @@
 package com.esri.arcgisruntime.sample.spatialrelationships;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -31,9 +30,7 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import com.esri.arcgisruntime.ArcGISRuntimeEnvironment;
 import com.esri.arcgisruntime.concurrent.ListenableFuture;
-import com.esri.arcgisruntime.data.QueryParameters;
 import com.esri.arcgisruntime.geometry.Geometry;
-import com.esri.arcgisruntime.geometry.GeometryEngine;
 import com.esri.arcgisruntime.geometry.GeometryType;
 import com.esri.arcgisruntime.geometry.Point;
 import com.esri.arcgisruntime.geometry.PointCollection;
@@ -58,6 +55,8 @@ public class MainActivity extends AppCompatActivity {
 
   private MapView mMapView;
 
+  private RelateEngine mRelateEngine;
+
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -71,6 +70,9 @@ public class MainActivity extends AppCompatActivity {
     mMapView = findViewById(R.id.mapView);
     mMapView.getSelectionProperties().setColor(Color.RED);
 
+    // create an engine to evaluate the spatial relationships between the graphics
+    mRelateEngine = new RelateEngine();
+
     // create a map with a topographic  basemap
     ArcGISMap map = new ArcGISMap(BasemapStyle.ARCGIS_TOPOGRAPHIC);
 
@@ -108,16 +110,10 @@ public class MainActivity extends AppCompatActivity {
     Graphic pointGraphic = new Graphic(point, locationMarker);
     graphicsOverlay.getGraphics().add(pointGraphic);
 
-    // create HashMap that will hold relationships in between graphics
-    HashMap<String, List<String>> relationships = new HashMap<>();
-
     // set the map to be displayed in this view and the initial view point
     mMapView.setMap(map);
     mMapView.setViewpoint(new Viewpoint(point, 90000000));
 
-    // create intent to be passed to the other activity
-    Intent intent = new Intent(this, ResultsActivity.class);
-
     // add a touch listener to identify the selected graphic
     mMapView.setOnTouchListener(new DefaultMapViewOnTouchListener(this, mMapView) {
       @Override
@@ -134,11 +130,6 @@ public class MainActivity extends AppCompatActivity {
             IdentifyGraphicsOverlayResult result = identifyGraphics.get();
             List<Graphic> identifiedGraphics = result.getGraphics();
             if (!identifiedGraphics.isEmpty()) {
-              // clear previous results
-              relationships.put("Point", new ArrayList<>());
-              relationships.put("Polyline", new ArrayList<>());
-              relationships.put("Polygon", new ArrayList<>());
-
               // select the identified graphic
               graphicsOverlay.clearSelection();
               Graphic identifiedGraphic = identifiedGraphics.get(0);
@@ -146,26 +137,26 @@ public class MainActivity extends AppCompatActivity {
               Geometry selectedGeometry = identifiedGraphic.getGeometry();
               GeometryType selectedGeometryType = selectedGeometry.getGeometryType();
               Toast.makeText(MainActivity.this,selectedGeometry.getGeometryType().toString() + " is selected",Toast.LENGTH_LONG).show();
-              // populate HashMap that will be passed to the expandable list view
-              if (selectedGeometryType != GeometryType.POINT) {
-                ArrayList<String> pointRelationships = relationshipStringList(getSpatialRelationships(selectedGeometry,
-                    pointGraphic.getGeometry()));
-                relationships.put("Point", pointRelationships);
+              // relate the selected geometry to the geometries of the other types
+              String[] geometryNames = { "Point", "Polyline", "Polygon" };
+              Graphic[] graphics = { pointGraphic, polylineGraphic, polygonGraphic };
+              List<String> names = new ArrayList<>();
+              List<Geometry> geometries = new ArrayList<>();
+              for (int i = 0; i < graphics.length; i++) {
+                if (graphics[i].getGeometry().getGeometryType() != selectedGeometryType) {
+                  names.add(geometryNames[i]);
+                  geometries.add(graphics[i].getGeometry());
+                }
               }
-              if (selectedGeometryType != GeometryType.POLYLINE) {
-                ArrayList<String> polylineRelationships = relationshipStringList(
-                    getSpatialRelationships(selectedGeometry,
-                        polylineGraphic.getGeometry()));
-                relationships.put("Polyline", polylineRelationships);
+              long startTime = System.nanoTime();
+              int[] relationships = mRelateEngine.relateAll(selectedGeometry, geometries);
+              Log.i(TAG, "Related " + geometries.size() + " geometries in " + (System.nanoTime() - startTime) / 1000
+                  + " µs");
+              // pass the relationship bitsets to the results activity
+              Intent intent = new Intent(MainActivity.this, ResultsActivity.class);
+              for (int i = 0; i < names.size(); i++) {
+                intent.putExtra(names.get(i), relationships[i]);
               }
-              if (selectedGeometryType != GeometryType.POLYGON) {
-                ArrayList<String> polygonRelationships = relationshipStringList(
-                    getSpatialRelationships(selectedGeometry,
-                        polygonGraphic.getGeometry()));
-                relationships.put("Polygon", polygonRelationships);
-              }
-              // pass the HashMap to the intent
-              intent.putExtra("HashMap", relationships);
               startActivity(intent);
             }
           } catch (InterruptedException | ExecutionException e) {
@@ -177,46 +168,6 @@ public class MainActivity extends AppCompatActivity {
     });
   }
 
-  /**
-   * Gets a string representation of the spatial relationship list
-   *
-   * @param relationshipList a list of spatial relationships
-   * @return a string list of spatial relationships
-   */
-  private static ArrayList<String> relationshipStringList(List<QueryParameters.SpatialRelationship> relationshipList) {
-    ArrayList<String> stringList = new ArrayList<>();
-    for (QueryParameters.SpatialRelationship relationship : relationshipList) {
-      stringList.add(relationship.toString());
-    }
-    return stringList;
-  }
-
-  /**
-   * Gets a list of spatial relationships that the first geometry has to the second geometry.
-   *
-   * @param a first geometry
-   * @param b second geometry
-   * @return list of relationships a has to b
-   */
-  private static List<QueryParameters.SpatialRelationship> getSpatialRelationships(Geometry a, Geometry b) {
-    List<QueryParameters.SpatialRelationship> relationships = new ArrayList<>();
-    if (GeometryEngine.crosses(a, b))
-      relationships.add(QueryParameters.SpatialRelationship.CROSSES);
-    if (GeometryEngine.contains(a, b))
-      relationships.add(QueryParameters.SpatialRelationship.CONTAINS);
-    if (GeometryEngine.disjoint(a, b))
-      relationships.add(QueryParameters.SpatialRelationship.DISJOINT);
-    if (GeometryEngine.intersects(a, b))
-      relationships.add(QueryParameters.SpatialRelationship.INTERSECTS);
-    if (GeometryEngine.overlaps(a, b))
-      relationships.add(QueryParameters.SpatialRelationship.OVERLAPS);
-    if (GeometryEngine.touches(a, b))
-      relationships.add(QueryParameters.SpatialRelationship.TOUCHES);
-    if (GeometryEngine.within(a, b))
-      relationships.add(QueryParameters.SpatialRelationship.WITHIN);
-    return relationships;
-  }
-
   @Override
   protected void onPause() {
     mMapView.pause();
@@ -231,6 +182,7 @@ public class MainActivity extends AppCompatActivity {
 
   @Override
   protected void onDestroy() {
+    mRelateEngine.shutdown();
     mMapView.dispose();
     super.onDestroy();
   }
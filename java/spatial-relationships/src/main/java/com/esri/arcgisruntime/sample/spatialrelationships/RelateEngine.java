@@ -0,0 +1,214 @@
+/* Copyright 2018 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.spatialrelationships;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.esri.arcgisruntime.data.QueryParameters.SpatialRelationship;
+import com.esri.arcgisruntime.geometry.Envelope;
+import com.esri.arcgisruntime.geometry.Geometry;
+import com.esri.arcgisruntime.geometry.GeometryEngine;
+
+/**
+ * Evaluates the spatial relationships between geometries, returning them as a bitset with a bit for each
+ * {@link SpatialRelationship} set at its ordinal.
+ *
+ * Instead of evaluating each predicate in turn, the relationships are derived from the rules of the DE-9IM
+ * intersection matrix the predicates are defined by. Geometries whose envelopes don't intersect are disjoint without
+ * any geometry evaluation. Otherwise a single intersects test decides whether the geometries are disjoint, and of the
+ * remaining predicates only the ones the geometries' dimensions and envelopes allow are evaluated. Since touching
+ * geometries have no interior in common, they can't also cross, overlap, contain or be within each other.
+ */
+final class RelateEngine {
+
+  // the relationships which can be evaluated, in the order they are listed
+  private static final SpatialRelationship[] RELATIONSHIPS = {
+      SpatialRelationship.CROSSES,
+      SpatialRelationship.CONTAINS,
+      SpatialRelationship.DISJOINT,
+      SpatialRelationship.INTERSECTS,
+      SpatialRelationship.OVERLAPS,
+      SpatialRelationship.TOUCHES,
+      SpatialRelationship.WITHIN
+  };
+
+  private final ExecutorService mExecutor;
+  private final int mThreadCount;
+
+  /**
+   * Creates an engine which evaluates batches of geometries across the device's cores.
+   */
+  RelateEngine() {
+    mThreadCount = Runtime.getRuntime().availableProcessors();
+    mExecutor = Executors.newFixedThreadPool(mThreadCount);
+  }
+
+  /**
+   * Gets the spatial relationships that the first geometry has to the second geometry.
+   *
+   * @param a first geometry
+   * @param b second geometry
+   * @return bitset of the relationships a has to b
+   */
+  static int relate(Geometry a, Geometry b) {
+    Envelope extentA = a.getExtent();
+    Envelope extentB = b.getExtent();
+    if (!envelopesIntersect(extentA, extentB) || !GeometryEngine.intersects(a, b)) {
+      return bit(SpatialRelationship.DISJOINT);
+    }
+    int relationships = bit(SpatialRelationship.INTERSECTS);
+    int dimensionA = dimension(a);
+    int dimensionB = dimension(b);
+
+    // the boundaries of points are empty, so points can only touch geometries with a boundary
+    if ((dimensionA > 0 || dimensionB > 0) && GeometryEngine.touches(a, b)) {
+      return relationships | bit(SpatialRelationship.TOUCHES);
+    }
+    // geometries of the same dimension overlap, otherwise all but areas and points within areas may cross
+    if (dimensionA == dimensionB) {
+      if (GeometryEngine.overlaps(a, b)) {
+        relationships |= bit(SpatialRelationship.OVERLAPS);
+      }
+      if (dimensionA == 1 && GeometryEngine.crosses(a, b)) {
+        relationships |= bit(SpatialRelationship.CROSSES);
+      }
+    } else if (GeometryEngine.crosses(a, b)) {
+      relationships |= bit(SpatialRelationship.CROSSES);
+    }
+    // a geometry can only contain geometries of the same or a lower dimension inside its envelope
+    if (dimensionA >= dimensionB && envelopeContains(extentA, extentB) && GeometryEngine.contains(a, b)) {
+      relationships |= bit(SpatialRelationship.CONTAINS);
+    }
+    if (dimensionA <= dimensionB && envelopeContains(extentB, extentA) && GeometryEngine.within(a, b)) {
+      relationships |= bit(SpatialRelationship.WITHIN);
+    }
+    return relationships;
+  }
+
+  /**
+   * Gets the spatial relationships that a geometry has to each of a list of geometries, evaluating the list in
+   * slices across the device's cores.
+   *
+   * @param a geometry to relate
+   * @param geometries to relate a to
+   * @return bitsets of the relationships a has to each geometry, in the order of the list
+   */
+  int[] relateAll(Geometry a, List<Geometry> geometries) throws InterruptedException, ExecutionException {
+    int[] relationships = new int[geometries.size()];
+    int sliceSize = (geometries.size() + mThreadCount - 1) / mThreadCount;
+    List<Callable<Void>> slices = new ArrayList<>();
+    for (int start = 0; start < geometries.size(); start += sliceSize) {
+      int sliceStart = start;
+      int sliceEnd = Math.min(start + sliceSize, geometries.size());
+      slices.add(() -> {
+        for (int i = sliceStart; i < sliceEnd; i++) {
+          relationships[i] = relate(a, geometries.get(i));
+        }
+        return null;
+      });
+    }
+    // the calling thread evaluates the first slice while the executor evaluates the rest
+    List<Future<Void>> futures = slices.size() > 1 ? submitAll(slices.subList(1, slices.size())) : new ArrayList<>();
+    try {
+      if (!slices.isEmpty()) {
+        slices.get(0).call();
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ExecutionException(e);
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return relationships;
+  }
+
+  /**
+   * Stops the engine's threads. Batches can't be evaluated afterwards.
+   */
+  void shutdown() {
+    mExecutor.shutdownNow();
+  }
+
+  /**
+   * @param relationship a spatial relationship
+   * @return the relationship's bit in a bitset of relationships
+   */
+  static int bit(SpatialRelationship relationship) {
+    return 1 << relationship.ordinal();
+  }
+
+  /**
+   * Gets the relationships set in a bitset.
+   *
+   * @param relationships bitset of relationships
+   * @return list of the relationships
+   */
+  static List<SpatialRelationship> toList(int relationships) {
+    List<SpatialRelationship> list = new ArrayList<>();
+    for (SpatialRelationship relationship : RELATIONSHIPS) {
+      if ((relationships & bit(relationship)) != 0) {
+        list.add(relationship);
+      }
+    }
+    return list;
+  }
+
+  private List<Future<Void>> submitAll(List<Callable<Void>> tasks) {
+    List<Future<Void>> futures = new ArrayList<>();
+    for (Callable<Void> task : tasks) {
+      futures.add(mExecutor.submit(task));
+    }
+    return futures;
+  }
+
+  /**
+   * @return the topological dimension of the geometry: 0 for points, 1 for lines and 2 for areas
+   */
+  private static int dimension(Geometry geometry) {
+    switch (geometry.getGeometryType()) {
+      case POINT:
+      case MULTIPOINT:
+        return 0;
+      case POLYLINE:
+        return 1;
+      default:
+        return 2;
+    }
+  }
+
+  private static boolean envelopesIntersect(Envelope a, Envelope b) {
+    return a.getXMin() <= b.getXMax() && b.getXMin() <= a.getXMax() && a.getYMin() <= b.getYMax()
+        && b.getYMin() <= a.getYMax();
+  }
+
+  private static boolean envelopeContains(Envelope outer, Envelope inner) {
+    return outer.getXMin() <= inner.getXMin() && inner.getXMax() <= outer.getXMax()
+        && outer.getYMin() <= inner.getYMin() && inner.getYMax() <= outer.getYMax();
+  }
+}
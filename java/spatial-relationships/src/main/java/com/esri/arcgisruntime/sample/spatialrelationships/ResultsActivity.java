@@ -23,6 +23,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
 import android.widget.ExpandableListView;
+import com.esri.arcgisruntime.data.QueryParameters;
 
 public class ResultsActivity extends AppCompatActivity {
 
@@ -33,12 +34,19 @@ public class ResultsActivity extends AppCompatActivity {
 
     // get intent from main activity
     Intent intent = getIntent();
-    // get the HashMap created in MainActivity
-    HashMap<String,ArrayList<String>> child = (HashMap<String,ArrayList<String>>) intent.getSerializableExtra("HashMap");
     ArrayList<String> header = new ArrayList<>();
     header.add("Point");
     header.add("Polyline");
     header.add("Polygon");
+    // list the relationships in each bitset passed from MainActivity
+    HashMap<String,ArrayList<String>> child = new HashMap<>();
+    for (String geometryType : header) {
+      ArrayList<String> relationships = new ArrayList<>();
+      for (QueryParameters.SpatialRelationship relationship : RelateEngine.toList(intent.getIntExtra(geometryType, 0))) {
+        relationships.add(relationship.toString());
+      }
+      child.put(geometryType, relationships);
+    }
 
     // create an expandable list view and an adapter to display in new activity.
     ExpandableListView expandableListView = findViewById(R.id.expandableList);
@@ -22,17 +22,20 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.esri.arcgisruntime.ArcGISRuntimeEnvironment;
 import com.esri.arcgisruntime.mapping.ArcGISMap;
 import com.esri.arcgisruntime.mapping.ArcGISScene;
-import com.esri.arcgisruntime.mapping.Basemap;
 import com.esri.arcgisruntime.mapping.BasemapStyle;
-import com.esri.arcgisruntime.mapping.Viewpoint;
-import com.esri.arcgisruntime.mapping.view.GeoView;
 import com.esri.arcgisruntime.mapping.view.MapView;
 import com.esri.arcgisruntime.mapping.view.SceneView;
 
 public class MainActivity extends AppCompatActivity {
 
+  // smallest change in the navigated geo view's viewpoint which is synchronized
+  private static final double MIN_PIXEL_DELTA = 0.5;
+  private static final double MIN_SCALE_CHANGE = 0.001;
+  private static final double MIN_ROTATION_DELTA = 0.1;
+
   private MapView mMapView;
   private SceneView mSceneView;
+  private ViewpointSync mViewpointSync;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -53,19 +56,10 @@ public class MainActivity extends AppCompatActivity {
     ArcGISScene scene = new ArcGISScene(BasemapStyle.ARCGIS_IMAGERY);
     mSceneView.setScene(scene);
 
-    // on viewpoint change synchronize viewpoints
-    mMapView.addViewpointChangedListener(viewpointChangedEvent -> synchronizeViewpoints(mMapView, mSceneView));
-    mSceneView.addViewpointChangedListener(viewpointChangedEvent -> synchronizeViewpoints(mSceneView, mMapView));
-  }
-
-  /**
-   * Synchronizes the viewpoint across GeoViews when the user is navigating.
-   */
-  private static void synchronizeViewpoints(GeoView navigatingGeoView, GeoView geoViewToSync) {
-    if (navigatingGeoView.isNavigating()) {
-      Viewpoint navigatingViewpoint = navigatingGeoView.getCurrentViewpoint(Viewpoint.Type.CENTER_AND_SCALE);
-      geoViewToSync.setViewpoint(navigatingViewpoint);
-    }
+    // synchronize the viewpoint of the geo view being navigated to the other geo view, at most once per frame
+    mViewpointSync = new ViewpointSync(MIN_PIXEL_DELTA, MIN_SCALE_CHANGE, MIN_ROTATION_DELTA);
+    mViewpointSync.add(mMapView);
+    mViewpointSync.add(mSceneView);
   }
 
   @Override
@@ -84,6 +78,7 @@ public class MainActivity extends AppCompatActivity {
 
   @Override
   protected void onDestroy() {
+    mViewpointSync.dispose();
     mMapView.dispose();
     mSceneView.dispose();
     super.onDestroy();
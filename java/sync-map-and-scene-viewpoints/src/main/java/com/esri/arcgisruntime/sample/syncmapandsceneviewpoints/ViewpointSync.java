@@ -0,0 +1,237 @@
+/* Copyright 2018 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.syncmapandsceneviewpoints;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.esri.arcgisruntime.geometry.AngularUnit;
+import com.esri.arcgisruntime.geometry.AngularUnitId;
+import com.esri.arcgisruntime.geometry.GeodeticCurveType;
+import com.esri.arcgisruntime.geometry.GeometryEngine;
+import com.esri.arcgisruntime.geometry.LinearUnit;
+import com.esri.arcgisruntime.geometry.LinearUnitId;
+import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.mapping.Viewpoint;
+import com.esri.arcgisruntime.mapping.view.GeoView;
+import com.esri.arcgisruntime.mapping.view.NavigationChangedEvent;
+import com.esri.arcgisruntime.mapping.view.NavigationChangedListener;
+import com.esri.arcgisruntime.mapping.view.ViewpointChangedEvent;
+import com.esri.arcgisruntime.mapping.view.ViewpointChangedListener;
+
+/**
+ * Keeps the viewpoints of a set of linked GeoViews in sync.
+ *
+ * The GeoView the user is navigating is the leader, and only its viewpoint changes are followed, so viewpoints set
+ * on the other GeoViews can't feed back to the leader. Rather than setting the other GeoViews' viewpoints on every
+ * change event, the leader's newest viewpoint is applied at most once per display frame, and only when it has moved
+ * further than the given thresholds from the last viewpoint applied.
+ *
+ * Must be used from the UI thread.
+ */
+final class ViewpointSync {
+
+  private static final String TAG = ViewpointSync.class.getSimpleName();
+
+  // meters per pixel at a scale of 1, assuming the 96 DPI used to calculate scale
+  private static final double METERS_PER_PIXEL = 0.0254 / 96;
+
+  private final List<GeoView> mGeoViews = new ArrayList<>();
+  private final double mMinPixelDelta;
+  private final double mMinScaleChange;
+  private final double mMinRotationDelta;
+
+  private final LinearUnit mMeters = new LinearUnit(LinearUnitId.METERS);
+  private final AngularUnit mDegrees = new AngularUnit(AngularUnitId.DEGREES);
+
+  private GeoView mLeader;
+  private Viewpoint mLastViewpoint;
+  private boolean mFrameScheduled;
+
+  // metrics for the current navigation
+  private long mChangeEventCount;
+  private long mSetViewpointCount;
+  private long mSkippedFrameCount;
+  private long mFrameCount;
+  private long mSyncNanos;
+  private long mFirstFrameNanos;
+  private long mLastFrameNanos;
+
+  private final Choreographer.FrameCallback mFrameCallback = this::onFrame;
+
+  private final ViewpointChangedListener mViewpointChangedListener = new ViewpointChangedListener() {
+    @Override public void viewpointChanged(ViewpointChangedEvent viewpointChangedEvent) {
+      GeoView geoView = (GeoView) viewpointChangedEvent.getSource();
+      // ignore changes made by the sync itself to the GeoViews which aren't being navigated
+      if (!geoView.isNavigating()) {
+        return;
+      }
+      if (geoView != mLeader) {
+        mLeader = geoView;
+        mLastViewpoint = null;
+      }
+      mChangeEventCount++;
+      if (!mFrameScheduled) {
+        mFrameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+      }
+    }
+  };
+
+  private final NavigationChangedListener mNavigationChangedListener = new NavigationChangedListener() {
+    @Override public void navigationChanged(NavigationChangedEvent navigationChangedEvent) {
+      if (!navigationChangedEvent.isNavigating() && navigationChangedEvent.getSource() == mLeader
+          && mChangeEventCount > 0) {
+        // make sure the other GeoViews end up at the leader's final viewpoint, however little it moved
+        syncLeaderViewpoint(true);
+        Log.i(TAG, metrics());
+        resetMetrics();
+      }
+    }
+  };
+
+  /**
+   * @param minPixelDelta distance in pixels the leader's center must move before the other GeoViews follow it
+   * @param minScaleChange fraction the leader's scale must change by before the other GeoViews follow it
+   * @param minRotationDelta angle in degrees the leader must rotate before the other GeoViews follow it
+   */
+  ViewpointSync(double minPixelDelta, double minScaleChange, double minRotationDelta) {
+    mMinPixelDelta = minPixelDelta;
+    mMinScaleChange = minScaleChange;
+    mMinRotationDelta = minRotationDelta;
+  }
+
+  /**
+   * Links a GeoView to the others, so it follows them and they follow it.
+   */
+  void add(GeoView geoView) {
+    mGeoViews.add(geoView);
+    geoView.addViewpointChangedListener(mViewpointChangedListener);
+    geoView.addNavigationChangedListener(mNavigationChangedListener);
+  }
+
+  /**
+   * Unlinks a GeoView from the others.
+   */
+  void remove(GeoView geoView) {
+    mGeoViews.remove(geoView);
+    geoView.removeViewpointChangedListener(mViewpointChangedListener);
+    geoView.removeNavigationChangedListener(mNavigationChangedListener);
+    if (geoView == mLeader) {
+      mLeader = null;
+      mLastViewpoint = null;
+    }
+  }
+
+  /**
+   * Unlinks all of the GeoViews and cancels any pending sync.
+   */
+  void dispose() {
+    for (GeoView geoView : new ArrayList<>(mGeoViews)) {
+      remove(geoView);
+    }
+    Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+    mFrameScheduled = false;
+  }
+
+  /**
+   * Applies the leader's newest viewpoint to the other GeoViews, unless it is too close to the last one applied.
+   */
+  private void onFrame(long frameTimeNanos) {
+    mFrameScheduled = false;
+    if (mLeader == null) {
+      return;
+    }
+    long start = System.nanoTime();
+    if (mFrameCount == 0) {
+      mFirstFrameNanos = frameTimeNanos;
+    }
+    mLastFrameNanos = frameTimeNanos;
+    mFrameCount++;
+
+    if (!syncLeaderViewpoint(false)) {
+      mSkippedFrameCount++;
+    }
+    mSyncNanos += System.nanoTime() - start;
+  }
+
+  /**
+   * Sets the leader's current viewpoint on the other GeoViews.
+   *
+   * @param force whether to set the viewpoint even if it is too close to the last one applied
+   * @return whether the viewpoint was set
+   */
+  private boolean syncLeaderViewpoint(boolean force) {
+    Viewpoint viewpoint = mLeader.getCurrentViewpoint(Viewpoint.Type.CENTER_AND_SCALE);
+    if (viewpoint == null || (!force && !hasMoved(viewpoint))) {
+      return false;
+    }
+    mLastViewpoint = viewpoint;
+    for (GeoView geoView : mGeoViews) {
+      if (geoView != mLeader) {
+        geoView.setViewpoint(viewpoint);
+        mSetViewpointCount++;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return whether the viewpoint is further than the thresholds from the last viewpoint applied
+   */
+  private boolean hasMoved(Viewpoint viewpoint) {
+    if (mLastViewpoint == null) {
+      return true;
+    }
+    double scale = viewpoint.getTargetScale();
+    double lastScale = mLastViewpoint.getTargetScale();
+    if (Math.abs(scale - lastScale) > mMinScaleChange * lastScale
+        || Math.abs(viewpoint.getRotation() - mLastViewpoint.getRotation()) > mMinRotationDelta) {
+      return true;
+    }
+    double meters = GeometryEngine.distanceGeodetic((Point) mLastViewpoint.getTargetGeometry(),
+        (Point) viewpoint.getTargetGeometry(), mMeters, mDegrees, GeodeticCurveType.GEODESIC).getDistance();
+    return meters / (scale * METERS_PER_PIXEL) > mMinPixelDelta;
+  }
+
+  /**
+   * @return a summary of the viewpoint changes followed and the viewpoints set during the current navigation
+   */
+  String metrics() {
+    long followerCount = Math.max(mGeoViews.size() - 1, 0);
+    long avoidedCount = mChangeEventCount * followerCount - mSetViewpointCount;
+    double meanFrameMillis = mFrameCount > 1 ? (mLastFrameNanos - mFirstFrameNanos) / ((mFrameCount - 1) * 1e6) : 0;
+    double meanSyncMillis = mFrameCount > 0 ? mSyncNanos / (mFrameCount * 1e6) : 0;
+    return String.format(Locale.US,
+        "Viewpoint changes: %d, viewpoints set: %d, set calls avoided: %d, frames skipped: %d of %d, "
+            + "mean frame interval: %.1f ms, mean sync time per frame: %.2f ms",
+        mChangeEventCount, mSetViewpointCount, avoidedCount, mSkippedFrameCount, mFrameCount, meanFrameMillis,
+        meanSyncMillis);
+  }
+
+  private void resetMetrics() {
+    mChangeEventCount = 0;
+    mSetViewpointCount = 0;
+    mSkippedFrameCount = 0;
+    mFrameCount = 0;
+    mSyncNanos = 0;
+  }
+}
@@ -17,16 +17,14 @@
 package com.esri.arcgisruntime.sample.takescreenshot;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 import android.media.MediaActionSound;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -38,7 +36,6 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
 import com.esri.arcgisruntime.ArcGISRuntimeEnvironment;
-import com.esri.arcgisruntime.concurrent.ListenableFuture;
 import com.esri.arcgisruntime.mapping.ArcGISMap;
 import com.esri.arcgisruntime.mapping.BasemapStyle;
 import com.esri.arcgisruntime.mapping.view.MapView;
@@ -46,9 +43,24 @@ import com.esri.arcgisruntime.mapping.view.MapView;
 public class MainActivity extends AppCompatActivity {
 
   private static final String TAG = MainActivity.class.getSimpleName();
+  // number of threads encoding screenshots at a time
+  private static final int CAPTURE_THREAD_COUNT = 2;
+  // number of screenshots which can be exported or waiting to be encoded before further captures are dropped
+  private static final int MAX_CAPTURES_IN_FLIGHT = 3;
+  // time between screenshots while capturing periodically
+  private static final long PERIODIC_CAPTURE_INTERVAL_MS = 100;
   private final int requestCode = 2;
   private final String[] permission = { Manifest.permission.WRITE_EXTERNAL_STORAGE };
   private MapView mMapView;
+  private ScreenshotPipeline mScreenshotPipeline;
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+  private boolean mCapturingPeriodically;
+  private final Runnable mPeriodicCapture = new Runnable() {
+    @Override public void run() {
+      mScreenshotPipeline.capture(true);
+      mHandler.postDelayed(this, PERIODIC_CAPTURE_INTERVAL_MS);
+    }
+  };
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -65,6 +77,11 @@ public class MainActivity extends AppCompatActivity {
     ArcGISMap map = new ArcGISMap(BasemapStyle.ARCGIS_IMAGERY);
     // set the map to be displayed in this view
     mMapView.setMap(map);
+
+    // save screenshots to the ArcGIS Export directory
+    mScreenshotPipeline = new ScreenshotPipeline(mMapView,
+        new File(getExternalFilesDir(null).getAbsolutePath() + "/ArcGIS Export/"), CAPTURE_THREAD_COUNT,
+        MAX_CAPTURES_IN_FLIGHT, this::onScreenshotCaptured);
   }
 
   @Override
@@ -74,6 +91,32 @@ public class MainActivity extends AppCompatActivity {
     return true;
   }
 
+  @Override
+  public boolean onPrepareOptionsMenu(Menu menu) {
+    menu.findItem(R.id.CapturePeriodically)
+        .setTitle(mCapturingPeriodically ? R.string.menu_stop_periodic_capture : R.string.menu_periodic_capture);
+    // lossless WebP can't be encoded before API 29
+    menu.findItem(R.id.FormatWebpLossless).setVisible(ScreenshotPipeline.Format.WEBP_LOSSLESS.isSupported());
+    int formatItemId;
+    switch (mScreenshotPipeline.getFormat()) {
+      case WEBP_LOSSLESS:
+        formatItemId = R.id.FormatWebpLossless;
+        break;
+      case WEBP_LOSSY:
+        formatItemId = R.id.FormatWebpLossy;
+        break;
+      case RGBA:
+        formatItemId = R.id.FormatRgba;
+        break;
+      case PNG:
+      default:
+        formatItemId = R.id.FormatPng;
+        break;
+    }
+    menu.findItem(formatItemId).setChecked(true);
+    return super.onPrepareOptionsMenu(menu);
+  }
+
   @Override
   public boolean onOptionsItemSelected(MenuItem item) {
     // handle menu item selection
@@ -90,67 +133,99 @@ public class MainActivity extends AppCompatActivity {
       } else {
         captureScreenshotAsync();
       }
+    } else if (itemId == R.id.CapturePeriodically) {
+      if (mCapturingPeriodically) {
+        stopPeriodicCapture();
+      } else {
+        startPeriodicCapture();
+      }
+      invalidateOptionsMenu();
+    } else if (itemId == R.id.FormatPng) {
+      selectFormat(item, ScreenshotPipeline.Format.PNG);
+    } else if (itemId == R.id.FormatWebpLossless) {
+      selectFormat(item, ScreenshotPipeline.Format.WEBP_LOSSLESS);
+    } else if (itemId == R.id.FormatWebpLossy) {
+      selectFormat(item, ScreenshotPipeline.Format.WEBP_LOSSY);
+    } else if (itemId == R.id.FormatRgba) {
+      selectFormat(item, ScreenshotPipeline.Format.RGBA);
     }
 
     return true;
   }
 
+  /**
+   * Sets the format screenshots are saved in and starts measuring the new format's throughput.
+   */
+  private void selectFormat(MenuItem item, ScreenshotPipeline.Format format) {
+    item.setChecked(true);
+    Log.i(TAG, mScreenshotPipeline.metrics());
+    mScreenshotPipeline.setFormat(format);
+    mScreenshotPipeline.resetMetrics();
+  }
+
+  /**
+   * Captures the map every PERIODIC_CAPTURE_INTERVAL_MS until stopped, dropping captures while encoding falls behind.
+   */
+  private void startPeriodicCapture() {
+    mCapturingPeriodically = true;
+    mScreenshotPipeline.resetMetrics();
+    mHandler.post(mPeriodicCapture);
+  }
+
+  private void stopPeriodicCapture() {
+    mCapturingPeriodically = false;
+    mHandler.removeCallbacks(mPeriodicCapture);
+    String metrics = mScreenshotPipeline.metrics();
+    Log.i(TAG, metrics);
+    Toast.makeText(this, metrics, Toast.LENGTH_LONG).show();
+  }
+
   /**
    * capture the map as an image
    */
   private void captureScreenshotAsync() {
-
-    // export the image from the mMapView
-    final ListenableFuture<Bitmap> export = mMapView.exportImageAsync();
-    export.addDoneListener(() -> {
-      try {
-        Bitmap currentMapImage = export.get();
-        // play the camera shutter sound
-        MediaActionSound sound = new MediaActionSound();
-        sound.play(MediaActionSound.SHUTTER_CLICK);
-        Log.d(TAG, "Captured the image!!");
-        // save the exported bitmap to an image file
-        SaveImageTask saveImageTask = new SaveImageTask();
-        saveImageTask.execute(currentMapImage);
-      } catch (Exception e) {
-        Toast
-            .makeText(getApplicationContext(), getResources().getString(R.string.map_export_failure) + e.getMessage(),
-                Toast.LENGTH_SHORT).show();
-        Log.e(TAG, getResources().getString(R.string.map_export_failure) + e.getMessage());
-      }
-    });
+    if (mScreenshotPipeline.capture(false)) {
+      // play the camera shutter sound
+      MediaActionSound sound = new MediaActionSound();
+      sound.play(MediaActionSound.SHUTTER_CLICK);
+      // display a toast message to inform saving the map as an image
+      Toast.makeText(getApplicationContext(), getResources().getString(R.string.map_export_message), Toast.LENGTH_SHORT)
+          .show();
+    }
   }
 
   /**
-   * save the bitmap image to file and open it
+   * Opens a screenshot once it has been saved, unless it is one of a series of periodic captures.
    *
-   * @param bitmap
-   * @throws IOException
+   * @param file the screenshot was saved to, or null if it failed
+   * @param format the screenshot was saved in
+   * @param periodic whether the screenshot is one of a series of periodic captures
+   * @param error the capture failed with, or null if it succeeded
    */
-  private File saveToFile(Bitmap bitmap) throws IOException {
-
-    // create a directory ArcGIS to save the file
-    File root;
-    File file = null;
-    String fileName = "map-export-image" + System.currentTimeMillis() + ".png";
-    root = getExternalFilesDir(null);
-    File fileDir = new File(root.getAbsolutePath() + "/ArcGIS Export/");
-    boolean isDirectoryCreated = fileDir.exists();
-    if (!isDirectoryCreated) {
-      isDirectoryCreated = fileDir.mkdirs();
+  private void onScreenshotCaptured(File file, ScreenshotPipeline.Format format, boolean periodic, Exception error) {
+    if (error != null) {
+      Toast.makeText(getApplicationContext(), getResources().getString(R.string.map_export_failure) + error.getMessage(),
+          Toast.LENGTH_SHORT).show();
+      Log.e(TAG, getResources().getString(R.string.map_export_failure) + error.getMessage());
+      return;
     }
-    if (isDirectoryCreated) {
-      file = new File(fileDir, fileName);
-      // write the bitmap to PNG file
-      FileOutputStream fos = new FileOutputStream(file);
-      bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
-
-      // close the stream
-      fos.flush();
-      fos.close();
+    Log.d(TAG, mScreenshotPipeline.metrics());
+    if (periodic) {
+      return;
     }
-    return file;
-
+    if (format == ScreenshotPipeline.Format.RGBA) {
+      // there is no viewer for raw pixels, so just say where they are
+      Toast.makeText(this, getString(R.string.map_export_saved, file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+      return;
+    }
+    // Open the file to view
+    Intent i = new Intent();
+    i.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+    i.setAction(Intent.ACTION_VIEW);
+    i.setDataAndType(
+        FileProvider.getUriForFile(MainActivity.this, getApplicationContext().getPackageName() + ".provider", file),
+        format.mMimeType);
+    startActivity(i);
   }
 
   @Override
@@ -170,6 +245,10 @@ public class MainActivity extends AppCompatActivity {
 
   @Override
   protected void onPause() {
+    if (mCapturingPeriodically) {
+      stopPeriodicCapture();
+      invalidateOptionsMenu();
+    }
     super.onPause();
     mMapView.pause();
   }
@@ -183,52 +262,9 @@ public class MainActivity extends AppCompatActivity {
   @Override
   protected void onDestroy() {
     super.onDestroy();
+    mScreenshotPipeline.shutdown();
     mMapView.dispose();
   }
 
-  /**
-   * AsyncTask class to save the bitmap as an image
-   */
-  private class SaveImageTask extends AsyncTask<Bitmap, Void, File> {
-
-    @Override
-    protected void onPreExecute() {
-      // display a toast message to inform saving the map as an image
-      Toast.makeText(getApplicationContext(), getResources().getString(R.string.map_export_message), Toast.LENGTH_SHORT)
-          .show();
-    }
-
-    /**
-     * save the file using a worker thread
-     */
-    @Override
-    protected File doInBackground(Bitmap... mapBitmap) {
-
-      try {
-        return saveToFile(mapBitmap[0]);
-      } catch (Exception e) {
-        Log.e(TAG, getResources().getString(R.string.map_export_failure) + e.getMessage());
-      }
-
-      return null;
-
-    }
-
-    /**
-     * Perform the work on UI thread to open the exported map image
-     */
-    @Override
-    protected void onPostExecute(File file) {
-      // Open the file to view
-      Intent i = new Intent();
-      i.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-      i.setAction(Intent.ACTION_VIEW);
-      i.setDataAndType(
-          FileProvider.getUriForFile(MainActivity.this, getApplicationContext().getPackageName() + ".provider", file),
-          "image/png");
-      startActivity(i);
-    }
-  }
-
   public static class ScreenshotFileProvider extends FileProvider {}
 }
@@ -0,0 +1,330 @@
+/* Copyright 2016 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.takescreenshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.mapping.view.MapView;
+
+/**
+ * Captures images of a map view and writes them to files on a bounded pool of background threads.
+ *
+ * At most a fixed number of captures are in flight, from export to file, at a time. When encoding falls behind and
+ * they are all in use, further captures are dropped before the map is exported, rather than queueing up full screen
+ * bitmaps. Each encoding thread reuses a buffer from a pool to encode into, or to copy raw pixels into, and the
+ * buffer is written to the file with a single channel write. Exported bitmaps are recycled as soon as they have been
+ * written.
+ */
+final class ScreenshotPipeline {
+
+  /**
+   * Formats the images can be written in.
+   */
+  enum Format {
+    /** Lossless PNG. */
+    PNG("png", "image/png"),
+    /**
+     * Lossless WebP at its fastest compression, which encodes much faster than PNG on API 30 and above. Only supported
+     * on API 29 and above, earlier versions have no lossless WebP encoder.
+     */
+    WEBP_LOSSLESS("webp", "image/webp"),
+    /** Lossy WebP. */
+    WEBP_LOSSY("webp", "image/webp"),
+    /** Uncompressed RGBA pixels, 4 bytes per pixel, row by row, with the size in the file name. */
+    RGBA("rgba", "application/octet-stream");
+
+    final String mExtension;
+    final String mMimeType;
+
+    Format(String extension, String mimeType) {
+      mExtension = extension;
+      mMimeType = mimeType;
+    }
+
+    /**
+     * @return whether images can be written in this format on this device
+     */
+    boolean isSupported() {
+      return this != WEBP_LOSSLESS || Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+    }
+  }
+
+  /**
+   * Receives the results of captures on the UI thread.
+   */
+  interface Listener {
+
+    /**
+     * @param file the image was written to, or null if the capture failed
+     * @param format the image was written in
+     * @param periodic whether the capture was requested as one of a series of periodic captures
+     * @param error the capture failed with, or null if it succeeded
+     */
+    void onCaptured(File file, Format format, boolean periodic, Exception error);
+  }
+
+  private static final int WEBP_LOSSY_QUALITY = 90;
+
+  private final MapView mMapView;
+  private final File mDirectory;
+  private final Listener mListener;
+  private final Semaphore mInFlight;
+  private final BlockingQueue<EncodeBuffer> mBufferPool;
+  private final ExecutorService mExecutor;
+  private final Handler mHandler = new Handler(Looper.getMainLooper());
+  // distinguishes files written in the same millisecond by different threads
+  private final AtomicInteger mFileCount = new AtomicInteger();
+
+  private volatile Format mFormat = Format.PNG;
+
+  // metrics since the last reset
+  private volatile long mStartNanos = System.nanoTime();
+  private volatile int mCapturedCount;
+  private volatile int mDroppedCount;
+  private volatile long mEncodeNanos;
+  private volatile long mMaxEncodeNanos;
+  private volatile long mBytesWritten;
+
+  /**
+   * @param mapView to capture
+   * @param directory to write the images to
+   * @param threadCount number of threads encoding images at a time
+   * @param maxInFlight number of captures which can be exported or waiting to be encoded at a time
+   * @param listener to receive the results of captures
+   */
+  ScreenshotPipeline(MapView mapView, File directory, int threadCount, int maxInFlight, Listener listener) {
+    mMapView = mapView;
+    mDirectory = directory;
+    mListener = listener;
+    mInFlight = new Semaphore(maxInFlight);
+    mBufferPool = new ArrayBlockingQueue<>(threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      mBufferPool.add(new EncodeBuffer());
+    }
+    mExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>());
+  }
+
+  void setFormat(Format format) {
+    if (!format.isSupported()) {
+      throw new IllegalArgumentException(format + " is not supported on API " + Build.VERSION.SDK_INT);
+    }
+    mFormat = format;
+  }
+
+  Format getFormat() {
+    return mFormat;
+  }
+
+  /**
+   * Exports an image of the map view and writes it to a file in the current format. Must be called from the UI
+   * thread.
+   *
+   * @param periodic whether the capture is one of a series of periodic captures, passed back to the listener
+   * @return false if the capture was dropped because too many captures are already in flight
+   */
+  boolean capture(boolean periodic) {
+    if (!mInFlight.tryAcquire()) {
+      mDroppedCount++;
+      return false;
+    }
+    Format format = mFormat;
+    ListenableFuture<Bitmap> export = mMapView.exportImageAsync();
+    export.addDoneListener(() -> {
+      Bitmap bitmap;
+      try {
+        bitmap = export.get();
+      } catch (Exception e) {
+        mInFlight.release();
+        mListener.onCaptured(null, format, periodic, e);
+        return;
+      }
+      try {
+        mExecutor.execute(() -> write(bitmap, format, periodic));
+      } catch (RuntimeException e) {
+        // the pipeline has been shut down
+        bitmap.recycle();
+        mInFlight.release();
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Stops accepting captures, letting the captures in flight finish.
+   */
+  void shutdown() {
+    mExecutor.shutdown();
+  }
+
+  /**
+   * @return a summary of the capture throughput and encode latency since the last reset
+   */
+  String metrics() {
+    double seconds = (System.nanoTime() - mStartNanos) / 1e9;
+    return String.format(Locale.US,
+        "%s captures: %d in %.1f s (%.2f frames/s), dropped: %d, encode latency mean: %.1f ms, max: %.1f ms, "
+            + "written: %.1f MB", mFormat, mCapturedCount, seconds, seconds > 0 ? mCapturedCount / seconds : 0,
+        mDroppedCount, mCapturedCount > 0 ? mEncodeNanos / (mCapturedCount * 1e6) : 0, mMaxEncodeNanos / 1e6,
+        mBytesWritten / (1024.0 * 1024.0));
+  }
+
+  void resetMetrics() {
+    mStartNanos = System.nanoTime();
+    mCapturedCount = 0;
+    mDroppedCount = 0;
+    mEncodeNanos = 0;
+    mMaxEncodeNanos = 0;
+    mBytesWritten = 0;
+  }
+
+  /**
+   * Encodes the bitmap into a pooled buffer and writes the buffer to a new file. Runs on an encoding thread.
+   */
+  private void write(Bitmap bitmap, Format format, boolean periodic) {
+    EncodeBuffer buffer = mBufferPool.poll();
+    if (buffer == null) {
+      // there is a buffer for each thread, so this only happens if the pool is misconfigured
+      buffer = new EncodeBuffer();
+    }
+    File file = null;
+    Exception error = null;
+    try {
+      long start = System.nanoTime();
+      ByteBuffer bytes = encode(bitmap, format, buffer);
+      long encodeNanos = System.nanoTime() - start;
+
+      if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+        throw new IOException("Unable to create " + mDirectory);
+      }
+      String name = "map-export-image" + System.currentTimeMillis() + "-" + mFileCount.incrementAndGet();
+      if (format == Format.RGBA) {
+        name += "-" + bitmap.getWidth() + "x" + bitmap.getHeight();
+      }
+      file = new File(mDirectory, name + "." + format.mExtension);
+      long bytesWritten = 0;
+      try (FileOutputStream outputStream = new FileOutputStream(file);
+           FileChannel channel = outputStream.getChannel()) {
+        while (bytes.hasRemaining()) {
+          bytesWritten += channel.write(bytes);
+        }
+      }
+      synchronized (this) {
+        mCapturedCount++;
+        mEncodeNanos += encodeNanos;
+        mMaxEncodeNanos = Math.max(mMaxEncodeNanos, encodeNanos);
+        mBytesWritten += bytesWritten;
+      }
+    } catch (IOException | RuntimeException e) {
+      error = e;
+      file = null;
+    } finally {
+      bitmap.recycle();
+      mBufferPool.offer(buffer);
+      mInFlight.release();
+    }
+    File result = file;
+    Exception resultError = error;
+    mHandler.post(() -> mListener.onCaptured(result, format, periodic, resultError));
+  }
+
+  /**
+   * @return the buffer's bytes holding the bitmap in the given format, ready to be read
+   */
+  @SuppressWarnings("deprecation")
+  private static ByteBuffer encode(Bitmap bitmap, Format format, EncodeBuffer buffer) {
+    switch (format) {
+      case RGBA:
+        return buffer.pixels(bitmap);
+      case WEBP_LOSSLESS:
+        buffer.reset();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+          bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSLESS, 0, buffer);
+        } else {
+          // on API 29, WEBP at quality 100 is lossless, setFormat only allows this format from API 29
+          bitmap.compress(Bitmap.CompressFormat.WEBP, 100, buffer);
+        }
+        return buffer.encoded();
+      case WEBP_LOSSY:
+        buffer.reset();
+        bitmap.compress(Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY :
+            Bitmap.CompressFormat.WEBP, WEBP_LOSSY_QUALITY, buffer);
+        return buffer.encoded();
+      case PNG:
+      default:
+        buffer.reset();
+        // the quality is ignored for PNG, which is always lossless
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, buffer);
+        return buffer.encoded();
+    }
+  }
+
+  /**
+   * A buffer which encoded images are written into and which keeps its capacity between images, so a burst of
+   * captures doesn't allocate and grow a new buffer for each one.
+   */
+  private static final class EncodeBuffer extends ByteArrayOutputStream {
+
+    private ByteBuffer mPixels;
+
+    EncodeBuffer() {
+      super(1024 * 1024);
+    }
+
+    /**
+     * @return the bytes written since the last reset, without copying them
+     */
+    ByteBuffer encoded() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    /**
+     * @return the bitmap's pixels, copied into a direct buffer which is reused while it is large enough
+     */
+    ByteBuffer pixels(Bitmap bitmap) {
+      int size = bitmap.getByteCount();
+      if (mPixels == null || mPixels.capacity() < size) {
+        mPixels = ByteBuffer.allocateDirect(size);
+      }
+      mPixels.clear();
+      mPixels.limit(size);
+      bitmap.copyPixelsToBuffer(mPixels);
+      mPixels.flip();
+      return mPixels;
+    }
+  }
+}
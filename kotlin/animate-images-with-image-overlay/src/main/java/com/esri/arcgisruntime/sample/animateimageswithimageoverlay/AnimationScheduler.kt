@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.animateimageswithimageoverlay
+
+import android.view.Choreographer
+import kotlin.math.abs
+
+/**
+ * Drives an animation from the display's frame clock instead of a timer thread. On every vsync the
+ * playhead is advanced by the time elapsed since the previous frame, so a late frame moves the
+ * playhead further rather than queuing up extra ticks. The playhead is a fractional key frame
+ * position, leaving it to the listener to interpolate between key frames or pick the nearest one.
+ *
+ * Must be created and used on a thread with a Looper, usually the UI thread, which is also the
+ * thread [onFrame] is called on.
+ *
+ * @param refreshRate of the display the animation is shown on, in frames per second
+ * @param onFrame called with the playhead position on every frame
+ */
+class AnimationScheduler(
+    refreshRate: Float,
+    private val onFrame: (position: Double) -> Unit
+) : Choreographer.FrameCallback {
+
+    private val choreographer = Choreographer.getInstance()
+    private val vsyncPeriodNanos = (1e9 / refreshRate).toLong()
+    private var lastFrameTimeNanos = 0L
+    private var totalJitterNanos = 0L
+
+    /** Playback rate of the animation. */
+    var keyFramesPerSecond = 1.0
+
+    /** Number of key frames in the animation, the playhead wraps back to the start at the end. */
+    var length = 0
+        set(value) {
+            field = value
+            position = wrap(position)
+        }
+
+    /** Fractional key frame position of the playhead. */
+    var position = 0.0
+        private set
+
+    var isRunning = false
+        private set
+
+    /** Number of frames rendered since the scheduler was created. */
+    var frameCount = 0L
+        private set
+
+    /** Number of vsyncs which passed without a frame being rendered. */
+    var droppedFrameCount = 0L
+        private set
+
+    /** Mean deviation of the frame intervals from a whole number of vsync periods. */
+    val meanJitterMillis: Double
+        get() = if (frameCount == 0L) 0.0 else totalJitterNanos / (frameCount * 1e6)
+
+    /**
+     * Moves the playhead to the given key frame position. Takes effect from the next frame.
+     */
+    fun seek(position: Double) {
+        this.position = wrap(position)
+    }
+
+    /**
+     * Starts posting frame callbacks from the current playhead position.
+     */
+    fun start() {
+        if (isRunning) return
+        isRunning = true
+        lastFrameTimeNanos = 0L
+        choreographer.postFrameCallback(this)
+    }
+
+    /**
+     * Stops the animation, leaving the playhead where it is.
+     */
+    fun stop() {
+        isRunning = false
+        choreographer.removeFrameCallback(this)
+    }
+
+    override fun doFrame(frameTimeNanos: Long) {
+        if (!isRunning) return
+        if (lastFrameTimeNanos != 0L) {
+            val elapsedNanos = frameTimeNanos - lastFrameTimeNanos
+            // any whole vsync periods beyond the first are frames which were never drawn
+            val missedVsyncs = (elapsedNanos + vsyncPeriodNanos / 2) / vsyncPeriodNanos - 1
+            if (missedVsyncs > 0) {
+                droppedFrameCount += missedVsyncs
+            }
+            totalJitterNanos += abs(elapsedNanos - (missedVsyncs + 1) * vsyncPeriodNanos)
+            frameCount++
+            // advance by elapsed time, so late frames are coalesced into a single bigger step
+            position = wrap(position + elapsedNanos * keyFramesPerSecond / 1e9)
+        }
+        lastFrameTimeNanos = frameTimeNanos
+        onFrame(position)
+        if (isRunning) {
+            choreographer.postFrameCallback(this)
+        }
+    }
+
+    private fun wrap(position: Double): Double {
+        if (length <= 0) return position
+        val wrapped = position % length
+        return if (wrapped < 0) wrapped + length else wrapped
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.animateimageswithimageoverlay
+
+import android.graphics.BitmapFactory
+import android.util.Log
+import com.esri.arcgisruntime.geometry.Envelope
+import com.esri.arcgisruntime.mapping.view.ImageFrame
+import java.io.File
+import kotlin.concurrent.thread
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Keeps a bounded buffer of decoded image frames just ahead of the animation's playhead.
+ *
+ * A background thread decodes the images following the most recently requested frame into the
+ * buffer, so frames are ready by the time the animation reaches them and only the frames near the
+ * playhead are held in memory. The buffer holds as many frames as fit in the memory budget; once
+ * it is full, each new frame replaces the frame shown longest ago.
+ *
+ * @param imageFiles images of the animation, in playback order
+ * @param envelope extent the image frames are displayed at
+ * @param memoryBudgetBytes maximum number of bytes of decoded bitmaps to keep
+ * @param lookahead number of frames to decode ahead of the playhead
+ */
+class ImageFramePrefetcher(
+    private val imageFiles: List<File>,
+    private val envelope: Envelope,
+    memoryBudgetBytes: Long,
+    lookahead: Int
+) {
+
+    private val TAG = ImageFramePrefetcher::class.java.simpleName
+
+    private val lock = Object()
+    private val buffer = HashMap<Int, ImageFrame>()
+    private val lookahead: Int
+    private var playhead = 0
+    private var isRunning = true
+    private val prefetchThread: Thread
+
+    // the outcome of each frame index is only counted the first time it is requested
+    private var lastRequestedIndex = -1
+    private var hitCount = 0L
+    private var missCount = 0L
+    private var skippedCount = 0L
+    private var decodeCount = 0L
+    private var totalDecodeNanos = 0L
+    private var maxDecodeNanos = 0L
+
+    /** Number of frames the buffer holds. */
+    val capacity: Int
+
+    init {
+        // estimate the decoded size of a frame from the first image's dimensions
+        val frameBytes = imageFiles.firstOrNull()?.let { file ->
+            val options = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+            BitmapFactory.decodeFile(file.path, options)
+            options.outWidth.toLong() * options.outHeight * 4
+        } ?: 1L
+        capacity = (memoryBudgetBytes / max(frameBytes, 1L)).toInt()
+            .coerceIn(2, max(imageFiles.size, 2))
+        // keep at least one slot for the frame on screen
+        this.lookahead = min(lookahead, capacity - 1)
+        Log.i(TAG, "Buffer of $capacity frames, ${this.lookahead} frames lookahead")
+        prefetchThread = thread(name = "Image frame prefetcher", isDaemon = true) { prefetch() }
+    }
+
+    /**
+     * Gets the decoded image frame at the given index and moves the prefetcher's playhead there.
+     *
+     * @return the image frame, or null if it has not been decoded yet
+     */
+    fun get(frameIndex: Int): ImageFrame? {
+        synchronized(lock) {
+            if (playhead != frameIndex) {
+                playhead = frameIndex
+                lock.notifyAll()
+            }
+            val imageFrame = buffer[frameIndex]
+            if (frameIndex != lastRequestedIndex) {
+                if (lastRequestedIndex >= 0) {
+                    // frames the animation moved past without requesting them
+                    val step = (frameIndex - lastRequestedIndex + imageFiles.size) % imageFiles.size
+                    skippedCount += step - 1
+                }
+                lastRequestedIndex = frameIndex
+                if (imageFrame != null) hitCount++ else missCount++
+            }
+            return imageFrame
+        }
+    }
+
+    /**
+     * Stops the prefetch thread. The prefetcher can't be used afterwards.
+     */
+    fun shutdown() {
+        synchronized(lock) {
+            isRunning = false
+            lock.notifyAll()
+        }
+        prefetchThread.interrupt()
+    }
+
+    /**
+     * Decodes the frames following the playhead until the lookahead is full, then waits for the
+     * playhead to move.
+     */
+    private fun prefetch() {
+        while (true) {
+            val frameIndex = synchronized(lock) {
+                var next = nextMissingFrame()
+                while (isRunning && next < 0) {
+                    try {
+                        lock.wait()
+                    } catch (e: InterruptedException) {
+                        return
+                    }
+                    next = nextMissingFrame()
+                }
+                if (!isRunning) return
+                next
+            }
+            // decode outside the lock so the animation isn't blocked
+            val start = System.nanoTime()
+            val bitmap = BitmapFactory.decodeFile(imageFiles[frameIndex].path)
+            val decodeNanos = System.nanoTime() - start
+            if (bitmap == null) {
+                Log.e(TAG, "Unable to decode ${imageFiles[frameIndex].name}")
+            }
+            synchronized(lock) {
+                decodeCount++
+                totalDecodeNanos += decodeNanos
+                maxDecodeNanos = max(maxDecodeNanos, decodeNanos)
+                // only store the frame if the playhead hasn't moved past it while decoding
+                if (bitmap != null && offsetFromPlayhead(frameIndex) <= lookahead) {
+                    if (buffer.size >= capacity) {
+                        evictLeastRecentlyShown()
+                    }
+                    buffer[frameIndex] = ImageFrame(bitmap, envelope)
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the first frame from the playhead within the lookahead which isn't buffered, or
+     * -1 if they are all decoded. Must be called holding the lock.
+     */
+    private fun nextMissingFrame(): Int {
+        if (imageFiles.isEmpty()) return -1
+        for (offset in 0..lookahead) {
+            val frameIndex = (playhead + offset) % imageFiles.size
+            if (!buffer.containsKey(frameIndex)) {
+                return frameIndex
+            }
+        }
+        return -1
+    }
+
+    /**
+     * Removes the frame furthest behind the playhead, i.e. the one shown longest ago. Frames in the
+     * lookahead are never removed as they count as being ahead of the playhead. Must be called
+     * holding the lock.
+     */
+    private fun evictLeastRecentlyShown() {
+        buffer.keys.maxByOrNull { frameIndex ->
+            val offset = offsetFromPlayhead(frameIndex)
+            if (offset <= lookahead) -1 else imageFiles.size - offset
+        }?.let { buffer.remove(it) }
+    }
+
+    /**
+     * @return how many frames ahead of the playhead the frame is, wrapping around at the end of
+     * the animation. Must be called holding the lock.
+     */
+    private fun offsetFromPlayhead(frameIndex: Int): Int {
+        return (frameIndex - playhead + imageFiles.size) % imageFiles.size
+    }
+
+    /**
+     * @return a summary of the prefetch hit rate over the frames requested, frames which were not
+     * ready when first requested, frames the animation moved past without requesting them and
+     * decode latency
+     */
+    fun metrics(): String = synchronized(lock) {
+        val requests = hitCount + missCount
+        val hitRate = if (requests == 0L) 0.0 else hitCount * 100.0 / requests
+        val meanDecodeMillis = if (decodeCount == 0L) 0.0 else totalDecodeNanos / (decodeCount * 1e6)
+        "Prefetch hit rate: ${"%.1f".format(hitRate)}% of $requests frames, " +
+                "frames not ready: $missCount, frames skipped: $skippedCount, " +
+                "decodes: $decodeCount, mean decode: ${"%.1f".format(meanDecodeMillis)} ms, " +
+                "max decode: ${"%.1f".format(maxDecodeNanos / 1e6)} ms"
+    }
+}
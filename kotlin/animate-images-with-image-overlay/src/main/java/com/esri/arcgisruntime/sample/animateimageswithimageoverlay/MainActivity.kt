@@ -17,7 +17,10 @@
 
 package com.esri.arcgisruntime.sample.animateimageswithimageoverlay
 
+import android.app.ActivityManager
+import android.content.Context
 import android.os.Bundle
+import android.util.Log
 import android.view.MotionEvent
 import android.view.View
 import android.widget.AdapterView
@@ -39,17 +42,17 @@ import com.esri.arcgisruntime.mapping.Surface
 import com.esri.arcgisruntime.mapping.Viewpoint
 import com.esri.arcgisruntime.mapping.view.Camera
 import com.esri.arcgisruntime.mapping.view.DefaultSceneViewOnTouchListener
-import com.esri.arcgisruntime.mapping.view.ImageFrame
 import com.esri.arcgisruntime.mapping.view.ImageOverlay
 import com.esri.arcgisruntime.mapping.view.SceneView
 import com.esri.arcgisruntime.sample.animateimageswithimageoverlay.databinding.ActivityMainBinding
 import com.google.android.material.floatingactionbutton.FloatingActionButton
 import java.io.File
 import java.util.*
-import kotlin.concurrent.fixedRateTimer
 
 class MainActivity : AppCompatActivity() {
 
+    private val TAG = MainActivity::class.java.simpleName
+
     private val activityMainBinding by lazy {
         ActivityMainBinding.inflate(layoutInflater)
     }
@@ -78,12 +81,18 @@ class MainActivity : AppCompatActivity() {
         activityMainBinding.fpsSpinner
     }
 
-    private val imageFrames: MutableList<ImageFrame> by lazy { mutableListOf() }
-    private var imageIndex: Int = 0
+    // decodes image frames in the background just ahead of the animation
+    private var imageFramePrefetcher: ImageFramePrefetcher? = null
+    private var imageCount = 0
+    private var imageIndex: Int = -1
 
-    private var timer: Timer? = null
-    private var isTimerRunning = true
-    private var period: Long = 67
+    // advances the image frames on the display's frame clock
+    private val animationScheduler: AnimationScheduler by lazy {
+        AnimationScheduler(windowManager.defaultDisplay.refreshRate) { position ->
+            showImageFrame(position.toInt())
+        }
+    }
+    private var isAnimationRunning = true
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -126,60 +135,71 @@ class MainActivity : AppCompatActivity() {
         (File(getExternalFilesDir(null).toString() + "/PacificSouthWest").listFiles())?.let { imageFiles ->
             // sort the list of image files
             Arrays.sort(imageFiles)
-            imageFiles.forEach { file ->
-                // create an image with the given path and use it to create an image frame
-                val imageFrame = ImageFrame(file.path, pacificSouthwestEnvelope)
-                imageFrames.add(imageFrame)
-            }
+            imageCount = imageFiles.size
+            // allow the decoded frames to use up to a quarter of the app's memory class
+            val memoryClass =
+                (getSystemService(Context.ACTIVITY_SERVICE) as ActivityManager).memoryClass
+            imageFramePrefetcher = ImageFramePrefetcher(
+                imageFiles.toList(),
+                pacificSouthwestEnvelope,
+                memoryClass * 1024L * 1024L / 4,
+                PREFETCH_LOOKAHEAD
+            )
         }
+        animationScheduler.length = imageCount
 
         // setup touch and ui element behaviours
         setupUI()
     }
 
     /**
-     * Create a new image frame from the image at the current index and add it to the image overlay.
+     * Set the image frame at the given index to the image overlay. Frames which stay on screen for
+     * more than one display frame are only set once. If the frame hasn't been decoded in time it is
+     * skipped and the previous frame stays on screen.
      */
-    private fun addNextImageFrameToImageOverlay() {
+    private fun showImageFrame(index: Int) {
+        if (index == imageIndex || index >= imageCount) return
+        val imageFrame = imageFramePrefetcher?.get(index) ?: return
         // set image frame to image overlay
-        sceneView.imageOverlays[0].imageFrame = imageFrames[imageIndex]
-        // increment the index to keep track of which image to load next
-        imageIndex++
-        // reset index once all files have been loaded
-        if (imageIndex == imageFrames.size)
-            imageIndex = 0
+        sceneView.imageOverlays[0].imageFrame = imageFrame
+        // keep track of which image is shown
+        imageIndex = index
     }
 
     /**
-     * Toggles starting and stopping the timer on button tap.
+     * Toggles starting and stopping the animation on button tap.
      */
     fun toggleAnimationTimer(view: View) {
-        isTimerRunning = when {
-            isTimerRunning -> {
-                // cancel any running timer
-                timer?.cancel()
+        isAnimationRunning = when {
+            isAnimationRunning -> {
+                // stop the running animation
+                stopAnimation()
                 // change the start/stop button to "start"
                 startStopButton.text = getString(R.string.start)
-                // set the isTimerRunning flag to false
+                // set the isAnimationRunning flag to false
                 false
             }
             else -> {
-                createNewTimer()
+                animationScheduler.start()
                 // change the start/stop button to "stop"
                 startStopButton.text = getString(R.string.stop)
-                // set the isTimerRunning flag to true
+                // set the isAnimationRunning flag to true
                 true
             }
         }
     }
 
     /**
-     * Create a new timer for the given period which repeatedly calls animateImagesWithImageOverlay.
+     * Stop the animation and log how smoothly it played.
      */
-    private fun createNewTimer() {
-        timer = fixedRateTimer("Image overlay timer", period = period) {
-            addNextImageFrameToImageOverlay()
-        }
+    private fun stopAnimation() {
+        animationScheduler.stop()
+        Log.i(
+            TAG, "Animation frames: ${animationScheduler.frameCount}, " +
+                    "dropped: ${animationScheduler.droppedFrameCount}, " +
+                    "mean jitter: ${"%.2f".format(animationScheduler.meanJitterMillis)} ms"
+        )
+        imageFramePrefetcher?.let { Log.i(TAG, it.metrics()) }
     }
 
     /**
@@ -233,7 +253,7 @@ class MainActivity : AppCompatActivity() {
                 android.R.layout.simple_spinner_dropdown_item,
                 arrayOf("60 fps", "30 fps", "15 fps")
             )
-            // set period based on the fps option selected
+            // set playback rate based on the fps option selected
             onItemSelectedListener = object : AdapterView.OnItemSelectedListener {
                 override fun onItemSelected(
                     parent: AdapterView<*>?,
@@ -241,17 +261,16 @@ class MainActivity : AppCompatActivity() {
                     position: Int,
                     id: Long
                 ) {
-                    // get the period for the chosen fps
-                    period = when (position) {
-                        0 -> 17 // 1000ms/17 = 60 fps
-                        1 -> 33 // 1000ms/33 = 30 fps
-                        2 -> 67 // 1000ms/67 = 15 fps
-                        else -> 0
+                    // get the image frame rate for the chosen fps
+                    animationScheduler.keyFramesPerSecond = when (position) {
+                        0 -> 60.0
+                        1 -> 30.0
+                        2 -> 15.0
+                        else -> 0.0
                     }
-                    // create a new timer for this period
-                    if (isTimerRunning) {
-                        timer?.cancel()
-                        createNewTimer()
+                    // the scheduler picks up the new rate on the next frame
+                    if (isAnimationRunning) {
+                        animationScheduler.start()
                     }
                 }
 
@@ -263,8 +282,8 @@ class MainActivity : AppCompatActivity() {
     }
 
     override fun onPause() {
-        // cancel timer if it's running
-        if (isTimerRunning) {
+        // stop the animation if it's running
+        if (isAnimationRunning) {
             toggleAnimationTimer(startStopButton)
         }
         sceneView.pause()
@@ -277,7 +296,13 @@ class MainActivity : AppCompatActivity() {
     }
 
     override fun onDestroy() {
+        imageFramePrefetcher?.shutdown()
         sceneView.dispose()
         super.onDestroy()
     }
+
+    companion object {
+        // number of image frames to decode ahead of the one on screen, about a second at 30 fps
+        private const val PREFETCH_LOOKAHEAD = 30
+    }
 }
@@ -27,7 +27,6 @@ import com.esri.arcgisruntime.geometry.Point
 import com.esri.arcgisruntime.geometry.SpatialReferences
 import com.esri.arcgisruntime.location.LocationDataSource
 import com.esri.arcgisruntime.location.NmeaLocationDataSource
-import com.esri.arcgisruntime.location.NmeaSatelliteInfo
 import com.esri.arcgisruntime.mapping.ArcGISMap
 import com.esri.arcgisruntime.mapping.BasemapStyle
 import com.esri.arcgisruntime.mapping.Viewpoint
@@ -35,13 +34,7 @@ import com.esri.arcgisruntime.mapping.view.LocationDisplay
 import com.esri.arcgisruntime.mapping.view.MapView
 import com.esri.arcgisruntime.sample.displaydevicelocationwithnmeadatasources.databinding.ActivityMainBinding
 import com.google.android.material.floatingactionbutton.FloatingActionButton
-import java.io.BufferedReader
 import java.io.File
-import java.io.FileReader
-import java.nio.charset.StandardCharsets
-import java.util.*
-import kotlin.collections.ArrayList
-import kotlin.concurrent.timerTask
 
 class MainActivity : AppCompatActivity() {
 
@@ -54,11 +47,11 @@ class MainActivity : AppCompatActivity() {
     // Location datasource listener
     private var locationDataSourceListener: LocationDataSource.StatusChangedListener? = null
 
-    // Create a timer to simulate a stream of NMEA data
-    private var timer = Timer()
+    // Replays the mock NMEA data to simulate a stream of NMEA data, keeps its position during play/pause
+    private var nmeaReplayer: NmeaReplayer? = null
 
-    // Keeps track of the timer during play/pause
-    private var count = 0
+    // Validates the replayed sentences and collects the satellites in view for each fix
+    private val nmeaParser = NmeaParser { satellites -> showSatellites(satellites) }
 
     private val activityMainBinding by lazy {
         ActivityMainBinding.inflate(layoutInflater)
@@ -151,23 +144,24 @@ class MainActivity : AppCompatActivity() {
 
     /**
      * Initializes the location data source, reads the mock data NMEA sentences, and displays location updates from that file
-     * on the location display. Data is pushed to the data source using a timeline to simulate live updates, as they would
-     * appear if using real-time data from a GPS dongle
+     * on the location display. Data is pushed to the data source following the times recorded in the file to simulate live
+     * updates, as they would appear if using real-time data from a GPS dongle
      */
     private fun displayDeviceLocation() {
         val simulatedNmeaDataFile = File(getExternalFilesDir(null)?.path + "/Redlands.nmea")
         if (simulatedNmeaDataFile.exists()) {
             try {
-                // Read the nmea file contents using a buffered reader and store the mock data sentences in a list
-                val bufferedReader = BufferedReader(FileReader(simulatedNmeaDataFile.path))
-                // Add carriage return for NMEA location data source parser
-                val nmeaSentences: MutableList<String> = mutableListOf()
-                var line = bufferedReader.readLine()
-                while (line != null) {
-                    nmeaSentences.add(line + "\n")
-                    line = bufferedReader.readLine()
-                }
-                bufferedReader.close()
+                // Memory-map the nmea file and index its sentences, pushing each sentence into the data source as it is
+                // replayed. Sentences with a bad checksum are dropped before they reach the data source
+                val replayer = nmeaReplayer ?: NmeaReplayer(
+                    simulatedNmeaDataFile,
+                    // show the satellites of the log's last fix before looping back to the start
+                    onEndOfLog = nmeaParser::flush
+                ) { sentence ->
+                    if (nmeaParser.parse(sentence)) {
+                        nmeaLocationDataSource.pushData(sentence)
+                    }
+                }.also { nmeaReplayer = it }
 
                 // Set up the accuracy for each location change
                 nmeaLocationDataSource.addLocationChangedListener {
@@ -183,28 +177,23 @@ class MainActivity : AppCompatActivity() {
                 // Handle when LocationDataSource status is changed
                 locationDataSourceListener = LocationDataSource.StatusChangedListener {
                     if (it.status == LocationDataSource.Status.STARTED) {
-                        // Add a satellite changed listener to the NMEA location data source and display satellite information
-                        setupSatelliteChangedListener()
-
-                        timer = Timer()
-                        // Push the mock data NMEA sentences into the data source every 250 ms
-                        timer.schedule(timerTask {
-                            // Only push data when started
-                            if (it.status == LocationDataSource.Status.STARTED)
-                                nmeaLocationDataSource.pushData(
-                                    nmeaSentences[count++].toByteArray(
-                                        StandardCharsets.UTF_8
-                                    )
-                                )
-                            // Reset the count after the last data point is reached
-                            if (count == nmeaSentences.size)
-                                count = 0
-                        }, 250, 250)
+                        // Push the mock data NMEA sentences into the data source at the times they were recorded
+                        replayer.start(REPLAY_SPEED, true)
 
                         setLocationStatus(true)
                     }
                     if (it.status == LocationDataSource.Status.STOPPED) {
-                        timer.cancel()
+                        // Stop pushing data once the data source has stopped
+                        replayer.stop()
+                        Log.i(
+                            TAG, "Replayed ${replayer.sentencesPushed} NMEA sentences, " +
+                                    "%.1f sentences/sec".format(replayer.sentencesPerSecond)
+                        )
+                        Log.i(
+                            TAG, "Parsed ${nmeaParser.parsedCount} NMEA sentences, " +
+                                    "rejected ${nmeaParser.rejectedCount}, " +
+                                    "%.1f sentences/sec".format(nmeaParser.sentencesPerSecond)
+                        )
                         nmeaLocationDataSource.removeStatusChangedListener(
                             locationDataSourceListener
                         )
@@ -232,26 +221,22 @@ class MainActivity : AppCompatActivity() {
     }
 
     /**
-     * Obtains NMEA satellite information from the NMEA location data source, and displays satellite information on the app
+     * Displays the satellites in view for a fix. Called once per fix by the NMEA parser on the replay
+     * thread, rather than once per GSV sentence.
      */
-    private fun setupSatelliteChangedListener() {
-        nmeaLocationDataSource.addSatellitesChangedListener {
-            val uniqueSatelliteIDs: HashSet<Int> = hashSetOf()
-            // Get satellite information from the NMEA location data source every time the satellites change
-            val nmeaSatelliteInfoList: List<NmeaSatelliteInfo> = it.satelliteInfos
-            // Set the text of the satellite count label
-            satelliteCountTV.text = "Satellite count- " + nmeaSatelliteInfoList.size
-
-            for (satInfo in nmeaSatelliteInfoList) {
-                // Collect unique satellite ids
-                uniqueSatelliteIDs.add(satInfo.id)
-                // Sort the ids numerically
-                val sortedIds: MutableList<Int> = ArrayList(uniqueSatelliteIDs)
-                sortedIds.sort()
-                // Display the satellite system and id information
-                systemTypeTV.text = "System- " + satInfo.system
-                satelliteIDsTV.text = "Satellite IDs- $sortedIds"
-            }
+    private fun showSatellites(satellites: NmeaParser.SatelliteSnapshot) {
+        // Copy what is shown, the snapshot is reused by the parser once this returns
+        val count = satellites.count
+        val sortedIds = satellites.prns.copyOf(satellites.count).distinct().sorted()
+        val systems = (0 until satellites.count)
+            .map { satellites.systemName(satellites.talkers[it]) }
+            .distinct()
+            .joinToString()
+        runOnUiThread {
+            // Display the satellite count, system and id information
+            satelliteCountTV.text = "Satellite count- $count"
+            systemTypeTV.text = "System- $systems"
+            satelliteIDsTV.text = "Satellite IDs- $sortedIds"
         }
     }
 
@@ -267,7 +252,14 @@ class MainActivity : AppCompatActivity() {
 
     override fun onDestroy() {
         nmeaLocationDataSource.stop()
+        nmeaReplayer?.stop()
         mapView.dispose()
         super.onDestroy()
     }
+
+    companion object {
+        // Speed to replay the NMEA data at relative to when it was recorded, Double.POSITIVE_INFINITY replays it as fast as
+        // the data source accepts it
+        private const val REPLAY_SPEED = 1.0
+    }
 }
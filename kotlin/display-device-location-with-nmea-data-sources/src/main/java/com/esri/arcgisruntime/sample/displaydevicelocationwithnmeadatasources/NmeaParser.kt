@@ -0,0 +1,450 @@
+/* Copyright 2021 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.displaydevicelocationwithnmeadatasources
+
+/**
+ * Validates and parses NMEA 0183 GGA, RMC, GSA and GSV sentences straight from their bytes.
+ *
+ * Sentences are checked against their checksum before being parsed, so corrupted sentences can be
+ * dropped before they reach the location data source. Parsing doesn't allocate: field boundaries
+ * are kept in a reused array and the values of the last parsed sentence are exposed as properties.
+ *
+ * Satellites reported by GSV sentences are collected for each epoch, i.e. each distinct RMC/GGA
+ * fix time, and handed to [onSatellites] once when the next epoch starts, rather than once per GSV
+ * sentence. Call [flush] at the end of the input to hand over the last epoch's satellites. The
+ * snapshot is reused, so the listener must copy what it needs before returning.
+ *
+ * Not thread safe, a parser should only be used from one thread.
+ *
+ * @param onSatellites called on the parsing thread with the satellites in view in each epoch
+ */
+class NmeaParser(private val onSatellites: (SatelliteSnapshot) -> Unit) {
+
+    enum class SentenceType { GGA, RMC, GSA, GSV, OTHER }
+
+    private lateinit var bytes: ByteArray
+    private val fieldStarts = IntArray(MAX_FIELDS)
+    private val fieldEnds = IntArray(MAX_FIELDS)
+    private var fieldCount = 0
+
+    private val satellites = SatelliteSnapshot()
+    private var epochTime = -1L
+
+    /** Type of the last parsed sentence. */
+    var type = SentenceType.OTHER
+        private set
+
+    /** Two letter talker id of the last parsed sentence, e.g. "GP" for GPS, as its two bytes. */
+    var talker = 0
+        private set
+
+    /** UTC time of day in milliseconds of the last RMC or GGA sentence, -1 if it had no fix time. */
+    var utcTimeMillis = -1L
+        private set
+
+    /** Latitude in decimal degrees of the last RMC or GGA sentence, NaN if not known. */
+    var latitude = Double.NaN
+        private set
+
+    /** Longitude in decimal degrees of the last RMC or GGA sentence, NaN if not known. */
+    var longitude = Double.NaN
+        private set
+
+    /** Altitude above mean sea level in meters from the last GGA sentence, NaN if not known. */
+    var altitude = Double.NaN
+        private set
+
+    /** GPS quality indicator from the last GGA sentence, 0 means no fix. */
+    var fixQuality = 0
+        private set
+
+    /** Number of satellites used in the solution from the last GGA sentence. */
+    var satellitesUsed = 0
+        private set
+
+    /** Speed over ground in knots from the last RMC sentence, NaN if not known. */
+    var speedKnots = Double.NaN
+        private set
+
+    /** Course over ground in degrees from the last RMC sentence, NaN if not known. */
+    var course = Double.NaN
+        private set
+
+    /** Fix mode from the last GSA sentence: 1 no fix, 2 2D, 3 3D. */
+    var fixMode = 1
+        private set
+
+    var pdop = Double.NaN
+        private set
+
+    var hdop = Double.NaN
+        private set
+
+    var vdop = Double.NaN
+        private set
+
+    /** Number of sentences parsed successfully. */
+    var parsedCount = 0L
+        private set
+
+    /** Number of sentences rejected for a bad checksum or malformed fields. */
+    var rejectedCount = 0L
+        private set
+
+    /** Total time spent in [parse], in nanoseconds. */
+    var parseNanos = 0L
+        private set
+
+    /** Sentences parsed or rejected per second of parse time. */
+    val sentencesPerSecond: Double
+        get() = if (parseNanos == 0L) 0.0 else (parsedCount + rejectedCount) * 1e9 / parseNanos
+
+    /**
+     * Validates and parses a sentence. Sentence types other than GGA, RMC, GSA and GSV are only
+     * validated.
+     *
+     * @param sentence bytes of the sentence, starting with '$', optionally followed by CR/LF
+     * @param length number of bytes of the sentence in the array
+     * @return true if the sentence has a valid checksum and its fields could be parsed
+     */
+    fun parse(sentence: ByteArray, length: Int = sentence.size): Boolean {
+        val start = System.nanoTime()
+        bytes = sentence
+        val valid = isValid(sentence, length) && split(length) && parseFields()
+        if (valid) parsedCount++ else rejectedCount++
+        parseNanos += System.nanoTime() - start
+        return valid
+    }
+
+    /**
+     * Hands the satellites collected since the last epoch started to [onSatellites], e.g. at the
+     * end of the input, where no following epoch would publish them.
+     */
+    fun flush() {
+        if (satellites.count > 0) {
+            onSatellites(satellites)
+        }
+        satellites.clear()
+        epochTime = -1L
+    }
+
+    /**
+     * Splits the sentence body between the '$' and the '*' into fields at the commas.
+     */
+    private fun split(length: Int): Boolean {
+        fieldCount = 0
+        var fieldStart = 1
+        for (i in 1 until length) {
+            val b = bytes[i]
+            if (b == COMMA || b == STAR) {
+                if (fieldCount == MAX_FIELDS) return false
+                fieldStarts[fieldCount] = fieldStart
+                fieldEnds[fieldCount] = i
+                fieldCount++
+                fieldStart = i + 1
+                if (b == STAR) return true
+            }
+        }
+        return false
+    }
+
+    private fun parseFields(): Boolean {
+        // the address field is the two letter talker id and the three letter sentence type
+        if (fieldEnds[0] - fieldStarts[0] != 5) {
+            type = SentenceType.OTHER
+            return true
+        }
+        val address = fieldStarts[0]
+        talker = (bytes[address].toInt() shl 8) or bytes[address + 1].toInt()
+        type = when {
+            matches(address + 2, 'G', 'G', 'A') -> SentenceType.GGA
+            matches(address + 2, 'R', 'M', 'C') -> SentenceType.RMC
+            matches(address + 2, 'G', 'S', 'A') -> SentenceType.GSA
+            matches(address + 2, 'G', 'S', 'V') -> SentenceType.GSV
+            else -> SentenceType.OTHER
+        }
+        return when (type) {
+            SentenceType.GGA -> parseGga()
+            SentenceType.RMC -> parseRmc()
+            SentenceType.GSA -> parseGsa()
+            SentenceType.GSV -> parseGsv()
+            SentenceType.OTHER -> true
+        }
+    }
+
+    // $--GGA,hhmmss.ss,llll.ll,a,yyyyy.yy,a,x,xx,x.x,x.x,M,x.x,M,x.x,xxxx*hh
+    private fun parseGga(): Boolean {
+        if (fieldCount < 10) return false
+        if (!parseTime(1)) return false
+        latitude = parseCoordinate(2, 2, 'S')
+        longitude = parseCoordinate(4, 3, 'W')
+        fixQuality = parseInt(6, 0)
+        satellitesUsed = parseInt(7, 0)
+        hdop = parseDouble(8)
+        altitude = parseDouble(9)
+        return true
+    }
+
+    // $--RMC,hhmmss.ss,A,llll.ll,a,yyyyy.yy,a,x.x,x.x,xxxxxx,x.x,a*hh
+    private fun parseRmc(): Boolean {
+        if (fieldCount < 9) return false
+        if (!parseTime(1)) return false
+        latitude = parseCoordinate(3, 2, 'S')
+        longitude = parseCoordinate(5, 3, 'W')
+        speedKnots = parseDouble(7)
+        course = parseDouble(8)
+        return true
+    }
+
+    // $--GSA,a,x,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,x.x,x.x,x.x*hh
+    private fun parseGsa(): Boolean {
+        if (fieldCount < 18) return false
+        fixMode = parseInt(2, 1)
+        pdop = parseDouble(15)
+        hdop = parseDouble(16)
+        vdop = parseDouble(17)
+        return true
+    }
+
+    // $--GSV,x,x,xx,xx,xx,xxx,xx,...*hh with up to four satellites of (prn, elevation, azimuth, snr)
+    private fun parseGsv(): Boolean {
+        if (fieldCount < 4) return false
+        var field = 4
+        while (field + 3 < fieldCount) {
+            val prn = parseInt(field, -1)
+            if (prn >= 0) {
+                satellites.put(
+                    talker,
+                    prn,
+                    parseInt(field + 1, -1),
+                    parseInt(field + 2, -1),
+                    parseInt(field + 3, -1)
+                )
+            }
+            field += 4
+        }
+        return true
+    }
+
+    /**
+     * Parses the fix time and publishes the previous epoch's satellites when a new epoch starts. An
+     * empty time is a receiver without a fix, which doesn't start an epoch.
+     */
+    private fun parseTime(field: Int): Boolean {
+        val start = fieldStarts[field]
+        if (fieldEnds[field] == start) {
+            utcTimeMillis = -1L
+            return true
+        }
+        if (fieldEnds[field] - start < 6) return false
+        var millis = 0L
+        var i = start
+        for (unit in TIME_UNITS) {
+            val tens = digit(i)
+            val ones = digit(i + 1)
+            if (tens < 0 || ones < 0) return false
+            millis += (tens * 10 + ones) * unit
+            i += 2
+        }
+        if (i < fieldEnds[field] && bytes[i] == DOT) {
+            var scale = 100L
+            i++
+            while (i < fieldEnds[field] && scale > 0) {
+                val d = digit(i)
+                if (d < 0) return false
+                millis += d * scale
+                scale /= 10
+                i++
+            }
+        }
+        utcTimeMillis = millis
+        if (millis != epochTime) {
+            flush()
+            epochTime = millis
+        }
+        return true
+    }
+
+    /**
+     * Parses a (d)ddmm.mmmm coordinate followed by its hemisphere field.
+     */
+    private fun parseCoordinate(field: Int, degreeDigits: Int, negativeHemisphere: Char): Double {
+        val start = fieldStarts[field]
+        if (fieldEnds[field] - start <= degreeDigits) return Double.NaN
+        var degrees = 0
+        for (i in start until start + degreeDigits) {
+            val d = digit(i)
+            if (d < 0) return Double.NaN
+            degrees = degrees * 10 + d.toInt()
+        }
+        val minutes = parseDouble(start + degreeDigits, fieldEnds[field])
+        val value = degrees + minutes / 60
+        val hemisphere = field + 1
+        val isNegative = fieldEnds[hemisphere] > fieldStarts[hemisphere] &&
+                bytes[fieldStarts[hemisphere]] == negativeHemisphere.code.toByte()
+        return if (isNegative) -value else value
+    }
+
+    private fun parseInt(field: Int, default: Int): Int {
+        val start = fieldStarts[field]
+        val end = fieldEnds[field]
+        if (start == end) return default
+        var value = 0
+        for (i in start until end) {
+            val d = digit(i)
+            if (d < 0) return default
+            value = value * 10 + d.toInt()
+        }
+        return value
+    }
+
+    private fun parseDouble(field: Int): Double = parseDouble(fieldStarts[field], fieldEnds[field])
+
+    private fun parseDouble(start: Int, end: Int): Double {
+        if (start == end) return Double.NaN
+        var i = start
+        val negative = bytes[i] == MINUS
+        if (negative) i++
+        var value = 0.0
+        var scale = 0.0
+        while (i < end) {
+            val b = bytes[i]
+            if (b == DOT && scale == 0.0) {
+                scale = 1.0
+            } else {
+                val d = digit(i)
+                if (d < 0) return Double.NaN
+                if (scale == 0.0) {
+                    value = value * 10 + d
+                } else {
+                    scale /= 10
+                    value += d * scale
+                }
+            }
+            i++
+        }
+        return if (negative) -value else value
+    }
+
+    private fun matches(offset: Int, a: Char, b: Char, c: Char): Boolean =
+        bytes[offset] == a.code.toByte() && bytes[offset + 1] == b.code.toByte() &&
+                bytes[offset + 2] == c.code.toByte()
+
+    private fun digit(offset: Int): Long {
+        val value = bytes[offset] - '0'.code
+        return if (value in 0..9) value.toLong() else -1
+    }
+
+    /**
+     * Satellites in view during one epoch, at most one entry per talker and PRN. Reused between
+     * epochs.
+     */
+    class SatelliteSnapshot {
+        /** Number of satellites in the snapshot. */
+        var count = 0
+            private set
+        /** Talker id of each satellite, identifying its GNSS system. */
+        val talkers = IntArray(MAX_SATELLITES)
+        val prns = IntArray(MAX_SATELLITES)
+        /** Elevation in degrees of each satellite, -1 if not known. */
+        val elevations = IntArray(MAX_SATELLITES)
+        /** Azimuth in degrees of each satellite, -1 if not known. */
+        val azimuths = IntArray(MAX_SATELLITES)
+        /** Signal to noise ratio in dB of each satellite, -1 if not tracked. */
+        val snrs = IntArray(MAX_SATELLITES)
+
+        internal fun put(talker: Int, prn: Int, elevation: Int, azimuth: Int, snr: Int) {
+            var index = 0
+            while (index < count && (talkers[index] != talker || prns[index] != prn)) {
+                index++
+            }
+            if (index == count) {
+                if (count == MAX_SATELLITES) return
+                count++
+            }
+            talkers[index] = talker
+            prns[index] = prn
+            elevations[index] = elevation
+            azimuths[index] = azimuth
+            snrs[index] = snr
+        }
+
+        internal fun clear() {
+            count = 0
+        }
+
+        /**
+         * @return the name of the GNSS system a talker id belongs to
+         */
+        fun systemName(talker: Int): String = when (talker) {
+            talkerId('G', 'P') -> "GPS"
+            talkerId('G', 'L') -> "GLONASS"
+            talkerId('G', 'A') -> "Galileo"
+            talkerId('G', 'B'), talkerId('B', 'D') -> "BeiDou"
+            talkerId('G', 'Q'), talkerId('Q', 'Z') -> "QZSS"
+            talkerId('G', 'N') -> "GNSS"
+            else -> "Unknown"
+        }
+
+        private fun talkerId(first: Char, second: Char) = (first.code shl 8) or second.code
+    }
+
+    companion object {
+        private const val MAX_FIELDS = 32
+        private const val MAX_SATELLITES = 64
+        private const val COMMA: Byte = 44
+        private const val STAR: Byte = 42
+        private const val DOT: Byte = 46
+        private const val MINUS: Byte = 45
+        private const val DOLLAR: Byte = 36
+        private const val CR: Byte = 13
+        private const val LF: Byte = 10
+        private val TIME_UNITS = longArrayOf(3_600_000, 60_000, 1_000)
+
+        /**
+         * Checks a sentence's framing and checksum: it must start with '$' and end with '*' and two
+         * hex digits matching the XOR of the bytes between them, optionally followed by CR/LF.
+         */
+        fun isValid(sentence: ByteArray, length: Int = sentence.size): Boolean {
+            if (length < 4 || sentence[0] != DOLLAR) return false
+            var checksum = 0
+            var i = 1
+            while (i < length && sentence[i] != STAR) {
+                checksum = checksum xor sentence[i].toInt()
+                i++
+            }
+            if (i + 2 >= length) return false
+            val high = hexValue(sentence[i + 1])
+            val low = hexValue(sentence[i + 2])
+            if (high < 0 || low < 0) return false
+            // anything after the checksum may only be line endings
+            for (j in i + 3 until length) {
+                if (sentence[j] != CR && sentence[j] != LF) {
+                    return false
+                }
+            }
+            return checksum == (high shl 4) or low
+        }
+
+        private fun hexValue(b: Byte): Int = when (b.toInt().toChar()) {
+            in '0'..'9' -> b - '0'.code.toByte()
+            in 'A'..'F' -> b - 'A'.code.toByte() + 10
+            in 'a'..'f' -> b - 'a'.code.toByte() + 10
+            else -> -1
+        }
+    }
+}
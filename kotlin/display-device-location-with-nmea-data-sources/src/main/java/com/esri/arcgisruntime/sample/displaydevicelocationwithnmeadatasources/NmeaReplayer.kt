@@ -0,0 +1,283 @@
+/* Copyright 2021 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.displaydevicelocationwithnmeadatasources
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.locks.LockSupport
+import kotlin.concurrent.thread
+
+/**
+ * Replays a recorded NMEA log into a sink, such as NmeaLocationDataSource.pushData.
+ *
+ * The log is memory-mapped and the sentence boundaries are indexed once up front, so the log is
+ * never held in memory as strings. Each sentence is copied from the mapped file into a reusable
+ * buffer of the sentence's length, terminated with a line feed for the NMEA parser, which means no
+ * arrays are allocated per sentence once a buffer exists for each sentence length. The sink must
+ * therefore not keep a reference to the array it is given.
+ *
+ * Sentences are either pushed at a fixed interval or follow the UTC times of the RMC and GGA
+ * sentences in the log, scaled by the replay speed. The replay loops back to the start of the log
+ * when it reaches the end.
+ *
+ * @param nmeaFile recorded NMEA log, one sentence per line
+ * @param sink receives each sentence on the replay thread
+ * @param onEndOfLog called on the replay thread after the last sentence of the log is pushed,
+ * before the replay loops back to the start
+ */
+class NmeaReplayer(
+    nmeaFile: File,
+    private val onEndOfLog: () -> Unit = {},
+    private val sink: (ByteArray) -> Unit
+) {
+
+    private val log: MappedByteBuffer
+    // start offset of each sentence in the log, with one extra entry for the end of the log
+    private val sentenceStarts: IntArray
+    // UTC time of day in milliseconds each sentence was recorded at, carried forward from the last
+    // RMC or GGA sentence, or -1 before the first one
+    private val sentenceTimes: LongArray
+    // reusable line buffers, indexed by sentence length including the line feed
+    private val lineBuffers = arrayOfNulls<ByteArray>(MAX_LINE_LENGTH + 1)
+
+    @Volatile
+    private var isRunning = false
+    private var replayThread: Thread? = null
+
+    /** Index of the next sentence to push. */
+    @Volatile
+    var position = 0
+        private set
+
+    /** Number of sentences in the log. */
+    val sentenceCount: Int
+        get() = sentenceStarts.size - 1
+
+    /** Sentences pushed to the sink since the replayer was created. */
+    @Volatile
+    var sentencesPushed = 0L
+        private set
+
+    @Volatile
+    private var replayNanos = 0L
+
+    /** Sentences pushed per second of replay time, across all replays. */
+    val sentencesPerSecond: Double
+        get() = if (replayNanos == 0L) 0.0 else sentencesPushed * 1e9 / replayNanos
+
+    init {
+        // the mapping stays valid after the file is closed
+        log = RandomAccessFile(nmeaFile, "r").use { file ->
+            file.channel.map(FileChannel.MapMode.READ_ONLY, 0, file.length())
+        }
+        var starts = IntArray(1024)
+        var times = LongArray(1024)
+        var count = 0
+        var lastTime = -1L
+        var dayOffset = 0L
+        var start = 0
+        val size = log.limit()
+        while (start < size) {
+            var end = start
+            while (end < size && log.get(end) != LF) {
+                end++
+            }
+            if (lineLength(start, end) > 0) {
+                if (count + 1 >= starts.size) {
+                    starts = starts.copyOf(starts.size * 2)
+                    times = times.copyOf(times.size * 2)
+                }
+                val time = parseTime(start, end)
+                if (time >= 0) {
+                    // handle logs spanning midnight
+                    if (lastTime >= 0 && time + dayOffset < lastTime - MILLIS_PER_DAY / 2) {
+                        dayOffset += MILLIS_PER_DAY
+                    }
+                    lastTime = time + dayOffset
+                }
+                starts[count] = start
+                times[count] = lastTime
+                count++
+            }
+            start = end + 1
+        }
+        starts[count] = size
+        sentenceStarts = starts.copyOf(count + 1)
+        sentenceTimes = times.copyOf(count)
+    }
+
+    /**
+     * Starts replaying from the current position on a background thread.
+     *
+     * @param speed replay speed relative to the recording, e.g. 1.0 for real time, or
+     * [Double.POSITIVE_INFINITY] to push sentences as fast as the sink accepts them
+     * @param followTimestamps true to space sentences by the times recorded in the log, false to
+     * push one sentence every [FIXED_INTERVAL_MILLIS] scaled by the speed. Logs without RMC or GGA
+     * times always use the fixed interval.
+     */
+    fun start(speed: Double, followTimestamps: Boolean) {
+        if (isRunning || sentenceCount == 0) return
+        isRunning = true
+        val hasTimestamps = sentenceTimes.any { it >= 0 }
+        replayThread = thread(name = "NMEA replay") {
+            replay(speed, followTimestamps && hasTimestamps)
+        }
+    }
+
+    /**
+     * Stops the replay, leaving the position at the next sentence to push.
+     */
+    fun stop() {
+        isRunning = false
+        val thread = replayThread ?: return
+        replayThread = null
+        // the sink may stop the replay from the replay thread, which finishes once the sink returns
+        // and must not wait for itself
+        if (thread != Thread.currentThread()) {
+            thread.interrupt()
+            thread.join()
+        }
+    }
+
+    private fun replay(speed: Double, followTimestamps: Boolean) {
+        val replayStart = System.nanoTime()
+        var baseNanos = replayStart
+        var baseIndex = position
+        // recorded time the replay clock is anchored to, or -1 until a sentence with a time is
+        // reached, as the log may start with untimed sentences such as GSA and GSV
+        var baseTime = -1L
+        while (isRunning && !Thread.currentThread().isInterrupted) {
+            if (speed.isFinite()) {
+                val recordedMillis = if (followTimestamps) {
+                    val time = sentenceTimes[position]
+                    if (time >= 0 && baseTime < 0) {
+                        baseTime = time
+                        baseNanos = maxOf(baseNanos, System.nanoTime())
+                    }
+                    if (time >= 0) time - baseTime else 0L
+                } else {
+                    (position - baseIndex) * FIXED_INTERVAL_MILLIS
+                }
+                val deadline = baseNanos + (recordedMillis * 1_000_000 / speed).toLong()
+                var remaining = deadline - System.nanoTime()
+                while (remaining > 0 && isRunning) {
+                    LockSupport.parkNanos(remaining)
+                    remaining = deadline - System.nanoTime()
+                }
+                if (!isRunning) break
+            }
+            sink(readSentence(position))
+            sentencesPushed++
+            position++
+            // loop back to the start of the log, restarting the replay clock
+            if (position == sentenceCount) {
+                onEndOfLog()
+                position = 0
+                baseIndex = 0
+                baseTime = -1L
+                baseNanos = System.nanoTime() + FIXED_INTERVAL_MILLIS * 1_000_000
+            }
+        }
+        replayNanos += System.nanoTime() - replayStart
+    }
+
+    /**
+     * Copies the sentence at the given index into the reusable buffer for its length.
+     */
+    private fun readSentence(index: Int): ByteArray {
+        val start = sentenceStarts[index]
+        val length = lineLength(start, sentenceStarts[index + 1]).coerceAtMost(MAX_LINE_LENGTH - 1)
+        val buffer = lineBuffers[length + 1] ?: ByteArray(length + 1).also {
+            lineBuffers[length + 1] = it
+        }
+        for (i in 0 until length) {
+            buffer[i] = log.get(start + i)
+        }
+        // add line feed for NMEA location data source parser
+        buffer[length] = LF
+        return buffer
+    }
+
+    /**
+     * @return length of the line from start to end without trailing line feeds or carriage returns
+     */
+    private fun lineLength(start: Int, end: Int): Int {
+        var last = end
+        while (last > start && log.get(last - 1).let { it == CR || it == LF }) {
+            last--
+        }
+        return last - start
+    }
+
+    /**
+     * Reads the UTC time field of an RMC or GGA sentence, e.g. "$GPRMC,183730.00,A,...".
+     *
+     * @return the time of day in milliseconds, or -1 if the line isn't an RMC or GGA sentence
+     */
+    private fun parseTime(start: Int, end: Int): Long {
+        // talker id is two characters after the '$', followed by the sentence type
+        if (end - start < 13 || log.get(start) != '$'.code.toByte()) return -1
+        val isRmc = matches(start + 3, "RMC")
+        val isGga = matches(start + 3, "GGA")
+        if (!(isRmc || isGga) || log.get(start + 6) != ','.code.toByte()) return -1
+        var i = start + 7
+        var millis = 0L
+        for (unit in longArrayOf(3_600_000, 60_000, 1_000)) {
+            val tens = digit(i)
+            val ones = digit(i + 1)
+            if (tens < 0 || ones < 0) return -1
+            millis += (tens * 10 + ones) * unit
+            i += 2
+        }
+        // optional fractional seconds
+        if (i < end && log.get(i) == '.'.code.toByte()) {
+            var scale = 100L
+            i++
+            while (i < end && digit(i) >= 0 && scale > 0) {
+                millis += digit(i) * scale
+                scale /= 10
+                i++
+            }
+        }
+        return millis
+    }
+
+    private fun matches(offset: Int, text: String): Boolean {
+        for (i in text.indices) {
+            if (log.get(offset + i) != text[i].code.toByte()) return false
+        }
+        return true
+    }
+
+    private fun digit(offset: Int): Long {
+        val value = log.get(offset) - '0'.code
+        return if (value in 0..9) value.toLong() else -1
+    }
+
+    companion object {
+        /** Interval between sentences when not following the log's timestamps. */
+        const val FIXED_INTERVAL_MILLIS = 250L
+
+        // NMEA 0183 caps sentences at 82 characters, leave room for proprietary sentences
+        private const val MAX_LINE_LENGTH = 512
+        private const val MILLIS_PER_DAY = 24 * 60 * 60 * 1000L
+        private const val CR: Byte = 13
+        private const val LF: Byte = 10
+    }
+}
@@ -0,0 +1,205 @@
+/* Copyright 2021 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.displaydevicelocationwithnmeadatasources
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class NmeaParserTest {
+
+    private val parser = NmeaParser {}
+
+    @Test
+    fun parsesGga() {
+        assertTrue(parser.parse(bytes(GGA)))
+        assertEquals(NmeaParser.SentenceType.GGA, parser.type)
+        assertEquals(('G'.code shl 8) or 'P'.code, parser.talker)
+        assertEquals(((12 * 60 + 35) * 60 + 19) * 1000L, parser.utcTimeMillis)
+        assertEquals(48 + 7.038 / 60, parser.latitude, DELTA)
+        assertEquals(11 + 31.0 / 60, parser.longitude, DELTA)
+        assertEquals(1, parser.fixQuality)
+        assertEquals(8, parser.satellitesUsed)
+        assertEquals(0.9, parser.hdop, DELTA)
+        assertEquals(545.4, parser.altitude, DELTA)
+    }
+
+    @Test
+    fun parsesRmc() {
+        assertTrue(parser.parse(bytes(RMC)))
+        assertEquals(NmeaParser.SentenceType.RMC, parser.type)
+        assertEquals(48 + 7.038 / 60, parser.latitude, DELTA)
+        assertEquals(22.4, parser.speedKnots, DELTA)
+        assertEquals(84.4, parser.course, DELTA)
+    }
+
+    @Test
+    fun parsesSouthernAndWesternHemispheres() {
+        assertTrue(parser.parse(bytes(withChecksum("GPRMC,000000.50,A,3403.000,S,11811.500,W,0.0,,010121,,"))))
+        assertEquals(500L, parser.utcTimeMillis)
+        assertEquals(-(34 + 3.0 / 60), parser.latitude, DELTA)
+        assertEquals(-(118 + 11.5 / 60), parser.longitude, DELTA)
+        assertTrue(parser.course.isNaN())
+    }
+
+    @Test
+    fun parsesGsa() {
+        assertTrue(parser.parse(bytes(GSA)))
+        assertEquals(NmeaParser.SentenceType.GSA, parser.type)
+        assertEquals(3, parser.fixMode)
+        assertEquals(2.5, parser.pdop, DELTA)
+        assertEquals(1.3, parser.hdop, DELTA)
+        assertEquals(2.1, parser.vdop, DELTA)
+    }
+
+    @Test
+    fun publishesGsvSatellitesOncePerEpoch() {
+        val published = ArrayList<List<Int>>()
+        val parser = NmeaParser { snapshot ->
+            published.add((0 until snapshot.count).map { snapshot.prns[it] })
+        }
+        assertTrue(parser.parse(bytes(GGA)))
+        assertTrue(parser.parse(bytes(GSV)))
+        assertEquals(NmeaParser.SentenceType.GSV, parser.type)
+        // a sentence of the same epoch doesn't publish the satellites
+        assertTrue(parser.parse(bytes(RMC)))
+        assertTrue(published.isEmpty())
+        // the next epoch does, once
+        assertTrue(parser.parse(bytes(withChecksum("GPRMC,123520,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W"))))
+        assertEquals(listOf(listOf(1, 2, 12, 14)), published)
+    }
+
+    @Test
+    fun flushPublishesTheLastEpoch() {
+        val published = ArrayList<Int>()
+        val parser = NmeaParser { snapshot -> published.add(snapshot.count) }
+        assertTrue(parser.parse(bytes(GGA)))
+        assertTrue(parser.parse(bytes(GSV)))
+        parser.flush()
+        assertEquals(listOf(4), published)
+        // nothing is left to publish, and the same fix time starts a new epoch
+        parser.flush()
+        assertTrue(parser.parse(bytes(GGA)))
+        assertEquals(listOf(4), published)
+    }
+
+    @Test
+    fun acceptsSentencesWithoutAFix() {
+        val published = ArrayList<Int>()
+        val parser = NmeaParser { snapshot -> published.add(snapshot.count) }
+        assertTrue(parser.parse(bytes(GGA)))
+        assertTrue(parser.parse(bytes(GSV)))
+        // a receiver without a fix sends an empty time, which doesn't end the epoch
+        assertTrue(parser.parse(bytes(withChecksum("GPRMC,,V,,,,,,,,,N"))))
+        assertEquals(-1L, parser.utcTimeMillis)
+        assertTrue(parser.latitude.isNaN())
+        assertTrue(parser.parse(bytes(withChecksum("GPGGA,,,,,,0,00,99.99,,,,,,"))))
+        assertEquals(0, parser.fixQuality)
+        assertTrue(published.isEmpty())
+        assertEquals(0L, parser.rejectedCount)
+    }
+
+    @Test
+    fun readsSatelliteFields() {
+        var snr = 0
+        var elevation = 0
+        val parser = NmeaParser { snapshot ->
+            elevation = snapshot.elevations[3]
+            snr = snapshot.snrs[3]
+        }
+        parser.parse(bytes(GGA))
+        parser.parse(bytes(withChecksum("GPGSV,1,1,04,01,40,083,46,02,17,308,41,12,07,344,39,14,22,228,")))
+        parser.parse(bytes(withChecksum("GPGGA,123520,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,")))
+        assertEquals(22, elevation)
+        // an empty SNR means the satellite isn't tracked
+        assertEquals(-1, snr)
+    }
+
+    @Test
+    fun rejectsBadChecksums() {
+        assertFalse(parser.parse(bytes(GGA.replace("*47", "*48"))))
+        assertFalse(parser.parse(bytes(GGA.replace("545.4", "545.5"))))
+        assertFalse(parser.parse(bytes(GGA.replace("*47", "*4G"))))
+        assertFalse(parser.parse(bytes(GGA.substringBefore('*'))))
+        assertFalse(parser.parse(bytes(GGA.substringBefore('*') + "*4")))
+        assertFalse(parser.parse(bytes(GGA.removePrefix("$"))))
+        assertFalse(parser.parse(bytes(GGA + " ")))
+        assertEquals(7L, parser.rejectedCount)
+        assertEquals(0L, parser.parsedCount)
+    }
+
+    @Test
+    fun acceptsLowerCaseChecksumsAndLineEndings() {
+        assertTrue(parser.parse(bytes(RMC.replace("*6A", "*6a"))))
+        assertTrue(parser.parse(bytes(GGA + "\r\n")))
+        // only the given length of a larger buffer is parsed
+        val buffer = bytes(GSA + "\n") + ByteArray(16)
+        assertTrue(parser.parse(buffer, GSA.length + 1))
+    }
+
+    @Test
+    fun parsesEmptyFieldsAsUnknown() {
+        assertTrue(parser.parse(bytes(withChecksum("GPGGA,123519,,,,,0,00,,,M,,M,,"))))
+        assertTrue(parser.latitude.isNaN())
+        assertTrue(parser.longitude.isNaN())
+        assertTrue(parser.altitude.isNaN())
+        assertTrue(parser.hdop.isNaN())
+        assertEquals(0, parser.fixQuality)
+        assertEquals(0, parser.satellitesUsed)
+
+        assertTrue(parser.parse(bytes(withChecksum("GPGSA,A,,,,,,,,,,,,,,,,"))))
+        assertEquals(1, parser.fixMode)
+        assertTrue(parser.pdop.isNaN())
+    }
+
+    @Test
+    fun rejectsMissingOrMalformedFields() {
+        assertFalse(parser.parse(bytes(withChecksum("GPRMC,12a519,A,4807.038,N,01131.000,E,022.4,084.4,230394,,"))))
+        assertFalse(parser.parse(bytes(withChecksum("GPRMC,1235,A,4807.038,N,01131.000,E,022.4,084.4,230394,,"))))
+        // too few fields for the sentence type
+        assertFalse(parser.parse(bytes(withChecksum("GPGGA,123519,4807.038,N"))))
+        assertFalse(parser.parse(bytes(withChecksum("GPGSA,A,3,04,05"))))
+        assertEquals(4L, parser.rejectedCount)
+    }
+
+    @Test
+    fun validatesOtherSentenceTypesOnly() {
+        assertTrue(parser.parse(bytes(withChecksum("GPVTG,054.7,T,034.4,M,005.5,N,010.2,K"))))
+        assertEquals(NmeaParser.SentenceType.OTHER, parser.type)
+        assertTrue(parser.parse(bytes(withChecksum("PGRME,15.0,M,45.0,M,25.0,M"))))
+        assertEquals(NmeaParser.SentenceType.OTHER, parser.type)
+    }
+
+    private fun bytes(sentence: String) = sentence.toByteArray(Charsets.US_ASCII)
+
+    /**
+     * @return the sentence body framed with '$' and followed by its checksum
+     */
+    private fun withChecksum(body: String): String {
+        val checksum = body.fold(0) { xor, c -> xor xor c.code }
+        return "$" + body + "*%02X".format(checksum)
+    }
+
+    companion object {
+        private const val GGA = "\$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47"
+        private const val RMC = "\$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A"
+        private const val GSA = "\$GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,1.3,2.1*39"
+        private const val GSV = "\$GPGSV,2,1,08,01,40,083,46,02,17,308,41,12,07,344,39,14,22,228,45*75"
+        private const val DELTA = 1e-9
+    }
+}
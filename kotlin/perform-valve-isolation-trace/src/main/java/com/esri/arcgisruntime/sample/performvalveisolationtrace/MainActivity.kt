@@ -33,7 +33,6 @@ import androidx.appcompat.widget.SwitchCompat
 import androidx.coordinatorlayout.widget.CoordinatorLayout
 import com.esri.arcgisruntime.ArcGISRuntimeEnvironment
 import com.esri.arcgisruntime.data.ArcGISFeature
-import com.esri.arcgisruntime.data.QueryParameters
 import com.esri.arcgisruntime.data.ServiceGeodatabase
 import com.esri.arcgisruntime.geometry.GeometryEngine
 import com.esri.arcgisruntime.geometry.Point
@@ -128,6 +127,9 @@ class MainActivity : AppCompatActivity() {
 
     private var utilityTraceParameters: UtilityTraceParameters? = null
 
+    // selects the features of a trace result in batches across the feature layers
+    private val traceResultSelector = TraceResultSelector(SELECTION_BATCH_SIZE)
+
     private val serviceGeodatabase by lazy {
         ServiceGeodatabase(featureServiceUrl)
     }
@@ -506,26 +508,23 @@ class MainActivity : AppCompatActivity() {
                 // get the first element of the trace result if it is not null
                 (utilityTraceResultsFuture.get()[0] as? UtilityElementTraceResult)?.let { utilityElementTraceResult ->
                     if (utilityElementTraceResult.elements.isNotEmpty()) {
-                        // iterate over the map's feature layers
-                        mapView.map.operationalLayers.filterIsInstance<FeatureLayer>()
-                            .forEach { featureLayer ->
-                                // clear any selections from a previous trace
-                                featureLayer.clearSelection()
-
-                                val queryParameters = QueryParameters()
-                                // for each utility element in the trace, check if its network source is the same as
-                                // the feature table, and if it is, add it to the query parameters to be selected
-                                utilityElementTraceResult.elements.filter { it.networkSource.name == featureLayer.featureTable.tableName }
-                                    .forEach { utilityElement ->
-                                        queryParameters.objectIds.add(utilityElement.objectId)
-                                    }
-
-                                // select features that match the query
-                                featureLayer.selectFeaturesAsync(
-                                    queryParameters,
-                                    FeatureLayer.SelectionMode.NEW
-                                )
+                        // select the result's features in the map's feature layers
+                        traceResultSelector.select(
+                            utilityElementTraceResult.elements,
+                            mapView.map.operationalLayers.filterIsInstance<FeatureLayer>()
+                        ) { result ->
+                            Log.i(
+                                TAG, "Selected ${result.selectedCount} of ${result.elementCount} elements " +
+                                        "in ${result.batchCount} queries, ${result.elapsedMillis} ms"
+                            )
+                            result.error?.let { e ->
+                                val error = "Error selecting utility trace results: ${e.message}"
+                                Log.e(TAG, error)
+                                Toast.makeText(this, error, Toast.LENGTH_LONG).show()
                             }
+                            // hide the progress bar when the selection is completed or failed
+                            progressBar.visibility = View.GONE
+                        }
                     } else {
                         // iterate over the map's feature layers
                         mapView.map.operationalLayers.filterIsInstance<FeatureLayer>()
@@ -537,19 +536,21 @@ class MainActivity : AppCompatActivity() {
                         val message = "Utility Element Trace Result had no elements!"
                         Log.i(TAG, message)
                         Toast.makeText(this, message, Toast.LENGTH_LONG).show()
+                        progressBar.visibility = View.GONE
                     }
-                }
-                // hide the progress bar when the trace is completed or failed
-                progressBar.visibility = View.GONE
+                } ?: run { progressBar.visibility = View.GONE }
             } catch (e: Exception) {
                 val error = "Error loading utility trace results: ${e.message}"
                 Log.e(TAG, error)
                 Toast.makeText(this, error, Toast.LENGTH_LONG).show()
+                progressBar.visibility = View.GONE
             }
         }
     }
 
     private fun reset() {
+        // stop selecting the features of any trace still running
+        traceResultSelector.cancel()
         traceControlsTextView.text = getString(R.string.choose_category_for_filter_barrier)
         traceTypeSpinner.isEnabled = true
         mapView.map.operationalLayers.forEach { layer ->
@@ -604,7 +605,13 @@ class MainActivity : AppCompatActivity() {
     }
 
     override fun onDestroy() {
+        traceResultSelector.cancel()
         mapView.dispose()
         super.onDestroy()
     }
+
+    companion object {
+        // maximum number of object IDs in each selection query
+        private const val SELECTION_BATCH_SIZE = 1000
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.performvalveisolationtrace
+
+import com.esri.arcgisruntime.concurrent.ListenableFuture
+import com.esri.arcgisruntime.data.FeatureQueryResult
+import com.esri.arcgisruntime.data.QueryParameters
+import com.esri.arcgisruntime.layers.FeatureLayer
+import com.esri.arcgisruntime.utilitynetworks.UtilityElement
+
+/**
+ * Selects the features of a utility element trace result in the map's feature layers.
+ *
+ * The trace result's elements are bucketed by network source name in a single pass, with the
+ * object IDs of each source held in a primitive array. Each layer's IDs are then split into batches
+ * of at most [batchSize] IDs, and the batches for all layers are selected concurrently. The
+ * callback is called once, when every batch has completed.
+ *
+ * Must be used from the UI thread.
+ *
+ * @param batchSize maximum number of object IDs in a single selection query
+ */
+class TraceResultSelector(private val batchSize: Int) {
+
+    private val pendingSelections = ArrayList<ListenableFuture<FeatureQueryResult>>()
+    private var generation = 0
+
+    /**
+     * Clears the layers' selections and selects the features of the trace result's elements,
+     * cancelling any selection still running from a previous call.
+     *
+     * @param elements from a utility element trace result
+     * @param featureLayers to select the features in
+     * @param callback called on the UI thread when all of the selections have completed
+     */
+    fun select(
+        elements: List<UtilityElement>,
+        featureLayers: List<FeatureLayer>,
+        callback: (Result) -> Unit
+    ) {
+        cancel()
+        val startTime = System.nanoTime()
+        val selection = ++generation
+
+        // bucket the elements' object IDs by network source in a single pass over the result
+        val buckets = HashMap<String, ObjectIds>()
+        for (element in elements) {
+            buckets.getOrPut(element.networkSource.name) { ObjectIds() }.add(element.objectId)
+        }
+
+        var remaining = 0
+        var selectedCount = 0L
+        var batchCount = 0
+        var error: Exception? = null
+        val onBatchDone = { future: ListenableFuture<FeatureQueryResult> ->
+            // ignore selections cancelled by a later call
+            if (selection == generation) {
+                try {
+                    selectedCount += future.get().count()
+                } catch (e: Exception) {
+                    if (error == null) error = e
+                }
+                if (--remaining == 0) {
+                    pendingSelections.clear()
+                    val elapsedMillis = (System.nanoTime() - startTime) / 1_000_000
+                    callback(Result(elements.size, selectedCount, batchCount, elapsedMillis, error))
+                }
+            }
+        }
+
+        val batches = ArrayList<Pair<FeatureLayer, QueryParameters>>()
+        featureLayers.forEach { featureLayer ->
+            // clear previous selection
+            featureLayer.clearSelection()
+            buckets[featureLayer.featureTable.tableName]?.forEachBatch(batchSize) { batch ->
+                batches.add(featureLayer to batch)
+            }
+        }
+        batchCount = batches.size
+        remaining = batches.size
+        if (batches.isEmpty()) {
+            callback(Result(elements.size, 0, 0, (System.nanoTime() - startTime) / 1_000_000, null))
+            return
+        }
+        batches.forEach { (featureLayer, queryParameters) ->
+            // add to the selection, since the batches of a layer may complete in any order
+            featureLayer.selectFeaturesAsync(queryParameters, FeatureLayer.SelectionMode.ADD).also { future ->
+                pendingSelections.add(future)
+                future.addDoneListener { onBatchDone(future) }
+            }
+        }
+    }
+
+    /**
+     * Cancels any selections still running. Their callback won't be called.
+     */
+    fun cancel() {
+        generation++
+        pendingSelections.forEach { it.cancel(true) }
+        pendingSelections.clear()
+    }
+
+    /**
+     * The outcome of selecting a trace result.
+     *
+     * @param elementCount number of elements in the trace result
+     * @param selectedCount number of features selected
+     * @param batchCount number of selection queries run
+     * @param elapsedMillis time from bucketing the elements to the last selection completing
+     * @param error the first error from a selection query, if any failed
+     */
+    data class Result(
+        val elementCount: Int,
+        val selectedCount: Long,
+        val batchCount: Int,
+        val elapsedMillis: Long,
+        val error: Exception?
+    )
+
+    /**
+     * A growable primitive array of object IDs.
+     */
+    private class ObjectIds {
+        private var ids = LongArray(16)
+        private var size = 0
+
+        fun add(id: Long) {
+            if (size == ids.size) ids = ids.copyOf(size * 2)
+            ids[size++] = id
+        }
+
+        /**
+         * Calls the action with query parameters for each batch of at most batchSize IDs.
+         */
+        fun forEachBatch(batchSize: Int, action: (QueryParameters) -> Unit) {
+            for (start in 0 until size step batchSize) {
+                val end = minOf(start + batchSize, size)
+                action(QueryParameters().apply {
+                    for (i in start until end) objectIds.add(ids[i])
+                })
+            }
+        }
+    }
+}
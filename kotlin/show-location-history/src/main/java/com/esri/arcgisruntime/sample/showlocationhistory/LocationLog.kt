@@ -0,0 +1,361 @@
+/*
+ * Copyright 2020 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.showlocationhistory
+
+import java.io.Closeable
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import kotlin.math.roundToLong
+
+/**
+ * An append-only log of location fixes on disk.
+ *
+ * Each fix's longitude, latitude, time and horizontal accuracy are quantized to integers, to 1e-7
+ * degrees, milliseconds and centimeters, and stored as the difference from the previous fix,
+ * zigzag and varint encoded, so a fix typically takes a handful of bytes. The fixes are grouped in
+ * blocks, each starting from absolute values, and the time and offset of each block's first fix
+ * are kept in a separate index file. Reading a time range binary searches the index for the block
+ * to start decoding from.
+ *
+ * Writes go through a buffer and the files are synced to disk in batches, so at most the last
+ * [SYNC_INTERVAL_FIXES] fixes are lost if the app is killed. A fix left partly written is dropped
+ * when the log is next opened.
+ *
+ * @param dataFile file of the encoded fixes
+ * @param indexFile file of the block index
+ */
+class LocationLog(dataFile: File, indexFile: File) : Closeable {
+
+    private val data = RandomAccessFile(dataFile, "rw").channel
+    private val index = RandomAccessFile(indexFile, "rw").channel
+    private val writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE)
+    private val indexBuffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE)
+
+    // time and data offset of the first fix of each block
+    private var blockTimes = LongArray(64)
+    private var blockOffsets = LongArray(64)
+    private var blockCount = 0
+    private var syncedBlockCount = 0
+
+    // size of the data written to the channel, not counting the write buffer
+    private var dataSize = 0L
+    private var blockFixCount = BLOCK_SIZE
+    private var previousLon = 0L
+    private var previousLat = 0L
+    private var previousTime = 0L
+    private var previousAccuracy = 0L
+    private var unsyncedFixCount = 0
+
+    private var appendedFixCount = 0L
+    // bytes of fixes and index entries appended
+    private var appendedBytes = 0L
+    private var appendNanos = 0L
+
+    /** Time taken by the last read to find the first fix in its range, in nanoseconds. */
+    var lastSeekNanos = 0L
+        private set
+
+    /** Time of the first fix in the log, in milliseconds, or -1 if the log is empty. */
+    val startTime: Long
+        @Synchronized get() = if (blockCount == 0) -1 else blockTimes[0]
+
+    /** Time of the last fix in the log, in milliseconds, or -1 if the log is empty. */
+    val endTime: Long
+        @Synchronized get() = if (blockCount == 0) -1 else previousTime
+
+    init {
+        // read the index, ignoring a partly written entry and blocks past the end of the data
+        val indexEntries = ByteBuffer.allocate((index.size() / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE).toInt())
+        index.read(indexEntries, 0)
+        indexEntries.flip()
+        while (indexEntries.remaining() >= INDEX_ENTRY_SIZE) {
+            val time = indexEntries.long
+            val offset = indexEntries.long
+            if (offset >= data.size()) break
+            addBlock(time, offset)
+        }
+        syncedBlockCount = blockCount
+        index.truncate(blockCount.toLong() * INDEX_ENTRY_SIZE)
+        // decode the fixes after the last indexed block to find the end of the last complete fix,
+        // indexing any blocks which were written but not indexed, and continue the last block
+        val blockOffset = if (blockCount > 0) blockOffsets[blockCount - 1] else 0L
+        if (data.size() > blockOffset) {
+            val decoder = Decoder(
+                data.map(FileChannel.MapMode.READ_ONLY, blockOffset, data.size() - blockOffset)
+            )
+            while (decoder.next()) {
+                if (decoder.fixCount == 1 && (decoder.start > 0 || blockCount == 0)) {
+                    addBlock(decoder.time, blockOffset + decoder.start)
+                }
+            }
+            if (blockCount > 0) {
+                dataSize = blockOffset + decoder.end
+                blockFixCount = decoder.fixCount
+                previousLon = decoder.lon
+                previousLat = decoder.lat
+                previousTime = decoder.time
+                previousAccuracy = decoder.accuracy
+            }
+        }
+        data.truncate(dataSize)
+    }
+
+    /**
+     * Appends a fix to the log. Fixes should be appended in time order.
+     *
+     * @param longitude of the fix in degrees
+     * @param latitude of the fix in degrees
+     * @param time of the fix in milliseconds
+     * @param accuracy horizontal accuracy of the fix in meters, or NaN if unknown
+     */
+    @Synchronized
+    fun append(longitude: Double, latitude: Double, time: Long, accuracy: Double) {
+        val start = System.nanoTime()
+        val lon = (longitude * COORDINATE_SCALE).roundToLong()
+        val lat = (latitude * COORDINATE_SCALE).roundToLong()
+        val acc = if (accuracy.isNaN()) -1 else (accuracy * ACCURACY_SCALE).roundToLong()
+        if (writeBuffer.remaining() < MAX_FIX_SIZE) {
+            flushBuffer()
+        }
+        if (blockFixCount == BLOCK_SIZE) {
+            // start a new block which can be decoded without the fixes before it
+            addBlock(time, dataSize + writeBuffer.position())
+            appendedBytes += INDEX_ENTRY_SIZE
+            blockFixCount = 0
+            previousLon = 0
+            previousLat = 0
+            previousTime = 0
+            previousAccuracy = 0
+        }
+        val position = writeBuffer.position()
+        writeVarint(zigzag(lon - previousLon))
+        writeVarint(zigzag(lat - previousLat))
+        writeVarint(zigzag(time - previousTime))
+        writeVarint(zigzag(acc - previousAccuracy))
+        previousLon = lon
+        previousLat = lat
+        previousTime = time
+        previousAccuracy = acc
+        blockFixCount++
+
+        appendedFixCount++
+        appendedBytes += writeBuffer.position() - position
+        if (++unsyncedFixCount >= SYNC_INTERVAL_FIXES) {
+            sync()
+        }
+        appendNanos += System.nanoTime() - start
+    }
+
+    /**
+     * Writes the buffered fixes and index entries and forces them to disk.
+     */
+    @Synchronized
+    fun sync() {
+        flushBuffer()
+        data.force(false)
+        // only index blocks once their data is on disk
+        while (syncedBlockCount < blockCount) {
+            indexBuffer.clear()
+            indexBuffer.putLong(blockTimes[syncedBlockCount]).putLong(blockOffsets[syncedBlockCount])
+            indexBuffer.flip()
+            index.write(indexBuffer, syncedBlockCount.toLong() * INDEX_ENTRY_SIZE)
+            syncedBlockCount++
+        }
+        index.force(false)
+        unsyncedFixCount = 0
+    }
+
+    /**
+     * Passes each fix recorded within the time range to the consumer, in the order they were
+     * appended.
+     *
+     * @param startTime of the range in milliseconds, inclusive
+     * @param endTime of the range in milliseconds, inclusive
+     * @param consumer receives the longitude, latitude, time and accuracy of each fix
+     */
+    @Synchronized
+    fun read(
+        startTime: Long,
+        endTime: Long,
+        consumer: (longitude: Double, latitude: Double, time: Long, accuracy: Double) -> Unit
+    ) {
+        flushBuffer()
+        val seekStart = System.nanoTime()
+        // find the last block starting at or before the start of the range
+        var low = 0
+        var high = blockCount - 1
+        var block = 0
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            if (blockTimes[middle] <= startTime) {
+                block = middle
+                low = middle + 1
+            } else {
+                high = middle - 1
+            }
+        }
+        lastSeekNanos = System.nanoTime() - seekStart
+        if (blockCount == 0 || dataSize == blockOffsets[block]) return
+        val decoder = Decoder(
+            data.map(FileChannel.MapMode.READ_ONLY, blockOffsets[block], dataSize - blockOffsets[block])
+        )
+        var isSeeking = true
+        while (decoder.next() && decoder.time <= endTime) {
+            if (decoder.time >= startTime) {
+                // the seek ends at the first fix in the range
+                if (isSeeking) {
+                    lastSeekNanos = System.nanoTime() - seekStart
+                    isSeeking = false
+                }
+                consumer(
+                    decoder.lon / COORDINATE_SCALE, decoder.lat / COORDINATE_SCALE, decoder.time,
+                    if (decoder.accuracy < 0) Double.NaN else decoder.accuracy / ACCURACY_SCALE
+                )
+            }
+        }
+    }
+
+    /**
+     * @return a summary of the append throughput and compression of the fixes appended since the
+     * log was opened, and the latency of the last seek
+     */
+    @Synchronized
+    fun metrics(): String {
+        val fixesPerSecond = if (appendNanos == 0L) 0.0 else appendedFixCount * 1e9 / appendNanos
+        val bytesPerFix = if (appendedFixCount == 0L) 0.0 else appendedBytes.toDouble() / appendedFixCount
+        return "Fixes appended: $appendedFixCount, ${"%.0f".format(fixesPerSecond)} fixes/s, " +
+                "${"%.2f".format(bytesPerFix)} bytes/fix, last seek: ${lastSeekNanos / 1000} µs"
+    }
+
+    @Synchronized
+    override fun close() {
+        sync()
+        data.close()
+        index.close()
+    }
+
+    private fun addBlock(time: Long, offset: Long) {
+        if (blockCount == blockTimes.size) {
+            blockTimes = blockTimes.copyOf(blockCount * 2)
+            blockOffsets = blockOffsets.copyOf(blockCount * 2)
+        }
+        blockTimes[blockCount] = time
+        blockOffsets[blockCount] = offset
+        blockCount++
+    }
+
+    private fun flushBuffer() {
+        writeBuffer.flip()
+        while (writeBuffer.hasRemaining()) {
+            dataSize += data.write(writeBuffer, dataSize)
+        }
+        writeBuffer.clear()
+    }
+
+    private fun writeVarint(value: Long) {
+        var remaining = value
+        while (remaining and 0x7FL.inv() != 0L) {
+            writeBuffer.put(((remaining and 0x7F) or 0x80).toByte())
+            remaining = remaining ushr 7
+        }
+        writeBuffer.put(remaining.toByte())
+    }
+
+    private fun zigzag(value: Long) = (value shl 1) xor (value shr 63)
+
+    /**
+     * Decodes fixes from a buffer starting at the beginning of a block.
+     */
+    private class Decoder(private val buffer: ByteBuffer) {
+        var lon = 0L
+        var lat = 0L
+        var time = 0L
+        var accuracy = 0L
+
+        /** Number of fixes decoded in the current block. */
+        var fixCount = 0
+
+        /** Position in the buffer of the start of the last fix decoded. */
+        var start = 0
+
+        /** Position in the buffer of the end of the last complete fix decoded. */
+        var end = 0
+
+        /**
+         * Decodes the next fix.
+         *
+         * @return false at the end of the buffer or a partly written fix
+         */
+        fun next(): Boolean {
+            if (!buffer.hasRemaining()) return false
+            try {
+                // each block starts from absolute values
+                if (fixCount == BLOCK_SIZE) {
+                    lon = 0
+                    lat = 0
+                    time = 0
+                    accuracy = 0
+                    fixCount = 0
+                }
+                val nextLon = lon + unzigzag(readVarint())
+                val nextLat = lat + unzigzag(readVarint())
+                val nextTime = time + unzigzag(readVarint())
+                val nextAccuracy = accuracy + unzigzag(readVarint())
+                lon = nextLon
+                lat = nextLat
+                time = nextTime
+                accuracy = nextAccuracy
+            } catch (e: BufferUnderflowException) {
+                return false
+            }
+            fixCount++
+            start = end
+            end = buffer.position()
+            return true
+        }
+
+        private fun readVarint(): Long {
+            var value = 0L
+            var shift = 0
+            while (true) {
+                val byte = buffer.get().toLong()
+                value = value or ((byte and 0x7F) shl shift)
+                if (byte and 0x80 == 0L) return value
+                shift += 7
+            }
+        }
+
+        private fun unzigzag(value: Long) = (value ushr 1) xor -(value and 1)
+    }
+
+    companion object {
+        /** Number of fixes appended between syncs to disk. */
+        const val SYNC_INTERVAL_FIXES = 64
+
+        private const val BLOCK_SIZE = 256
+        private const val COORDINATE_SCALE = 1e7
+        private const val ACCURACY_SCALE = 100.0
+        private const val INDEX_ENTRY_SIZE = 16
+        private const val WRITE_BUFFER_SIZE = 8192
+        // four varints of at most ten bytes
+        private const val MAX_FIX_SIZE = 40
+    }
+}
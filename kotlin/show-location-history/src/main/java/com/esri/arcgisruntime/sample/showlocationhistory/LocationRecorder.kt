@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.showlocationhistory
+
+import android.os.Handler
+import android.os.Looper
+import com.esri.arcgisruntime.geometry.GeometryEngine
+import com.esri.arcgisruntime.geometry.Point
+import com.esri.arcgisruntime.geometry.SpatialReferences
+import com.esri.arcgisruntime.location.LocationDataSource
+import java.util.Calendar
+import java.util.concurrent.Executors
+
+/**
+ * Records the locations from a location data source to a [LocationLog], and reads them back for
+ * replay through a SimulatedLocationDataSource.
+ *
+ * Locations are written to the log on a background thread, so the location data source's
+ * listeners aren't held up by disk writes.
+ *
+ * @param log to record locations to
+ */
+class LocationRecorder(private val log: LocationLog) {
+
+    private val executor = Executors.newSingleThreadExecutor()
+    private val handler = Handler(Looper.getMainLooper())
+    private var locationDataSource: LocationDataSource? = null
+
+    private val locationChangedListener = LocationDataSource.LocationChangedListener { event ->
+        val location = event.location
+        // record positions as WGS84 longitude and latitude
+        val position = location.position.let { position ->
+            if (position.spatialReference == null || position.spatialReference.isGeographic) {
+                position
+            } else {
+                GeometryEngine.project(position, SpatialReferences.getWgs84()) as Point
+            }
+        }
+        val time = location.timeStamp.timeInMillis
+        val accuracy = location.horizontalAccuracy
+        executor.execute { log.append(position.x, position.y, time, accuracy) }
+    }
+
+    /**
+     * Starts recording the locations from the location data source, replacing any data source
+     * being recorded.
+     */
+    fun start(locationDataSource: LocationDataSource) {
+        stop()
+        locationDataSource.addLocationChangedListener(locationChangedListener)
+        this.locationDataSource = locationDataSource
+    }
+
+    /**
+     * Stops recording and syncs the recorded locations to disk.
+     */
+    fun stop() {
+        locationDataSource?.removeLocationChangedListener(locationChangedListener)
+        locationDataSource = null
+        executor.execute { log.sync() }
+    }
+
+    /**
+     * Reads the locations recorded within a time range on a background thread.
+     *
+     * @param startTime of the range in milliseconds
+     * @param endTime of the range in milliseconds
+     * @param callback receives the locations on the UI thread, ready to pass to
+     * SimulatedLocationDataSource.setLocations
+     */
+    fun readLocations(
+        startTime: Long,
+        endTime: Long,
+        callback: (List<LocationDataSource.Location>) -> Unit
+    ) {
+        executor.execute {
+            val locations = ArrayList<LocationDataSource.Location>()
+            log.read(startTime, endTime) { longitude, latitude, time, accuracy ->
+                val timeStamp = Calendar.getInstance().apply { timeInMillis = time }
+                locations.add(
+                    LocationDataSource.Location(
+                        Point(longitude, latitude, SpatialReferences.getWgs84()),
+                        accuracy, Double.NaN, Double.NaN, Double.NaN, false, timeStamp
+                    )
+                )
+            }
+            handler.post { callback(locations) }
+        }
+    }
+
+    /**
+     * @return a summary of the log's append throughput, compression and seek latency
+     */
+    fun metrics() = log.metrics()
+
+    /**
+     * Stops recording and closes the log. The recorder can't be used afterwards.
+     */
+    fun close() {
+        locationDataSource?.removeLocationChangedListener(locationChangedListener)
+        locationDataSource = null
+        executor.execute { log.close() }
+        executor.shutdown()
+    }
+}
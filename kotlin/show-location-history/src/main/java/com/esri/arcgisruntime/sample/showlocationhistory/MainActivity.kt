@@ -19,17 +19,19 @@ package com.esri.arcgisruntime.sample.showlocationhistory
 
 import android.graphics.Color
 import android.os.Bundle
+import android.util.Log
+import android.view.Menu
+import android.view.MenuItem
+import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import androidx.coordinatorlayout.widget.CoordinatorLayout
 import com.esri.arcgisruntime.geometry.Point
 import com.esri.arcgisruntime.geometry.Polyline
-import com.esri.arcgisruntime.geometry.PolylineBuilder
 import com.esri.arcgisruntime.geometry.SpatialReference
 import com.esri.arcgisruntime.location.SimulatedLocationDataSource
 import com.esri.arcgisruntime.location.SimulationParameters
 import com.esri.arcgisruntime.mapping.ArcGISMap
 import com.esri.arcgisruntime.mapping.Viewpoint
-import com.esri.arcgisruntime.mapping.view.Graphic
 import com.esri.arcgisruntime.mapping.view.GraphicsOverlay
 import com.esri.arcgisruntime.mapping.view.LocationDisplay
 import com.esri.arcgisruntime.mapping.view.MapView
@@ -38,12 +40,23 @@ import com.esri.arcgisruntime.symbology.SimpleLineSymbol
 import com.esri.arcgisruntime.symbology.SimpleMarkerSymbol
 import com.esri.arcgisruntime.symbology.SimpleRenderer
 import com.google.android.material.floatingactionbutton.FloatingActionButton
+import java.io.File
 import java.util.Calendar
 
 class MainActivity : AppCompatActivity() {
 
+    private val TAG = MainActivity::class.java.simpleName
+
     private var isTrackLocation: Boolean = false
 
+    private var trackLayer: TrackLayer? = null
+
+    private lateinit var simulatedLocationDataSource: SimulatedLocationDataSource
+
+    private lateinit var locationRecorder: LocationRecorder
+
+    private var replayLocationDataSource: SimulatedLocationDataSource? = null
+
     private val activityMainBinding by lazy {
         ActivityMainBinding.inflate(layoutInflater)
     }
@@ -84,11 +97,20 @@ class MainActivity : AppCompatActivity() {
             graphicsOverlays.addAll(listOf(locationHistoryOverlay, locationHistoryLineOverlay))
         }
 
-        // create a polyline builder to connect the location points
-        val polylineBuilder = PolylineBuilder(SpatialReference.create(102100))
+        // create a track layer which connects the location points, only updating the latest part of
+        // the line as points are added
+        val trackLayer = TrackLayer(
+            locationHistoryLineOverlay,
+            locationHistoryOverlay,
+            SpatialReference.create(102100),
+            TRACK_SEGMENT_SIZE,
+            TRACK_THIN_DISTANCE,
+            TRACK_THIN_MILLIS
+        )
+        this.trackLayer = trackLayer
 
         // create a simulated location data source from json data with simulation parameters to set a consistent velocity
-        val simulatedLocationDataSource = SimulatedLocationDataSource().apply {
+        simulatedLocationDataSource = SimulatedLocationDataSource().apply {
             setLocations(
                 Polyline.fromJson(getString(R.string.polyline_data)) as Polyline,
                 SimulationParameters(Calendar.getInstance(), 30.0, 0.0, 0.0)
@@ -101,17 +123,19 @@ class MainActivity : AppCompatActivity() {
                 return@addLocationChangedListener
             }
             // get the point from the location changed event
-            val nextPoint = locationChangedEvent.location.position
-            // add the new point to the polyline builder
-            polylineBuilder.addPoint(nextPoint)
-            // add the new point to the two graphics overlays and reset the line connecting the points
-            locationHistoryOverlay.graphics.add(Graphic(nextPoint))
-            locationHistoryLineOverlay.graphics.apply {
-                clear()
-                add(Graphic(polylineBuilder.toGeometry()))
-            }
+            val location = locationChangedEvent.location
+            // add the new point to the end of the track
+            trackLayer.add(location.position.x, location.position.y, location.timeStamp.timeInMillis)
         }
 
+        // record the tracked locations to a compact log on the device, which is kept across runs
+        locationRecorder = LocationRecorder(
+            LocationLog(
+                File(filesDir, getString(R.string.location_log)),
+                File(filesDir, getString(R.string.location_log_index))
+            )
+        )
+
         // configure the map view's location display to follow the simulated location data source
         mapView.locationDisplay.apply {
             locationDataSource = simulatedLocationDataSource
@@ -128,9 +152,12 @@ class MainActivity : AppCompatActivity() {
 
             if (isTrackLocation) {
                 isTrackLocation = false
+                locationRecorder.stop()
+                Log.i(TAG, trackLayer.metrics())
                 button.setImageResource(R.drawable.ic_my_location_white_24dp)
             } else {
                 isTrackLocation = true
+                locationRecorder.start(simulatedLocationDataSource)
                 button.setImageResource(R.drawable.ic_navigation_white_24dp)
             }
         }
@@ -144,6 +171,39 @@ class MainActivity : AppCompatActivity() {
         }
     }
 
+    override fun onCreateOptionsMenu(menu: Menu): Boolean {
+        menuInflater.inflate(R.menu.replay_menu, menu)
+        return super.onCreateOptionsMenu(menu)
+    }
+
+    override fun onOptionsItemSelected(item: MenuItem): Boolean {
+        if (item.itemId != R.id.replayHistory) return super.onOptionsItemSelected(item)
+        replayLocationDataSource?.let { replayLocationDataSource ->
+            // stop replaying and show the simulated locations again
+            replayLocationDataSource.stop()
+            this.replayLocationDataSource = null
+            mapView.locationDisplay.locationDataSource = simulatedLocationDataSource
+            item.setTitle(R.string.replay_history)
+            return true
+        }
+        // replay the most recently recorded locations
+        val endTime = System.currentTimeMillis()
+        locationRecorder.readLocations(endTime - REPLAY_WINDOW_MILLIS, endTime) { locations ->
+            Log.i(TAG, "Read ${locations.size} recorded locations, ${locationRecorder.metrics()}")
+            if (locations.isEmpty()) {
+                Toast.makeText(this, getString(R.string.no_recorded_locations), Toast.LENGTH_LONG).show()
+                return@readLocations
+            }
+            replayLocationDataSource = SimulatedLocationDataSource().apply {
+                setLocations(locations)
+                mapView.locationDisplay.locationDataSource = this
+                startAsync()
+            }
+            item.setTitle(R.string.stop_replay)
+        }
+        return true
+    }
+
     override fun onResume() {
         super.onResume()
         mapView.resume()
@@ -155,7 +215,19 @@ class MainActivity : AppCompatActivity() {
     }
 
     override fun onDestroy() {
+        trackLayer?.shutdown()
+        locationRecorder.close()
         mapView.dispose()
         super.onDestroy()
     }
+
+    companion object {
+        // number of fixes drawn by each graphic of the track
+        private const val TRACK_SEGMENT_SIZE = 256
+        // older fixes closer than this in map units and time are removed from the track
+        private const val TRACK_THIN_DISTANCE = 5.0
+        private const val TRACK_THIN_MILLIS = 60_000L
+        // how far back to replay the recorded locations from
+        private const val REPLAY_WINDOW_MILLIS = 60 * 60 * 1000L
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.showlocationhistory
+
+import kotlin.math.hypot
+
+/**
+ * A fixed capacity run of track vertices, stored as primitive arrays of x, y and time so a long
+ * track doesn't hold an object per vertex.
+ *
+ * @param capacity maximum number of vertices in the chunk
+ */
+class TrackChunk(capacity: Int) {
+
+    private val xs = DoubleArray(capacity)
+    private val ys = DoubleArray(capacity)
+    private val times = LongArray(capacity)
+
+    /** Number of vertices in the chunk. */
+    var size = 0
+        private set
+
+    val isFull: Boolean
+        get() = size == xs.size
+
+    /** Bytes used by the chunk's vertex arrays. */
+    val byteCount: Long
+        get() = xs.size * (Double.SIZE_BYTES * 2L + Long.SIZE_BYTES)
+
+    fun x(index: Int) = xs[index]
+
+    fun y(index: Int) = ys[index]
+
+    fun time(index: Int) = times[index]
+
+    /**
+     * Appends a vertex to the chunk, which must not be full.
+     */
+    fun add(x: Double, y: Double, time: Long) {
+        xs[size] = x
+        ys[size] = y
+        times[size] = time
+        size++
+    }
+
+    /**
+     * Thins the chunk's vertices, keeping a vertex when it is at least the given distance from, or
+     * was recorded at least the given time after, the last vertex kept. The first and last
+     * vertices are always kept, so chunks on either side still join up.
+     *
+     * @param distance tolerance in map units
+     * @param millis tolerance in milliseconds
+     * @return a new chunk sized to the vertices kept
+     */
+    fun thin(distance: Double, millis: Long): TrackChunk {
+        val keep = BooleanArray(size)
+        var keptCount = 0
+        var last = -1
+        for (i in 0 until size) {
+            if (last < 0 || i == size - 1 || hypot(xs[i] - xs[last], ys[i] - ys[last]) >= distance ||
+                times[i] - times[last] >= millis
+            ) {
+                keep[i] = true
+                keptCount++
+                last = i
+            }
+        }
+        return TrackChunk(keptCount).also { thinned ->
+            for (i in 0 until size) {
+                if (keep[i]) thinned.add(xs[i], ys[i], times[i])
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.esri.arcgisruntime.sample.showlocationhistory
+
+import android.os.Handler
+import android.os.Looper
+import com.esri.arcgisruntime.geometry.Multipoint
+import com.esri.arcgisruntime.geometry.PointCollection
+import com.esri.arcgisruntime.geometry.Polyline
+import com.esri.arcgisruntime.geometry.SpatialReference
+import com.esri.arcgisruntime.mapping.view.Graphic
+import com.esri.arcgisruntime.mapping.view.GraphicsOverlay
+import java.util.concurrent.Executors
+import kotlin.math.max
+
+/**
+ * Draws a growing location track as a series of fixed size segments.
+ *
+ * Each segment has a line graphic and a multipoint graphic for the fixes, built from a
+ * [TrackChunk] holding the segment's vertices. Adding a fix only rebuilds the geometries of the
+ * last segment, so the cost of a fix doesn't grow with the length of the track. Once a segment is
+ * full it is thinned on a background thread, dropping fixes close in distance and time to the
+ * fixes before them, and its graphics are updated with the thinned vertices.
+ *
+ * Must be used from the UI thread.
+ *
+ * @param lineOverlay overlay for the track's line graphics
+ * @param pointOverlay overlay for the track's fixes
+ * @param spatialReference of the fixes added to the track
+ * @param segmentSize number of vertices in each segment
+ * @param thinDistance distance in map units below which older fixes are thinned
+ * @param thinMillis time in milliseconds below which older fixes are thinned
+ */
+class TrackLayer(
+    private val lineOverlay: GraphicsOverlay,
+    private val pointOverlay: GraphicsOverlay,
+    private val spatialReference: SpatialReference,
+    private val segmentSize: Int,
+    private val thinDistance: Double,
+    private val thinMillis: Long
+) {
+
+    private val segments = ArrayList<Segment>()
+    private val thinExecutor = Executors.newSingleThreadExecutor()
+    private val handler = Handler(Looper.getMainLooper())
+
+    private var fixCount = 0L
+    private var totalAddNanos = 0L
+    private var maxAddNanos = 0L
+
+    /**
+     * Adds a fix to the end of the track.
+     *
+     * @param x coordinate of the fix in the track's spatial reference
+     * @param y coordinate of the fix in the track's spatial reference
+     * @param time the fix was recorded at, in milliseconds
+     */
+    fun add(x: Double, y: Double, time: Long) {
+        val start = System.nanoTime()
+        var tail = segments.lastOrNull()
+        if (tail == null || tail.chunk.isFull) {
+            val chunk = TrackChunk(segmentSize)
+            // start the new segment at the end of the last one so the line is continuous
+            tail?.chunk?.let { previous ->
+                val last = previous.size - 1
+                chunk.add(previous.x(last), previous.y(last), previous.time(last))
+            }
+            tail?.let { thin(it) }
+            tail = Segment(chunk, if (tail == null) 0 else 1)
+            lineOverlay.graphics.add(tail.lineGraphic)
+            pointOverlay.graphics.add(tail.pointGraphic)
+            segments.add(tail)
+        }
+        tail.chunk.add(x, y, time)
+        update(tail)
+
+        val addNanos = System.nanoTime() - start
+        fixCount++
+        totalAddNanos += addNanos
+        maxAddNanos = max(maxAddNanos, addNanos)
+    }
+
+    /**
+     * Stops thinning segments. The track can't be added to afterwards.
+     */
+    fun shutdown() {
+        thinExecutor.shutdownNow()
+    }
+
+    /**
+     * Thins a full segment in the background, then shows the thinned vertices.
+     */
+    private fun thin(segment: Segment) {
+        val chunk = segment.chunk
+        thinExecutor.execute {
+            val thinned = chunk.thin(thinDistance, thinMillis)
+            handler.post {
+                segment.chunk = thinned
+                update(segment)
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the segment's line and multipoint geometries from its vertices.
+     */
+    private fun update(segment: Segment) {
+        val chunk = segment.chunk
+        val points = PointCollection(spatialReference)
+        val fixes = PointCollection(spatialReference)
+        for (i in 0 until chunk.size) {
+            points.add(chunk.x(i), chunk.y(i))
+            // the first vertex of a segment after the first is the previous segment's last fix
+            if (i >= segment.firstFix) {
+                fixes.add(chunk.x(i), chunk.y(i))
+            }
+        }
+        segment.lineGraphic.geometry = Polyline(points)
+        segment.pointGraphic.geometry = Multipoint(fixes)
+    }
+
+    /**
+     * @return a summary of the cost of adding a fix and the memory used by the track's vertices
+     */
+    fun metrics(): String {
+        val vertexCount = segments.sumOf { it.chunk.size }
+        val byteCount = segments.sumOf { it.chunk.byteCount }
+        val meanAddMicros = if (fixCount == 0L) 0.0 else totalAddNanos / (fixCount * 1e3)
+        return "Fixes: $fixCount, segments: ${segments.size}, vertices kept: $vertexCount, " +
+                "vertex memory: ${byteCount / 1024} KB, mean add: ${"%.1f".format(meanAddMicros)} µs, " +
+                "max add: ${"%.1f".format(maxAddNanos / 1e3)} µs"
+    }
+
+    /**
+     * A run of the track drawn with its own graphics.
+     *
+     * @param firstFix index of the segment's first vertex which isn't shared with the previous
+     * segment
+     */
+    private class Segment(var chunk: TrackChunk, val firstFix: Int) {
+        val lineGraphic = Graphic()
+        val pointGraphic = Graphic()
+    }
+}
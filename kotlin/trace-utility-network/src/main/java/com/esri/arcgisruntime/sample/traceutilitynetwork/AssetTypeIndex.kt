@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2019 Esri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.esri.arcgisruntime.sample.traceutilitynetwork
+
+import com.esri.arcgisruntime.utilitynetworks.UtilityAssetType
+import com.esri.arcgisruntime.utilitynetworks.UtilityNetworkDefinition
+
+/**
+ * Looks up the asset types of a utility network by network source, asset group code and asset
+ * type code.
+ *
+ * The index is built once from the network definition, so finding the asset type of a tapped
+ * feature is a hash lookup on its codes rather than a scan of the source's asset groups and types.
+ *
+ * @param definition of a loaded utility network
+ */
+class AssetTypeIndex(definition: UtilityNetworkDefinition) {
+
+    private val sources = HashMap<String, CodeTable>()
+
+    init {
+        definition.networkSources.forEach { networkSource ->
+            val assetTypeCount = networkSource.assetGroups.sumOf { it.assetTypes.size }
+            sources[networkSource.name] = CodeTable(assetTypeCount).apply {
+                networkSource.assetGroups.forEach { assetGroup ->
+                    assetGroup.assetTypes.forEach { assetType ->
+                        put(key(assetGroup.code, assetType.code), assetType)
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param networkSourceName name of the network source, the same as its feature table's name
+     * @param assetGroupCode code of the asset group, the value of the table's subtype field
+     * @param assetTypeCode code of the asset type within the asset group
+     * @return the asset type, or null if the network source has no asset type with the codes
+     */
+    fun get(networkSourceName: String, assetGroupCode: Int, assetTypeCode: Int): UtilityAssetType? =
+        sources[networkSourceName]?.get(key(assetGroupCode, assetTypeCode))
+
+    private fun key(assetGroupCode: Int, assetTypeCode: Int) =
+        (assetGroupCode.toLong() shl 32) or (assetTypeCode.toLong() and 0xFFFFFFFFL)
+
+    /**
+     * An open addressing hash table from primitive long keys to asset types, so lookups don't box
+     * the codes.
+     */
+    private class CodeTable(size: Int) {
+        private val mask = Integer.highestOneBit(maxOf(size, 1) * 2 - 1) * 2 - 1
+        private val keys = LongArray(mask + 1)
+        private val values = arrayOfNulls<UtilityAssetType>(mask + 1)
+
+        fun put(key: Long, value: UtilityAssetType) {
+            var slot = slot(key)
+            while (values[slot] != null && keys[slot] != key) slot = (slot + 1) and mask
+            keys[slot] = key
+            values[slot] = value
+        }
+
+        fun get(key: Long): UtilityAssetType? {
+            var slot = slot(key)
+            while (true) {
+                val value = values[slot] ?: return null
+                if (keys[slot] == key) return value
+                slot = (slot + 1) and mask
+            }
+        }
+
+        private fun slot(key: Long): Int {
+            val hash = key * -0x61c8864680b583ebL
+            return (hash xor (hash ushr 32)).toInt() and mask
+        }
+    }
+}
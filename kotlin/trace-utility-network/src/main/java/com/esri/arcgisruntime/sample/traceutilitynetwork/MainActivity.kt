@@ -26,7 +26,6 @@ import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
 import com.esri.arcgisruntime.ArcGISRuntimeEnvironment
 import com.esri.arcgisruntime.data.ArcGISFeature
-import com.esri.arcgisruntime.data.QueryParameters
 import com.esri.arcgisruntime.data.ServiceGeodatabase
 import com.esri.arcgisruntime.geometry.*
 import com.esri.arcgisruntime.layers.FeatureLayer
@@ -81,6 +80,7 @@ class MainActivity : AppCompatActivity() {
     }
 
     private var mediumVoltageTier: UtilityTier? = null
+    private var assetTypeIndex: AssetTypeIndex? = null
     private val graphicsOverlay: GraphicsOverlay by lazy { GraphicsOverlay() }
 
     private val featureServiceUrl =
@@ -105,6 +105,9 @@ class MainActivity : AppCompatActivity() {
     private val utilityElementStartingLocations: MutableList<UtilityElement> by lazy { ArrayList() }
     private val utilityElementBarriers: MutableList<UtilityElement> by lazy { ArrayList() }
 
+    // selects the features of a trace result in batches across the feature layers
+    private val traceResultSelector = TraceResultSelector(SELECTION_BATCH_SIZE)
+
     // create symbols for the starting point and barriers
     private val startingPointSymbol: SimpleMarkerSymbol by lazy {
         SimpleMarkerSymbol(SimpleMarkerSymbol.Style.CROSS, Color.GREEN, 25f)
@@ -213,6 +216,9 @@ class MainActivity : AppCompatActivity() {
                         utilityNetwork.definition.getDomainNetwork("ElectricDistribution")
                     mediumVoltageTier = domainNetwork.getTier("Medium Voltage Radial")
 
+                    // index the network's asset types to find the asset type of tapped features
+                    assetTypeIndex = AssetTypeIndex(utilityNetwork.definition)
+
                 } else {
                     reportError("Error loading utility network: " + utilityNetwork.loadError.cause?.message)
                 }
@@ -330,11 +336,12 @@ class MainActivity : AppCompatActivity() {
         val assetGroupCode =
             identifiedFeature.attributes[identifiedFeature.featureTable.subtypeField] as Int
 
-        // find the network source's asset group with the matching code
-        networkSource.assetGroups.filter { it.code == assetGroupCode }[0].assetTypes
-            // find the asset group type code matching the feature's asset type code
-            .filter { it.code == identifiedFeature.attributes["assettype"].toString().toInt() }[0]
-            .let { utilityAssetType ->
+        // find the code matching the asset type in the feature's attributes
+        val assetTypeCode = (identifiedFeature.attributes["assettype"] as Number).toInt()
+
+        // find the network source's asset type with the matching asset group and asset type codes
+        assetTypeIndex?.get(networkSource.name, assetGroupCode, assetTypeCode)
+            ?.let { utilityAssetType ->
                 // get the list of terminals for the feature
                 val terminals = utilityAssetType.terminalConfiguration.terminals
 
@@ -376,7 +383,7 @@ class MainActivity : AppCompatActivity() {
                     }
                 }
 
-            }
+            } ?: reportError("No asset type found for the identified feature.")
     }
 
     /**
@@ -426,34 +433,26 @@ class MainActivity : AppCompatActivity() {
                 (utilityTraceResultsFuture.get()[0] as? UtilityElementTraceResult)?.let { utilityElementTraceResult ->
                     // ensure the result is not empty
                     if (utilityElementTraceResult.elements.isNotEmpty()) {
-                        // iterate through the map's feature layers
-                        mapView.map.operationalLayers.filterIsInstance<FeatureLayer>()
-                            .forEach { featureLayer ->
-
-                                // clear previous selection
-                                featureLayer.clearSelection()
-
-                                // create query parameters to find features who's network source name matches the layer's feature table name
-                                with(QueryParameters()) {
-                                    utilityElementTraceResult.elements.filter { it.networkSource.name == featureLayer.featureTable.tableName }
-                                        .forEach { utilityElement ->
-                                            this.objectIds.add(utilityElement.objectId)
-                                        }
-
-                                    // select features that match the query
-                                    featureLayer.selectFeaturesAsync(
-                                        this,
-                                        FeatureLayer.SelectionMode.NEW
-                                    )
-                                        .addDoneListener {
-                                            // when done, update status text, enable buttons and hide progress indicator
-                                            statusTextView.text =
-                                                getString(R.string.trace_completed)
-                                            enableButtons()
-                                            progressIndicator.visibility = View.GONE
-                                        }
-                                }
+                        // select the result's features in the map's feature layers
+                        traceResultSelector.select(
+                            utilityElementTraceResult.elements,
+                            mapView.map.operationalLayers.filterIsInstance<FeatureLayer>()
+                        ) { result ->
+                            Log.i(
+                                MainActivity::class.java.simpleName,
+                                "Selected ${result.selectedCount} of ${result.elementCount} elements " +
+                                        "in ${result.batchCount} queries, ${result.elapsedMillis} ms"
+                            )
+                            // when done, update status text, enable buttons and hide progress indicator
+                            statusTextView.text = if (result.error == null) {
+                                getString(R.string.trace_completed)
+                            } else {
+                                reportError("Error selecting trace result: " + result.error.message)
+                                getString(R.string.failed_message)
                             }
+                            enableButtons()
+                            progressIndicator.visibility = View.GONE
+                        }
                     } else {
                         Toast.makeText(this, "No elements in trace result", Toast.LENGTH_LONG)
                             .show()
@@ -496,6 +495,8 @@ class MainActivity : AppCompatActivity() {
         statusTextView.text = getString(R.string.add_utility_element)
         progressIndicator.visibility = View.GONE
 
+        // stop selecting the features of any trace still running
+        traceResultSelector.cancel()
         // clear the utility trace parameters
         utilityElementStartingLocations.clear()
         utilityElementBarriers.clear()
@@ -530,7 +531,13 @@ class MainActivity : AppCompatActivity() {
     }
 
     override fun onDestroy() {
+        traceResultSelector.cancel()
         mapView.dispose()
         super.onDestroy()
     }
+
+    companion object {
+        // maximum number of object IDs in each selection query
+        private const val SELECTION_BATCH_SIZE = 1000
+    }
 }